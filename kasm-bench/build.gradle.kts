@@ -0,0 +1,20 @@
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    alias(libs.plugins.jmh)
+}
+
+dependencies {
+    jmh(project(":kasm-ir"))
+}
+
+// Run with "./gradlew :kasm-bench:jmh", the results are written to build/results/jmh.
+// The gc profiler reports the allocated bytes per operation next to the time per operation.
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    jvmArgsAppend.add("-Xmx4g")
+    resultFormat.set("JSON")
+}
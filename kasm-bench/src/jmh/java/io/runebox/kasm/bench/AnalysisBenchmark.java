@@ -0,0 +1,36 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.analysis.Analysis;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the stack {@link Analysis} on the bodies of all methods in the {@link Corpus}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnalysisBenchmark {
+    @Param(Corpus.DEFAULT_PACKAGES)
+    public String packages;
+
+    private List<Corpus.MethodBody<StackBody>> bodies;
+
+    @Setup
+    public void setup() {
+        this.bodies = Corpus.load(packages).getStackBodies();
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) {
+        for (Corpus.MethodBody<StackBody> body : bodies) {
+            Analysis analysis = new Analysis(body.getBody());
+            analysis.analyze();
+            blackhole.consume(analysis);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse all classes of the {@link Corpus} into {@link io.runebox.kasm.ir.stack.StackBody StackBodies}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Asm2StackBenchmark {
+    @Param(Corpus.DEFAULT_PACKAGES)
+    public String packages;
+
+    /**
+     * Flags passed to the {@link ClassReader}, either none or {@link ClassReader#SKIP_FRAMES}.
+     */
+    @Param({"0", "4"})
+    public int parsingOptions;
+
+    private List<byte[]> classes;
+
+    @Setup
+    public void setup() {
+        this.classes = Corpus.load(packages).getClasses();
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (byte[] bytes : classes) {
+            blackhole.consume(Asm2Stack.convert(new ClassReader(bytes), parsingOptions));
+        }
+    }
+
+    @Benchmark
+    public void convertLazily(Blackhole blackhole) {
+        for (byte[] bytes : classes) {
+            blackhole.consume(Asm2Stack.convertLazily(new ClassReader(bytes), parsingOptions));
+        }
+    }
+}
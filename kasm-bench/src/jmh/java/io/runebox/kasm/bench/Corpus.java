@@ -0,0 +1,192 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.Ref2Asm;
+import io.runebox.kasm.ir.conversion.Ref2Stack;
+import io.runebox.kasm.ir.conversion.Stack2Asm;
+import io.runebox.kasm.ir.conversion.Stack2Ref;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The classes that all benchmarks convert, extracted from the jrt image of the running JDK.
+ *
+ * Only classes that survive the whole pipeline are part of the corpus,
+ * so every benchmark measures the same classes. The classes are sorted by name,
+ * so the corpus only changes if the JDK that runs the benchmarks changes.
+ */
+public class Corpus {
+    /**
+     * Packages used if a benchmark does not override its <tt>packages</tt> parameter.
+     */
+    public static final String DEFAULT_PACKAGES = "java/util,java/lang,java/io";
+
+    private final List<byte[]> classes;
+
+    private Corpus(List<byte[]> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Load all classes of some packages.
+     *
+     * @param packages comma separated list of packages, e.g. <tt>java/util,java/io</tt>
+     * @return the corpus
+     */
+    public static Corpus load(String packages) {
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+
+        List<byte[]> classes = new ArrayList<>();
+        for (String pkg : packages.split(",")) {
+            Path packageDir = jrt.getPath("/packages", pkg.replace('/', '.'));
+            for (Path module : list(packageDir)) {
+                for (Path file : list(module.resolve(pkg))) {
+                    if (file.toString().endsWith(".class")) {
+                        classes.add(read(file));
+                    }
+                }
+            }
+        }
+
+        List<byte[]> convertible = classes.stream()
+                .filter(Corpus::isConvertible)
+                .sorted(Comparator.comparing(bytes -> new ClassReader(bytes).getClassName()))
+                .collect(Collectors.toList());
+
+        return new Corpus(convertible);
+    }
+
+    private static List<Path> list(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] read(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isConvertible(byte[] bytes) {
+        try {
+            Classfile classfile = Asm2Stack.convert(new ClassReader(bytes));
+            Stack2Ref.convert(classfile);
+            Ref2Asm.toBytecode(classfile, new ClassHierarchy());
+            Ref2Asm.toBytecodeWithFrameComputer(classfile, new ClassHierarchy());
+            Ref2Stack.convert(classfile);
+            Stack2Asm.toBytecode(classfile, new ClassHierarchy());
+            Stack2Asm.toBytecodeWithFrameComputer(classfile, new ClassHierarchy());
+            return true;
+        } catch (RuntimeException | AssertionError | StackOverflowError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the class files of the corpus.
+     *
+     * @return the bytes of all classes
+     */
+    public List<byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Convert all classes into {@link StackBody StackBodies}.
+     *
+     * @return the converted classes
+     */
+    public List<Classfile> toStackClasses() {
+        return classes.stream()
+                .map(bytes -> Asm2Stack.convert(new ClassReader(bytes)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Convert all classes into {@link RefBody RefBodies}.
+     *
+     * @return the converted classes
+     */
+    public List<Classfile> toRefClasses() {
+        List<Classfile> classfiles = toStackClasses();
+        classfiles.forEach(Stack2Ref::convert);
+        return classfiles;
+    }
+
+    /**
+     * Convert all classes into {@link StackBody StackBodies} and collect the bodies of all methods.
+     *
+     * @return all bodies with their methods
+     */
+    public List<MethodBody<StackBody>> getStackBodies() {
+        return getBodies(toStackClasses(), StackBody.class);
+    }
+
+    /**
+     * Convert all classes into {@link RefBody RefBodies} and collect the bodies of all methods.
+     *
+     * @return all bodies with their methods
+     */
+    public List<MethodBody<RefBody>> getRefBodies() {
+        return getBodies(toRefClasses(), RefBody.class);
+    }
+
+    private static <B> List<MethodBody<B>> getBodies(List<Classfile> classfiles, Class<B> bodyType) {
+        List<MethodBody<B>> bodies = new ArrayList<>();
+        for (Classfile classfile : classfiles) {
+            for (Method method : classfile.getMethods()) {
+                method.getBody().ifPresent(body -> bodies.add(new MethodBody<>(classfile, method, bodyType.cast(body))));
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * A body together with the method and class that contain it.
+     *
+     * @param <B> the type of the body
+     */
+    public static class MethodBody<B> {
+        private final Classfile classfile;
+        private final Method method;
+        private final B body;
+
+        public MethodBody(Classfile classfile, Method method, B body) {
+            this.classfile = classfile;
+            this.method = method;
+            this.body = body;
+        }
+
+        public Classfile getClassfile() {
+            return classfile;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public B getBody() {
+            return body;
+        }
+    }
+}
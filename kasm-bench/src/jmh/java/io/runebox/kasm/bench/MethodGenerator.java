@@ -0,0 +1,282 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generate a class with one synthetic method whose shape is controlled by a few parameters.
+ *
+ * Real classes rarely contain the huge and convoluted methods of obfuscated code,
+ * which are the inputs where super-linear algorithms in the conversions show up.
+ * The generated method is built from <tt>size</tt> blocks that all read and write a pool of int locals.
+ * Blocks can be guarded by try/catch blocks, followed by a <tt>tableswitch</tt>
+ * and the whole body can be wrapped in nested loops.
+ *
+ * The method is <tt>static int run(int, int)</tt> of the class {@link #CLASS_NAME}.
+ * Its code is valid and verifiable, so all stages of the pipeline can convert it.
+ */
+public class MethodGenerator {
+    public static final String CLASS_NAME = "io/runebox/kasm/bench/Generated";
+    public static final String METHOD_NAME = "run";
+    public static final String METHOD_DESCRIPTOR = "(II)I";
+
+    /**
+     * Index of the first generated local, after the two parameters.
+     */
+    private static final int FIRST_LOCAL = 2;
+
+    /**
+     * Number of blocks in the method.
+     */
+    private int size = 100;
+
+    /**
+     * Number of int locals that the blocks read and write.
+     */
+    private int locals = 16;
+
+    /**
+     * Every n-th block is guarded by a try/catch block, 0 for no try/catch blocks.
+     */
+    private int tryCatchInterval = 0;
+
+    /**
+     * Number of cases of the switches, 0 for no switches.
+     */
+    private int switchWidth = 0;
+
+    /**
+     * Every n-th block is followed by a switch.
+     */
+    private int switchInterval = 1;
+
+    /**
+     * How many counted loops are nested around the body.
+     */
+    private int loopNesting = 0;
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getLocals() {
+        return locals;
+    }
+
+    public void setLocals(int locals) {
+        if (locals < 1) {
+            throw new IllegalArgumentException("At least one local is required");
+        }
+        this.locals = locals;
+    }
+
+    public int getTryCatchInterval() {
+        return tryCatchInterval;
+    }
+
+    public void setTryCatchInterval(int tryCatchInterval) {
+        this.tryCatchInterval = tryCatchInterval;
+    }
+
+    public int getSwitchWidth() {
+        return switchWidth;
+    }
+
+    public void setSwitchWidth(int switchWidth) {
+        this.switchWidth = switchWidth;
+    }
+
+    public int getSwitchInterval() {
+        return switchInterval;
+    }
+
+    public void setSwitchInterval(int switchInterval) {
+        if (switchInterval < 1) {
+            throw new IllegalArgumentException("The switch interval must be positive");
+        }
+        this.switchInterval = switchInterval;
+    }
+
+    public int getLoopNesting() {
+        return loopNesting;
+    }
+
+    public void setLoopNesting(int loopNesting) {
+        this.loopNesting = loopNesting;
+    }
+
+    /**
+     * Generate the class file.
+     *
+     * @return the bytecode of the class
+     * @throws org.objectweb.asm.MethodTooLargeException if the method exceeds the size limit of the jvm
+     */
+    public byte[] generate() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, CLASS_NAME, null, "java/lang/Object", null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, METHOD_NAME, METHOD_DESCRIPTOR, null, null);
+        mv.visitCode();
+        generateBody(mv);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generate the class and convert it.
+     *
+     * @return the class with a {@link io.runebox.kasm.ir.stack.StackBody}
+     */
+    public Classfile generateClassfile() {
+        return Asm2Stack.convert(new ClassReader(generate()));
+    }
+
+    private int getLocal(int index) {
+        return FIRST_LOCAL + index;
+    }
+
+    private int getLoopCounter(int depth) {
+        return FIRST_LOCAL + locals + depth;
+    }
+
+    private void generateBody(MethodVisitor mv) {
+        for (int i = 0; i < locals; i++) {
+            mv.visitVarInsn(Opcodes.ILOAD, i % FIRST_LOCAL);
+            pushInt(mv, i);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, getLocal(i));
+        }
+
+        Label[] loopHeads = new Label[loopNesting];
+        Label[] loopExits = new Label[loopNesting];
+        for (int depth = 0; depth < loopNesting; depth++) {
+            loopHeads[depth] = new Label();
+            loopExits[depth] = new Label();
+
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, getLoopCounter(depth));
+            mv.visitLabel(loopHeads[depth]);
+            mv.visitVarInsn(Opcodes.ILOAD, getLoopCounter(depth));
+            mv.visitInsn(Opcodes.ICONST_2);
+            mv.visitJumpInsn(Opcodes.IF_ICMPGE, loopExits[depth]);
+        }
+
+        for (int block = 0; block < size; block++) {
+            generateBlock(mv, block);
+        }
+
+        for (int depth = loopNesting - 1; depth >= 0; depth--) {
+            mv.visitIincInsn(getLoopCounter(depth), 1);
+            mv.visitJumpInsn(Opcodes.GOTO, loopHeads[depth]);
+            mv.visitLabel(loopExits[depth]);
+        }
+
+        mv.visitVarInsn(Opcodes.ILOAD, getLocal(0));
+        for (int i = 1; i < locals; i++) {
+            mv.visitVarInsn(Opcodes.ILOAD, getLocal(i));
+            mv.visitInsn(Opcodes.IADD);
+        }
+        mv.visitInsn(Opcodes.IRETURN);
+    }
+
+    /**
+     * Generate one block that assigns a new value to a local.
+     *
+     * @param mv visitor of the method
+     * @param block index of the block
+     */
+    private void generateBlock(MethodVisitor mv, int block) {
+        int target = getLocal(block % locals);
+        int operand = getLocal((block * 7 + 3) % locals);
+
+        if (tryCatchInterval > 0 && block % tryCatchInterval == 0) {
+            // target = target / operand, the division may throw an ArithmeticException
+            Label start = new Label();
+            Label end = new Label();
+            Label handler = new Label();
+            Label after = new Label();
+            mv.visitTryCatchBlock(start, end, handler, "java/lang/ArithmeticException");
+
+            mv.visitLabel(start);
+            mv.visitVarInsn(Opcodes.ILOAD, target);
+            mv.visitVarInsn(Opcodes.ILOAD, operand);
+            mv.visitInsn(Opcodes.IDIV);
+            mv.visitVarInsn(Opcodes.ISTORE, target);
+            mv.visitLabel(end);
+            mv.visitJumpInsn(Opcodes.GOTO, after);
+
+            mv.visitLabel(handler);
+            mv.visitInsn(Opcodes.POP);
+            mv.visitIincInsn(target, 1);
+            mv.visitLabel(after);
+        } else {
+            // target = target + operand * constant
+            mv.visitVarInsn(Opcodes.ILOAD, target);
+            mv.visitVarInsn(Opcodes.ILOAD, operand);
+            pushInt(mv, block % 100 + 1);
+            mv.visitInsn(Opcodes.IMUL);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, target);
+        }
+
+        if (switchWidth > 0 && block % switchInterval == 0) {
+            generateSwitch(mv, target, operand);
+        }
+    }
+
+    /**
+     * Generate a switch over <tt>selector % switchWidth</tt> whose cases assign constants to a local.
+     *
+     * @param mv visitor of the method
+     * @param selector local that selects the case
+     * @param assigned local that is assigned by the cases
+     */
+    private void generateSwitch(MethodVisitor mv, int selector, int assigned) {
+        Label defaultLabel = new Label();
+        Label join = new Label();
+        Label[] cases = new Label[switchWidth];
+        for (int i = 0; i < switchWidth; i++) {
+            cases[i] = new Label();
+        }
+
+        mv.visitVarInsn(Opcodes.ILOAD, selector);
+        pushInt(mv, switchWidth);
+        mv.visitInsn(Opcodes.IREM);
+        mv.visitTableSwitchInsn(0, switchWidth - 1, defaultLabel, cases);
+
+        for (int i = 0; i < switchWidth; i++) {
+            mv.visitLabel(cases[i]);
+            pushInt(mv, i * 31);
+            mv.visitVarInsn(Opcodes.ISTORE, assigned);
+            mv.visitJumpInsn(Opcodes.GOTO, join);
+        }
+
+        mv.visitLabel(defaultLabel);
+        mv.visitIincInsn(assigned, 1);
+        mv.visitLabel(join);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+}
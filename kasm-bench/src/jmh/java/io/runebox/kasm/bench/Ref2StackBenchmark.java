@@ -0,0 +1,35 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.conversion.Ref2Stack;
+import io.runebox.kasm.ir.ref.RefBody;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert the {@link RefBody RefBodies} of all methods in the {@link Corpus} back into
+ * {@link io.runebox.kasm.ir.stack.StackBody StackBodies}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Ref2StackBenchmark {
+    @Param(Corpus.DEFAULT_PACKAGES)
+    public String packages;
+
+    private List<Corpus.MethodBody<RefBody>> bodies;
+
+    @Setup
+    public void setup() {
+        this.bodies = Corpus.load(packages).getRefBodies();
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (Corpus.MethodBody<RefBody> body : bodies) {
+            blackhole.consume(Ref2Stack.convert(body.getBody()));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.Ref2Stack;
+import io.runebox.kasm.ir.conversion.Stack2Asm;
+import io.runebox.kasm.ir.conversion.stack2ref.BodyConverter;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.PassManager;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert one method of the {@link MethodGenerator} through every stage, for growing method sizes.
+ *
+ * The corpus benchmarks only show how fast typical methods are converted.
+ * This benchmark shows how the conversion time grows with the size of a method:
+ * plotting the score of each stage over the <tt>size</tt> parameter of the JMH results
+ * should give a straight line, a curve points at an algorithm that is not linear.
+ * The shape of the method can be changed with the other parameters,
+ * e.g. <tt>-p locals=256</tt> to stress the local analyses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScalabilityBenchmark {
+    /**
+     * Number of blocks of the generated method, doubling so that the growth can be read off directly.
+     */
+    @Param({"125", "250", "500", "1000"})
+    public int size;
+
+    @Param("32")
+    public int locals;
+
+    @Param("8")
+    public int tryCatchInterval;
+
+    @Param("8")
+    public int switchWidth;
+
+    @Param("16")
+    public int switchInterval;
+
+    @Param("2")
+    public int loopNesting;
+
+    private byte[] bytes;
+    private Classfile classfile;
+    private Method method;
+    private StackBody stackBody;
+    private RefBody refBody;
+    private PassManager passManager;
+    private ClassHierarchy hierarchy;
+
+    @Setup
+    public void setup() {
+        MethodGenerator generator = new MethodGenerator();
+        generator.setSize(size);
+        generator.setLocals(locals);
+        generator.setTryCatchInterval(tryCatchInterval);
+        generator.setSwitchWidth(switchWidth);
+        generator.setSwitchInterval(switchInterval);
+        generator.setLoopNesting(loopNesting);
+
+        this.bytes = generator.generate();
+        this.classfile = Asm2Stack.convert(new ClassReader(bytes));
+        this.method = classfile.getMethods().get(0);
+        this.stackBody = (StackBody) method.getBody().get();
+        this.passManager = Stack2RefBenchmark.PostProcessors.ALL.createPassManager();
+        this.refBody = convertToRef();
+        this.hierarchy = new ClassHierarchy();
+    }
+
+    private RefBody convertToRef() {
+        BodyConverter converter = new BodyConverter(classfile.getName(), method, stackBody);
+        converter.convert();
+        RefBody refBody = converter.getRefBody();
+        passManager.run(refBody);
+        return refBody;
+    }
+
+    @Benchmark
+    public Classfile asm2Stack() {
+        return Asm2Stack.convert(new ClassReader(bytes));
+    }
+
+    @Benchmark
+    public RefBody stack2Ref() {
+        return convertToRef();
+    }
+
+    @Benchmark
+    public StackBody ref2Stack() {
+        return Ref2Stack.convert(refBody);
+    }
+
+    /**
+     * Write the class like the batch converter does, see {@link Stack2AsmBenchmark#toBytecodeWithHierarchy}.
+     */
+    @Benchmark
+    public byte[] stack2Asm() {
+        return Stack2Asm.toBytecode(classfile, hierarchy);
+    }
+}
@@ -0,0 +1,65 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.Stack2Asm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write all classes of the {@link Corpus} into jvm bytecode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Stack2AsmBenchmark {
+    @Param(Corpus.DEFAULT_PACKAGES)
+    public String packages;
+
+    private List<Classfile> classfiles;
+
+    /**
+     * The hierarchy is shared by all invocations, so its lookups are cached after the warmup
+     * like they are when many classes are written.
+     */
+    private ClassHierarchy hierarchy;
+
+    @Setup
+    public void setup() {
+        this.classfiles = Corpus.load(packages).toStackClasses();
+        this.hierarchy = new ClassHierarchy();
+    }
+
+    /**
+     * Let asm compute the frames.
+     */
+    @Benchmark
+    public void toBytecode(Blackhole blackhole) {
+        for (Classfile classfile : classfiles) {
+            blackhole.consume(Stack2Asm.toBytecode(classfile));
+        }
+    }
+
+    /**
+     * Let asm compute the frames, looking up common superclasses in the hierarchy.
+     */
+    @Benchmark
+    public void toBytecodeWithHierarchy(Blackhole blackhole) {
+        for (Classfile classfile : classfiles) {
+            blackhole.consume(Stack2Asm.toBytecode(classfile, hierarchy));
+        }
+    }
+
+    /**
+     * Let kasm compute the frames.
+     */
+    @Benchmark
+    public void toBytecodeWithFrameComputer(Blackhole blackhole) {
+        for (Classfile classfile : classfiles) {
+            blackhole.consume(Stack2Asm.toBytecodeWithFrameComputer(classfile, hierarchy));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.runebox.kasm.bench;
+
+import io.runebox.kasm.ir.conversion.stack2ref.BodyConverter;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.DirectReuseInliningPostProcessor;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.LocalPartitioningPostProcessor;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.LocalTypingPostProcessor;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.PassManager;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.PostProcessor;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Convert the {@link StackBody StackBodies} of all methods in the {@link Corpus} into {@link RefBody RefBodies}.
+ *
+ * The post processors are selected by a parameter, so that the cost of each post processor can be told apart.
+ * Bodies that cannot be converted with the selected post processors are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Stack2RefBenchmark {
+    @Param(Corpus.DEFAULT_PACKAGES)
+    public String packages;
+
+    @Param
+    public PostProcessors postProcessors;
+
+    private List<Corpus.MethodBody<StackBody>> bodies;
+    private PassManager passManager;
+
+    @Setup
+    public void setup() {
+        this.passManager = postProcessors.createPassManager();
+        this.bodies = Corpus.load(packages).getStackBodies().stream()
+                .filter(this::isConvertible)
+                .collect(Collectors.toList());
+    }
+
+    private boolean isConvertible(Corpus.MethodBody<StackBody> body) {
+        try {
+            convert(body);
+            return true;
+        } catch (RuntimeException | AssertionError | StackOverflowError e) {
+            return false;
+        }
+    }
+
+    private RefBody convert(Corpus.MethodBody<StackBody> body) {
+        BodyConverter converter = new BodyConverter(body.getClassfile().getName(), body.getMethod(), body.getBody());
+        converter.convert();
+        RefBody refBody = converter.getRefBody();
+        passManager.run(refBody);
+        return refBody;
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (Corpus.MethodBody<StackBody> body : bodies) {
+            blackhole.consume(convert(body));
+        }
+    }
+
+    /**
+     * The post processors that are applied after the conversion.
+     */
+    public enum PostProcessors {
+        ALL,
+        NONE,
+        WITHOUT_DIRECT_REUSE_INLINING,
+        WITHOUT_LOCAL_PARTITIONING,
+        WITHOUT_LOCAL_TYPING;
+
+        /**
+         * Create the post processors in the order of {@link io.runebox.kasm.ir.conversion.Stack2Ref}.
+         *
+         * @return a pass manager running the selected post processors
+         */
+        public PassManager createPassManager() {
+            List<PostProcessor> postProcessors = new ArrayList<>();
+            if (this != NONE && this != WITHOUT_DIRECT_REUSE_INLINING) {
+                postProcessors.add(new DirectReuseInliningPostProcessor());
+            }
+            if (this != NONE && this != WITHOUT_LOCAL_PARTITIONING) {
+                postProcessors.add(new LocalPartitioningPostProcessor());
+            }
+            if (this != NONE && this != WITHOUT_LOCAL_TYPING) {
+                postProcessors.add(new LocalTypingPostProcessor());
+            }
+            return new PassManager(postProcessors);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    application
+}
+
+dependencies {
+    implementation(project(":kasm-ir"))
+
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly(libs.junit.platform.launcher)
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Run with "./gradlew :kasm-cli:run --args='-o out.jar in.jar'" or install it with "./gradlew :kasm-cli:installDist".
+application {
+    mainClass.set("io.runebox.kasm.cli.KasmCli")
+    applicationName = "kasm"
+}
@@ -0,0 +1,115 @@
+package io.runebox.kasm.cli;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.BatchConverter;
+import io.runebox.kasm.ir.conversion.metrics.LatencyHistogram;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The throughput, latencies, memory usage and failures of one run of the {@link KasmCli}.
+ */
+class ConversionReport {
+    private final String mode;
+
+    private int classes;
+    private int failedClasses;
+    private int methods;
+    private int failedMethods;
+    private long nanos;
+    private long peakHeap;
+    private LatencyHistogram methodLatencies = new LatencyHistogram();
+
+    /**
+     * One line per class or method that could not be converted.
+     */
+    private final List<String> failures = new ArrayList<>();
+
+    ConversionReport(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Record a class that could not even be parsed.
+     *
+     * @param entryName name of the file containing the class
+     * @param cause the exception thrown while parsing
+     */
+    void addUnreadableClass(String entryName, Throwable cause) {
+        classes++;
+        failedClasses++;
+        failures.add("class " + entryName + ": " + cause);
+    }
+
+    /**
+     * Record the outcome of a batch.
+     *
+     * @param results the results of all classes of the batch
+     * @param nanos wall time of the batch
+     * @param methodLatencies latencies of the single method conversions
+     * @param peakHeap highest heap usage sampled during the batch in bytes
+     */
+    void addResults(List<BatchConverter.Result> results, long nanos, LatencyHistogram methodLatencies, long peakHeap) {
+        this.nanos = nanos;
+        this.methodLatencies = methodLatencies;
+        this.peakHeap = peakHeap;
+
+        for (BatchConverter.Result result : results) {
+            classes++;
+            if (result.getClassfile().isPresent()) {
+                for (Method method : result.getClassfile().get().getMethods()) {
+                    if (method.getBody().isPresent()) {
+                        methods++;
+                    }
+                }
+            }
+
+            if (!result.isSuccessful()) {
+                failedClasses++;
+            }
+            result.getFailure().ifPresent(cause -> failures.add("class " + result.getName() + ": " + cause));
+
+            for (BatchConverter.MethodFailure methodFailure : result.getMethodFailures()) {
+                failedMethods++;
+                failures.add("method " + getMethodName(result, methodFailure.getMethod()) + ": " + methodFailure.getCause());
+            }
+        }
+    }
+
+    private static String getMethodName(BatchConverter.Result result, Method method) {
+        String owner = result.getClassfile().map(Classfile::getName).map(name -> name.join('/')).orElse(result.getName());
+        return owner + "." + method.getName() + AsmUtil.methodDescriptorToString(method.getReturnType(), method.getParameterTypes());
+    }
+
+    void print(PrintStream out) {
+        double seconds = nanos / 1e9;
+
+        out.printf(Locale.ROOT, "mode:      %s%n", mode);
+        out.printf(Locale.ROOT, "classes:   %d converted, %d failed%n", classes - failedClasses, failedClasses);
+        out.printf(Locale.ROOT, "methods:   %d converted, %d failed%n", methods - failedMethods, failedMethods);
+        out.printf(Locale.ROOT, "time:      %.3f s, %.1f classes/s, %.1f methods/s%n",
+                seconds, classes / seconds, methods / seconds);
+
+        if (methodLatencies.getPercentile(100) == 0) {
+            out.printf(Locale.ROOT, "latency:   not measured, the mode converts no single methods%n");
+        } else {
+            // The histogram has one bucket per power of two, so the percentiles are upper bounds.
+            out.printf(Locale.ROOT, "latency:   p50 <= %.3f ms, p99 <= %.3f ms per method%n",
+                    methodLatencies.getPercentile(50) / 1e6, methodLatencies.getPercentile(99) / 1e6);
+        }
+
+        out.printf(Locale.ROOT, "peak heap: %.1f MiB, sampled%n", peakHeap / (1024.0 * 1024.0));
+
+        if (!failures.isEmpty()) {
+            out.printf(Locale.ROOT, "failures:%n");
+            for (String failure : failures) {
+                out.printf(Locale.ROOT, "  %s%n", failure);
+            }
+        }
+    }
+}
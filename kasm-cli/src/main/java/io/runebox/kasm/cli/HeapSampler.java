@@ -0,0 +1,80 @@
+package io.runebox.kasm.cli;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Samples the used heap on a background thread and keeps the highest sample.
+ *
+ * The peak usages of the single memory pools cannot simply be added up,
+ * since each pool reaches its peak at another time.
+ * Sampling the whole heap at once avoids that, but misses peaks that last shorter than the interval,
+ * so the result is a lower bound of the real peak.
+ */
+class HeapSampler implements AutoCloseable {
+    /**
+     * Time between two samples in milliseconds.
+     */
+    private static final long INTERVAL_MILLIS = 5;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Highest sample so far, only written by the sampling thread until it is joined.
+     */
+    private volatile long peak;
+
+    /**
+     * Start sampling.
+     */
+    HeapSampler() {
+        this.peak = sample();
+        this.thread = new Thread(this::run, "kasm-heap-sampler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            long used = sample();
+            if (used > peak) {
+                peak = used;
+            }
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private long sample() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Stop sampling.
+     */
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        peak = Math.max(peak, sample());
+    }
+
+    /**
+     * Get the highest heap usage that was sampled.
+     *
+     * @return used heap in bytes
+     */
+    long getPeak() {
+        return peak;
+    }
+}
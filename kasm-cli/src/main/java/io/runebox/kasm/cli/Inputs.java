@@ -0,0 +1,87 @@
+package io.runebox.kasm.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The class files and resources of some jars and directories.
+ *
+ * Entries keep the order of the inputs.
+ * If several inputs contain an entry with the same name, only the first one is kept.
+ */
+class Inputs {
+    /**
+     * Map entry names of class files to their content.
+     */
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+    /**
+     * Map entry names of all other files to their content.
+     */
+    private final Map<String, byte[]> resources = new LinkedHashMap<>();
+
+    /**
+     * Read all entries of jars or directories.
+     *
+     * @param paths the jars and directories
+     * @return all entries of the inputs
+     * @throws IOException if an input cannot be read
+     */
+    public static Inputs read(List<Path> paths) throws IOException {
+        Inputs inputs = new Inputs();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                inputs.readDirectory(path);
+            } else {
+                inputs.readJar(path);
+            }
+        }
+        return inputs;
+    }
+
+    private void readJar(Path path) throws IOException {
+        try (JarFile jar = new JarFile(path.toFile())) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        add(entry.getName(), in.readAllBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    private void readDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            add(name, Files.readAllBytes(file));
+        }
+    }
+
+    private void add(String name, byte[] content) {
+        Map<String, byte[]> entries = name.endsWith(".class") ? classes : resources;
+        entries.putIfAbsent(name, content);
+    }
+
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    public Map<String, byte[]> getResources() {
+        return resources;
+    }
+}
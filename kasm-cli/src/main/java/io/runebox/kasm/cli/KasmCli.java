@@ -0,0 +1,275 @@
+package io.runebox.kasm.cli;
+
+import io.runebox.kasm.ir.conversion.BatchConverter;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Convert the classes of jars and directories with a {@link BatchConverter} and report how it went.
+ *
+ * <pre><code>
+ *     kasm [options] &lt;input jar or directory&gt;...
+ * </code></pre>
+ *
+ * The report contains the throughput, the latencies of single methods, the sampled peak heap usage
+ * and every class and method that could not be converted.
+ * Classes that fail to convert are copied unchanged into the output jar.
+ */
+public class KasmCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: kasm [options] <input jar or directory>...",
+            "",
+            "Options:",
+            "  -o, --output <jar>        write the converted classes and all resources into a jar",
+            "  -m, --mode <mode>         conversions applied to every class (default: full)",
+            "                              stack            parse into StackBodies and write them",
+            "                              stack-ref-stack  convert into RefBodies and back, write nothing",
+            "                              full             convert into RefBodies and back and write them",
+            "  -t, --threads <count>     number of worker threads (default: available processors)",
+            "  -cp, --classpath <paths>  jars and directories of the libraries, used to compute frames",
+            "  -h, --help                print this help");
+
+    /**
+     * Exit status if the arguments are invalid.
+     */
+    private static final int EXIT_USAGE = 2;
+
+    /**
+     * Exit status if an input cannot be read or the output cannot be written.
+     */
+    private static final int EXIT_IO = 1;
+
+    private final List<Path> inputs = new ArrayList<>();
+    private final List<Path> classpath = new ArrayList<>();
+    private Optional<Path> output = Optional.empty();
+    private Mode mode = Mode.FULL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) {
+        KasmCli cli = new KasmCli();
+        try {
+            if (!cli.parseArguments(args)) {
+                System.out.println(USAGE);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("kasm: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+
+        try {
+            cli.run(System.out);
+        } catch (IOException e) {
+            System.err.println("kasm: " + e);
+            System.exit(EXIT_IO);
+        }
+    }
+
+    /**
+     * Parse the command line.
+     *
+     * @param args the arguments
+     * @return false if only the help was requested
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+
+                case "-o":
+                case "--output":
+                    output = Optional.of(Paths.get(getValue(args, ++i, arg)));
+                    break;
+
+                case "-m":
+                case "--mode":
+                    mode = Mode.fromName(getValue(args, ++i, arg));
+                    break;
+
+                case "-t":
+                case "--threads":
+                    String value = getValue(args, ++i, arg);
+                    try {
+                        threads = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid thread count " + value);
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("At least one thread is required");
+                    }
+                    break;
+
+                case "-cp":
+                case "--classpath":
+                    for (String path : getValue(args, ++i, arg).split(File.pathSeparator)) {
+                        if (!path.isEmpty()) {
+                            classpath.add(Paths.get(path));
+                        }
+                    }
+                    break;
+
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    inputs.add(Paths.get(arg));
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input jar or directory");
+        }
+        if (output.isPresent() && !mode.writeBytecode) {
+            throw new IllegalArgumentException("Mode " + mode.name + " does not write any classes");
+        }
+        return true;
+    }
+
+    private static String getValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Convert all inputs, write the output jar and print the report.
+     *
+     * @param out where the report is printed
+     * @throws IOException if reading an input or writing the output fails
+     */
+    void run(PrintStream out) throws IOException {
+        Inputs input = Inputs.read(inputs);
+
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        for (byte[] library : Inputs.read(classpath).getClasses().values()) {
+            try {
+                hierarchy.add(new ClassReader(library));
+            } catch (RuntimeException e) {
+                // Unreadable library classes are treated like missing ones.
+            }
+        }
+
+        ConversionReport report = new ConversionReport(mode.name);
+        Map<byte[], String> entryNames = new LinkedHashMap<>();
+        input.getClasses().forEach((name, bytes) -> {
+            try {
+                // Only the header is checked here, the converter parses the class again
+                new ClassReader(bytes);
+                entryNames.put(bytes, name);
+            } catch (RuntimeException e) {
+                report.addUnreadableClass(name, e);
+            }
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            BatchConverter converter = new BatchConverter(pool);
+            converter.setPipeline(mode.pipeline);
+            converter.setWriteBytecode(mode.writeBytecode);
+            converter.setClassHierarchy(Optional.of(hierarchy));
+
+            List<BatchConverter.Result> results;
+            long nanos;
+            HeapSampler heap = new HeapSampler();
+            try {
+                long start = System.nanoTime();
+                results = converter.convert(entryNames.keySet());
+                nanos = System.nanoTime() - start;
+            } finally {
+                heap.close();
+            }
+            report.addResults(results, nanos, converter.getMethodLatencies(), heap.getPeak());
+
+            if (output.isPresent()) {
+                writeJar(output.get(), input, entryNames, results);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        report.print(out);
+    }
+
+    /**
+     * Write all resources and classes into a jar.
+     * Classes that could not be converted are written unchanged.
+     * Signature files are dropped, since the converted classes no longer match them.
+     */
+    private static void writeJar(Path path, Inputs input, Map<byte[], String> entryNames,
+                                 List<BatchConverter.Result> results) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>(input.getClasses());
+        for (BatchConverter.Result result : results) {
+            result.getBytecode().ifPresent(bytes -> classes.put(entryNames.get(result.getInput()), bytes));
+        }
+
+        try (OutputStream fileOut = Files.newOutputStream(path);
+             JarOutputStream jarOut = new JarOutputStream(fileOut)) {
+            for (Map.Entry<String, byte[]> resource : input.getResources().entrySet()) {
+                if (!isSignatureFile(resource.getKey())) {
+                    writeEntry(jarOut, resource.getKey(), resource.getValue());
+                }
+            }
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                writeEntry(jarOut, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        String upperName = name.toUpperCase(Locale.ROOT);
+        return upperName.startsWith("META-INF/") && upperName.indexOf('/', "META-INF/".length()) < 0 &&
+                (upperName.endsWith(".SF") || upperName.endsWith(".RSA") || upperName.endsWith(".DSA") || upperName.endsWith(".EC"));
+    }
+
+    private static void writeEntry(JarOutputStream jarOut, String name, byte[] content) throws IOException {
+        jarOut.putNextEntry(new JarEntry(name));
+        jarOut.write(content);
+        jarOut.closeEntry();
+    }
+
+    /**
+     * The round trips that the command line offers.
+     */
+    private enum Mode {
+        STACK("stack", BatchConverter.Pipeline.STACK, true),
+        STACK_REF_STACK("stack-ref-stack", BatchConverter.Pipeline.STACK_REF_STACK, false),
+        FULL("full", BatchConverter.Pipeline.STACK_REF_STACK, true);
+
+        private final String name;
+        private final BatchConverter.Pipeline pipeline;
+        private final boolean writeBytecode;
+
+        Mode(String name, BatchConverter.Pipeline pipeline, boolean writeBytecode) {
+            this.name = name;
+            this.pipeline = pipeline;
+            this.writeBytecode = writeBytecode;
+        }
+
+        static Mode fromName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name.equals(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown mode " + name);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.runebox.kasm.cli;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KasmCliTest {
+    @Test
+    public void helpSkipsTheRun() {
+        assertFalse(new KasmCli().parseArguments(new String[] { "in.jar", "--help" }));
+        assertTrue(new KasmCli().parseArguments(new String[] {
+                "-o", "out.jar", "-m", "stack", "-t", "2", "-cp", "a.jar" + File.pathSeparator + "b.jar", "in.jar" }));
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        assertInvalid("No input jar or directory");
+        assertInvalid("No input jar or directory", "-t", "2");
+        assertInvalid("Unknown option --fast", "--fast", "in.jar");
+        assertInvalid("Unknown mode ref", "-m", "ref", "in.jar");
+        assertInvalid("Invalid thread count many", "-t", "many", "in.jar");
+        assertInvalid("At least one thread is required", "-t", "0", "in.jar");
+        assertInvalid("Missing value of -o", "in.jar", "-o");
+        assertInvalid("Mode stack-ref-stack does not write any classes", "-m", "stack-ref-stack", "-o", "out.jar", "in.jar");
+    }
+
+    @Test
+    public void outputJarKeepsUnconvertedClassesAndDropsSignatures() throws IOException {
+        Path directory = Files.createTempDirectory("kasm-cli");
+        try {
+            Path input = directory.resolve("in");
+            Path output = directory.resolve("out.jar");
+            byte[] valid = generateClass("Valid", false);
+            byte[] broken = generateClass("Broken", true);
+            byte[] unreadable = "not a class".getBytes(StandardCharsets.UTF_8);
+            write(input.resolve("Valid.class"), valid);
+            write(input.resolve("Broken.class"), broken);
+            write(input.resolve("Unreadable.class"), unreadable);
+            write(input.resolve("config.txt"), "config".getBytes(StandardCharsets.UTF_8));
+            write(input.resolve("META-INF/SIGNER.SF"), "signature".getBytes(StandardCharsets.UTF_8));
+            write(input.resolve("META-INF/SIGNER.RSA"), "signature".getBytes(StandardCharsets.UTF_8));
+            write(input.resolve("META-INF/MANIFEST.MF"), "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+
+            KasmCli cli = new KasmCli();
+            assertTrue(cli.parseArguments(new String[] { "-o", output.toString(), "-t", "2", input.toString() }));
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            cli.run(new PrintStream(report, true, StandardCharsets.UTF_8));
+
+            String text = report.toString(StandardCharsets.UTF_8);
+            assertTrue(text.contains("classes:   1 converted, 2 failed"), text);
+            assertTrue(text.contains("class Unreadable.class"), text);
+
+            Map<String, byte[]> entries = readJar(output);
+            assertEquals(Set.of("Valid.class", "Broken.class", "Unreadable.class", "config.txt", "META-INF/MANIFEST.MF"),
+                    entries.keySet());
+            assertArrayEquals(broken, entries.get("Broken.class"));
+            assertArrayEquals(unreadable, entries.get("Unreadable.class"));
+            assertArrayEquals("config".getBytes(StandardCharsets.UTF_8), entries.get("config.txt"));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void assertInvalid(String message, String... args) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new KasmCli().parseArguments(args));
+        assertEquals(message, e.getMessage());
+    }
+
+    /**
+     * Generate a class with one static method.
+     *
+     * @param broken whether the method pops from an empty stack, so it cannot be converted
+     */
+    private static byte[] generateClass(String name, boolean broken) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "run", "()V", null, null);
+        mv.visitCode();
+        if (broken) {
+            mv.visitInsn(Opcodes.POP);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+
+    private static Map<String, byte[]> readJar(Path path) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (JarFile jar = new JarFile(path.toFile())) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                try (InputStream in = jar.getInputStream(entry)) {
+                    entries.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -4,4 +4,11 @@ plugins {
 
 dependencies {
     api(libs.bundles.asm.all)
-}
\ No newline at end of file
+
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly(libs.junit.platform.launcher)
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
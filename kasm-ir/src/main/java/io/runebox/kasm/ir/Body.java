@@ -1,4 +1,18 @@
 package io.runebox.kasm.ir;
 
 public interface Body {
+    /**
+     * Count the modifications of this body, so that users can detect whether a body changed since they saw it.
+     *
+     * The setters of the body and structural changes of its instruction or statement list are counted.
+     * Other changes, e.g. to the try/catch blocks or to an instruction itself, must be reported with {@link #markModified()}.
+     *
+     * @return a number that grows with every modification
+     */
+    int getModificationCount();
+
+    /**
+     * Report a modification that {@link #getModificationCount()} cannot see.
+     */
+    void markModified();
 }
@@ -6,6 +6,7 @@ import io.runebox.kasm.ir.type.Type;
 import io.runebox.kasm.ir.typeannotation.MethodTypeAnnotation;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * A method definition within a {@link Classfile}
@@ -83,6 +84,23 @@ public class Method {
      */
     private Optional<Body> body;
 
+    /**
+     * Computes the body when it is first accessed.
+     * It is null if the body was already materialized or set explicitly.
+     */
+    private Supplier<Optional<Body>> bodyLoader;
+
+    /**
+     * The loader that computed the current body.
+     * It is null if the body was set explicitly.
+     */
+    private Supplier<Optional<Body>> loadedBy;
+
+    /**
+     * The {@link Body#getModificationCount() modification count} of the body right after it was loaded.
+     */
+    private int loadedModificationCount;
+
     public Method(String name, List<Type> parameterTypes, Optional<Type> returnType) {
         this(new HashSet<>(), name, parameterTypes, returnType, new ArrayList<>(), Optional.empty(),
                 Optional.empty(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
@@ -234,14 +252,90 @@ public class Method {
         this.attributes = attributes;
     }
 
+    /**
+     * Get the body of this method.
+     *
+     * If the body is loaded lazily, it gets materialized by the first call of this method.
+     * If the loader throws, the body stays unloaded and the next call tries again.
+     * Like all other accessors this is not synchronized,
+     * so the body of one method must not be loaded by several threads at once.
+     *
+     * @return body of the method or empty for abstract and native methods
+     */
     public Optional<Body> getBody() {
+        if (bodyLoader != null) {
+            body = bodyLoader.get();
+            loadedBy = bodyLoader;
+            loadedModificationCount = getModificationCount(body);
+            bodyLoader = null;
+        }
         return body;
     }
 
     public void setBody(Optional<Body> body) {
+        this.bodyLoader = null;
+        this.loadedBy = null;
         this.body = body;
     }
 
+    /**
+     * Defer the creation of the body until it is first accessed through {@link #getBody()}.
+     *
+     * The loader is called at most once and on the thread that first accesses the body.
+     * Loaders shared by several methods must tolerate being called from different threads.
+     *
+     * @param bodyLoader computes the body
+     */
+    public void setBodyLoader(Supplier<Optional<Body>> bodyLoader) {
+        this.bodyLoader = bodyLoader;
+        this.loadedBy = null;
+    }
+
+    /**
+     * Get the loader that will compute the body on its first access.
+     *
+     * @return the loader or empty if the body was already materialized
+     */
+    public Optional<Supplier<Optional<Body>>> getBodyLoader() {
+        return Optional.ofNullable(bodyLoader);
+    }
+
+    /**
+     * Get the loader whose result is still the body of this method.
+     *
+     * This is the pending loader if the body was not loaded yet.
+     * Otherwise it is the loader that computed the body, as long as the body was
+     * neither replaced nor modified according to {@link Body#getModificationCount()}.
+     *
+     * @return the loader or empty if the body may differ from what the loader computes
+     */
+    public Optional<Supplier<Optional<Body>>> getUnmodifiedBodyLoader() {
+        if (bodyLoader != null) {
+            return Optional.of(bodyLoader);
+        }
+        if (loadedBy != null && getModificationCount(body) == loadedModificationCount) {
+            return Optional.of(loadedBy);
+        }
+        return Optional.empty();
+    }
+
+    private static int getModificationCount(Optional<Body> body) {
+        return body.map(Body::getModificationCount).orElse(0);
+    }
+
+    /**
+     * Check whether the body of this method was already materialized.
+     *
+     * @return false if the body is still waiting to be loaded lazily
+     */
+    public boolean isBodyLoaded() {
+        return bodyLoader == null;
+    }
+
+    /**
+     * Bodies that are not loaded yet are materialized for the comparison,
+     * so a lazily loaded method compares like the same method converted eagerly.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -259,13 +353,16 @@ public class Method {
                 Objects.equals(annotations, method.annotations) &&
                 Objects.equals(typeAnnotations, method.typeAnnotations) &&
                 Objects.equals(attributes, method.attributes) &&
-                Objects.equals(body, method.body);
+                Objects.equals(getBody(), method.getBody());
     }
 
+    /**
+     * The body is left out, since it may not be loaded yet.
+     */
     @Override
     public int hashCode() {
         return Objects.hash(flags, name, parameterTypes, returnType, exceptions, signature,
-                defaultValue, parameterInfo, parameterAnnotations, annotations, typeAnnotations, attributes, body);
+                defaultValue, parameterInfo, parameterAnnotations, annotations, typeAnnotations, attributes);
     }
 
     @Override
@@ -283,7 +380,7 @@ public class Method {
                 ", annotations=" + annotations +
                 ", typeAnnotations=" + typeAnnotations +
                 ", attributes=" + attributes +
-                ", body=" + body +
+                ", body=" + (isBodyLoaded() ? body : "<not loaded>") +
                 '}';
     }
 
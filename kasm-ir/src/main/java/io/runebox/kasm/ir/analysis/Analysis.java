@@ -2,13 +2,11 @@ package io.runebox.kasm.ir.analysis;
 
 import io.runebox.kasm.ir.stack.StackBody;
 import io.runebox.kasm.ir.stack.StackLocal;
-import io.runebox.kasm.ir.stack.TryCatchBlock;
-import io.runebox.kasm.ir.stack.insn.BranchInsn;
 import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.util.StackCfgGraph;
 import io.runebox.kasm.ir.util.StackInsnReader;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Computes types on the stack and thereby finds dead code.
@@ -24,6 +22,11 @@ public class Analysis {
      */
     private final Map<Instruction, Stack.Immutable<JvmType>> stackMap = new HashMap<>();
 
+    /**
+     * Control flow graph of the body, that tells which instructions are reachable.
+     */
+    private StackCfgGraph graph;
+
     /**
      * Was the analysis already started
      */
@@ -44,6 +47,28 @@ public class Analysis {
         return Optional.ofNullable(stackMap.get(instruction));
     }
 
+    /**
+     * Check whether a range of instructions contains any reachable instruction.
+     *
+     * @param first first instruction of the range
+     * @param last last instruction of the range (inclusive)
+     * @return is any instruction within the range reachable
+     */
+    public boolean isRangeReachable(Instruction first, Instruction last) {
+        requireAnalysis();
+        return !graph.isDeadCode(first, last);
+    }
+
+    /**
+     * Get the control flow graph that was built for the analysis.
+     *
+     * @return the graph of the analysed body
+     */
+    public StackCfgGraph getGraph() {
+        requireAnalysis();
+        return graph;
+    }
+
     private void requireAnalysis() {
         if (!this.didAnalyse) {
             throw new IllegalStateException("The analysis was not already run");
@@ -56,110 +81,52 @@ public class Analysis {
         }
         didAnalyse = true;
 
-        startAnalysingFrom(new Workable(body.getInstructions().get(0), new Stack.Immutable<>()));
+        this.graph = new StackCfgGraph(body);
 
-        Set<TryCatchBlock> notYetConvertedBlocks = new HashSet<>(body.getTryCatchBlocks());
-        List<TryCatchBlock> blocksToConvert;
-        do {
-            blocksToConvert = notYetConvertedBlocks.stream()
-                .filter(this::capturesReachableCode)
-                .collect(Collectors.toList());
-
-            for (TryCatchBlock block : blocksToConvert) {
-                Stack.Mutable<JvmType> stack = new Stack.Mutable<>();
-                stack.push(JvmType.REFERENCE); // put the caught exception on the stack
-                startAnalysingFrom(new Workable(block.getHandler(), stack.toImmutable()));
-            }
-
-            notYetConvertedBlocks.removeAll(blocksToConvert);
-        } while (!blocksToConvert.isEmpty());
-    }
+        @SuppressWarnings("unchecked")
+        Stack.Immutable<JvmType>[] entryStates = (Stack.Immutable<JvmType>[]) new Stack.Immutable<?>[graph.getBlockCount()];
+        entryStates[0] = new Stack.Immutable<>();
 
-    /**
-     * Check whether a TryCatchBlock encapsulates any reachable instruction.
-     *
-     * @param block try/catch block to check
-     * @return does the try/catch block protect any reachable instructions.
-     */
-    private boolean capturesReachableCode(TryCatchBlock block) {
-        Iterator<Instruction> iter = body.getInstructions().iterator(block.getFirst());
-        while (iter.hasNext()) {
-            Instruction instruction = iter.next();
-
-            if (stackMap.containsKey(instruction)) {
-                // "instruction" is reachable
-                return true;
-            }
-
-            if (instruction == block.getLast()) {
-                return false;
-            }
+        Stack.Mutable<JvmType> handlerStack = new Stack.Mutable<>();
+        handlerStack.push(JvmType.REFERENCE); // put the caught exception on the stack
+        for (int handlerBlock : graph.getHandlerBlocks()) {
+            mergeEntryState(entryStates, handlerBlock, handlerStack.toImmutable());
         }
 
-        // the block.getLast() instruction is either not in the instruction list of the method or
-        // precedes the block.getFirst() instruction.
-        throw new IllegalStateException();
-    }
-
-    /**
-     * Emulate the execution of the method and thereby compute the types on the stack.
-     *
-     * @param workable start point of execution
-     */
-    private void startAnalysingFrom(Workable workable) {
-        Deque<Workable> worklist = new ArrayDeque<>(List.of(workable));
-
         StackEmulatingInsnVisitor<Instruction, StackLocal> stackEmulator = new StackEmulatingInsnVisitor<>(null, new Stack.Mutable<>());
         StackInsnReader insnReader = new StackInsnReader(stackEmulator);
 
-        while (!worklist.isEmpty()) {
-            Workable work = worklist.poll();
-            stackEmulator.getStack().loadFrom(work.stackState);
-
-            Iterator<Instruction> iterator = body.getInstructions().iterator(work.firstInsn);
-            Instruction instruction;
-            do {
-                if (!iterator.hasNext()) {
-                    throw new IllegalStateException("Illegal end of method");
-                }
-
-                instruction = iterator.next();
-
-                Stack.Immutable<JvmType> currentFrame = stackEmulator.getStack().toImmutable();
-                Stack.Immutable<JvmType> expectedFrame = stackMap.get(instruction);
-                if (expectedFrame != null) {
-                    // The code starting from here on has already been visited.
-                    // The stack must have the same state as during the last visit.
-                    if (expectedFrame.isEqual(currentFrame)) {
-                        break;
-                    } else {
-                        throw new IllegalStateException("Different stack states");
-                    }
-                }
+        // Each block is reached by a predecessor or is a handler, before it gets emulated.
+        for (int block : graph.getReversePostorder()) {
+            stackEmulator.getStack().loadFrom(entryStates[block]);
+
+            for (int index = graph.getBlockStart(block); index < graph.getBlockEnd(block); index++) {
+                Instruction instruction = graph.getInstruction(index);
 
                 // store the stack state before the instruction was evaluated
-                stackMap.put(instruction, currentFrame);
+                stackMap.put(instruction, stackEmulator.getStack().toImmutable());
 
                 // evaluate the stack changes done by this instruction
                 insnReader.accept(instruction);
+            }
 
-                if (instruction instanceof BranchInsn) {
-                    currentFrame = stackEmulator.getStack().toImmutable();
-                    for (Instruction branchTarget : ((BranchInsn) instruction).getBranchTargets()) {
-                        worklist.add(new Workable(branchTarget, currentFrame));
-                    }
-                }
-            } while (instruction.continuesExecution());
+            Stack.Immutable<JvmType> exitState = stackEmulator.getStack().toImmutable();
+            for (int i = 0; i < graph.getSuccessorCount(block); i++) {
+                mergeEntryState(entryStates, graph.getSuccessor(block, i), exitState);
+            }
         }
     }
 
-    class Workable {
-        private Instruction firstInsn;
-        private Stack.Immutable<JvmType> stackState;
-
-        public Workable(Instruction firstInsn, Stack.Immutable<JvmType> stackState) {
-            this.stackState = stackState;
-            this.firstInsn = firstInsn;
+    /**
+     * Record the state of the stack when a block is entered.
+     * The stack must have the same state on all ways into the block.
+     */
+    private void mergeEntryState(Stack.Immutable<JvmType>[] entryStates, int block, Stack.Immutable<JvmType> state) {
+        Stack.Immutable<JvmType> expectedState = entryStates[block];
+        if (expectedState == null) {
+            entryStates[block] = state;
+        } else if (!expectedState.isEqual(state)) {
+            throw new IllegalStateException("Different stack states");
         }
     }
 }
@@ -133,17 +133,17 @@ public class Stack<T> {
     }
 
     /**
-     * Copy the n must upper values into an array.
+     * Copy the most upper values into an array, one value per element of the array.
      * The most upper value will be at index zero.
      *
-     * @param amount of values to peek
-     * @return an array of peeked values
+     * The array is passed by the caller, since the type of the values is not known at runtime.
+     *
+     * @param array that receives the peeked values, its length is the amount of values to peek
+     * @return the passed array
      */
-    @SuppressWarnings("unchecked")
-    public T[] peek(int amount) {
-        T[] array = (T[]) new Object[amount];
+    public T[] peek(T[] array) {
         Optional<Node> nodeOpt = this.head;
-        for (int i = 0; i < amount; i++) {
+        for (int i = 0; i < array.length; i++) {
             Node node = nodeOpt.orElseThrow(NoSuchElementException::new);
             array[i] = node.value;
             nodeOpt = node.tail;
@@ -0,0 +1,1018 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.MethodRef;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.constant.*;
+import io.runebox.kasm.ir.handle.*;
+import io.runebox.kasm.ir.type.*;
+import io.runebox.kasm.ir.stack.insn.DupInsn;
+import io.runebox.kasm.ir.stack.insn.IfInsn;
+import io.runebox.kasm.ir.stack.invoke.*;
+import io.runebox.kasm.ir.util.StackInsnVisitor;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.analysis.Stack;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Abstract superclass for {@link StackInsnVisitor StackInsnVisitors} that translate the visited events into jvm opcodes.
+ *
+ * This visitor considers that <tt>long</tt> and <tt>double</tt> values require two slots on the stack.
+ * A {@link DupInsn} that duplicates a <tt>long</tt> is for instance converted to the <tt>DUP2</tt> opcode.
+ * Therefore the {@link #setStackFrame(Stack) state of the stack} before each event must be known.
+ *
+ * Subclasses decide how the selected opcodes are represented.
+ * After an event was written it is passed on to the next visitor in the chain.
+ *
+ * @param <I> A representation of a reference to an instruction
+ * @param <L> A representation for a local
+ */
+public abstract class AbstractAsmInsnWriter<I, L> extends StackInsnVisitor<I, L> {
+    /**
+     * The state of the stack before the next visited instruction
+     */
+    private Stack<JvmType> stackFrame;
+
+    public AbstractAsmInsnWriter(StackInsnVisitor<I, L> iv) {
+        super(iv);
+    }
+
+    public void setStackFrame(Stack<JvmType> stackFrame) {
+        this.stackFrame = stackFrame;
+    }
+
+    /**
+     * Get a local that can be used to temporarily store values.
+     * Such locals are used to convert dup instructions that cannot be represented as one opcode.
+     *
+     * @param index the first, second, ... temporary local
+     * @return the same local for each index
+     */
+    protected abstract L getTempLocal(int index);
+
+    protected abstract void writeInsn(int opcode);
+
+    protected abstract void writeIntInsn(int opcode, int operand);
+
+    protected abstract void writeVarInsn(int opcode, L local);
+
+    protected abstract void writeTypeInsn(int opcode, String type);
+
+    protected abstract void writeFieldInsn(int opcode, String owner, String name, String descriptor);
+
+    protected abstract void writeMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface);
+
+    protected abstract void writeInvokeDynamicInsn(String name, String descriptor, org.objectweb.asm.Handle bootstrapMethod,
+                                                   Object[] bootstrapMethodArguments);
+
+    protected abstract void writeJumpInsn(int opcode, I target);
+
+    protected abstract void writeLdcInsn(Object value);
+
+    protected abstract void writeIincInsn(L local, int increment);
+
+    /**
+     * Write a <tt>TABLESWITCH</tt> instruction.
+     *
+     * @param min the minimum key value
+     * @param max the maximum key value
+     * @param defaultTarget target for keys outside of the range
+     * @param targets the targets for the keys from <tt>min</tt> to <tt>max</tt>
+     */
+    protected abstract void writeTableSwitchInsn(int min, int max, I defaultTarget, List<I> targets);
+
+    /**
+     * Write a <tt>LOOKUPSWITCH</tt> instruction.
+     *
+     * @param defaultTarget target for keys that are not contained in the table
+     * @param keys the sorted key values
+     * @param targets the targets for each key
+     */
+    protected abstract void writeLookupSwitchInsn(I defaultTarget, int[] keys, List<I> targets);
+
+    protected abstract void writeMultiANewArrayInsn(String descriptor, int dimensions);
+
+    private <T> T assertionError() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Describe a local in the messages of exceptions.
+     *
+     * @param local the local to describe
+     * @return a description that identifies the local
+     */
+    protected String describeLocal(L local) {
+        return "local " + local;
+    }
+
+    /**
+     * Fail because a local should be loaded or stored whose type was never inferred.
+     *
+     * Such locals are e.g. never assigned or only assigned <tt>null</tt>, so no opcode can be chosen for them.
+     */
+    private <T> T unknownLocalType(String action, L local) {
+        throw new IllegalStateException("Cannot " + action + " " + describeLocal(local) + ", its type is unknown");
+    }
+
+    @Override
+    public void visitPush(PushableConstant constant) {
+        if (constant instanceof IntConstant) {
+            int value = ((IntConstant) constant).getValue();
+            if (value >= -1 && value <= 5) {
+                writeInsn(Opcodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                writeIntInsn(Opcodes.BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                writeIntInsn(Opcodes.SIPUSH, value);
+            } else {
+                writeLdcInsn(value);
+            }
+        } else if (constant instanceof LongConstant) {
+            long value = ((LongConstant) constant).getValue();
+            if (value == 0) {
+                writeInsn(Opcodes.LCONST_0);
+            } else if (value == 1) {
+                writeInsn(Opcodes.LCONST_1);
+            } else {
+                writeLdcInsn(value);
+            }
+        } else if (constant instanceof FloatConstant) {
+            float value = ((FloatConstant) constant).getValue();
+            if (value == 0) {
+                writeInsn(Opcodes.FCONST_0);
+            } else if (value == 1) {
+                writeInsn(Opcodes.FCONST_1);
+            } else if (value == 2) {
+                writeInsn(Opcodes.FCONST_2);
+            } else {
+                writeLdcInsn(value);
+            }
+        } else if (constant instanceof DoubleConstant) {
+            double value = ((DoubleConstant) constant).getValue();
+            if (value == 0) {
+                writeInsn(Opcodes.DCONST_0);
+            } else if (value == 1) {
+                writeInsn(Opcodes.DCONST_1);
+            } else {
+                writeLdcInsn(value);
+            }
+        } else if (constant instanceof StringConstant) {
+            String string = ((StringConstant) constant).getValue();
+            writeLdcInsn(string);
+        } else if (constant instanceof NullConstant) {
+            writeInsn(Opcodes.ACONST_NULL);
+        } else if (constant instanceof ClassConstant) {
+            Type value = ((ClassConstant) constant).getValue();
+            writeLdcInsn(AsmUtil.toAsmType(value));
+        } else if (constant instanceof MethodTypeConstant) {
+            MethodTypeConstant methodConstant = (MethodTypeConstant) constant;
+            writeLdcInsn(AsmUtil.methodDescriptorToType(
+                    methodConstant.getReturnType(), methodConstant.getArgumentTypes()));
+        } else if (constant instanceof HandleConstant) {
+            Handle handle = ((HandleConstant) constant).getHandle();
+            writeLdcInsn(convertHandle(handle));
+        } else if (constant instanceof DynamicConstant) {
+            writeLdcInsn(convertDynamicConstant((DynamicConstant) constant));
+        }
+
+        super.visitPush(constant);
+    }
+
+    private org.objectweb.asm.Handle convertHandle(Handle handle) {
+        int type;
+        String owner;
+        String name;
+        String desc;
+        boolean isInterface;
+        if (handle instanceof FieldHandle) {
+            FieldRef field = ((FieldHandle) handle).getFieldRef();
+            owner = AsmUtil.toInternalName(field.getOwner());
+            name = field.getName();
+            desc = AsmUtil.toDescriptor(field.getType());
+            isInterface = false;
+
+            if (handle instanceof GetFieldHandle) {
+                type = Opcodes.H_GETFIELD;
+            } else if (handle instanceof GetStaticHandle) {
+                type = Opcodes.H_GETSTATIC;
+            } else if (handle instanceof SetFieldHandle) {
+                type = Opcodes.H_PUTFIELD;
+            } else if (handle instanceof SetStaticHandle) {
+                type = Opcodes.H_PUTSTATIC;
+            } else {
+                throw new AssertionError();
+            }
+        } else if (handle instanceof MethodHandle) {
+            MethodRef method = ((MethodHandle) handle).getMethodRef();
+            owner = AsmUtil.toInternalName(method.getOwner());
+            name = method.getName();
+            desc = AsmUtil.methodDescriptorToString(method.getReturnType(), method.getArguments());
+            isInterface = handle instanceof InvokeInterfaceHandle ||
+                    handle instanceof AbstractAmbiguousMethodHandle &&
+                            ((AbstractAmbiguousMethodHandle) handle).isInterface();
+
+            if (handle instanceof InvokeInterfaceHandle) {
+                type = Opcodes.H_INVOKEINTERFACE;
+            } else if (handle instanceof InvokeSpecialHandle) {
+                type = Opcodes.H_INVOKESPECIAL;
+            } else if (handle instanceof InvokeStaticHandle) {
+                type = Opcodes.H_INVOKESTATIC;
+            } else if (handle instanceof InvokeVirtualHandle) {
+                type = Opcodes.H_INVOKEVIRTUAL;
+            } else if (handle instanceof NewInstanceHandle) {
+                type = Opcodes.H_NEWINVOKESPECIAL;
+            } else {
+                throw new AssertionError();
+            }
+        } else {
+            throw new AssertionError();
+        }
+
+        return new org.objectweb.asm.Handle(type, owner, name, desc, isInterface);
+    }
+
+    private ConstantDynamic convertDynamicConstant(DynamicConstant constant) {
+        String name = constant.getName();
+        String descriptor = AsmUtil.toDescriptor(constant.getType());
+        org.objectweb.asm.Handle bootstrapMethod = convertHandle(constant.getBootstrapMethod());
+        Object[] bootstrapMethodArguments = constant.getBootstrapArguments().stream()
+                .map(this::convertBootstrapConstant)
+                .toArray();
+
+        return new ConstantDynamic(name, descriptor, bootstrapMethod, bootstrapMethodArguments);
+    }
+
+    @Override
+    public void visitNeg(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.INEG :
+                type instanceof LongType ? Opcodes.LNEG :
+                type instanceof FloatType ? Opcodes.FNEG :
+                type instanceof DoubleType ? Opcodes.DNEG :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitNeg(type);
+    }
+
+    @Override
+    public void visitAdd(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IADD :
+                type instanceof LongType ? Opcodes.LADD :
+                type instanceof FloatType ? Opcodes.FADD :
+                type instanceof DoubleType ? Opcodes.DADD :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitAdd(type);
+    }
+
+    @Override
+    public void visitSub(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.ISUB :
+                type instanceof LongType ? Opcodes.LSUB :
+                type instanceof FloatType ? Opcodes.FSUB :
+                type instanceof DoubleType ? Opcodes.DSUB :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitSub(type);
+    }
+
+    @Override
+    public void visitMul(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IMUL :
+                type instanceof LongType ? Opcodes.LMUL :
+                type instanceof FloatType ? Opcodes.FMUL :
+                type instanceof DoubleType ? Opcodes.DMUL :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitMul(type);
+    }
+
+    @Override
+    public void visitDiv(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IDIV :
+                type instanceof LongType ? Opcodes.LDIV :
+                type instanceof FloatType ? Opcodes.FDIV :
+                type instanceof DoubleType ? Opcodes.DDIV :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitDiv(type);
+    }
+
+    @Override
+    public void visitMod(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IREM :
+                type instanceof LongType ? Opcodes.LREM :
+                type instanceof FloatType ? Opcodes.FREM :
+                type instanceof DoubleType ? Opcodes.DREM :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitMod(type);
+    }
+
+    @Override
+    public void visitAnd(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IAND :
+                type instanceof LongType ? Opcodes.LAND :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitAnd(type);
+    }
+
+    @Override
+    public void visitOr(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IOR :
+                type instanceof LongType ? Opcodes.LOR :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitOr(type);
+    }
+
+    @Override
+    public void visitXor(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IXOR :
+                type instanceof LongType ? Opcodes.LXOR :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitXor(type);
+    }
+
+    @Override
+    public void visitShl(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.ISHL :
+                type instanceof LongType ? Opcodes.LSHL :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitShl(type);
+    }
+
+    @Override
+    public void visitShr(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.ISHR :
+                type instanceof LongType ? Opcodes.LSHR :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitShr(type);
+    }
+
+    @Override
+    public void visitUShr(Type type) {
+        int opcode = type instanceof IntLikeType ? Opcodes.IUSHR :
+                type instanceof LongType ? Opcodes.LUSHR :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitUShr(type);
+    }
+
+    @Override
+    public void visitCmp() {
+        writeInsn(Opcodes.LCMP);
+        super.visitCmp();
+    }
+
+    @Override
+    public void visitCmpl(Type type) {
+        int opcode = type instanceof FloatType ? Opcodes.FCMPL :
+                type instanceof DoubleType ? Opcodes.DCMPL :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitCmpl(type);
+    }
+
+    @Override
+    public void visitCmpg(Type type) {
+        int opcode = type instanceof FloatType ? Opcodes.FCMPG :
+                type instanceof DoubleType ? Opcodes.DCMPG :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitCmpg(type);
+    }
+
+    @Override
+    public void visitNewArray(ArrayType type, int initializedDimensions) {
+        if (initializedDimensions == 1) {
+            Type baseType = type.getBaseType();
+            if (baseType instanceof RefType) {
+                String descriptor = AsmUtil.toInternalName((RefType) baseType);
+                writeTypeInsn(Opcodes.ANEWARRAY, descriptor);
+            } else {
+                int operand = baseType instanceof BooleanType ? Opcodes.T_BOOLEAN :
+                        baseType instanceof ByteType ? Opcodes.T_BYTE :
+                        baseType instanceof CharType ? Opcodes.T_CHAR :
+                        baseType instanceof ShortType ? Opcodes.T_SHORT :
+                        baseType instanceof IntType ? Opcodes.T_INT :
+                        baseType instanceof LongType ? Opcodes.T_LONG :
+                        baseType instanceof FloatType ? Opcodes.T_FLOAT :
+                        baseType instanceof DoubleType ? Opcodes.T_DOUBLE :
+                        assertionError();
+
+                writeIntInsn(Opcodes.NEWARRAY, operand);
+            }
+        } else {
+            String descriptor = AsmUtil.toDescriptor(type);
+            writeMultiANewArrayInsn(descriptor, initializedDimensions);
+        }
+
+        super.visitNewArray(type, initializedDimensions);
+    }
+
+    @Override
+    public void visitArrayLength() {
+        writeInsn(Opcodes.ARRAYLENGTH);
+        super.visitArrayLength();
+    }
+
+    @Override
+    public void visitArrayLoad(Type type) {
+        int opcode = type instanceof RefType ? Opcodes.AALOAD :
+                type instanceof ByteType || type instanceof BooleanType ? Opcodes.BALOAD :
+                type instanceof ShortType ? Opcodes.SALOAD :
+                type instanceof CharType ? Opcodes.CALOAD :
+                type instanceof IntType ? Opcodes.IALOAD :
+                type instanceof LongType ? Opcodes.LALOAD :
+                type instanceof FloatType ? Opcodes.FALOAD :
+                type instanceof DoubleType ? Opcodes.DALOAD :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitArrayLoad(type);
+    }
+
+    @Override
+    public void visitArrayStore(Type type) {
+        int opcode = type instanceof RefType ? Opcodes.AASTORE :
+                type instanceof ByteType || type instanceof BooleanType ? Opcodes.BASTORE :
+                type instanceof ShortType ? Opcodes.SASTORE :
+                type instanceof CharType ? Opcodes.CASTORE :
+                type instanceof IntType ? Opcodes.IASTORE :
+                type instanceof LongType ? Opcodes.LASTORE :
+                type instanceof FloatType ? Opcodes.FASTORE :
+                type instanceof DoubleType ? Opcodes.DASTORE :
+                assertionError();
+
+        writeInsn(opcode);
+        super.visitArrayStore(type);
+    }
+
+    @Override
+    public void visitSwap() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[2]);
+        Integer opcode = null;
+        if (peeked[0].is32bit()) {
+            if (peeked[1].is32bit()) {
+                opcode = Opcodes.SWAP;
+            }
+        }
+
+        if (opcode == null) {
+            L local0 = getTempLocal(0);
+            L local1 = getTempLocal(1);
+
+            writeStore(peeked[0].toType(), local0);
+            writeStore(peeked[1].toType(), local1);
+
+            writeLoad(peeked[0].toType(), local0);
+            writeLoad(peeked[1].toType(), local1);
+        } else {
+            writeInsn(opcode);
+        }
+
+        super.visitSwap();
+    }
+
+    @Override
+    public void visitPop() {
+        int opcode;
+        if (this.stackFrame.peek().is32bit()) {
+            opcode = Opcodes.POP;
+        } else {
+            opcode = Opcodes.POP2;
+        }
+
+        writeInsn(opcode);
+        super.visitPop();
+    }
+
+    @Override
+    public void visitDup() {
+        int opcode;
+        if (this.stackFrame.peek().is32bit()) {
+            opcode = Opcodes.DUP;
+        } else {
+            opcode = Opcodes.DUP2;
+        }
+
+        writeInsn(opcode);
+        super.visitDup();
+    }
+
+    @Override
+    public void visitDupX1() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[2]);
+        int opcode;
+        if (peeked[0].is32bit()) {
+            if (peeked[1].is32bit()) {
+                // DUP2_X1 Form 1
+                opcode = Opcodes.DUP_X1;
+            } else {
+                // DUP_X2 Form 2
+                opcode = Opcodes.DUP_X2;
+            }
+        } else {
+            if (peeked[1].is32bit()) {
+                // DUP2_X1 Form 2
+                opcode = Opcodes.DUP2_X1;
+            } else {
+                // DUP2_X2 Form 4
+                opcode = Opcodes.DUP2_X2;
+            }
+        }
+
+        writeInsn(opcode);
+        super.visitDupX1();
+    }
+
+    @Override
+    public void visitDupX2() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[3]);
+        Integer opcode = null;
+        if (peeked[0].is32bit()) {
+            if (peeked[1].is32bit()) {
+                if (peeked[2].is32bit()) {
+                    // DUP_X2 Form 1
+                    opcode = Opcodes.DUP_X2;
+                }
+            }
+        } else {
+            if (peeked[1].is32bit()) {
+                if (peeked[2].is32bit()) {
+                    // DUP2_X2 Form 2
+                    opcode = Opcodes.DUP2_X2;
+                }
+            }
+        }
+
+        if (opcode == null) {
+            L local0 = getTempLocal(0);
+            L local1 = getTempLocal(1);
+            L local2 = getTempLocal(2);
+
+            writeStore(peeked[0].toType(), local0);
+            writeStore(peeked[1].toType(), local1);
+            writeStore(peeked[2].toType(), local2);
+
+            writeLoad(peeked[0].toType(), local0);
+
+            writeLoad(peeked[2].toType(), local2);
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+        } else {
+            writeInsn(opcode);
+        }
+
+        super.visitDupX2();
+    }
+
+    @Override
+    public void visitDup2() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[2]);
+        Integer opcode = null;
+        if (peeked[0].is32bit() && peeked[1].is32bit()) {
+            // DUP2 Form 1
+            opcode = Opcodes.DUP2;
+        }
+
+        if (opcode == null) {
+            L local0 = getTempLocal(0);
+            L local1 = getTempLocal(1);
+
+            writeStore(peeked[0].toType(), local0);
+            writeStore(peeked[1].toType(), local1);
+
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+        } else {
+            writeInsn(opcode);
+        }
+
+        super.visitDup2();
+    }
+
+    @Override
+    public void visitDup2X1() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[3]);
+        Integer opcode = null;
+        if (peeked[0].is32bit()) {
+            if (peeked[1].is32bit()) {
+                if (peeked[2].is32bit()) {
+                    // DUP2_X1 Form 1
+                    opcode = Opcodes.DUP2_X1;
+                } else {
+                    // DUP2_X2 Form 3
+                    opcode = Opcodes.DUP2_X2;
+                }
+            }
+        }
+
+        if (opcode == null) {
+            L local0 = getTempLocal(0);
+            L local1 = getTempLocal(1);
+            L local2 = getTempLocal(2);
+
+            writeStore(peeked[0].toType(), local0);
+            writeStore(peeked[1].toType(), local1);
+            writeStore(peeked[2].toType(), local2);
+
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+
+            writeLoad(peeked[2].toType(), local2);
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+        } else {
+            writeInsn(opcode);
+        }
+
+        super.visitDup2X1();
+    }
+
+    @Override
+    public void visitDup2X2() {
+        JvmType[] peeked = this.stackFrame.peek(new JvmType[4]);
+        Integer opcode = null;
+        if (peeked[0].is32bit()) {
+            if (peeked[1].is32bit()) {
+                if (peeked[2].is32bit()) {
+                    if (peeked[3].is32bit()) {
+                        opcode = Opcodes.DUP2_X2;
+                    }
+                }
+            }
+        }
+
+        if (opcode == null) {
+            L local0 = getTempLocal(0);
+            L local1 = getTempLocal(1);
+            L local2 = getTempLocal(2);
+            L local3 = getTempLocal(3);
+
+            writeStore(peeked[0].toType(), local0);
+            writeStore(peeked[1].toType(), local1);
+            writeStore(peeked[2].toType(), local2);
+            writeStore(peeked[3].toType(), local3);
+
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+
+            writeLoad(peeked[3].toType(), local3);
+            writeLoad(peeked[2].toType(), local2);
+            writeLoad(peeked[1].toType(), local1);
+            writeLoad(peeked[0].toType(), local0);
+        } else {
+            writeInsn(opcode);
+        }
+
+        super.visitDup2X2();
+    }
+
+    @Override
+    public void visitLoad(Type type, L local) {
+        writeLoad(type, local);
+        super.visitLoad(type, local);
+    }
+
+    private void writeLoad(Type type, L local) {
+        int opcode = type == null ? unknownLocalType("load", local) :
+                type instanceof RefType ? Opcodes.ALOAD :
+                type instanceof IntLikeType ? Opcodes.ILOAD :
+                type instanceof LongType ? Opcodes.LLOAD :
+                type instanceof FloatType ? Opcodes.FLOAD :
+                type instanceof DoubleType ? Opcodes.DLOAD :
+                assertionError();
+
+        writeVarInsn(opcode, local);
+    }
+
+    @Override
+    public void visitStore(Type type, L local) {
+        writeStore(type, local);
+        super.visitStore(type, local);
+    }
+
+    private void writeStore(Type type, L local) {
+        int opcode = type == null ? unknownLocalType("store", local) :
+                type instanceof RefType ? Opcodes.ASTORE :
+                type instanceof IntLikeType ? Opcodes.ISTORE :
+                type instanceof LongType ? Opcodes.LSTORE :
+                type instanceof FloatType ? Opcodes.FSTORE :
+                type instanceof DoubleType ? Opcodes.DSTORE :
+                assertionError();
+
+        writeVarInsn(opcode, local);
+    }
+
+    @Override
+    public void visitIncrement(L local, int value) {
+        writeIincInsn(local, value);
+        super.visitIncrement(local, value);
+    }
+
+    @Override
+    public void visitNew(Path type) {
+        writeTypeInsn(Opcodes.NEW, AsmUtil.toInternalName(type));
+        super.visitNew(type);
+    }
+
+    @Override
+    public void visitInstanceOf(RefType type) {
+        writeTypeInsn(Opcodes.INSTANCEOF, AsmUtil.toInternalName(type));
+        super.visitInstanceOf(type);
+    }
+
+    @Override
+    public void visitPrimitiveCast(PrimitiveType from, PrimitiveType to) {
+        if (from instanceof IntType) {
+            writeInsn(to instanceof ByteType ? Opcodes.I2B :
+                    to instanceof CharType ? Opcodes.I2C :
+                    to instanceof ShortType ? Opcodes.I2S :
+                    to instanceof LongType ? Opcodes.I2L :
+                    to instanceof FloatType ? Opcodes.I2F :
+                    to instanceof DoubleType ? Opcodes.I2D :
+                    assertionError());
+        } else {
+            if (from instanceof LongType) {
+                writeInsn(to instanceof IntLikeType ? Opcodes.L2I :
+                        to instanceof FloatType ? Opcodes.L2F :
+                        to instanceof DoubleType ? Opcodes.L2D :
+                        assertionError());
+            } else if (from instanceof FloatType) {
+                writeInsn(to instanceof IntLikeType ? Opcodes.F2I :
+                        to instanceof LongType ? Opcodes.F2L :
+                        to instanceof DoubleType ? Opcodes.F2D :
+                        assertionError());
+            } else if (from instanceof DoubleType) {
+                writeInsn(to instanceof IntLikeType ? Opcodes.D2I :
+                        to instanceof LongType ? Opcodes.D2L :
+                        to instanceof FloatType ? Opcodes.D2F :
+                        assertionError());
+            } else {
+                throw new AssertionError();
+            }
+
+            if (to instanceof IntLikeType && !(to instanceof IntType)) {
+                writeInsn(to instanceof ByteType ? Opcodes.I2B :
+                        to instanceof CharType ? Opcodes.I2C :
+                        to instanceof ShortType ? Opcodes.I2S :
+                        assertionError());
+            }
+        }
+
+        super.visitPrimitiveCast(from, to);
+    }
+
+    @Override
+    public void visitReferenceCast(RefType type) {
+        writeTypeInsn(Opcodes.CHECKCAST, AsmUtil.toInternalName(type));
+        super.visitReferenceCast(type);
+    }
+
+    @Override
+    public void visitReturn(Optional<Type> typeOpt) {
+        int opcode;
+        if (typeOpt.isPresent()) {
+            Type type = typeOpt.get();
+            opcode = type instanceof RefType ? Opcodes.ARETURN :
+                    type instanceof IntLikeType ? Opcodes.IRETURN :
+                    type instanceof LongType ? Opcodes.LRETURN :
+                    type instanceof FloatType ? Opcodes.FRETURN :
+                    type instanceof DoubleType ? Opcodes.DRETURN :
+                    assertionError();
+        } else {
+            opcode = Opcodes.RETURN;
+        }
+
+        writeInsn(opcode);
+        super.visitReturn(typeOpt);
+    }
+
+    @Override
+    public void visitThrow() {
+        writeInsn(Opcodes.ATHROW);
+        super.visitThrow();
+    }
+
+    @Override
+    public void visitMonitorEnter() {
+        writeInsn(Opcodes.MONITORENTER);
+        super.visitMonitorEnter();
+    }
+
+    @Override
+    public void visitMonitorExit() {
+        writeInsn(Opcodes.MONITOREXIT);
+        super.visitMonitorExit();
+    }
+
+    @Override
+    public void visitFieldGet(FieldRef fieldRef, boolean isStatic) {
+        int opcode = isStatic ? Opcodes.GETSTATIC : Opcodes.GETFIELD;
+        writeFieldInsn(opcode, fieldRef);
+        super.visitFieldGet(fieldRef, isStatic);
+    }
+
+    @Override
+    public void visitFieldSet(FieldRef fieldRef, boolean isStatic) {
+        int opcode = isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD;
+        writeFieldInsn(opcode, fieldRef);
+        super.visitFieldSet(fieldRef, isStatic);
+    }
+
+    private void writeFieldInsn(int opcode, FieldRef field) {
+        String owner = AsmUtil.toInternalName(field.getOwner());
+        String name = field.getName();
+        String descriptor = AsmUtil.toDescriptor(field.getType());
+
+        writeFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    @Override
+    public void visitInvokeInsn(Invoke invoke) {
+        if (invoke instanceof AbstractConcreteInvoke) {
+            MethodRef method = ((AbstractConcreteInvoke) invoke).getMethod();
+            String owner = AsmUtil.toInternalName(method.getOwner());
+            String name = method.getName();
+            String descriptor = AsmUtil.methodDescriptorToString(method.getDescriptor());
+
+            int opcode;
+            boolean isInterface;
+            if (invoke instanceof StaticInvoke) {
+                opcode = Opcodes.INVOKESTATIC;
+                isInterface = ((StaticInvoke) invoke).isInterface();
+            } else if (invoke instanceof VirtualInvoke) {
+                opcode = Opcodes.INVOKEVIRTUAL;
+                isInterface = false;
+            } else if (invoke instanceof SpecialInvoke) {
+                opcode = Opcodes.INVOKESPECIAL;
+                isInterface = ((SpecialInvoke) invoke).isInterface();
+            } else if (invoke instanceof InterfaceInvoke) {
+                opcode = Opcodes.INVOKEINTERFACE;
+                isInterface = true;
+            } else {
+                throw new AssertionError();
+            }
+
+            writeMethodInsn(opcode, owner, name, descriptor, isInterface);
+        } else if (invoke instanceof DynamicInvoke) {
+            DynamicInvoke dynamicInvoke = (DynamicInvoke) invoke;
+            String name = dynamicInvoke.getName();
+            String descriptor = AsmUtil.methodDescriptorToString(dynamicInvoke.getDescriptor());
+            org.objectweb.asm.Handle asmBootstrapHandle = convertHandle(dynamicInvoke.getBootstrapMethod());
+            Object[] asmBootstrapArguments = dynamicInvoke.getBootstrapArguments().stream()
+                    .map(this::convertBootstrapConstant)
+                    .toArray();
+
+            writeInvokeDynamicInsn(name, descriptor, asmBootstrapHandle, asmBootstrapArguments);
+        } else {
+            throw new AssertionError();
+        }
+
+        super.visitInvokeInsn(invoke);
+    }
+
+    private Object convertBootstrapConstant(BootstrapConstant constant) {
+        if (constant instanceof IntConstant) {
+            return ((IntConstant) constant).getValue();
+        } else if (constant instanceof LongConstant) {
+            return ((LongConstant) constant).getValue();
+        } else if (constant instanceof FloatConstant) {
+            return ((FloatConstant) constant).getValue();
+        } else if (constant instanceof DoubleConstant) {
+            return ((DoubleConstant) constant).getValue();
+        } else if (constant instanceof StringConstant) {
+            return ((StringConstant) constant).getValue();
+        } else if (constant instanceof ClassConstant) {
+            RefType refType = ((ClassConstant) constant).getValue();
+            return AsmUtil.toAsmType(refType);
+        } else if (constant instanceof HandleConstant) {
+            Handle handle = ((HandleConstant) constant).getHandle();
+            return convertHandle(handle);
+        } else if (constant instanceof MethodTypeConstant) {
+            MethodTypeConstant methodType = (MethodTypeConstant) constant;
+            return AsmUtil.methodDescriptorToType(methodType.getReturnType(), methodType.getArgumentTypes());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    @Override
+    public void visitGoto(I target) {
+        writeJumpInsn(Opcodes.GOTO, target);
+        super.visitGoto(target);
+    }
+
+    @Override
+    public void visitIf(IfInsn.Condition condition, I target) {
+        writeJumpInsn(getIfOpcode(condition), target);
+        super.visitIf(condition, target);
+    }
+
+    private int getIfOpcode(IfInsn.Condition condition) {
+        if (condition instanceof IfInsn.IntCondition) {
+            IfInsn.IntCondition intCondition = (IfInsn.IntCondition) condition;
+            IfInsn.IntCompareValue compareValue = intCondition.getCompareValue();
+            IfInsn.IntComparison comparison = intCondition.getComparison();
+
+            if (compareValue instanceof IfInsn.ZeroValue) {
+                return comparison instanceof IfInsn.EQ ? Opcodes.IFEQ :
+                        comparison instanceof IfInsn.NE ? Opcodes.IFNE :
+                        comparison instanceof IfInsn.GE ? Opcodes.IFGE :
+                        comparison instanceof IfInsn.GT ? Opcodes.IFGT :
+                        comparison instanceof IfInsn.LE ? Opcodes.IFLE :
+                        comparison instanceof IfInsn.LT ? Opcodes.IFLT :
+                        assertionError();
+            } else if (compareValue instanceof IfInsn.StackValue) {
+                return comparison instanceof IfInsn.EQ ? Opcodes.IF_ICMPEQ :
+                        comparison instanceof IfInsn.NE ? Opcodes.IF_ICMPNE :
+                        comparison instanceof IfInsn.GE ? Opcodes.IF_ICMPGE :
+                        comparison instanceof IfInsn.GT ? Opcodes.IF_ICMPGT :
+                        comparison instanceof IfInsn.LE ? Opcodes.IF_ICMPLE :
+                        comparison instanceof IfInsn.LT ? Opcodes.IF_ICMPLT :
+                        assertionError();
+            }
+        } else if (condition instanceof IfInsn.ReferenceCondition) {
+            IfInsn.ReferenceCondition refCondition = (IfInsn.ReferenceCondition) condition;
+            IfInsn.ReferenceCompareValue compareValue = refCondition.getCompareValue();
+            IfInsn.ReferenceComparison comparison = refCondition.getComparison();
+
+            if (compareValue instanceof IfInsn.NullValue) {
+                return comparison instanceof IfInsn.EQ ? Opcodes.IFNULL:
+                        comparison instanceof IfInsn.NE ? Opcodes.IFNONNULL:
+                        assertionError();
+            } else if (compareValue instanceof IfInsn.StackValue) {
+                return comparison instanceof IfInsn.EQ ? Opcodes.IF_ACMPEQ:
+                        comparison instanceof IfInsn.NE ? Opcodes.IF_ACMPNE:
+                        assertionError();
+            }
+        }
+
+        throw new AssertionError();
+    }
+
+    @Override
+    public void visitSwitch(Map<Integer, I> targetTable, I defaultTarget) {
+        TreeSet<Integer> keySet = new TreeSet<>(targetTable.keySet());
+        if (isTableSwitch(keySet)) {
+            int min = keySet.first();
+            int max = keySet.last();
+            List<I> targets = IntStream.rangeClosed(min, max)
+                    .mapToObj(targetTable::get)
+                    .collect(Collectors.toList());
+
+            writeTableSwitchInsn(min, max, defaultTarget, targets);
+        } else {
+            int[] keys = keySet.stream().mapToInt(Integer::intValue).toArray();
+            List<I> targets = keySet.stream()
+                    .map(targetTable::get)
+                    .collect(Collectors.toList());
+
+            writeLookupSwitchInsn(defaultTarget, keys, targets);
+        }
+
+        super.visitSwitch(targetTable, defaultTarget);
+    }
+
+    private boolean isTableSwitch(TreeSet<Integer> keys) {
+        Integer prevKey = null;
+
+        for (Integer key : keys) {
+            if (prevKey != null && key != prevKey + 1) {
+                return false;
+            }
+            prevKey = key;
+        }
+
+        return !keys.isEmpty();
+    }
+}
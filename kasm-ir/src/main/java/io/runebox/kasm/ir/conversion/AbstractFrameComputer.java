@@ -0,0 +1,988 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.constant.NullConstant;
+import io.runebox.kasm.ir.constant.PushableConstant;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import io.runebox.kasm.ir.stack.insn.IfInsn;
+import io.runebox.kasm.ir.stack.invoke.AbstractInstanceInvoke;
+import io.runebox.kasm.ir.stack.invoke.Invoke;
+import io.runebox.kasm.ir.stack.invoke.SpecialInvoke;
+import io.runebox.kasm.ir.type.*;
+import io.runebox.kasm.ir.util.AbstractCfgGraph;
+import io.runebox.kasm.ir.util.StackInsnVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Abstract superclass for the computation of the StackMapTable frames of a body,
+ * so the {@link org.objectweb.asm.ClassWriter} does not have to analyse the written method again.
+ *
+ * The analysis runs on the blocks of the {@link AbstractCfgGraph} of the body and keeps one state per block entry.
+ * Instructions are emulated through the same {@link StackInsnVisitor} events that the
+ * {@link AbstractAsmInsnWriter} turns into opcodes. Frames are only stored for blocks that are
+ * branch targets or handlers, so they can be visited while the body is written and nothing is buffered.
+ *
+ * The values are tracked in the type lattice of the jvm verifier, using the representation of asm frames:
+ * {@link Opcodes#INTEGER primitive types}, {@link Opcodes#NULL null}, precise reference types as internal names,
+ * objects created by a <tt>NEW</tt> instruction that were not yet initialized and the
+ * {@link Opcodes#UNINITIALIZED_THIS uninitialized this} of constructors.
+ * Reference types of merging control flow paths are joined with a {@link ClassHierarchy}.
+ *
+ * The stack holds one element per value, as in asm frames. The locals hold one element per slot,
+ * the second slot of a long or double value is {@link Opcodes#TOP}.
+ * Temporary locals of expanded dup instructions are assigned after the analysis,
+ * they are never live at the start of a block and are left out of the frames.
+ *
+ * @param <I> type of the instructions of the body
+ * @param <L> type of the locals of the body
+ */
+public abstract class AbstractFrameComputer<I, L> {
+    private static final String OBJECT = "java/lang/Object";
+    protected static final String THROWABLE = "java/lang/Throwable";
+
+    /**
+     * Internal name of the class containing the method.
+     */
+    private final String owner;
+
+    private final Method method;
+    private final AbstractCfgGraph<I> graph;
+
+    /**
+     * Supertypes of all classes that occur within the method.
+     */
+    private final ClassHierarchy hierarchy;
+
+    /**
+     * Uninitialized values created by each instruction, in the order of their <tt>NEW</tt> events.
+     * All paths through an instruction share the same values.
+     */
+    private final Map<I, List<Uninitialized>> uninitializedValues = new IdentityHashMap<>();
+
+    /**
+     * The state when a block is entered or <tt>null</tt> if the block was not yet reached.
+     */
+    private State[] entryStates;
+
+    /**
+     * Blocks that are branch targets or handlers and therefore get a frame.
+     */
+    private boolean[] isTarget;
+
+    /**
+     * Handlers that may be reached from the instructions of each block, <tt>null</tt> if there are none.
+     */
+    private List<Handler>[] handlers;
+
+    /**
+     * The frame of each target block, in the representation expected by {@link MethodVisitor#visitFrame}.
+     */
+    private Object[][] frameLocals;
+    private Object[][] frameStacks;
+
+    private int maxStack;
+
+    /**
+     * Reused array for the locals of a handler after the exception was stored.
+     */
+    private Object[] storedLocals;
+
+    protected AbstractFrameComputer(String owner, Method method, AbstractCfgGraph<I> graph, ClassHierarchy hierarchy) {
+        this.owner = owner;
+        this.method = method;
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Get the branch targets of an instruction.
+     *
+     * @param instruction the instruction
+     * @return the instructions it may branch to
+     */
+    protected abstract Collection<I> getBranchTargets(I instruction);
+
+    /**
+     * Create a reader that passes the events of instructions to a visitor.
+     *
+     * @param iv the visitor that emulates the events
+     * @return a consumer accepting the instructions
+     */
+    protected abstract Consumer<I> createReader(StackInsnVisitor<I, L> iv);
+
+    protected abstract Optional<L> getThisLocal();
+
+    protected abstract List<L> getParameterLocals();
+
+    /**
+     * Get the index of the first slot of a local.
+     *
+     * @param local a local of the body
+     * @return its index
+     */
+    protected abstract int getLocalIndex(L local);
+
+    /**
+     * Get the amount of slots of all locals of the body, not including temporary locals.
+     *
+     * @return size of the local variable array
+     */
+    protected abstract int getLocalCount();
+
+    /**
+     * Get the label that marks the <tt>NEW</tt> instruction of an uninitialized object in a frame.
+     *
+     * @param instruction the instruction that created the object
+     * @return the label of that instruction
+     */
+    protected abstract Label getNewLabel(I instruction);
+
+    /**
+     * Register the handlers of all try/catch blocks with {@link #addProtectedRange}.
+     */
+    protected abstract void addHandlers();
+
+    /**
+     * Analyse the body. Labels of <tt>NEW</tt> instructions that occur in frames are requested
+     * through {@link #getNewLabel}, so this must happen before the instructions are written.
+     */
+    @SuppressWarnings("unchecked")
+    public void compute() {
+        int blockCount = graph.getBlockCount();
+        this.entryStates = new State[blockCount];
+        this.isTarget = new boolean[blockCount];
+        this.handlers = (List<Handler>[]) new List<?>[blockCount];
+
+        findBranchTargets();
+        addHandlers();
+        analyse();
+        createFrames();
+    }
+
+    /**
+     * Get the maximal amount of slots used on the stack.
+     *
+     * @return the maximal stack size
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Visit the frame of an instruction if it starts a block that is a branch target or handler.
+     *
+     * @param index index of the instruction within the body
+     * @param mv visitor that receives the frame
+     */
+    public void visitFrame(int index, MethodVisitor mv) {
+        int block = graph.getBlock(index);
+        if (graph.getBlockStart(block) == index && frameLocals[block] != null) {
+            Object[] locals = frameLocals[block];
+            Object[] stack = frameStacks[block];
+            mv.visitFrame(Opcodes.F_NEW, locals.length, locals, stack.length, stack);
+        }
+    }
+
+    /**
+     * Visit the frame at the start of a handler that receives the exception on the stack,
+     * before it is stored into the local of the handler.
+     *
+     * @param handler the handler
+     * @param mv visitor that receives the frame
+     */
+    protected void visitHandlerFrame(Handler handler, MethodVisitor mv) {
+        Object[] locals = toFrameLocals(handler.locals);
+        mv.visitFrame(Opcodes.F_NEW, locals.length, locals, 1, new Object[] { handler.type });
+    }
+
+    /**
+     * Register code protected by a handler.
+     *
+     * @param handler the handler, try/catch blocks whose handlers receive the exception in the same way share it
+     * @param type internal name of the caught exceptions
+     * @param first first protected instruction
+     * @param last last protected instruction
+     */
+    protected void addProtectedRange(Handler handler, String type, I first, I last) {
+        handler.type = handler.type == null ? type : mergeReferences(handler.type, type);
+
+        int lastBlock = graph.getBlockOf(last);
+        for (int block = graph.getBlockOf(first); block <= lastBlock; block++) {
+            if (!graph.isReachable(block)) {
+                continue;
+            }
+
+            if (handlers[block] == null) {
+                handlers[block] = new ArrayList<>();
+            }
+            if (!handlers[block].contains(handler)) {
+                handlers[block].add(handler);
+            }
+        }
+    }
+
+    private void findBranchTargets() {
+        for (int block : graph.getReversePostorder()) {
+            I last = graph.getInstruction(graph.getBlockEnd(block) - 1);
+            for (I target : getBranchTargets(last)) {
+                isTarget[graph.getBlockOf(target)] = true;
+            }
+        }
+    }
+
+    /**
+     * Emulate the blocks in reverse postorder until the entry states of all blocks are stable.
+     */
+    private void analyse() {
+        int[] order = graph.getReversePostorder();
+        boolean[] isDirty = new boolean[graph.getBlockCount()];
+        mergeInto(0, getInitialState(), isDirty);
+
+        Emulator emulator = new Emulator();
+        Consumer<I> reader = createReader(emulator);
+
+        boolean isStable;
+        do {
+            isStable = true;
+            for (int block : order) {
+                if (isDirty[block]) {
+                    isDirty[block] = false;
+                    isStable = false;
+                    emulateBlock(block, emulator, reader, isDirty);
+                }
+            }
+        } while (!isStable);
+    }
+
+    private void emulateBlock(int block, Emulator emulator, Consumer<I> reader, boolean[] isDirty) {
+        State state = entryStates[block].copy();
+        emulator.state = state;
+
+        // The jvm spec checks the handlers against the locals before an instruction,
+        // but HotSpot checks them against the locals after most instructions.
+        // So the handlers receive the locals at the start of the block and after each change of them.
+        List<Handler> blockHandlers = handlers[block];
+        if (blockHandlers != null) {
+            mergeIntoHandlers(blockHandlers, state.locals, isDirty);
+        }
+
+        for (int index = graph.getBlockStart(block); index < graph.getBlockEnd(block); index++) {
+            emulator.instruction = graph.getInstruction(index);
+            emulator.newCount = 0;
+            emulator.changedLocals = false;
+            reader.accept(emulator.instruction);
+
+            if (blockHandlers != null && emulator.changedLocals) {
+                mergeIntoHandlers(blockHandlers, state.locals, isDirty);
+            }
+        }
+
+        for (int i = 0; i < graph.getSuccessorCount(block); i++) {
+            mergeInto(graph.getSuccessor(block, i), state, isDirty);
+        }
+    }
+
+    private void mergeIntoHandlers(List<Handler> blockHandlers, Object[] locals, boolean[] isDirty) {
+        for (Handler handler : blockHandlers) {
+            if (handler.local < 0) {
+                mergeInto(handler.block, locals, new Object[] { handler.type }, 1, 1, isDirty);
+            } else {
+                if (handler.locals == null) {
+                    handler.locals = locals.clone();
+                } else {
+                    mergeValues(handler.locals, locals, locals.length);
+                }
+
+                if (storedLocals == null || storedLocals.length != locals.length) {
+                    storedLocals = new Object[locals.length];
+                }
+                System.arraycopy(locals, 0, storedLocals, 0, locals.length);
+                setLocal(storedLocals, handler.local, handler.type);
+                mergeInto(handler.block, storedLocals, new Object[0], 0, 0, isDirty);
+            }
+        }
+    }
+
+    private State getInitialState() {
+        Object[] locals = new Object[getLocalCount()];
+        Arrays.fill(locals, Opcodes.TOP);
+
+        getThisLocal().ifPresent(local ->
+                locals[getLocalIndex(local)] = method.getName().equals("<init>") ? Opcodes.UNINITIALIZED_THIS : owner);
+
+        Iterator<Type> parameterTypeIter = method.getParameterTypes().iterator();
+        for (L local : getParameterLocals()) {
+            if (parameterTypeIter.hasNext()) {
+                setLocal(locals, getLocalIndex(local), toFrameValue(parameterTypeIter.next()));
+            }
+        }
+
+        return new State(locals, new Object[4], 0, 0);
+    }
+
+    /**
+     * Merge a state into the entry state of a block and mark the block if its entry state changed.
+     */
+    private void mergeInto(int block, State state, boolean[] isDirty) {
+        mergeInto(block, state.locals, state.stack, state.size, state.slots, isDirty);
+    }
+
+    /**
+     * Merge locals and a stack into the entry state of a block, without keeping a reference to the arrays.
+     */
+    private void mergeInto(int block, Object[] locals, Object[] stack, int size, int slots, boolean[] isDirty) {
+        maxStack = Math.max(maxStack, slots);
+
+        State current = entryStates[block];
+        boolean changed;
+        if (current == null) {
+            entryStates[block] = new State(locals.clone(), Arrays.copyOf(stack, Math.max(size, 4)), size, slots);
+            changed = true;
+        } else {
+            if (current.size != size) {
+                throw new IllegalStateException("Different stack heights");
+            }
+
+            changed = mergeValues(current.locals, locals, locals.length);
+            changed |= mergeValues(current.stack, stack, size);
+        }
+
+        if (changed) {
+            isDirty[block] = true;
+        }
+    }
+
+    /**
+     * Merge values into an array of values.
+     *
+     * @return did any value of the target change
+     */
+    private boolean mergeValues(Object[] target, Object[] values, int size) {
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {
+            Object merged = merge(target[i], values[i]);
+            if (!merged.equals(target[i])) {
+                target[i] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Join two values of the type lattice.
+     */
+    private Object merge(Object a, Object b) {
+        if (a.equals(b)) {
+            return a;
+        } else if (!isReference(a) || !isReference(b)) {
+            return Opcodes.TOP;
+        } else if (a == Opcodes.NULL) {
+            return b;
+        } else if (b == Opcodes.NULL) {
+            return a;
+        } else {
+            return mergeReferences((String) a, (String) b);
+        }
+    }
+
+    private boolean isReference(Object value) {
+        return value instanceof String || value == Opcodes.NULL;
+    }
+
+    /**
+     * Join two reference types, with the same rules as the {@link org.objectweb.asm.ClassWriter} uses.
+     */
+    private String mergeReferences(String a, String b) {
+        boolean isArrayA = a.charAt(0) == '[';
+        boolean isArrayB = b.charAt(0) == '[';
+        if (!isArrayA && !isArrayB) {
+            return hierarchy.getCommonSuperClass(a, b);
+        } else if (!isArrayA || !isArrayB) {
+            return OBJECT;
+        }
+
+        int dimensionsA = getDimensions(a);
+        int dimensionsB = getDimensions(b);
+        boolean isObjectElementA = a.charAt(dimensionsA) == 'L';
+        boolean isObjectElementB = b.charAt(dimensionsB) == 'L';
+        if (dimensionsA == dimensionsB && isObjectElementA && isObjectElementB) {
+            String elementA = a.substring(dimensionsA + 1, a.length() - 1);
+            String elementB = b.substring(dimensionsB + 1, b.length() - 1);
+            return "[".repeat(dimensionsA) + 'L' + hierarchy.getCommonSuperClass(elementA, elementB) + ';';
+        }
+
+        // An array of primitives is only an Object
+        int dimensions = Math.min(
+                isObjectElementA ? dimensionsA : dimensionsA - 1,
+                isObjectElementB ? dimensionsB : dimensionsB - 1);
+        return dimensions == 0 ? OBJECT : "[".repeat(dimensions) + "L" + OBJECT + ";";
+    }
+
+    private int getDimensions(String descriptor) {
+        int dimensions = 0;
+        while (descriptor.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        return dimensions;
+    }
+
+    private Object toFrameValue(Type type) {
+        return type instanceof IntLikeType ? Opcodes.INTEGER :
+                type instanceof RefType ? AsmUtil.toInternalName((RefType) type) :
+                type instanceof LongType ? Opcodes.LONG :
+                type instanceof FloatType ? Opcodes.FLOAT :
+                type instanceof DoubleType ? Opcodes.DOUBLE :
+                assertionError();
+    }
+
+    private Object getElementType(Object arrayType) {
+        if (arrayType instanceof String && ((String) arrayType).charAt(0) == '[') {
+            String element = ((String) arrayType).substring(1);
+            char sort = element.charAt(0);
+            return sort == 'L' ? element.substring(1, element.length() - 1) :
+                    sort == '[' ? element :
+                    sort == 'J' ? Opcodes.LONG :
+                    sort == 'F' ? Opcodes.FLOAT :
+                    sort == 'D' ? Opcodes.DOUBLE :
+                    Opcodes.INTEGER;
+        } else if (arrayType == Opcodes.NULL) {
+            return Opcodes.NULL;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    private static boolean isWide(Object value) {
+        return value == Opcodes.LONG || value == Opcodes.DOUBLE;
+    }
+
+    private static void setLocal(Object[] locals, int index, Object value) {
+        if (index > 0 && isWide(locals[index - 1])) {
+            // The second slot of a long or double is overwritten
+            locals[index - 1] = Opcodes.TOP;
+        }
+        locals[index] = value;
+        if (isWide(value)) {
+            locals[index + 1] = Opcodes.TOP;
+        }
+    }
+
+    /**
+     * Convert the entry states of all reachable target blocks into asm frames.
+     */
+    private void createFrames() {
+        int blockCount = graph.getBlockCount();
+        this.frameLocals = new Object[blockCount][];
+        this.frameStacks = new Object[blockCount][];
+
+        for (int block = 0; block < blockCount; block++) {
+            State state = entryStates[block];
+            if (!isTarget[block] || state == null) {
+                continue;
+            }
+
+            Object[] stack = new Object[state.size];
+            for (int i = 0; i < state.size; i++) {
+                stack[i] = toFrameElement(state.stack[i]);
+            }
+
+            frameLocals[block] = toFrameLocals(state.locals);
+            frameStacks[block] = stack;
+        }
+    }
+
+    /**
+     * Convert slots into the representation of asm frames, where long and double values only occupy one element
+     * and the trailing unused slots are left out.
+     */
+    private Object[] toFrameLocals(Object[] slots) {
+        List<Object> locals = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            Object value = slots[i];
+            locals.add(toFrameElement(value));
+            if (isWide(value)) {
+                i++;
+            }
+        }
+        while (!locals.isEmpty() && locals.get(locals.size() - 1) == Opcodes.TOP) {
+            locals.remove(locals.size() - 1);
+        }
+        return locals.toArray();
+    }
+
+    /**
+     * Replace uninitialized values by the label of their <tt>NEW</tt> instruction.
+     */
+    @SuppressWarnings("unchecked")
+    private Object toFrameElement(Object value) {
+        return value instanceof Uninitialized ? getNewLabel((I) ((Uninitialized) value).instruction) : value;
+    }
+
+    private <T> T assertionError() {
+        throw new AssertionError();
+    }
+
+    /**
+     * A handler of try/catch blocks that is reached from all instructions within their ranges.
+     */
+    protected class Handler {
+        /**
+         * The block that starts at the handler.
+         */
+        private final int block;
+
+        /**
+         * Slot into which the exception is stored before the handler is executed,
+         * or <tt>-1</tt> if the handler finds the exception on the stack.
+         */
+        private final int local;
+
+        /**
+         * Join of the types of all exceptions caught by the handler.
+         */
+        private String type;
+
+        /**
+         * The merged locals of all protected instructions, before the exception is stored.
+         */
+        private Object[] locals;
+
+        /**
+         * Create a handler that finds the exception on the stack.
+         *
+         * @param handler first instruction of the handler
+         */
+        public Handler(I handler) {
+            this(handler, -1);
+            isTarget[block] = true;
+        }
+
+        /**
+         * Create a handler whose exception is stored into a local before the handler is executed.
+         * The frame before the store must be visited with {@link #visitHandlerFrame}.
+         *
+         * @param handler first instruction of the handler
+         * @param local index of the local that receives the exception
+         * @param isTarget is the handler also reached by a branch, so it needs a frame of its own
+         */
+        public Handler(I handler, int local, boolean isTarget) {
+            this(handler, local);
+            AbstractFrameComputer.this.isTarget[block] |= isTarget;
+        }
+
+        private Handler(I handler, int local) {
+            this.block = graph.getBlockOf(handler);
+            this.local = local;
+        }
+    }
+
+    /**
+     * An object created by a <tt>NEW</tt> instruction whose constructor was not yet invoked.
+     * Values are compared by identity, since each <tt>NEW</tt> creates a different value.
+     */
+    private static class Uninitialized {
+        private final Object instruction;
+        private final String type;
+
+        private Uninitialized(Object instruction, String type) {
+            this.instruction = instruction;
+            this.type = type;
+        }
+    }
+
+    /**
+     * The values in the locals and on the stack at some point of the method.
+     */
+    private static class State {
+        private final Object[] locals;
+        private Object[] stack;
+
+        /**
+         * Amount of values on the stack.
+         */
+        private int size;
+
+        /**
+         * Amount of slots used by the values on the stack.
+         */
+        private int slots;
+
+        private State(Object[] locals, Object[] stack, int size, int slots) {
+            this.locals = locals;
+            this.stack = stack;
+            this.size = size;
+            this.slots = slots;
+        }
+
+        private State copy() {
+            return new State(locals.clone(), Arrays.copyOf(stack, Math.max(size, 4)), size, slots);
+        }
+    }
+
+    /**
+     * Update a state by the effects of the visited events.
+     */
+    private class Emulator extends StackInsnVisitor<I, L> {
+        private State state;
+
+        /**
+         * The instruction that is currently emulated.
+         */
+        private I instruction;
+
+        /**
+         * Amount of objects created by the current instruction so far.
+         */
+        private int newCount;
+
+        /**
+         * Did the current instruction change any local.
+         */
+        private boolean changedLocals;
+
+        private Emulator() {
+            super(null);
+        }
+
+        private void push(Object value) {
+            if (state.size == state.stack.length) {
+                state.stack = Arrays.copyOf(state.stack, state.stack.length * 2);
+            }
+            state.stack[state.size++] = value;
+            state.slots += isWide(value) ? 2 : 1;
+            maxStack = Math.max(maxStack, state.slots);
+        }
+
+        private Object pop() {
+            if (state.size == 0) {
+                throw new IllegalStateException("Stack underflow");
+            }
+            Object value = state.stack[--state.size];
+            state.slots -= isWide(value) ? 2 : 1;
+            return value;
+        }
+
+        private void pop(int amount) {
+            for (int i = 0; i < amount; i++) {
+                pop();
+            }
+        }
+
+        private void replace(int amount, Object result) {
+            pop(amount);
+            push(result);
+        }
+
+        @Override
+        public void visitPush(PushableConstant constant) {
+            push(constant instanceof NullConstant ? Opcodes.NULL : toFrameValue(constant.getType()));
+        }
+
+        @Override
+        public void visitNeg(Type type) {
+            replace(1, toFrameValue(type));
+        }
+
+        @Override
+        public void visitAdd(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitSub(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitMul(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitDiv(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitMod(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitAnd(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitOr(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitXor(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitShl(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitShr(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitUShr(Type type) {
+            replace(2, toFrameValue(type));
+        }
+
+        @Override
+        public void visitCmp() {
+            replace(2, Opcodes.INTEGER);
+        }
+
+        @Override
+        public void visitCmpl(Type type) {
+            replace(2, Opcodes.INTEGER);
+        }
+
+        @Override
+        public void visitCmpg(Type type) {
+            replace(2, Opcodes.INTEGER);
+        }
+
+        @Override
+        public void visitNewArray(ArrayType type, int initializedDimensions) {
+            replace(initializedDimensions, AsmUtil.toInternalName(type));
+        }
+
+        @Override
+        public void visitArrayLength() {
+            replace(1, Opcodes.INTEGER);
+        }
+
+        @Override
+        public void visitArrayLoad(Type type) {
+            pop(); // index
+            Object array = pop();
+            push(type instanceof RefType ? getElementType(array) : toFrameValue(type));
+        }
+
+        @Override
+        public void visitArrayStore(Type type) {
+            pop(3);
+        }
+
+        @Override
+        public void visitSwap() {
+            Object value1 = pop();
+            Object value2 = pop();
+            push(value1);
+            push(value2);
+        }
+
+        @Override
+        public void visitPop() {
+            pop();
+        }
+
+        @Override
+        public void visitDup() {
+            Object value = pop();
+            push(value);
+            push(value);
+        }
+
+        @Override
+        public void visitDupX1() {
+            Object value1 = pop();
+            Object value2 = pop();
+            push(value1);
+            push(value2);
+            push(value1);
+        }
+
+        @Override
+        public void visitDupX2() {
+            Object value1 = pop();
+            Object value2 = pop();
+            Object value3 = pop();
+            push(value1);
+            push(value3);
+            push(value2);
+            push(value1);
+        }
+
+        @Override
+        public void visitDup2() {
+            Object value1 = pop();
+            Object value2 = pop();
+            push(value2);
+            push(value1);
+            push(value2);
+            push(value1);
+        }
+
+        @Override
+        public void visitDup2X1() {
+            Object value1 = pop();
+            Object value2 = pop();
+            Object value3 = pop();
+            push(value2);
+            push(value1);
+            push(value3);
+            push(value2);
+            push(value1);
+        }
+
+        @Override
+        public void visitDup2X2() {
+            Object value1 = pop();
+            Object value2 = pop();
+            Object value3 = pop();
+            Object value4 = pop();
+            push(value2);
+            push(value1);
+            push(value4);
+            push(value3);
+            push(value2);
+            push(value1);
+        }
+
+        @Override
+        public void visitLoad(Type type, L local) {
+            push(type instanceof RefType ? state.locals[getLocalIndex(local)] : toFrameValue(type));
+        }
+
+        @Override
+        public void visitStore(Type type, L local) {
+            setLocal(state.locals, getLocalIndex(local), pop());
+            changedLocals = true;
+        }
+
+        @Override
+        public void visitIncrement(L local, int value) {
+            setLocal(state.locals, getLocalIndex(local), Opcodes.INTEGER);
+            changedLocals = true;
+        }
+
+        @Override
+        public void visitNew(Path type) {
+            List<Uninitialized> values = uninitializedValues.computeIfAbsent(instruction, x -> new ArrayList<>(1));
+            if (newCount == values.size()) {
+                values.add(new Uninitialized(instruction, AsmUtil.toInternalName(type)));
+            }
+            push(values.get(newCount++));
+        }
+
+        @Override
+        public void visitInstanceOf(RefType type) {
+            replace(1, Opcodes.INTEGER);
+        }
+
+        @Override
+        public void visitPrimitiveCast(PrimitiveType from, PrimitiveType to) {
+            replace(1, toFrameValue(to));
+        }
+
+        @Override
+        public void visitReferenceCast(RefType type) {
+            replace(1, AsmUtil.toInternalName(type));
+        }
+
+        @Override
+        public void visitReturn(Optional<Type> type) {
+            if (type.isPresent()) {
+                pop();
+            }
+        }
+
+        @Override
+        public void visitThrow() {
+            pop();
+        }
+
+        @Override
+        public void visitMonitorEnter() {
+            pop();
+        }
+
+        @Override
+        public void visitMonitorExit() {
+            pop();
+        }
+
+        @Override
+        public void visitFieldGet(FieldRef fieldRef, boolean isStatic) {
+            replace(isStatic ? 0 : 1, toFrameValue(fieldRef.getType()));
+        }
+
+        @Override
+        public void visitFieldSet(FieldRef fieldRef, boolean isStatic) {
+            pop(isStatic ? 1 : 2);
+        }
+
+        @Override
+        public void visitInvokeInsn(Invoke invoke) {
+            pop(invoke.getDescriptor().getParameterTypes().size());
+
+            if (invoke instanceof AbstractInstanceInvoke) {
+                Object receiver = pop();
+                if (invoke instanceof SpecialInvoke && ((SpecialInvoke) invoke).getMethod().getName().equals("<init>")) {
+                    initialize(receiver);
+                }
+            }
+
+            invoke.getDescriptor().getReturnType().map(AbstractFrameComputer.this::toFrameValue).ifPresent(this::push);
+        }
+
+        /**
+         * Replace all occurrences of an uninitialized value by the type of the initialized object.
+         */
+        private void initialize(Object uninitialized) {
+            Object type;
+            if (uninitialized == Opcodes.UNINITIALIZED_THIS) {
+                type = owner;
+            } else if (uninitialized instanceof Uninitialized) {
+                type = ((Uninitialized) uninitialized).type;
+            } else {
+                throw new IllegalStateException("Constructor invoked on an initialized value");
+            }
+
+            for (int i = 0; i < state.locals.length; i++) {
+                if (state.locals[i].equals(uninitialized)) {
+                    state.locals[i] = type;
+                    changedLocals = true;
+                }
+            }
+            for (int i = 0; i < state.size; i++) {
+                if (state.stack[i].equals(uninitialized)) {
+                    state.stack[i] = type;
+                }
+            }
+        }
+
+        @Override
+        public void visitGoto(I target) {}
+
+        @Override
+        public void visitIf(IfInsn.Condition condition, I target) {
+            pop(condition.getCompareValue() instanceof IfInsn.StackValue ? 2 : 1);
+        }
+
+        @Override
+        public void visitSwitch(Map<Integer, I> targetTable, I defaultTarget) {
+            pop();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.asm2ref.ClassConvertVisitor;
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.ref.RefBody;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Optional;
+
+/**
+ * The entry point for the direct asm to ref conversion.
+ *
+ * The {@link RefBody RefBodies} are built straight from the asm instructions,
+ * without converting them into {@link io.runebox.kasm.ir.stack.StackBody StackBodies} first.
+ * If {@link Asm2Stack} followed by {@link Stack2Ref} can convert a class, the result is the same.
+ * Some classes can only be converted directly, since a {@link io.runebox.kasm.ir.stack.StackBody}
+ * cannot represent e.g. loads from <tt>byte</tt> or <tt>char</tt> arrays.
+ *
+ * The code of each method is still buffered in a {@link org.objectweb.asm.tree.MethodNode},
+ * because the conversion follows the control flow of the method instead of the order of the instructions.
+ */
+public class Asm2Ref {
+    /**
+     * Build a Classfile with {@link RefBody RefBodies} from an asm {@link ClassReader}.
+     *
+     * @param cr the class reader
+     * @param parsingOption the parsingOption flag that is passed to the ClassReader.
+     *                 {@link ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG},
+     *                 {@link ClassReader#SKIP_FRAMES} or {@link ClassReader#EXPAND_FRAMES}
+     * @return the converted class
+     */
+    public static Classfile convert(ClassReader cr, int parsingOption) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        ClassConvertVisitor converter = new ClassConvertVisitor();
+        cr.accept(converter, parsingOption);
+        if (probe.isPresent()) {
+            report(probe.get(), ConversionMetrics.getClassSize(cr), converter.getClassfile());
+        }
+        return postProcess(converter.getClassfile(), event);
+    }
+
+    /**
+     * Build a Classfile with {@link RefBody RefBodies} from an asm {@link ClassReader}.
+     *
+     * @param cr the class reader
+     * @return the converted class
+     */
+    public static Classfile convert(ClassReader cr) {
+        return convert(cr, 0);
+    }
+
+    /**
+     * Build a {@link Classfile} with {@link RefBody RefBodies} from an asm {@link ClassNode}.
+     *
+     * @param cn the class node
+     * @return the converted class
+     */
+    public static Classfile convert(ClassNode cn) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        ClassConvertVisitor converter = new ClassConvertVisitor();
+        cn.accept(converter);
+        if (probe.isPresent()) {
+            report(probe.get(), 0, converter.getClassfile());
+        }
+        return postProcess(converter.getClassfile(), event);
+    }
+
+    private static void report(ConversionMetrics.Probe probe, int classSize, Classfile classfile) {
+        probe.stop();
+        int locals = ConversionMetrics.getLocalCount(classfile);
+        probe.finish(Stage.ASM_TO_REF, Optional.empty(), classSize, ConversionMetrics.getCodeSize(classfile), locals, 0);
+    }
+
+    private static Classfile postProcess(Classfile classfile, ClassConversionEvent event) {
+        for (Method method : classfile.getMethods()) {
+            method.getBody().ifPresent(body -> Stack2Ref.postProcess(classfile, method, (RefBody) body));
+        }
+        event.commit(Stage.ASM_TO_REF, classfile);
+        return classfile;
+    }
+}
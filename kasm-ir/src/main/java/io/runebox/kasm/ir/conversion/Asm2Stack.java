@@ -1,11 +1,16 @@
 package io.runebox.kasm.ir.conversion;
 
 import io.runebox.kasm.ir.conversion.asm2stack.ClassConvertVisitor;
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.stack.StackBody;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.Optional;
+
 /**
  * The entry point for the asm to stack conversion.
  */
@@ -20,9 +25,17 @@ public class Asm2Stack {
      * @return the converted class
      */
     public static Classfile convert(ClassReader cr, int parsingOption) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
         ClassConvertVisitor converter = new ClassConvertVisitor();
         cr.accept(converter, parsingOption);
-        return converter.getClassfile();
+        Classfile classfile = converter.getClassfile();
+        event.commit(Stage.ASM_TO_STACK, classfile);
+        if (probe.isPresent()) {
+            report(probe.get(), ConversionMetrics.getClassSize(cr), classfile);
+        }
+        return classfile;
     }
 
     /**
@@ -32,9 +45,51 @@ public class Asm2Stack {
      * @return the converted class
      */
     public static Classfile convert(ClassReader cr) {
-        ClassConvertVisitor converter = new ClassConvertVisitor();
-        cr.accept(converter, 0);
-        return converter.getClassfile();
+        return convert(cr, 0);
+    }
+
+    /**
+     * Build a Classfile whose {@link StackBody StackBodies} are only converted when they are first accessed.
+     *
+     * The code of the methods is skipped while parsing the class.
+     * The first call of {@link io.runebox.kasm.ir.Method#getBody()} parses and converts the code of that method only.
+     * The {@link ClassReader} is retained until all bodies were loaded.
+     *
+     * The bodies of different methods may be loaded on different threads.
+     * The body of one single method must not be accessed by several threads before it was loaded,
+     * see {@link io.runebox.kasm.ir.Method#getBody()}.
+     *
+     * Parsing the class is reported like {@link #convert(ClassReader, int)}, without any code.
+     * Converting the bodies is reported separately once they are loaded.
+     *
+     * @param cr the class reader
+     * @param parsingOption the parsingOption flag that is passed to the ClassReader.
+     *                 {@link ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES} or {@link ClassReader#EXPAND_FRAMES}
+     * @return the converted class
+     */
+    public static Classfile convertLazily(ClassReader cr, int parsingOption) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        ClassConvertVisitor converter = new ClassConvertVisitor(cr, parsingOption);
+        cr.accept(converter, parsingOption | ClassReader.SKIP_CODE);
+        Classfile classfile = converter.getClassfile();
+        event.commit(Stage.ASM_TO_STACK, classfile);
+        if (probe.isPresent()) {
+            report(probe.get(), ConversionMetrics.getClassSize(cr), classfile);
+        }
+        return classfile;
+    }
+
+    /**
+     * Build a Classfile whose {@link StackBody StackBodies} are only converted when they are first accessed.
+     *
+     * @param cr the class reader
+     * @return the converted class
+     * @see #convertLazily(ClassReader, int)
+     */
+    public static Classfile convertLazily(ClassReader cr) {
+        return convertLazily(cr, 0);
     }
 
     /**
@@ -44,8 +99,22 @@ public class Asm2Stack {
      * @return the converted class
      */
     public static Classfile convert(ClassNode cn) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
         ClassConvertVisitor converter = new ClassConvertVisitor();
         cn.accept(converter);
-        return converter.getClassfile();
+        Classfile classfile = converter.getClassfile();
+        event.commit(Stage.ASM_TO_STACK, classfile);
+        if (probe.isPresent()) {
+            report(probe.get(), 0, classfile);
+        }
+        return classfile;
+    }
+
+    private static void report(ConversionMetrics.Probe probe, int classSize, Classfile classfile) {
+        probe.stop();
+        int locals = ConversionMetrics.getLocalCount(classfile);
+        probe.finish(Stage.ASM_TO_STACK, Optional.empty(), classSize, ConversionMetrics.getCodeSize(classfile), locals, 0);
     }
 }
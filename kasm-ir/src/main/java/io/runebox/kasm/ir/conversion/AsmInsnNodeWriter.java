@@ -1,45 +1,23 @@
 package io.runebox.kasm.ir.conversion;
 
-import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
 import io.runebox.kasm.ir.conversion.stack2asm.ConversionContext;
-import io.runebox.kasm.ir.FieldRef;
-import io.runebox.kasm.ir.MethodRef;
-import io.runebox.kasm.ir.Path;
-import io.runebox.kasm.ir.constant.*;
-import io.runebox.kasm.ir.handle.*;
-import io.runebox.kasm.ir.type.*;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.stack.StackLocal;
-import io.runebox.kasm.ir.stack.insn.DupInsn;
-import io.runebox.kasm.ir.stack.insn.IfInsn;
 import io.runebox.kasm.ir.stack.insn.Instruction;
-import io.runebox.kasm.ir.stack.invoke.*;
-import io.runebox.kasm.ir.util.StackInsnVisitor;
-import io.runebox.kasm.ir.analysis.JvmType;
-import io.runebox.kasm.ir.analysis.Stack;
-import org.objectweb.asm.ConstantDynamic;
-import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.tree.*;
 
 import java.util.*;
-import java.util.stream.IntStream;
 
 /**
- * A {@link StackInsnVisitor} that collects the visited events represented as asm {@link AbstractInsnNode AbstractInsnNodes}.
- *
- * This visitor considers that <tt>long</tt> and <tt>double</tt> values require two slots on the stack.
- * A {@link DupInsn} that duplicates a <tt>long</tt> is for instance converted to the <tt>DUP2</tt> opcode.
+ * A {@link AbstractAsmInsnWriter} that collects the visited events represented as asm {@link AbstractInsnNode AbstractInsnNodes}.
  *
+ * Labels of branch targets are registered in the {@link ConversionContext} and set once all instructions are converted.
  */
-public class AsmInsnNodeWriter extends StackInsnVisitor<Instruction, StackLocal> {
+public class AsmInsnNodeWriter extends AbstractAsmInsnWriter<Instruction, StackLocal> {
     private final ConversionContext ctx;
     private final List<AbstractInsnNode> convertedInsns = new ArrayList<>();
 
-    /**
-     * The state of the stack before the next visited instruction
-     */
-    private Stack.Immutable<JvmType> stackFrame;
-
     /**
      * A list of locals used to convert dup instructions that cannot be represented as one opcode.
      */
@@ -58,12 +36,9 @@ public class AsmInsnNodeWriter extends StackInsnVisitor<Instruction, StackLocal>
         return convertedInsns;
     }
 
-    public void setStackFrame(Stack.Immutable<JvmType> stackFrame) {
-        this.stackFrame = stackFrame;
-    }
-
-    private StackLocal getTempLocal(int i) {
-        while (i <= tempLocalIndices.size()) {
+    @Override
+    protected StackLocal getTempLocal(int i) {
+        while (i >= tempLocalIndices.size()) {
             StackLocal tempLocal = new StackLocal();
             tempLocalIndices.add(tempLocal);
         }
@@ -71,860 +46,86 @@ public class AsmInsnNodeWriter extends StackInsnVisitor<Instruction, StackLocal>
         return tempLocalIndices.get(i);
     }
 
-    private <T> T assertionError() {
-        throw new AssertionError();
-    }
-
-    @Override
-    public void visitPush(PushableConstant constant) {
-        if (constant instanceof IntConstant) {
-            int value = ((IntConstant) constant).getValue();
-            if (value >= -1 && value <= 5) {
-                visitConvertedInsn(new InsnNode(Opcodes.ICONST_0 + value));
-            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
-                visitConvertedInsn(new IntInsnNode(Opcodes.BIPUSH, value));
-            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
-                visitConvertedInsn(new IntInsnNode(Opcodes.SIPUSH, value));
-            }
-        } else if (constant instanceof LongConstant) {
-            long value = ((LongConstant) constant).getValue();
-            if (value == 0) {
-                visitConvertedInsn(new InsnNode(Opcodes.LCONST_0));
-            } else if (value == 1) {
-                visitConvertedInsn(new InsnNode(Opcodes.LCONST_1));
-            } else {
-                visitConvertedInsn(new LdcInsnNode(value));
-            }
-        } else if (constant instanceof FloatConstant) {
-            float value = ((FloatConstant) constant).getValue();
-            if (value == 0) {
-                visitConvertedInsn(new InsnNode(Opcodes.FCONST_0));
-            } else if (value == 1) {
-                visitConvertedInsn(new InsnNode(Opcodes.FCONST_1));
-            } else if (value == 2) {
-                visitConvertedInsn(new InsnNode(Opcodes.FCONST_2));
-            } else {
-                visitConvertedInsn(new LdcInsnNode(value));
-            }
-        } else if (constant instanceof DoubleConstant) {
-            double value = ((DoubleConstant) constant).getValue();
-            if (value == 0) {
-                visitConvertedInsn(new InsnNode(Opcodes.DCONST_0));
-            } else if (value == 1) {
-                visitConvertedInsn(new InsnNode(Opcodes.DCONST_1));
-            } else {
-                visitConvertedInsn(new LdcInsnNode(value));
-            }
-        } else if (constant instanceof StringConstant) {
-            String string = ((StringConstant) constant).getValue();
-            visitConvertedInsn(new LdcInsnNode(string));
-        } else if (constant instanceof NullConstant) {
-            visitConvertedInsn(new InsnNode(Opcodes.ACONST_NULL));
-        } else if (constant instanceof ClassConstant) {
-            Type value = ((ClassConstant) constant).getValue();
-            visitConvertedInsn(new LdcInsnNode(AsmUtil.toAsmType(value)));
-        } else if (constant instanceof MethodTypeConstant) {
-            MethodTypeConstant methodConstant = (MethodTypeConstant) constant;
-            visitConvertedInsn(new LdcInsnNode(AsmUtil.methodDescriptorToType(
-                    methodConstant.getReturnType(), methodConstant.getArgumentTypes())));
-        } else if (constant instanceof HandleConstant) {
-            Handle handle = ((HandleConstant) constant).getHandle();
-            visitConvertedInsn(new LdcInsnNode(convertHandle(handle)));
-        } else if (constant instanceof DynamicConstant) {
-            ConstantDynamic dynamicConstant = convertDynamicConstant((DynamicConstant) constant);
-            visitConvertedInsn(new LdcInsnNode(dynamicConstant));
-        }
-    }
-
-    private org.objectweb.asm.Handle convertHandle(Handle handle) {
-        int type;
-        String owner;
-        String name;
-        String desc;
-        boolean isInterface;
-        if (handle instanceof FieldHandle) {
-            FieldRef field = ((FieldHandle) handle).getFieldRef();
-            owner = AsmUtil.toInternalName(field.getOwner());
-            name = field.getName();
-            desc = AsmUtil.toDescriptor(field.getType());
-            isInterface = false;
-
-            if (handle instanceof GetFieldHandle) {
-                type = Opcodes.H_GETFIELD;
-            } else if (handle instanceof GetStaticHandle) {
-                type = Opcodes.H_GETSTATIC;
-            } else if (handle instanceof SetFieldHandle) {
-                type = Opcodes.H_PUTFIELD;
-            } else if (handle instanceof SetStaticHandle) {
-                type = Opcodes.H_PUTSTATIC;
-            } else {
-                throw new AssertionError();
-            }
-        } else if (handle instanceof MethodHandle) {
-            MethodRef method = ((MethodHandle) handle).getMethodRef();
-            owner = AsmUtil.toInternalName(method.getOwner());
-            name = method.getName();
-            desc = AsmUtil.methodDescriptorToString(method.getReturnType(), method.getArguments());
-            isInterface = handle instanceof InvokeInterfaceHandle ||
-                    handle instanceof AbstractAmbiguousMethodHandle &&
-                            ((AbstractAmbiguousMethodHandle) handle).isInterface();
-
-            if (handle instanceof InvokeInterfaceHandle) {
-                type = Opcodes.H_INVOKEINTERFACE;
-            } else if (handle instanceof InvokeSpecialHandle) {
-                type = Opcodes.H_INVOKESPECIAL;
-            } else if (handle instanceof InvokeStaticHandle) {
-                type = Opcodes.H_INVOKESTATIC;
-            } else if (handle instanceof InvokeVirtualHandle) {
-                type = Opcodes.H_INVOKEVIRTUAL;
-            } else if (handle instanceof NewInstanceHandle) {
-                type = Opcodes.H_NEWINVOKESPECIAL;
-            } else {
-                throw new AssertionError();
-            }
-        } else {
-            throw new AssertionError();
-        }
-
-        return new org.objectweb.asm.Handle(type, owner, name, desc, isInterface);
-    }
-
-    private ConstantDynamic convertDynamicConstant(DynamicConstant constant) {
-        String name = constant.getName();
-        String descriptor = AsmUtil.toDescriptor(constant.getType());
-        org.objectweb.asm.Handle bootstrapMethod = convertHandle(constant.getBootstrapMethod());
-        Object[] bootstrapMethodArguments = constant.getBootstrapArguments().stream()
-                .map(this::convertBootstrapConstant)
-                .toArray();
-
-        return new ConstantDynamic(name, descriptor, bootstrapMethod, bootstrapMethodArguments);
-    }
-
-    @Override
-    public void visitNeg(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.INEG :
-                type instanceof LongType ? Opcodes.LNEG :
-                type instanceof FloatType ? Opcodes.FNEG :
-                type instanceof DoubleType ? Opcodes.DNEG :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitAdd(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IADD :
-                type instanceof LongType ? Opcodes.LADD :
-                type instanceof FloatType ? Opcodes.FADD :
-                type instanceof DoubleType ? Opcodes.DADD :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitSub(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.ISUB :
-                type instanceof LongType ? Opcodes.LSUB :
-                type instanceof FloatType ? Opcodes.FSUB :
-                type instanceof DoubleType ? Opcodes.DSUB :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitMul(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IMUL :
-                type instanceof LongType ? Opcodes.LMUL :
-                type instanceof FloatType ? Opcodes.FMUL :
-                type instanceof DoubleType ? Opcodes.DMUL :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitDiv(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IDIV :
-                type instanceof LongType ? Opcodes.LDIV :
-                type instanceof FloatType ? Opcodes.FDIV :
-                type instanceof DoubleType ? Opcodes.DDIV :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitMod(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IREM :
-                type instanceof LongType ? Opcodes.LREM :
-                type instanceof FloatType ? Opcodes.FREM :
-                type instanceof DoubleType ? Opcodes.DREM :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitAnd(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IAND :
-                type instanceof LongType ? Opcodes.LAND :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitOr(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IOR :
-                type instanceof LongType ? Opcodes.LOR :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitXor(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IXOR :
-                type instanceof LongType ? Opcodes.LXOR :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitShl(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.ISHL :
-                type instanceof LongType ? Opcodes.LSHL :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitShr(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.ISHR :
-                type instanceof LongType ? Opcodes.LSHR :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitUShr(Type type) {
-        int opcode = type instanceof IntType ? Opcodes.IUSHR :
-                type instanceof LongType ? Opcodes.LUSHR :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitCmp() {
-        visitConvertedInsn(new InsnNode(Opcodes.LCMP));
-    }
-
-    @Override
-    public void visitCmpl(Type type) {
-        int opcode = type instanceof FloatType ? Opcodes.FCMPL :
-                type instanceof DoubleType ? Opcodes.DCMPL :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitCmpg(Type type) {
-        int opcode = type instanceof FloatType ? Opcodes.FCMPG :
-                type instanceof DoubleType ? Opcodes.DCMPG :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitNewArray(ArrayType type, int initializedDimensions) {
-        if (initializedDimensions == 1) {
-            Type baseType = type.getBaseType();
-            if (baseType instanceof RefType) {
-                String descriptor = AsmUtil.toInternalName((RefType) baseType);
-                visitConvertedInsn(new TypeInsnNode(Opcodes.ANEWARRAY, descriptor));
-            } else {
-                int operand = baseType instanceof BooleanType ? Opcodes.T_BOOLEAN :
-                        baseType instanceof ByteType ? Opcodes.T_BYTE :
-                        baseType instanceof CharType ? Opcodes.T_CHAR :
-                        baseType instanceof ShortType ? Opcodes.T_SHORT :
-                        baseType instanceof IntType ? Opcodes.T_INT :
-                        baseType instanceof LongType ? Opcodes.T_LONG :
-                        baseType instanceof FloatType ? Opcodes.T_FLOAT :
-                        baseType instanceof DoubleType ? Opcodes.T_DOUBLE :
-                        assertionError();
-
-                visitConvertedInsn(new IntInsnNode(Opcodes.NEWARRAY, operand));
-            }
-        } else {
-            String descriptor = AsmUtil.toDescriptor(type);
-            visitConvertedInsn(new MultiANewArrayInsnNode(descriptor, initializedDimensions));
-        }
-    }
-
     @Override
-    public void visitArrayLength() {
-        visitConvertedInsn(new InsnNode(Opcodes.ARRAYLENGTH));
-    }
-
-    @Override
-    public void visitArrayLoad(Type type) {
-        int opcode = type instanceof RefType ? Opcodes.AALOAD :
-                type instanceof ByteType ? Opcodes.BALOAD :
-                type instanceof ShortType ? Opcodes.SALOAD :
-                type instanceof CharType ? Opcodes.CALOAD :
-                type instanceof IntType ? Opcodes.IALOAD :
-                type instanceof LongType ? Opcodes.LALOAD :
-                type instanceof FloatType ? Opcodes.FALOAD :
-                type instanceof DoubleType ? Opcodes.DALOAD :
-                assertionError();
-
+    protected void writeInsn(int opcode) {
         visitConvertedInsn(new InsnNode(opcode));
     }
 
     @Override
-    public void visitArrayStore(Type type) {
-        int opcode = type instanceof RefType ? Opcodes.AASTORE :
-                type instanceof ByteType ? Opcodes.BASTORE :
-                type instanceof ShortType ? Opcodes.SASTORE :
-                type instanceof CharType ? Opcodes.CASTORE :
-                type instanceof IntType ? Opcodes.IASTORE :
-                type instanceof LongType ? Opcodes.LASTORE :
-                type instanceof FloatType ? Opcodes.FASTORE :
-                type instanceof DoubleType ? Opcodes.DASTORE :
-                assertionError();
-
-        visitConvertedInsn(new InsnNode(opcode));
+    protected void writeIntInsn(int opcode, int operand) {
+        visitConvertedInsn(new IntInsnNode(opcode, operand));
     }
 
     @Override
-    public void visitSwap() {
-        JvmType[] peeked = this.stackFrame.peek(2);
-        Integer opcode = null;
-        if (peeked[0].is32bit()) {
-            if (peeked[1].is32bit()) {
-                opcode = Opcodes.SWAP;
-            }
-        }
-
-        if (opcode == null) {
-            StackLocal local0 = getTempLocal(0);
-            StackLocal local1 = getTempLocal(1);
-
-            visitStore(peeked[0].toType(), local0);
-            visitStore(peeked[1].toType(), local1);
-
-            visitLoad(peeked[0].toType(), local0);
-            visitLoad(peeked[1].toType(), local1);
-        } else {
-            visitConvertedInsn(new InsnNode(opcode));
-        }
-    }
-
-    @Override
-    public void visitPop() {
-        int opcode;
-        if (this.stackFrame.peek().is32bit()) {
-            opcode = Opcodes.POP;
-        } else {
-            opcode = Opcodes.POP2;
-        }
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitDup() {
-        int opcode;
-        if (this.stackFrame.peek().is32bit()) {
-            opcode = Opcodes.DUP;
-        } else {
-            opcode = Opcodes.DUP2;
-        }
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitDupX1() {
-        JvmType[] peeked = this.stackFrame.peek(2);
-        int opcode;
-        if (peeked[0].is32bit()) {
-            if (peeked[1].is32bit()) {
-                // DUP2_X1 Form 1
-                opcode = Opcodes.DUP_X1;
-            } else {
-                // DUP_X2 Form 2
-                opcode = Opcodes.DUP_X2;
-            }
-        } else {
-            if (peeked[1].is32bit()) {
-                // DUP2_X1 Form 2
-                opcode = Opcodes.DUP2_X1;
-            } else {
-                // DUP2_X2 Form 4
-                opcode = Opcodes.DUP2_X2;
-            }
-        }
-
-        visitConvertedInsn(new InsnNode(opcode));
-    }
-
-    @Override
-    public void visitDupX2() {
-        JvmType[] peeked = this.stackFrame.peek(3);
-        Integer opcode = null;
-        if (peeked[0].is32bit()) {
-            if (peeked[1].is32bit()) {
-                if (peeked[2].is32bit()) {
-                    // DUP_X2 Form 1
-                    opcode = Opcodes.DUP_X2;
-                }
-            }
-        } else {
-            if (peeked[1].is32bit()) {
-                if (peeked[2].is32bit()) {
-                    // DUP2_X2 Form 2
-                    opcode = Opcodes.DUP2_X2;
-                }
-            }
-        }
-
-        if (opcode == null) {
-            StackLocal local0 = getTempLocal(0);
-            StackLocal local1 = getTempLocal(1);
-            StackLocal local2 = getTempLocal(2);
-
-            visitStore(peeked[0].toType(), local0);
-            visitStore(peeked[1].toType(), local1);
-            visitStore(peeked[2].toType(), local2);
-
-            visitLoad(peeked[0].toType(), local0);
-
-            visitLoad(peeked[2].toType(), local2);
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-        } else {
-            visitConvertedInsn(new InsnNode(opcode));
-        }
-    }
-
-    @Override
-    public void visitDup2() {
-        JvmType[] peeked = this.stackFrame.peek(2);
-        Integer opcode = null;
-        if (peeked[0].is32bit() && peeked[1].is32bit()) {
-            // DUP2 Form 1
-            opcode = Opcodes.DUP2;
-        }
-
-        if (opcode == null) {
-            StackLocal local0 = getTempLocal(0);
-            StackLocal local1 = getTempLocal(1);
-
-            visitStore(peeked[0].toType(), local0);
-            visitStore(peeked[1].toType(), local1);
-
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-        } else {
-            visitConvertedInsn(new InsnNode(opcode));
-        }
-    }
-
-    @Override
-    public void visitDup2X1() {
-        JvmType[] peeked = this.stackFrame.peek(3);
-        Integer opcode = null;
-        if (peeked[0].is32bit()) {
-            if (peeked[1].is32bit()) {
-                if (peeked[2].is32bit()) {
-                    // DUP2_X1 Form 1
-                    opcode = Opcodes.DUP2_X1;
-                } else {
-                    // DUP2_X2 Form 3
-                    opcode = Opcodes.DUP2_X2;
-                }
-            }
-        }
-
-        if (opcode == null) {
-            StackLocal local0 = getTempLocal(0);
-            StackLocal local1 = getTempLocal(1);
-            StackLocal local2 = getTempLocal(2);
-
-            visitStore(peeked[0].toType(), local0);
-            visitStore(peeked[1].toType(), local1);
-            visitStore(peeked[2].toType(), local2);
-
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-
-            visitLoad(peeked[2].toType(), local2);
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-        } else {
-            visitConvertedInsn(new InsnNode(opcode));
-        }
-    }
-
-    @Override
-    public void visitDup2X2() {
-        JvmType[] peeked = this.stackFrame.peek(4);
-        Integer opcode = null;
-        if (peeked[0].is32bit()) {
-            if (peeked[1].is32bit()) {
-                if (peeked[2].is32bit()) {
-                    if (peeked[3].is32bit()) {
-                        opcode = Opcodes.DUP2_X2;
-                    }
-                }
-            }
-        }
-
-        if (opcode == null) {
-            StackLocal local0 = getTempLocal(0);
-            StackLocal local1 = getTempLocal(1);
-            StackLocal local2 = getTempLocal(2);
-            StackLocal local3 = getTempLocal(3);
-
-            visitStore(peeked[0].toType(), local0);
-            visitStore(peeked[1].toType(), local1);
-            visitStore(peeked[2].toType(), local2);
-            visitStore(peeked[3].toType(), local3);
-
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-
-            visitLoad(peeked[3].toType(), local3);
-            visitLoad(peeked[2].toType(), local2);
-            visitLoad(peeked[1].toType(), local1);
-            visitLoad(peeked[0].toType(), local0);
-        } else {
-            visitConvertedInsn(new InsnNode(opcode));
-        }
-    }
-
-    @Override
-    public void visitLoad(Type type, StackLocal local) {
-        int opcode = type instanceof RefType ? Opcodes.ALOAD :
-                type instanceof IntType ? Opcodes.ILOAD :
-                type instanceof LongType ? Opcodes.LLOAD :
-                type instanceof FloatType ? Opcodes.FLOAD :
-                type instanceof DoubleType ? Opcodes.DLOAD :
-                assertionError();
-
+    protected void writeVarInsn(int opcode, StackLocal local) {
         visitConvertedInsn(new VarInsnNode(opcode, ctx.getLocalIndex(local)));
     }
 
     @Override
-    public void visitStore(Type type, StackLocal local) {
-        int opcode = type instanceof RefType ? Opcodes.ASTORE :
-                type instanceof IntType ? Opcodes.ISTORE :
-                type instanceof LongType ? Opcodes.LSTORE :
-                type instanceof FloatType ? Opcodes.FSTORE :
-                type instanceof DoubleType ? Opcodes.DSTORE :
-                assertionError();
-
-        visitConvertedInsn(new VarInsnNode(opcode, ctx.getLocalIndex(local)));
-    }
-
-    @Override
-    public void visitIncrement(StackLocal local, int value) {
-        visitConvertedInsn(new IincInsnNode(ctx.getLocalIndex(local), value));
-    }
-
-    @Override
-    public void visitNew(Path type) {
-        visitConvertedInsn(new TypeInsnNode(Opcodes.NEW, AsmUtil.toInternalName(type)));
-    }
-
-    @Override
-    public void visitInstanceOf(RefType type) {
-        visitConvertedInsn(new TypeInsnNode(Opcodes.INSTANCEOF, AsmUtil.toInternalName(type)));
-    }
-
-    @Override
-    public void visitPrimitiveCast(PrimitiveType from, PrimitiveType to) {
-        if (from instanceof IntType) {
-            visitConvertedInsn(new InsnNode(
-                    to instanceof ByteType ? Opcodes.I2B :
-                    to instanceof CharType ? Opcodes.I2C :
-                    to instanceof ShortType ? Opcodes.I2S :
-                    to instanceof LongType ? Opcodes.I2L :
-                    to instanceof FloatType ? Opcodes.I2F :
-                    to instanceof DoubleType ? Opcodes.I2D :
-                    assertionError())
-            );
-        } else {
-            if (from instanceof LongType) {
-                visitConvertedInsn(new InsnNode(
-                        to instanceof IntLikeType ? Opcodes.L2I :
-                        to instanceof FloatType ? Opcodes.L2F :
-                        to instanceof DoubleType ? Opcodes.L2D :
-                        assertionError())
-                );
-            } else if (from instanceof FloatType) {
-                visitConvertedInsn(new InsnNode(
-                        to instanceof IntLikeType ? Opcodes.F2I :
-                        to instanceof LongType ? Opcodes.F2L :
-                        to instanceof DoubleType ? Opcodes.F2D :
-                        assertionError())
-                );
-            } else if (from instanceof DoubleType) {
-                visitConvertedInsn(new InsnNode(
-                        to instanceof IntLikeType ? Opcodes.D2I :
-                        to instanceof LongType ? Opcodes.D2L :
-                        to instanceof FloatType ? Opcodes.D2F :
-                        assertionError())
-                );
-            } else {
-                throw new AssertionError();
-            }
-
-            if (to instanceof IntLikeType && !(to instanceof IntType)) {
-                visitConvertedInsn(new InsnNode(
-                        to instanceof ByteType ? Opcodes.I2B :
-                        to instanceof CharType ? Opcodes.I2C :
-                        to instanceof ShortType ? Opcodes.I2S :
-                        assertionError())
-                );
-            }
-        }
+    protected void writeTypeInsn(int opcode, String type) {
+        visitConvertedInsn(new TypeInsnNode(opcode, type));
     }
 
     @Override
-    public void visitReferenceCast(RefType type) {
-        visitConvertedInsn(new TypeInsnNode(Opcodes.CHECKCAST, AsmUtil.toInternalName(type)));
+    protected void writeFieldInsn(int opcode, String owner, String name, String descriptor) {
+        visitConvertedInsn(new FieldInsnNode(opcode, owner, name, descriptor));
     }
 
     @Override
-    public void visitReturn(Optional<Type> typeOpt) {
-        int opcode;
-        if (typeOpt.isPresent()) {
-            Type type = typeOpt.get();
-            opcode = type instanceof RefType ? Opcodes.ARETURN :
-                    type instanceof IntType ? Opcodes.IRETURN :
-                    type instanceof LongType ? Opcodes.LRETURN :
-                    type instanceof FloatType ? Opcodes.FRETURN :
-                    type instanceof DoubleType ? Opcodes.DRETURN :
-                    assertionError();
-        } else {
-            opcode = Opcodes.RETURN;
-        }
-        visitConvertedInsn(new InsnNode(opcode));
+    protected void writeMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        visitConvertedInsn(new MethodInsnNode(opcode, owner, name, descriptor, isInterface));
     }
 
     @Override
-    public void visitThrow() {
-        visitConvertedInsn(new InsnNode(Opcodes.ATHROW));
+    protected void writeInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod, Object[] bootstrapMethodArguments) {
+        visitConvertedInsn(new InvokeDynamicInsnNode(name, descriptor, bootstrapMethod, bootstrapMethodArguments));
     }
 
     @Override
-    public void visitMonitorEnter() {
-        visitConvertedInsn(new InsnNode(Opcodes.MONITORENTER));
+    protected void writeJumpInsn(int opcode, Instruction target) {
+        JumpInsnNode node = new JumpInsnNode(opcode, null);
+        ctx.registerLabel(target, RWCell.of(() -> node.label, x -> node.label = x, LabelNode.class));
+        visitConvertedInsn(node);
     }
 
     @Override
-    public void visitMonitorExit() {
-        visitConvertedInsn(new InsnNode(Opcodes.MONITOREXIT));
+    protected void writeLdcInsn(Object value) {
+        visitConvertedInsn(new LdcInsnNode(value));
     }
 
     @Override
-    public void visitFieldGet(FieldRef fieldRef, boolean isStatic) {
-        int opcode = isStatic ? Opcodes.GETSTATIC : Opcodes.GETFIELD;
-        convertFieldInsnNode(opcode, fieldRef);
+    protected void writeIincInsn(StackLocal local, int increment) {
+        visitConvertedInsn(new IincInsnNode(ctx.getLocalIndex(local), increment));
     }
 
     @Override
-    public void visitFieldSet(FieldRef fieldRef, boolean isStatic) {
-        int opcode = isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD;
-        convertFieldInsnNode(opcode, fieldRef);
-    }
+    protected void writeTableSwitchInsn(int min, int max, Instruction defaultTarget, List<Instruction> targets) {
+        TableSwitchInsnNode node = new TableSwitchInsnNode(min, max, null, new LabelNode[targets.size()]);
 
-    private void convertFieldInsnNode(int opcode, FieldRef field) {
-        String owner = AsmUtil.toInternalName(field.getOwner());
-        String name = field.getName();
-        String descriptor = AsmUtil.toDescriptor(field.getType());
-
-        visitConvertedInsn(new FieldInsnNode(opcode, owner, name, descriptor));
-    }
-
-    @Override
-    public void visitInvokeInsn(Invoke invoke) {
-        if (invoke instanceof AbstractConcreteInvoke) {
-            MethodRef method = ((AbstractConcreteInvoke) invoke).getMethod();
-            String owner = AsmUtil.toInternalName(method.getOwner());
-            String name = method.getName();
-            String descriptor = AsmUtil.methodDescriptorToString(method.getDescriptor());
-
-            int opcode;
-            boolean isInterface;
-            if (invoke instanceof StaticInvoke) {
-                opcode = Opcodes.INVOKESTATIC;
-                isInterface = ((StaticInvoke) invoke).isInterface();
-            } else if (invoke instanceof VirtualInvoke) {
-                opcode = Opcodes.INVOKEVIRTUAL;
-                isInterface = false;
-            } else if (invoke instanceof SpecialInvoke) {
-                opcode = Opcodes.INVOKESPECIAL;
-                isInterface = ((SpecialInvoke) invoke).isInterface();
-            } else if (invoke instanceof InterfaceInvoke) {
-                opcode = Opcodes.INVOKEINTERFACE;
-                isInterface = true;
-            } else {
-                throw new AssertionError();
-            }
-
-            visitConvertedInsn(new MethodInsnNode(opcode, owner, name, descriptor, isInterface));
-        } else if (invoke instanceof DynamicInvoke) {
-            DynamicInvoke dynamicInvoke = (DynamicInvoke) invoke;
-            String name = dynamicInvoke.getName();
-            String descriptor = AsmUtil.methodDescriptorToString(dynamicInvoke.getDescriptor());
-            org.objectweb.asm.Handle asmBootstrapHandle = convertHandle(dynamicInvoke.getBootstrapMethod());
-            Object[] asmBootstrapArguments = dynamicInvoke.getBootstrapArguments().stream()
-                    .map(this::convertBootstrapConstant)
-                    .toArray();
-
-            visitConvertedInsn(new InvokeDynamicInsnNode(name, descriptor, asmBootstrapHandle, asmBootstrapArguments));
-        } else {
-            throw new AssertionError();
+        ctx.registerLabel(defaultTarget, RWCell.of(() -> node.dflt, x -> node.dflt = x, LabelNode.class));
+        for (int i = 0; i < targets.size(); i++) {
+            int index = i;
+            ctx.registerLabel(targets.get(i), RWCell.of(() -> node.labels.get(index), x -> node.labels.set(index, x), LabelNode.class));
         }
-    }
-
-    private Object convertBootstrapConstant(BootstrapConstant constant) {
-        if (constant instanceof IntConstant) {
-            return ((IntConstant) constant).getValue();
-        } else if (constant instanceof LongConstant) {
-            return ((LongConstant) constant).getValue();
-        } else if (constant instanceof FloatConstant) {
-            return ((FloatConstant) constant).getValue();
-        } else if (constant instanceof DoubleConstant) {
-            return ((DoubleConstant) constant).getValue();
-        } else if (constant instanceof StringConstant) {
-            return ((StringConstant) constant).getValue();
-        } else if (constant instanceof ClassConstant) {
-            RefType refType = ((ClassConstant) constant).getValue();
-            return AsmUtil.toAsmType(refType);
-        } else if (constant instanceof HandleConstant) {
-            Handle handle = ((HandleConstant) constant).getHandle();
-            return convertHandle(handle);
-        } else if (constant instanceof MethodTypeConstant) {
-            MethodTypeConstant methodType = (MethodTypeConstant) constant;
-            return AsmUtil.methodDescriptorToType(methodType.getReturnType(), methodType.getArgumentTypes());
-        } else {
-            throw new AssertionError();
-        }
-    }
 
-    @Override
-    public void visitGoto(Instruction target) {
-        convertJumpInsnNode(target, Opcodes.GOTO);
-    }
-
-    @Override
-    public void visitIf(IfInsn.Condition condition, Instruction target) {
-        convertJumpInsnNode(target, getIfOpcode(condition));
-    }
-
-    private void convertJumpInsnNode(Instruction target, int aGoto) {
-        JumpInsnNode node = new JumpInsnNode(aGoto, null);
-        ctx.registerLabel(target, RWCell.of(() -> node.label, x -> node.label = x, LabelNode.class));
         visitConvertedInsn(node);
     }
 
-    private int getIfOpcode(IfInsn.Condition condition) {
-        if (condition instanceof IfInsn.IntCondition) {
-            IfInsn.IntCondition intCondition = (IfInsn.IntCondition) condition;
-            IfInsn.IntCompareValue compareValue = intCondition.getCompareValue();
-            IfInsn.IntComparison comparison = intCondition.getComparison();
-
-            if (compareValue instanceof IfInsn.ZeroValue) {
-                return comparison instanceof IfInsn.EQ ? Opcodes.IFEQ :
-                        comparison instanceof IfInsn.NE ? Opcodes.IFNE :
-                        comparison instanceof IfInsn.GE ? Opcodes.IFGE :
-                        comparison instanceof IfInsn.GT ? Opcodes.IFGT :
-                        comparison instanceof IfInsn.LE ? Opcodes.IFLE :
-                        comparison instanceof IfInsn.LT ? Opcodes.IFLT :
-                        assertionError();
-            } else if (compareValue instanceof IfInsn.StackValue) {
-                return comparison instanceof IfInsn.EQ ? Opcodes.IF_ICMPEQ :
-                        comparison instanceof IfInsn.NE ? Opcodes.IF_ICMPNE :
-                        comparison instanceof IfInsn.GE ? Opcodes.IF_ICMPGE :
-                        comparison instanceof IfInsn.GT ? Opcodes.IF_ICMPGT :
-                        comparison instanceof IfInsn.LE ? Opcodes.IF_ICMPLE :
-                        comparison instanceof IfInsn.LT ? Opcodes.IF_ICMPLT :
-                        assertionError();
-            }
-        } else if (condition instanceof IfInsn.ReferenceCondition) {
-            IfInsn.ReferenceCondition refCondition = (IfInsn.ReferenceCondition) condition;
-            IfInsn.ReferenceCompareValue compareValue = refCondition.getCompareValue();
-            IfInsn.ReferenceComparison comparison = refCondition.getComparison();
+    @Override
+    protected void writeLookupSwitchInsn(Instruction defaultTarget, int[] keys, List<Instruction> targets) {
+        LookupSwitchInsnNode node = new LookupSwitchInsnNode(null, keys, new LabelNode[targets.size()]);
 
-            if (compareValue instanceof IfInsn.NullValue) {
-                return comparison instanceof IfInsn.EQ ? Opcodes.IFNULL:
-                        comparison instanceof IfInsn.NE ? Opcodes.IFNONNULL:
-                        assertionError();
-            } else if (compareValue instanceof IfInsn.StackValue) {
-                return comparison instanceof IfInsn.EQ ? Opcodes.IF_ACMPEQ:
-                        comparison instanceof IfInsn.NE ? Opcodes.IF_ACMPNE:
-                        assertionError();
-            }
+        ctx.registerLabel(defaultTarget, RWCell.of(() -> node.dflt, x -> node.dflt = x, LabelNode.class));
+        for (int i = 0; i < targets.size(); i++) {
+            int index = i;
+            ctx.registerLabel(targets.get(i), RWCell.of(() -> node.labels.get(index), x -> node.labels.set(index, x), LabelNode.class));
         }
 
-        throw new AssertionError();
+        visitConvertedInsn(node);
     }
 
     @Override
-    public void visitSwitch(Map<Integer, Instruction> targetTable, Instruction defaultTarget) {
-        TreeSet<Integer> keySet = new TreeSet<>(targetTable.keySet());
-        if (isTableSwitch(keySet)) {
-            int min = keySet.first();
-            int max = keySet.last();
-            TableSwitchInsnNode node = new TableSwitchInsnNode(min, max, null, new LabelNode[max - min + 1]);
-
-            ctx.registerLabel(defaultTarget, RWCell.of(() -> node.dflt, x -> node.dflt = x, LabelNode.class));
-            IntStream.rangeClosed(min, max).forEach(key -> {
-                Instruction target = targetTable.get(key);
-                ctx.registerLabel(target, RWCell.of(() -> node.labels.get(key), x -> node.labels.set(key, x), LabelNode.class));
-            });
-
-            visitConvertedInsn(node);
-        } else {
-            int[] keys = targetTable.keySet().stream().mapToInt(Integer::intValue).toArray();
-            LabelNode[] labels = new LabelNode[targetTable.size()];
-            LookupSwitchInsnNode node = new LookupSwitchInsnNode(null, keys, labels);
-
-            ctx.registerLabel(defaultTarget, RWCell.of(() -> node.dflt, x -> node.dflt = x, LabelNode.class));
-            targetTable.forEach((key, value) -> {
-                int index = node.keys.indexOf(key);
-                ctx.registerLabel(value, RWCell.of(() -> node.labels.get(index), x -> node.labels.set(index, x), LabelNode.class));
-            });
-
-            visitConvertedInsn(node);
-        }
-    }
-
-    private boolean isTableSwitch(TreeSet<Integer> keys) {
-        Integer prevKey = null;
-
-        for (Integer key : keys) {
-            if (prevKey != null && key != prevKey + 1) {
-                return false;
-            }
-            prevKey = key;
-        }
-
-        return true;
+    protected void writeMultiANewArrayInsn(String descriptor, int dimensions) {
+        visitConvertedInsn(new MultiANewArrayInsnNode(descriptor, dimensions));
     }
 }
@@ -15,8 +15,6 @@ import io.runebox.kasm.ir.util.StackInsnVisitor;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
-import org.objectweb.asm.tree.analysis.BasicValue;
-import org.objectweb.asm.tree.analysis.Frame;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -34,14 +32,34 @@ import java.util.stream.IntStream;
 public class AsmInsnReader {
     private final StackInsnVisitor<LabelNode, Integer> iv;
 
-    public AsmInsnReader(StackInsnVisitor<LabelNode, Integer> iv, ConversionContext ctx) {
+    public AsmInsnReader(StackInsnVisitor<LabelNode, Integer> iv) {
         this.iv = iv;
     }
 
-    public void accept(AbstractInsnNode insn, Frame<BasicValue> frame) {
+    public AsmInsnReader(StackInsnVisitor<LabelNode, Integer> iv, ConversionContext ctx) {
+        this(iv);
+    }
+
+    /**
+     * Visit the events of an instruction.
+     *
+     * @param insn the instruction
+     * @param analysis analysis of the method containing the instruction
+     */
+    public void accept(AbstractInsnNode insn, AsmStackAnalysis analysis) {
+        accept(insn, analysis.getStackLayout(insn));
+    }
+
+    /**
+     * Visit the events of an instruction.
+     *
+     * @param insn the instruction
+     * @param stackLayout the {@link AsmStackEmulator#getStackLayout() layout} of the stack before the instruction
+     */
+    public void accept(AbstractInsnNode insn, int stackLayout) {
         switch (insn.getType()) {
             case AbstractInsnNode.INSN:
-                convertInsnNode((InsnNode) insn, frame);
+                convertInsnNode((InsnNode) insn, stackLayout);
                 break;
 
             case AbstractInsnNode.INT_INSN:
@@ -102,7 +120,7 @@ public class AsmInsnReader {
         }
     }
 
-    private void convertInsnNode(InsnNode insn, Frame<BasicValue> frame) {
+    private void convertInsnNode(InsnNode insn, int stackLayout) {
         int opcode = insn.getOpcode();
         switch (opcode) {
             case Opcodes.NOP:
@@ -169,7 +187,7 @@ public class AsmInsnReader {
             case Opcodes.DUP2_X1:
             case Opcodes.DUP2_X2:
             case Opcodes.SWAP:
-                visitStackInsns(insn, frame);
+                visitStackInsns(insn, stackLayout);
                 break;
 
             case Opcodes.IADD:
@@ -303,24 +321,24 @@ public class AsmInsnReader {
         }
     }
 
-    private void visitStackInsns(InsnNode insn, Frame<BasicValue> frame) {
+    private void visitStackInsns(InsnNode insn, int stackLayout) {
         switch (insn.getOpcode()) {
             case Opcodes.SWAP:
-                if (is32bit(frame, 0)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
                     iv.visitSwap();
                     break;
                 }
                 throw new StackTypeException();
 
             case Opcodes.POP:
-                if (is32bit(frame, 0)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
                     iv.visitPop();
                     break;
                 }
                 throw new StackTypeException();
 
             case Opcodes.POP2:
-                if (is32bit(frame, 0)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
                     // Form 1
                     iv.visitPop();
                     iv.visitPop();
@@ -332,23 +350,23 @@ public class AsmInsnReader {
                 }
 
             case Opcodes.DUP:
-                if (is32bit(frame, 0)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
                     iv.visitDup();
                     break;
                 }
                 throw new StackTypeException();
 
             case Opcodes.DUP_X1:
-                if (is32bit(frame, 0) && is32bit(frame, 1)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0) && AsmStackEmulator.is32bit(stackLayout, 1)) {
                     iv.visitDupX1();
                     break;
                 }
                 throw new StackTypeException();
 
             case Opcodes.DUP_X2:
-                if (is32bit(frame, 0)) {
-                    if (is32bit(frame, 1)) {
-                        if (is32bit(frame, 2)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
+                        if (AsmStackEmulator.is32bit(stackLayout, 2)) {
                             // Form 1
                             iv.visitDupX2();
                             break;
@@ -362,8 +380,8 @@ public class AsmInsnReader {
                 throw new StackTypeException();
 
             case Opcodes.DUP2:
-                if (is32bit(frame, 0)) {
-                    if (is32bit(frame, 1)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
                         // Form 1
                         iv.visitDup2();
                         break;
@@ -376,16 +394,16 @@ public class AsmInsnReader {
                 throw new StackTypeException();
 
             case Opcodes.DUP2_X1:
-                if (is32bit(frame, 0)) {
-                    if (is32bit(frame, 1)) {
-                        if (is32bit(frame, 2)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
+                        if (AsmStackEmulator.is32bit(stackLayout, 2)) {
                             // Form 1
                             iv.visitDup2X1();
                             break;
                         }
                     }
                 } else {
-                    if (is32bit(frame, 1)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
                         // Form 2
                         iv.visitDupX1();
                         break;
@@ -394,10 +412,10 @@ public class AsmInsnReader {
                 throw new StackTypeException();
 
             case Opcodes.DUP2_X2:
-                if (is32bit(frame, 0)) {
-                    if (is32bit(frame, 1)) {
-                        if (is32bit(frame, 2)) {
-                            if (is32bit(frame, 3)) {
+                if (AsmStackEmulator.is32bit(stackLayout, 0)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
+                        if (AsmStackEmulator.is32bit(stackLayout, 2)) {
+                            if (AsmStackEmulator.is32bit(stackLayout, 3)) {
                                 // Form 1
                                 iv.visitDup2X2();
                                 break;
@@ -409,8 +427,8 @@ public class AsmInsnReader {
                         }
                     }
                 } else {
-                    if (is32bit(frame, 1)) {
-                        if (is32bit(frame, 2)) {
+                    if (AsmStackEmulator.is32bit(stackLayout, 1)) {
+                        if (AsmStackEmulator.is32bit(stackLayout, 2)) {
                             // Form 2
                             iv.visitDupX2();
                             break;
@@ -428,21 +446,6 @@ public class AsmInsnReader {
         }
     }
 
-    /**
-     * Is a value n-elements down in the stack of computational type 1.
-     *
-     * @param frame frame of the current instruction
-     * @param index index of stack where 0 is the must recent value
-     * @return is the value of computational type 1
-     */
-    private boolean is32bit(Frame<BasicValue> frame, int index) {
-        BasicValue value = frame.getStack(frame.getStackSize() - 1 - index);
-        int sort = value.getType().getSort();
-
-        return sort != org.objectweb.asm.Type.LONG &&
-                sort != org.objectweb.asm.Type.DOUBLE;
-    }
-
     private Type getArrayLoadType(int opcode) {
         switch (opcode) {
             case Opcodes.IALOAD: return IntType.getInstance();
@@ -941,7 +944,7 @@ public class AsmInsnReader {
     }
 
     private void convertTableSwitchInsnNode(TableSwitchInsnNode insn) {
-        Map<Integer, LabelNode> table = new HashMap<>();
+        Map<Integer, LabelNode> table = new LinkedHashMap<>();
         Iterator<LabelNode> labelIter = insn.labels.iterator();
         for (int key = insn.min; key <= insn.max; key++) {
             table.put(key, labelIter.next());
@@ -951,7 +954,7 @@ public class AsmInsnReader {
     }
 
     private void convertLookupSwitchInsnNode(LookupSwitchInsnNode insn) {
-        Map<Integer, LabelNode> table = new HashMap<>();
+        Map<Integer, LabelNode> table = new LinkedHashMap<>();
         Iterator<LabelNode> labelIter = insn.labels.iterator();
         for (Integer key : insn.keys) {
             table.put(key, labelIter.next());
@@ -0,0 +1,241 @@
+package io.runebox.kasm.ir.conversion;
+
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.Arrays;
+
+/**
+ * Analysis of an asm {@link MethodNode} that computes which instructions are reachable
+ * and the computational types of the values on top of the stack before each instruction.
+ *
+ * This is all the {@link AsmInsnReader} needs to know about a method.
+ * Unlike an {@link org.objectweb.asm.tree.analysis.Analyzer} it neither tracks locals nor allocates a frame per instruction:
+ * the stack is emulated by one {@link AsmStackEmulator} and only the state at branch targets is stored.
+ *
+ * If the method contains frames read from a StackMapTable, the stack of each frame is taken over as is
+ * and the states of the branches that lead to it are not checked against each other.
+ */
+public class AsmStackAnalysis {
+    /**
+     * Bits 0 to 3 of an instruction's info are its {@link AsmStackEmulator#getStackLayout() stack layout}.
+     */
+    private static final int STACK_LAYOUT_MASK = 0b1111;
+
+    /**
+     * The instruction can be reached.
+     */
+    private static final int REACHABLE = 0b1_0000;
+
+    /**
+     * The instruction is a label that is targeted by a jump, switch or exception handler.
+     */
+    private static final int TARGET = 0b10_0000;
+
+    private final MethodNode mn;
+
+    private AbstractInsnNode[] insns;
+
+    /**
+     * Reachability and the computational types on top of the stack for each instruction.
+     */
+    private byte[] infos;
+
+    /**
+     * Computational types of all values on the stack for each target that was reached, otherwise <tt>null</tt>.
+     */
+    private byte[][] targetStacks;
+
+    /**
+     * Targets whose state is known but that were not emulated yet.
+     */
+    private int[] worklist = new int[16];
+    private int worklistSize;
+
+    /**
+     * Should the stacks of frames in the method be trusted.
+     */
+    private boolean useFrames;
+
+    private final AsmStackEmulator emulator = new AsmStackEmulator();
+
+    public AsmStackAnalysis(MethodNode mn) {
+        this.mn = mn;
+    }
+
+    /**
+     * Analyse the method.
+     *
+     * @throws AnalyzerException if the stack of the method is malformed
+     */
+    public void analyze() throws AnalyzerException {
+        this.insns = mn.instructions.toArray();
+        this.infos = new byte[insns.length];
+        this.targetStacks = new byte[insns.length][];
+        if (insns.length == 0) {
+            return;
+        }
+
+        markTargets();
+
+        emulator.setStack(new byte[0]);
+        mergeInto(0);
+        emulateWorklist();
+
+        // Handlers of reachable instructions may make further handlers reachable
+        boolean changed;
+        do {
+            changed = false;
+            for (TryCatchBlockNode block : mn.tryCatchBlocks) {
+                int handler = mn.instructions.indexOf(block.handler);
+                if (targetStacks[handler] == null && !isRangeEmpty(block)) {
+                    emulator.setStack(new byte[] { 1 });
+                    mergeInto(handler);
+                    emulateWorklist();
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * Check whether an instruction can be reached.
+     *
+     * @param index of the instruction within the method
+     * @return is the instruction reachable
+     */
+    public boolean isReachable(int index) {
+        return (infos[index] & REACHABLE) != 0;
+    }
+
+    /**
+     * Check whether an instruction can be reached.
+     *
+     * @param insn the instruction
+     * @return is the instruction reachable
+     */
+    public boolean isReachable(AbstractInsnNode insn) {
+        return isReachable(mn.instructions.indexOf(insn));
+    }
+
+    /**
+     * Get the computational types of the values on top of the stack before an instruction.
+     *
+     * @param insn the reachable instruction
+     * @return the {@link AsmStackEmulator#getStackLayout() layout} of the stack
+     */
+    public int getStackLayout(AbstractInsnNode insn) {
+        return infos[mn.instructions.indexOf(insn)] & STACK_LAYOUT_MASK;
+    }
+
+    private void markTargets() {
+        for (AbstractInsnNode insn : insns) {
+            if (insn instanceof JumpInsnNode) {
+                markTarget(((JumpInsnNode) insn).label);
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode switchInsn = (TableSwitchInsnNode) insn;
+                markTarget(switchInsn.dflt);
+                switchInsn.labels.forEach(this::markTarget);
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode switchInsn = (LookupSwitchInsnNode) insn;
+                markTarget(switchInsn.dflt);
+                switchInsn.labels.forEach(this::markTarget);
+            } else if (insn instanceof FrameNode) {
+                useFrames = true;
+            }
+        }
+
+        for (TryCatchBlockNode block : mn.tryCatchBlocks) {
+            markTarget(block.handler);
+        }
+    }
+
+    private void markTarget(LabelNode label) {
+        infos[mn.instructions.indexOf(label)] |= TARGET;
+    }
+
+    /**
+     * Check whether all instructions protected by a try/catch block are unreachable.
+     */
+    private boolean isRangeEmpty(TryCatchBlockNode block) {
+        int end = mn.instructions.indexOf(block.end);
+        for (int i = mn.instructions.indexOf(block.start); i < end; i++) {
+            if (isReachable(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge the current stack into the state of a target.
+     */
+    private void mergeInto(int index) throws AnalyzerException {
+        byte[] targetStack = targetStacks[index];
+        if (targetStack == null) {
+            targetStacks[index] = emulator.getStack();
+            if (worklistSize == worklist.length) {
+                worklist = Arrays.copyOf(worklist, worklistSize * 2);
+            }
+            worklist[worklistSize++] = index;
+        } else if (!useFrames && !Arrays.equals(targetStack, emulator.getStack())) {
+            throw new AnalyzerException(insns[index], "Incompatible stack heights or computational types");
+        }
+    }
+
+    private void emulateWorklist() throws AnalyzerException {
+        while (worklistSize > 0) {
+            int index = worklist[--worklistSize];
+            emulator.setStack(targetStacks[index]);
+            emulateFrom(index);
+        }
+    }
+
+    /**
+     * Emulate the straight-line code starting at an instruction until the next jump or target.
+     */
+    private void emulateFrom(int index) throws AnalyzerException {
+        while (true) {
+            AbstractInsnNode insn = insns[index];
+            if (insn instanceof FrameNode) {
+                emulator.setFrameStack(((FrameNode) insn).type, ((FrameNode) insn).stack);
+            }
+
+            infos[index] |= REACHABLE | emulator.getStackLayout();
+
+            emulator.execute(insn);
+            mergeIntoTargets(insn);
+            if (AsmStackEmulator.isUnconditional(insn.getOpcode())) {
+                return;
+            }
+
+            index++;
+            if (index == insns.length) {
+                throw new AnalyzerException(insn, "Execution can fall off the end of the code");
+            }
+
+            if ((infos[index] & TARGET) != 0) {
+                mergeInto(index);
+                return;
+            }
+        }
+    }
+
+    private void mergeIntoTargets(AbstractInsnNode insn) throws AnalyzerException {
+        if (insn instanceof JumpInsnNode) {
+            mergeInto(mn.instructions.indexOf(((JumpInsnNode) insn).label));
+        } else if (insn instanceof TableSwitchInsnNode) {
+            TableSwitchInsnNode switchInsn = (TableSwitchInsnNode) insn;
+            mergeInto(mn.instructions.indexOf(switchInsn.dflt));
+            for (LabelNode label : switchInsn.labels) {
+                mergeInto(mn.instructions.indexOf(label));
+            }
+        } else if (insn instanceof LookupSwitchInsnNode) {
+            LookupSwitchInsnNode switchInsn = (LookupSwitchInsnNode) insn;
+            mergeInto(mn.instructions.indexOf(switchInsn.dflt));
+            for (LabelNode label : switchInsn.labels) {
+                mergeInto(mn.instructions.indexOf(label));
+            }
+        }
+    }
+}
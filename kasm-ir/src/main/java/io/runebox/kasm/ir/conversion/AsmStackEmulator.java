@@ -0,0 +1,558 @@
+package io.runebox.kasm.ir.conversion;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Emulates the computational types of the values on the stack of a method, one instruction at a time.
+ *
+ * The emulator only knows about straight-line code, following jumps is up to the user.
+ * It may also start without knowing the values at the bottom of the stack,
+ * e.g. after an unconditional jump in a method without frames.
+ * Instructions that pop such values are emulated as far as possible.
+ *
+ * The layout of the top of the stack is encoded as an <tt>int</tt>,
+ * see {@link #getStackLayout()} and {@link #is32bit(int, int)}.
+ */
+public class AsmStackEmulator {
+    /**
+     * Computational types of the current stack, only the first {@link #height} entries are valid.
+     */
+    private byte[] stack = new byte[16];
+    private int height;
+
+    /**
+     * Are there values of unknown computational types below the {@link #stack}.
+     */
+    private boolean bottomUnknown;
+
+    /**
+     * Is a value n-elements down in a stack layout of computational type 1.
+     *
+     * @param stackLayout the layout of the stack, see {@link #getStackLayout()}
+     * @param index index of stack where 0 is the must recent value, at most 3
+     * @return is the value of computational type 1
+     */
+    public static boolean is32bit(int stackLayout, int index) {
+        return (stackLayout & (1 << index)) == 0;
+    }
+
+    /**
+     * Check whether the next instruction can never be reached from an instruction.
+     *
+     * @param opcode of the instruction
+     * @return does the instruction always jump, return or throw
+     */
+    public static boolean isUnconditional(int opcode) {
+        switch (opcode) {
+            case Opcodes.GOTO:
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH:
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.RETURN:
+            case Opcodes.ATHROW:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the computational types of the top four values of the stack.
+     * Bit n is set if the value n-elements down in the stack is of computational type 2.
+     *
+     * @return the layout of the stack
+     */
+    public int getStackLayout() {
+        int layout = 0;
+        for (int depth = 0; depth < 4 && depth < height; depth++) {
+            if (stack[height - 1 - depth] == 2) {
+                layout |= 1 << depth;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Check whether the computational types of some values at the bottom of the stack are unknown.
+     *
+     * @return are values at the bottom of the stack unknown
+     */
+    public boolean isBottomUnknown() {
+        return bottomUnknown;
+    }
+
+    /**
+     * Forget all values on the stack.
+     */
+    public void setUnknown() {
+        this.height = 0;
+        this.bottomUnknown = true;
+    }
+
+    /**
+     * Get a copy of the computational types of all values on the stack.
+     *
+     * @return the computational types, 1 or 2, with the bottom of the stack first
+     * @throws IllegalStateException if the bottom of the stack is unknown
+     */
+    public byte[] getStack() {
+        if (bottomUnknown) {
+            throw new IllegalStateException("The stack is unknown");
+        }
+        return Arrays.copyOf(stack, height);
+    }
+
+    /**
+     * Replace the stack.
+     *
+     * @param categories computational types, 1 or 2, with the bottom of the stack first
+     */
+    public void setStack(byte[] categories) {
+        ensureCapacity(categories.length);
+        System.arraycopy(categories, 0, stack, 0, categories.length);
+        this.height = categories.length;
+        this.bottomUnknown = false;
+    }
+
+    /**
+     * Replace the stack with the stack of a frame.
+     *
+     * @param type the type of the frame, e.g. {@link Opcodes#F_NEW}
+     * @param frameStack the stack of the frame, as in a {@link FrameNode}
+     */
+    public void setFrameStack(int type, List<Object> frameStack) {
+        if (type != Opcodes.F_NEW && type != Opcodes.F_FULL && type != Opcodes.F_SAME1) {
+            frameStack = List.of();
+        }
+
+        this.height = 0;
+        this.bottomUnknown = false;
+        ensureCapacity(frameStack.size());
+        for (Object value : frameStack) {
+            stack[height++] = (byte) (Opcodes.LONG.equals(value) || Opcodes.DOUBLE.equals(value) ? 2 : 1);
+        }
+    }
+
+    /**
+     * Apply the effect of an instruction to the stack.
+     *
+     * @param insn the instruction
+     * @return could the computational types of the values that the instruction manipulates be determined.
+     *         If not, the stack becomes {@link #isBottomUnknown() unknown}.
+     * @throws AnalyzerException if the instruction pops more values than the stack contains
+     */
+    public boolean execute(AbstractInsnNode insn) throws AnalyzerException {
+        int opcode = insn.getOpcode();
+        switch (opcode) {
+            case -1:
+            case Opcodes.NOP:
+            case Opcodes.IINC:
+            case Opcodes.GOTO:
+            case Opcodes.RETURN:
+                return true;
+
+            case Opcodes.ACONST_NULL:
+            case Opcodes.ICONST_M1:
+            case Opcodes.ICONST_0:
+            case Opcodes.ICONST_1:
+            case Opcodes.ICONST_2:
+            case Opcodes.ICONST_3:
+            case Opcodes.ICONST_4:
+            case Opcodes.ICONST_5:
+            case Opcodes.FCONST_0:
+            case Opcodes.FCONST_1:
+            case Opcodes.FCONST_2:
+            case Opcodes.BIPUSH:
+            case Opcodes.SIPUSH:
+            case Opcodes.ILOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.ALOAD:
+            case Opcodes.NEW:
+                push(1);
+                return true;
+
+            case Opcodes.LCONST_0:
+            case Opcodes.LCONST_1:
+            case Opcodes.DCONST_0:
+            case Opcodes.DCONST_1:
+            case Opcodes.LLOAD:
+            case Opcodes.DLOAD:
+                push(2);
+                return true;
+
+            case Opcodes.LDC:
+                push(getLdcCategory(((LdcInsnNode) insn).cst));
+                return true;
+
+            case Opcodes.IALOAD:
+            case Opcodes.FALOAD:
+            case Opcodes.AALOAD:
+            case Opcodes.BALOAD:
+            case Opcodes.CALOAD:
+            case Opcodes.SALOAD:
+            case Opcodes.IADD:
+            case Opcodes.FADD:
+            case Opcodes.ISUB:
+            case Opcodes.FSUB:
+            case Opcodes.IMUL:
+            case Opcodes.FMUL:
+            case Opcodes.IDIV:
+            case Opcodes.FDIV:
+            case Opcodes.IREM:
+            case Opcodes.FREM:
+            case Opcodes.ISHL:
+            case Opcodes.ISHR:
+            case Opcodes.IUSHR:
+            case Opcodes.IAND:
+            case Opcodes.IOR:
+            case Opcodes.IXOR:
+            case Opcodes.LCMP:
+            case Opcodes.FCMPL:
+            case Opcodes.FCMPG:
+            case Opcodes.DCMPL:
+            case Opcodes.DCMPG:
+                pop(insn, 2);
+                push(1);
+                return true;
+
+            case Opcodes.LALOAD:
+            case Opcodes.DALOAD:
+            case Opcodes.LADD:
+            case Opcodes.DADD:
+            case Opcodes.LSUB:
+            case Opcodes.DSUB:
+            case Opcodes.LMUL:
+            case Opcodes.DMUL:
+            case Opcodes.LDIV:
+            case Opcodes.DDIV:
+            case Opcodes.LREM:
+            case Opcodes.DREM:
+            case Opcodes.LSHL:
+            case Opcodes.LSHR:
+            case Opcodes.LUSHR:
+            case Opcodes.LAND:
+            case Opcodes.LOR:
+            case Opcodes.LXOR:
+                pop(insn, 2);
+                push(2);
+                return true;
+
+            case Opcodes.ISTORE:
+            case Opcodes.LSTORE:
+            case Opcodes.FSTORE:
+            case Opcodes.DSTORE:
+            case Opcodes.ASTORE:
+            case Opcodes.PUTSTATIC:
+            case Opcodes.MONITORENTER:
+            case Opcodes.MONITOREXIT:
+                pop(insn, 1);
+                return true;
+
+            case Opcodes.IASTORE:
+            case Opcodes.LASTORE:
+            case Opcodes.FASTORE:
+            case Opcodes.DASTORE:
+            case Opcodes.AASTORE:
+            case Opcodes.BASTORE:
+            case Opcodes.CASTORE:
+            case Opcodes.SASTORE:
+                pop(insn, 3);
+                return true;
+
+            case Opcodes.PUTFIELD:
+                pop(insn, 2);
+                return true;
+
+            case Opcodes.POP:
+            case Opcodes.POP2:
+            case Opcodes.DUP:
+            case Opcodes.DUP_X1:
+            case Opcodes.DUP_X2:
+            case Opcodes.DUP2:
+            case Opcodes.DUP2_X1:
+            case Opcodes.DUP2_X2:
+            case Opcodes.SWAP:
+                return executeStackInsn(insn);
+
+            case Opcodes.INEG:
+            case Opcodes.LNEG:
+            case Opcodes.FNEG:
+            case Opcodes.DNEG:
+                pop(insn, 1);
+                push(opcode == Opcodes.LNEG || opcode == Opcodes.DNEG ? 2 : 1);
+                return true;
+
+            case Opcodes.I2F:
+            case Opcodes.L2I:
+            case Opcodes.L2F:
+            case Opcodes.F2I:
+            case Opcodes.D2I:
+            case Opcodes.D2F:
+            case Opcodes.I2B:
+            case Opcodes.I2C:
+            case Opcodes.I2S:
+            case Opcodes.GETFIELD:
+            case Opcodes.NEWARRAY:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.ARRAYLENGTH:
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+                pop(insn, 1);
+                push(opcode == Opcodes.GETFIELD ? getCategory(((FieldInsnNode) insn).desc.charAt(0)) : 1);
+                return true;
+
+            case Opcodes.I2L:
+            case Opcodes.I2D:
+            case Opcodes.L2D:
+            case Opcodes.F2L:
+            case Opcodes.F2D:
+            case Opcodes.D2L:
+                pop(insn, 1);
+                push(2);
+                return true;
+
+            case Opcodes.IFEQ:
+            case Opcodes.IFNE:
+            case Opcodes.IFLT:
+            case Opcodes.IFGE:
+            case Opcodes.IFGT:
+            case Opcodes.IFLE:
+            case Opcodes.IFNULL:
+            case Opcodes.IFNONNULL:
+                pop(insn, 1);
+                return true;
+
+            case Opcodes.IF_ICMPEQ:
+            case Opcodes.IF_ICMPNE:
+            case Opcodes.IF_ICMPLT:
+            case Opcodes.IF_ICMPGE:
+            case Opcodes.IF_ICMPGT:
+            case Opcodes.IF_ICMPLE:
+            case Opcodes.IF_ACMPEQ:
+            case Opcodes.IF_ACMPNE:
+                pop(insn, 2);
+                return true;
+
+            case Opcodes.JSR:
+            case Opcodes.RET:
+                throw new IllegalStateException("Subroutine was not inlined by JSRInlinerAdapter");
+
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH:
+                pop(insn, 1);
+                return true;
+
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.ATHROW:
+                pop(insn, 1);
+                return true;
+
+            case Opcodes.GETSTATIC:
+                push(getCategory(((FieldInsnNode) insn).desc.charAt(0)));
+                return true;
+
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE: {
+                String desc = ((MethodInsnNode) insn).desc;
+                pop(insn, countArguments(desc) + (opcode == Opcodes.INVOKESTATIC ? 0 : 1));
+                pushReturnValue(desc);
+                return true;
+            }
+
+            case Opcodes.INVOKEDYNAMIC: {
+                String desc = ((InvokeDynamicInsnNode) insn).desc;
+                pop(insn, countArguments(desc));
+                pushReturnValue(desc);
+                return true;
+            }
+
+            case Opcodes.MULTIANEWARRAY:
+                pop(insn, ((MultiANewArrayInsnNode) insn).dims);
+                push(1);
+                return true;
+
+            default:
+                throw new AssertionError();
+        }
+    }
+
+
+    private boolean executeStackInsn(AbstractInsnNode insn) throws AnalyzerException {
+        int count;
+        int skip = 0;
+        switch (insn.getOpcode()) {
+            case Opcodes.POP:
+                count = countEntries(insn, 0, 1);
+                break;
+
+            case Opcodes.POP2:
+                count = countEntries(insn, 0, 2);
+                break;
+
+            case Opcodes.DUP:
+            case Opcodes.DUP_X1:
+            case Opcodes.DUP_X2:
+            case Opcodes.SWAP:
+                count = countEntries(insn, 0, 1);
+                break;
+
+            default:
+                count = countEntries(insn, 0, 2);
+                break;
+        }
+
+        switch (insn.getOpcode()) {
+            case Opcodes.DUP_X1:
+            case Opcodes.DUP2_X1:
+            case Opcodes.SWAP:
+                skip = count < 0 ? -1 : countEntries(insn, count, 1);
+                break;
+
+            case Opcodes.DUP_X2:
+            case Opcodes.DUP2_X2:
+                skip = count < 0 ? -1 : countEntries(insn, count, 2);
+                break;
+        }
+
+        if (count < 0 || skip < 0) {
+            setUnknown();
+            return false;
+        }
+
+        switch (insn.getOpcode()) {
+            case Opcodes.POP:
+            case Opcodes.POP2:
+                height -= count;
+                break;
+
+            case Opcodes.SWAP:
+                // Both values are of computational type 1, so the swap does not change the layout
+                break;
+
+            default:
+                dup(count, skip);
+                break;
+        }
+        return true;
+    }
+
+    private static int getLdcCategory(Object constant) {
+        if (constant instanceof Long || constant instanceof Double) {
+            return 2;
+        } else if (constant instanceof ConstantDynamic) {
+            return getCategory(((ConstantDynamic) constant).getDescriptor().charAt(0));
+        } else {
+            return 1;
+        }
+    }
+
+    private static int getCategory(char descriptor) {
+        return descriptor == 'J' || descriptor == 'D' ? 2 : 1;
+    }
+
+    /**
+     * Count the parameters of a method descriptor without parsing their types.
+     */
+    private static int countArguments(String desc) {
+        int count = 0;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            while (desc.charAt(i) == '[') {
+                i++;
+            }
+            if (desc.charAt(i) == 'L') {
+                i = desc.indexOf(';', i);
+            }
+            i++;
+            count++;
+        }
+        return count;
+    }
+
+    private void pushReturnValue(String desc) {
+        char returnType = desc.charAt(desc.indexOf(')') + 1);
+        if (returnType != 'V') {
+            push(getCategory(returnType));
+        }
+    }
+
+    private void push(int category) {
+        ensureCapacity(height + 1);
+        stack[height++] = (byte) category;
+    }
+
+    private void pop(AbstractInsnNode insn, int count) throws AnalyzerException {
+        if (count <= height) {
+            height -= count;
+        } else if (bottomUnknown) {
+            height = 0;
+        } else {
+            throw new AnalyzerException(insn, "Stack underflow");
+        }
+    }
+
+    /**
+     * Count the values on the stack that occupy exactly some words.
+     *
+     * @param insn the instruction that accesses the values
+     * @param depth number of values on top of the stack that are skipped
+     * @param words number of words the values occupy
+     * @return number of values or -1 if the values are unknown
+     * @throws AnalyzerException if a value of computational type 2 would be split
+     */
+    private int countEntries(AbstractInsnNode insn, int depth, int words) throws AnalyzerException {
+        int count = 0;
+        while (words > 0) {
+            int index = height - 1 - depth - count;
+            if (index < 0) {
+                if (bottomUnknown) {
+                    return -1;
+                }
+                throw new AnalyzerException(insn, "Stack underflow");
+            }
+            words -= stack[index];
+            count++;
+        }
+        if (words < 0) {
+            throw new AnalyzerException(insn, "Illegal use of a value of computational type 2");
+        }
+        return count;
+    }
+
+    /**
+     * Duplicate values on top of the stack and insert them below other values.
+     *
+     * @param count number of values to duplicate
+     * @param skip number of values below the duplicated values that the copies are inserted below
+     */
+    private void dup(int count, int skip) {
+        ensureCapacity(height + count);
+        int start = height - count - skip;
+        System.arraycopy(stack, start, stack, start + count, count + skip);
+        System.arraycopy(stack, height, stack, start, count);
+        height += count;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+}
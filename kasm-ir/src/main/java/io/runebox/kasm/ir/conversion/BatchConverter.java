@@ -0,0 +1,586 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.metrics.LatencyHistogram;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Convert many classes at once by spreading the work over a {@link ForkJoinPool}.
+ *
+ * The classes are parsed and written in parallel per class.
+ * The conversions of the method bodies are split per method and scheduled by instruction count,
+ * so that a few huge methods are started first instead of becoming the tail of the batch.
+ *
+ * Results are always returned in the order of the input.
+ * A class that fails to convert is reported in its {@link Result} and does not abort the batch.
+ *
+ * If a {@link ClassCache} is configured and bytecode is written, the bytecode of successfully converted classes
+ * is stored in the cache. Classes found in the cache skip the conversion entirely.
+ */
+public class BatchConverter {
+    /**
+     * Target number of chunks per worker thread when grouping small methods.
+     */
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    /**
+     * The pool that runs all conversion tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The conversions that should be applied to each class.
+     */
+    private Pipeline pipeline = Pipeline.STACK_REF_STACK;
+
+    /**
+     * Should the converted classes be written back to bytecode.
+     */
+    private boolean writeBytecode = true;
+
+    /**
+     * Flags passed to {@link ClassReader#accept(org.objectweb.asm.ClassVisitor, int)}.
+     */
+    private int parsingOptions = 0;
+
+    /**
+     * Cache for the written bytecode of converted classes.
+     */
+    private Optional<ClassCache> cache = Optional.empty();
+
+    /**
+     * Index of the supertypes used to compute frames, absent to load the classes instead.
+     */
+    private Optional<ClassHierarchy> classHierarchy = Optional.empty();
+
+    /**
+     * Wall time of the conversions of single method bodies, across all batches of this converter.
+     */
+    private final LatencyHistogram methodLatencies = new LatencyHistogram();
+
+    public BatchConverter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BatchConverter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public boolean isWriteBytecode() {
+        return writeBytecode;
+    }
+
+    public void setWriteBytecode(boolean writeBytecode) {
+        this.writeBytecode = writeBytecode;
+    }
+
+    public int getParsingOptions() {
+        return parsingOptions;
+    }
+
+    public void setParsingOptions(int parsingOptions) {
+        this.parsingOptions = parsingOptions;
+    }
+
+    public Optional<ClassCache> getCache() {
+        return cache;
+    }
+
+    /**
+     * Set the cache for converted classes.
+     *
+     * The cache is only used if bytecode is written.
+     *
+     * @param cache the cache or {@link Optional#empty()} to always convert all classes
+     */
+    public void setCache(Optional<ClassCache> cache) {
+        this.cache = cache;
+    }
+
+    public Optional<ClassHierarchy> getClassHierarchy() {
+        return classHierarchy;
+    }
+
+    /**
+     * Set the index used to find common superclasses while computing frames.
+     *
+     * The converted classes of each batch are added to an index on top of this index before any class is converted,
+     * so it only has to contain the libraries that the classes reference. This index itself is not changed.
+     *
+     * @param classHierarchy the index or {@link Optional#empty()} to load classes through the class loader of asm
+     */
+    public void setClassHierarchy(Optional<ClassHierarchy> classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
+    /**
+     * Get the latencies of all method body conversions of this converter.
+     *
+     * Only the conversions into {@link RefBody RefBodies} and back are recorded per method,
+     * so nothing is recorded for the {@link Pipeline#STACK} pipeline.
+     *
+     * @return histogram of the method latencies
+     */
+    public LatencyHistogram getMethodLatencies() {
+        return methodLatencies;
+    }
+
+    /**
+     * Convert all class files within a jar.
+     *
+     * Entries that are not class files are ignored.
+     *
+     * @param jar the jar to read the classes from
+     * @return one result per class file in the order of the jar entries
+     * @throws IOException if reading the jar fails
+     */
+    public List<Result> convert(JarFile jar) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                try (InputStream in = jar.getInputStream(entry)) {
+                    classes.add(in.readAllBytes());
+                }
+            }
+        }
+        return convert(classes);
+    }
+
+    /**
+     * Convert a collection of classes.
+     *
+     * A class file whose header cannot be read, e.g. because it is truncated or its version is not supported,
+     * is reported as failure of its {@link Result}.
+     *
+     * @param classes the class files to convert
+     * @return one result per class in the iteration order of the collection
+     */
+    public List<Result> convert(Collection<byte[]> classes) {
+        if (writeBytecode && pipeline == Pipeline.REF) {
+            throw new IllegalStateException("Cannot write bytecode of classes with RefBodies");
+        }
+
+        Result[] results = new Result[classes.size()];
+        int index = 0;
+        for (byte[] input : classes) {
+            results[index++] = new Result(input);
+        }
+
+        // The frames of each class may depend on any other class of the batch, so the index must contain
+        // all of them before the cache keys are computed from the supertypes of the referenced classes.
+        // They are added on top of the configured index, so classes of one batch do not leak into the next.
+        Optional<ClassHierarchy> hierarchy = writeBytecode ? classHierarchy.map(ClassHierarchy::new) : Optional.empty();
+        hierarchy.ifPresent(batchHierarchy -> {
+            for (Result result : results) {
+                result.reader.ifPresent(batchHierarchy::add);
+            }
+        });
+
+        String cacheConfiguration = writeBytecode && cache.isPresent() ? getCacheConfiguration() : "";
+        pool.invoke(new ClassTask(results, 0, results.length, result -> parse(result, cacheConfiguration, hierarchy)));
+
+        if (pipeline != Pipeline.STACK) {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(buildMethodChunks(results));
+                }
+            });
+        }
+
+        if (writeBytecode) {
+            pool.invoke(new ClassTask(results, 0, results.length, result -> write(result, hierarchy)));
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private void parse(Result result, String cacheConfiguration, Optional<ClassHierarchy> hierarchy) {
+        if (!result.reader.isPresent()) {
+            return;
+        }
+
+        if (writeBytecode && cache.isPresent()) {
+            String configuration = cacheConfiguration + hierarchy
+                    .map(batchHierarchy -> ":hierarchy=" + batchHierarchy.getFingerprint(result.reader.get()))
+                    .orElse("");
+            result.cacheKey = Optional.of(ClassCache.key(result.input, configuration));
+            try {
+                result.bytecode = cache.get().get(result.cacheKey.get());
+            } catch (IOException e) {
+                // An unreadable entry is treated like a miss and replaced after the conversion.
+            }
+
+            if (result.bytecode.isPresent()) {
+                return;
+            }
+        }
+
+        try {
+            result.classfile = Optional.of(Asm2Stack.convert(result.reader.get(), parsingOptions));
+        } catch (Throwable t) {
+            result.failure = Optional.of(t);
+        }
+    }
+
+    /**
+     * Describe all options that influence the written bytecode, so entries written with other options are not reused.
+     * The class hierarchy is described per class in {@link #parse}, by the fingerprint of the classes it refers to,
+     * since other supertypes may lead to other frames.
+     */
+    private String getCacheConfiguration() {
+        return pipeline + ":" + parsingOptions;
+    }
+
+    private void write(Result result, Optional<ClassHierarchy> hierarchy) {
+        if (result.isCached() || !result.isSuccessful()) {
+            return;
+        }
+
+        try {
+            result.bytecode = Optional.of(hierarchy
+                    .map(batchHierarchy -> Stack2Asm.toBytecode(result.classfile.get(), batchHierarchy))
+                    .orElseGet(() -> Stack2Asm.toBytecode(result.classfile.get())));
+        } catch (Throwable t) {
+            result.failure = Optional.of(t);
+            return;
+        }
+
+        if (result.cacheKey.isPresent()) {
+            try {
+                cache.get().put(result.cacheKey.get(), result.bytecode.get());
+            } catch (IOException e) {
+                // The class was converted anyway, it will just be converted again next time.
+            }
+        }
+    }
+
+    /**
+     * Collect all method bodies of the successfully parsed classes and group them into chunks of similar size.
+     *
+     * Methods are sorted by descending instruction count.
+     * Large methods get a chunk on their own, small methods are grouped until a chunk reaches the target weight.
+     *
+     * @param results all parsed classes
+     * @return the chunks, largest first
+     */
+    private List<MethodChunk> buildMethodChunks(Result[] results) {
+        List<MethodWork> work = new ArrayList<>();
+        long totalWeight = 0;
+        for (Result result : results) {
+            if (!result.classfile.isPresent()) {
+                continue;
+            }
+
+            Classfile classfile = result.classfile.get();
+            for (Method method : classfile.getMethods()) {
+                Optional<Body> body = method.getBody();
+                if (body.isPresent() && body.get() instanceof StackBody) {
+                    MethodWork methodWork = new MethodWork(result, method, (StackBody) body.get());
+                    work.add(methodWork);
+                    totalWeight += methodWork.weight;
+                }
+            }
+        }
+
+        work.sort(Comparator.comparingInt((MethodWork w) -> w.weight).reversed());
+
+        long targetWeight = Math.max(1, totalWeight / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+        List<MethodChunk> chunks = new ArrayList<>();
+        MethodChunk chunk = new MethodChunk();
+        for (MethodWork methodWork : work) {
+            chunk.work.add(methodWork);
+            chunk.weight += methodWork.weight;
+            if (chunk.weight >= targetWeight) {
+                chunks.add(chunk);
+                chunk = new MethodChunk();
+            }
+        }
+        if (!chunk.work.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private void convertMethod(MethodWork work) {
+        Classfile classfile = work.result.classfile.get();
+        long start = System.nanoTime();
+        try {
+            RefAnalysisCache analyses = Stack2Ref.convertWithAnalyses(classfile, work.method, work.body);
+            if (pipeline == Pipeline.REF) {
+                work.method.setBody(Optional.of(analyses.getBody()));
+            } else {
+                work.method.setBody(Optional.of(Ref2Stack.convert(analyses.getBody(), analyses)));
+            }
+        } catch (Throwable t) {
+            synchronized (work.result) {
+                work.result.methodFailures.add(new MethodFailure(work.method, t));
+            }
+        }
+        methodLatencies.record(System.nanoTime() - start);
+    }
+
+    /**
+     * The conversions that are applied to the method bodies of each class.
+     */
+    public static enum Pipeline {
+        /**
+         * Only parse the classes into {@link StackBody StackBodies}.
+         */
+        STACK,
+
+        /**
+         * Parse the classes and convert all bodies into {@link RefBody RefBodies}.
+         */
+        REF,
+
+        /**
+         * Convert all bodies into {@link RefBody RefBodies} and back into {@link StackBody StackBodies}.
+         */
+        STACK_REF_STACK
+    }
+
+    /**
+     * The outcome of the conversion of one class.
+     */
+    public static class Result {
+        /**
+         * The input class file.
+         */
+        private final byte[] input;
+
+        /**
+         * The reader of the input class, absent if the header of the class file could not be read.
+         */
+        private final Optional<ClassReader> reader;
+
+        /**
+         * The key of the class in the {@link ClassCache}, absent if no cache is used.
+         */
+        private Optional<String> cacheKey = Optional.empty();
+
+        /**
+         * The converted class, absent if parsing failed or the bytecode was found in the cache.
+         */
+        private Optional<Classfile> classfile = Optional.empty();
+
+        /**
+         * The written bytecode, absent if it was not requested or the conversion failed.
+         */
+        private Optional<byte[]> bytecode = Optional.empty();
+
+        /**
+         * Exception that occurred while parsing or writing the class.
+         */
+        private Optional<Throwable> failure = Optional.empty();
+
+        /**
+         * Methods whose bodies could not be converted.
+         * Those methods still contain their {@link StackBody}.
+         */
+        private final List<MethodFailure> methodFailures = new ArrayList<>();
+
+        private Result(byte[] input) {
+            this.input = input;
+
+            Optional<ClassReader> reader;
+            try {
+                reader = Optional.of(new ClassReader(input));
+            } catch (RuntimeException e) {
+                reader = Optional.empty();
+                this.failure = Optional.of(e);
+            }
+            this.reader = reader;
+        }
+
+        /**
+         * Get the internal name of the input class.
+         *
+         * @return the name as stored in the class file or <tt>"&lt;unreadable&gt;"</tt> if the header could not be read
+         */
+        public String getName() {
+            return reader.map(ClassReader::getClassName).orElse("<unreadable>");
+        }
+
+        /**
+         * Get the input class file.
+         *
+         * @return the array passed to the converter
+         */
+        public byte[] getInput() {
+            return input;
+        }
+
+        /**
+         * Get the reader of the input class.
+         *
+         * @return the reader or {@link Optional#empty()} if the header of the class file could not be read
+         */
+        public Optional<ClassReader> getReader() {
+            return reader;
+        }
+
+        public Optional<Classfile> getClassfile() {
+            return classfile;
+        }
+
+        public Optional<byte[]> getBytecode() {
+            return bytecode;
+        }
+
+        public Optional<Throwable> getFailure() {
+            return failure;
+        }
+
+        public List<MethodFailure> getMethodFailures() {
+            return Collections.unmodifiableList(methodFailures);
+        }
+
+        /**
+         * Check whether the bytecode was taken from the {@link ClassCache} instead of converting the class.
+         *
+         * Cached results have bytecode but no {@link Classfile}.
+         *
+         * @return true if the class was found in the cache
+         */
+        public boolean isCached() {
+            return cacheKey.isPresent() && bytecode.isPresent() && !classfile.isPresent();
+        }
+
+        /**
+         * Check whether the class and all its methods were converted.
+         *
+         * @return true if no failure was recorded
+         */
+        public boolean isSuccessful() {
+            return (classfile.isPresent() || isCached()) && !failure.isPresent() && methodFailures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return Result.class.getSimpleName() + '{' +
+                    "name=" + getName() +
+                    ", cached=" + isCached() +
+                    ", failure=" + failure +
+                    ", methodFailures=" + methodFailures +
+                    '}';
+        }
+    }
+
+    /**
+     * A method whose body could not be converted.
+     */
+    public static class MethodFailure {
+        private final Method method;
+        private final Throwable cause;
+
+        public MethodFailure(Method method, Throwable cause) {
+            this.method = method;
+            this.cause = cause;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public Throwable getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return MethodFailure.class.getSimpleName() + '{' +
+                    "method=" + method.getName() +
+                    ", cause=" + cause +
+                    '}';
+        }
+    }
+
+    private static class MethodWork {
+        private final Result result;
+        private final Method method;
+        private final StackBody body;
+        private final int weight;
+
+        private MethodWork(Result result, Method method, StackBody body) {
+            this.result = result;
+            this.method = method;
+            this.body = body;
+            this.weight = body.getInstructions().size();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class MethodChunk extends RecursiveAction {
+        private final List<MethodWork> work = new ArrayList<>();
+        private long weight;
+
+        @Override
+        protected void compute() {
+            for (MethodWork methodWork : work) {
+                convertMethod(methodWork);
+            }
+        }
+    }
+
+    /**
+     * Apply an action to a range of results, splitting the range until single classes remain.
+     */
+    @SuppressWarnings("serial")
+    private static class ClassTask extends RecursiveAction {
+        private final Result[] results;
+        private final int start;
+        private final int end;
+        private final Consumer<Result> action;
+
+        private ClassTask(Result[] results, int start, int end, Consumer<Result> action) {
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                if (start < end) {
+                    action.accept(results[start]);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                ForkJoinTask.invokeAll(
+                        new ClassTask(results, start, middle, action),
+                        new ClassTask(results, middle, end, action));
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package io.runebox.kasm.ir.conversion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed cache of converted classes on the local disk.
+ *
+ * Entries are keyed by a hash of the input class bytes and a description of the applied conversions,
+ * so a class is only converted again if its bytes or the configuration changed.
+ * The total size of all entries is bounded, the least recently used entries are evicted first.
+ *
+ * The cache may be shared by many threads. Entries are written to a temporary file and moved into place
+ * atomically, so other threads and processes using the same directory never observe partial entries.
+ * The last access of each entry is stored as its modification time, which preserves the eviction order
+ * across runs.
+ */
+public class ClassCache {
+    /**
+     * Version of the layout of the cache itself, i.e. how keys are derived and how entries are stored.
+     * Changes to the output of the conversions need no bump, they are covered by the {@link #CONVERTER_VERSION}.
+     */
+    private static final int LAYOUT_VERSION = 1;
+
+    /**
+     * Hash of the build of the converters, so entries written by another build are never reused.
+     */
+    private static final String CONVERTER_VERSION = computeConverterVersion();
+
+    private static final String ENTRY_SUFFIX = ".class";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Temporary files are only deleted when the cache is opened, if they were not modified for this long.
+     * Younger files may still be written by another process that uses the same directory.
+     */
+    static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Directory that contains the entries.
+     */
+    private final Path directory;
+
+    /**
+     * Maximum amount of bytes of all entries together.
+     */
+    private final long maxSize;
+
+    /**
+     * Size of all known entries by key in access order, least recently used first.
+     * Guarded by synchronizing on the map.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of all entries in {@link #entries}.
+     * Guarded by synchronizing on {@link #entries}.
+     */
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Open a cache directory, creating it if it does not exist yet.
+     *
+     * Existing entries are indexed and evicted if they exceed the size bound.
+     * Temporary files left behind by interrupted writes are deleted once they are older than an hour.
+     *
+     * @param directory the directory that contains the entries
+     * @param maxSize maximum amount of bytes of all entries
+     * @throws IOException if the directory cannot be created or read
+     */
+    public ClassCache(Path directory, long maxSize) throws IOException {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Negative cache size: " + maxSize);
+        }
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        Files.createDirectories(directory);
+        loadEntries();
+    }
+
+    /**
+     * Compute the key of a class.
+     *
+     * @param classfile the bytes of the input class
+     * @param configuration description of all options that influence the conversion result
+     * @return a hex encoded hash of the class bytes and the configuration
+     */
+    public static String key(byte[] classfile, String configuration) {
+        MessageDigest digest = newDigest();
+        digest.update((LAYOUT_VERSION + ":" + CONVERTER_VERSION + ":" + configuration + ":").getBytes(StandardCharsets.UTF_8));
+        digest.update(classfile);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Get the hash of the build of the converters that is part of every key.
+     *
+     * @return a hex encoded hash
+     */
+    public static String getConverterVersion() {
+        return CONVERTER_VERSION;
+    }
+
+    /**
+     * Hash the classes of this library, either the jar that contains them or all files in their class directory.
+     * If the classes cannot be read, the implementation version of the jar manifest is used instead.
+     */
+    private static String computeConverterVersion() {
+        MessageDigest digest = newDigest();
+        try {
+            CodeSource source = ClassCache.class.getProtectionDomain().getCodeSource();
+            if (source != null && source.getLocation() != null) {
+                Path location = Paths.get(source.getLocation().toURI());
+                if (Files.isDirectory(location)) {
+                    List<Path> files;
+                    try (Stream<Path> stream = Files.walk(location)) {
+                        files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+                    for (Path file : files) {
+                        digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(file));
+                    }
+                } else {
+                    digest.update(Files.readAllBytes(location));
+                }
+                return toHex(digest.digest());
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // Fall back to the version of the manifest
+        }
+
+        String version = ClassCache.class.getPackage().getImplementationVersion();
+        digest.update(String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is available on every jvm", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the amount of bytes of all entries known to this cache.
+     *
+     * @return total size of all entries
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    /**
+     * Get the amount of lookups that found an entry.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the amount of lookups that found no entry.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the amount of entries that were deleted to stay within the size bound.
+     *
+     * @return number of evicted entries
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Look up the entry of a key and mark it as recently used.
+     *
+     * An entry that was evicted concurrently, e.g. by another process, counts as a miss.
+     *
+     * @param key the key as computed by {@link #key(byte[], String)}
+     * @return the stored bytes or {@link Optional#empty()} if there is no entry
+     * @throws IOException if the entry exists but cannot be read
+     */
+    public Optional<byte[]> get(String key) throws IOException {
+        Path file = getEntryPath(key);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            synchronized (entries) {
+                Long oldSize = entries.remove(key);
+                if (oldSize != null) {
+                    size -= oldSize;
+                }
+            }
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+        synchronized (entries) {
+            Long oldSize = entries.put(key, (long) content.length);
+            size += content.length - (oldSize == null ? 0 : oldSize);
+        }
+
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only the eviction order of later runs is affected.
+        }
+
+        return Optional.of(content);
+    }
+
+    /**
+     * Store an entry and evict the least recently used entries if the size bound is exceeded.
+     *
+     * An existing entry with the same key is replaced.
+     *
+     * @param key the key as computed by {@link #key(byte[], String)}
+     * @param content the bytes to store
+     * @throws IOException if the entry cannot be written
+     */
+    public void put(String key, byte[] content) throws IOException {
+        if (content.length > maxSize) {
+            return;
+        }
+
+        Path file = getEntryPath(key);
+        Files.createDirectories(file.getParent());
+
+        Path temp = Files.createTempFile(file.getParent(), key, TEMP_SUFFIX);
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        synchronized (entries) {
+            Long oldSize = entries.put(key, (long) content.length);
+            size += content.length - (oldSize == null ? 0 : oldSize);
+        }
+
+        evict();
+    }
+
+    /**
+     * Delete least recently used entries until the size bound is met.
+     */
+    private void evict() throws IOException {
+        while (true) {
+            String key;
+            synchronized (entries) {
+                if (size <= maxSize || entries.isEmpty()) {
+                    return;
+                }
+
+                Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+                Map.Entry<String, Long> eldest = iter.next();
+                key = eldest.getKey();
+                size -= eldest.getValue();
+                iter.remove();
+            }
+
+            Files.deleteIfExists(getEntryPath(key));
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Entries are spread over sub directories named after the first two characters of their key.
+     */
+    private Path getEntryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Index all entries in the directory ordered by their last access and delete stale temporary files.
+     *
+     * Other processes may write, move and evict files while the directory is walked,
+     * so files that disappear in between are skipped.
+     */
+    private void loadEntries() throws IOException {
+        long staleTempTime = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        List<IndexedEntry> found = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            files.forEach(file -> {
+                String fileName = file.getFileName().toString();
+                try {
+                    if (fileName.endsWith(TEMP_SUFFIX)) {
+                        if (Files.getLastModifiedTime(file).toMillis() < staleTempTime) {
+                            Files.deleteIfExists(file);
+                        }
+                    } else if (fileName.endsWith(ENTRY_SUFFIX)) {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        String key = fileName.substring(0, fileName.length() - ENTRY_SUFFIX.length());
+                        found.add(new IndexedEntry(key, attributes.size(), attributes.lastModifiedTime()));
+                    }
+                } catch (NoSuchFileException e) {
+                    // Moved into place or evicted by another process
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        found.sort(Comparator.comparing((IndexedEntry entry) -> entry.lastAccess));
+
+        synchronized (entries) {
+            for (IndexedEntry entry : found) {
+                entries.put(entry.key, entry.size);
+                size += entry.size;
+            }
+        }
+
+        evict();
+    }
+
+    @Override
+    public String toString() {
+        return ClassCache.class.getSimpleName() + '{' +
+                "directory=" + directory +
+                ", size=" + getSize() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static class IndexedEntry {
+        private final String key;
+        private final long size;
+        private final FileTime lastAccess;
+
+        private IndexedEntry(String key, long size, FileTime lastAccess) {
+            this.key = key;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An index of the supertypes of classes, used to compute the frames of written classes without loading any class.
+ *
+ * The index contains the classes that were added explicitly, e.g. all classes of a jar that is converted.
+ * Other classes are looked up in the jrt image of the running JDK on their first use.
+ * Lookups are cached, so every class is only read once.
+ *
+ * All classes should be added before the index is queried.
+ * The index may then be queried from many threads at once.
+ *
+ * An index may be layered on top of another index, e.g. to add the classes of one batch
+ * to an index of the libraries without changing that index.
+ *
+ * @see io.runebox.kasm.ir.conversion.stack2asm.HierarchyClassWriter
+ * @see io.runebox.kasm.ir.conversion.stack2asm.FrameComputer
+ */
+public class ClassHierarchy {
+    private static final String OBJECT = "java/lang/Object";
+
+    /**
+     * Tags of the constant pool entries that refer to classes.
+     */
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    /**
+     * All known classes by their internal name.
+     * Classes that could not be found are cached as {@link Optional#empty()}.
+     */
+    private final Map<String, Optional<Node>> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * The index that is asked for classes that were not added to this index.
+     */
+    private final Optional<ClassHierarchy> parent;
+
+    /**
+     * The jrt file system to look up JDK classes or empty if JDK classes should not be looked up.
+     * Indices with a parent leave the lookup to their parent.
+     */
+    private final Optional<FileSystem> jrt;
+
+    /**
+     * Create an index that looks up JDK classes in the jrt image.
+     */
+    public ClassHierarchy() {
+        this(true);
+    }
+
+    /**
+     * Create an index.
+     *
+     * @param useJrt should classes that were not added be looked up in the jrt image of the running JDK
+     */
+    public ClassHierarchy(boolean useJrt) {
+        this.parent = Optional.empty();
+        this.jrt = useJrt ? openJrt() : Optional.empty();
+    }
+
+    /**
+     * Create an index on top of another index.
+     *
+     * Classes added to the new index shadow the classes of the parent and are not visible to the parent.
+     * All other classes are looked up in the parent, which caches them for all indices on top of it.
+     *
+     * @param parent the index that is asked for classes that were not added
+     */
+    public ClassHierarchy(ClassHierarchy parent) {
+        this.parent = Optional.of(parent);
+        this.jrt = Optional.empty();
+    }
+
+    /**
+     * Create an index containing some classes and all classes of the JDK.
+     *
+     * @param classfiles the classes to add
+     * @return the index
+     */
+    public static ClassHierarchy of(Collection<Classfile> classfiles) {
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        classfiles.forEach(hierarchy::add);
+        return hierarchy;
+    }
+
+    private static Optional<FileSystem> openJrt() {
+        try {
+            return Optional.of(FileSystems.getFileSystem(URI.create("jrt:/")));
+        } catch (RuntimeException e) {
+            // The running JDK has no jrt image.
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Add a class to the index.
+     *
+     * @param classfile the class to add
+     */
+    public void add(Classfile classfile) {
+        add(AsmUtil.toInternalName(classfile.getName()),
+                classfile.getSupertype() == null ? null : AsmUtil.toInternalName(classfile.getSupertype()),
+                classfile.getInterfaces().stream().map(AsmUtil::toInternalName).collect(Collectors.toList()),
+                classfile.getFlag(Classfile.Flag.INTERFACE));
+    }
+
+    /**
+     * Add a class to the index. Only the header of the class is read.
+     *
+     * @param reader the class to add
+     */
+    public void add(ClassReader reader) {
+        add(reader.getClassName(), reader.getSuperName(), Arrays.asList(reader.getInterfaces()),
+                (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+    }
+
+    /**
+     * Add a class to the index.
+     *
+     * @param name internal name of the class
+     * @param superName internal name of the superclass or <tt>null</tt> for <tt>java/lang/Object</tt>
+     * @param interfaces internal names of the directly implemented interfaces
+     * @param isInterface whether the class is an interface
+     */
+    public void add(String name, String superName, List<String> interfaces, boolean isInterface) {
+        nodes.put(name, Optional.of(new Node(name, superName, List.copyOf(interfaces), isInterface)));
+    }
+
+    /**
+     * Compute a hash of the supertypes of all classes that a class refers to.
+     *
+     * The frames of a class only depend on the classes in its constant pool and in the descriptors of its members,
+     * so two indices give the same frames for the class if they agree on the supertypes of those classes.
+     * Classes of the batch that the class does not refer to do not change the hash.
+     *
+     * @param reader the class whose references are hashed
+     * @return a hex encoded hash
+     */
+    public String getFingerprint(ClassReader reader) {
+        Set<String> referenced = new HashSet<>();
+        collectReferences(reader, referenced);
+
+        // Walk the supertypes of all referenced classes, classes that are not known are recorded as such
+        SortedSet<String> lines = new TreeSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> worklist = new ArrayDeque<>(referenced);
+        while (!worklist.isEmpty()) {
+            String name = worklist.pop();
+            if (!visited.add(name)) {
+                continue;
+            }
+
+            Optional<Node> node = findNode(name);
+            if (node.isEmpty()) {
+                lines.add("unknown " + name);
+                continue;
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(node.get().isInterface ? "interface " : "class ").append(name)
+                    .append(" extends ").append(node.get().superName);
+            if (node.get().superName != null) {
+                worklist.push(node.get().superName);
+            }
+            for (String iface : node.get().interfaces) {
+                line.append(' ').append(iface);
+                worklist.push(iface);
+            }
+            lines.add(line.toString());
+        }
+
+        MessageDigest digest = ClassCache.newDigest();
+        StringBuilder builder = new StringBuilder();
+        builder.append(usesJrt() ? "jrt " + Runtime.version() : "no jrt").append('\n');
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return ClassCache.toHex(digest.digest());
+    }
+
+    private boolean usesJrt() {
+        return parent.map(ClassHierarchy::usesJrt).orElse(jrt.isPresent());
+    }
+
+    /**
+     * Collect the internal names of all classes in the constant pool of a class
+     * and in the descriptors of its fields, methods and referenced members.
+     */
+    private static void collectReferences(ClassReader reader, Set<String> referenced) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int item = 1; item < reader.getItemCount(); item++) {
+            int offset = reader.getItem(item);
+            if (offset == 0) {
+                // The second slot of a long or double constant
+                continue;
+            }
+
+            switch (reader.readByte(offset - 1)) {
+                case CONSTANT_CLASS:
+                    addReference(Type.getObjectType(reader.readUTF8(offset, buffer)), referenced);
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addDescriptor(reader.readUTF8(offset + 2, buffer), referenced);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addDescriptor(reader.readUTF8(offset, buffer), referenced);
+                    break;
+            }
+        }
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                addDescriptor(descriptor, referenced);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                addDescriptor(descriptor, referenced);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    }
+
+    private static void addDescriptor(String descriptor, Set<String> referenced) {
+        if (descriptor.charAt(0) == '(') {
+            for (Type type : Type.getArgumentTypes(descriptor)) {
+                addReference(type, referenced);
+            }
+            addReference(Type.getReturnType(descriptor), referenced);
+        } else {
+            addReference(Type.getType(descriptor), referenced);
+        }
+    }
+
+    private static void addReference(Type type, Set<String> referenced) {
+        if (type.getSort() == Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() == Type.OBJECT) {
+            referenced.add(type.getInternalName());
+        }
+    }
+
+    /**
+     * Check whether the index knows a class, either because it was added or because it exists in the jrt image.
+     *
+     * @param path the class
+     * @return whether the class is known
+     */
+    public boolean contains(Path path) {
+        return findNode(AsmUtil.toInternalName(path)).isPresent();
+    }
+
+    /**
+     * Get the superclass of a class.
+     *
+     * @param name internal name of the class
+     * @return internal name of the superclass or empty for <tt>java/lang/Object</tt>
+     * @throws TypeNotPresentException if the class is unknown
+     */
+    public Optional<String> getSuperName(String name) {
+        return Optional.ofNullable(getNode(name).superName);
+    }
+
+    /**
+     * Check whether a class is an interface.
+     *
+     * @param name internal name of the class
+     * @return whether the class is an interface
+     * @throws TypeNotPresentException if the class is unknown
+     */
+    public boolean isInterface(String name) {
+        return getNode(name).isInterface;
+    }
+
+    /**
+     * Check whether a value of one type can be assigned to another type.
+     *
+     * @param type internal name of the type that gets assigned to
+     * @param other internal name of the type of the assigned value
+     * @return whether <tt>other</tt> is <tt>type</tt> or one of its subtypes
+     * @throws TypeNotPresentException if one of the types or their supertypes is unknown
+     */
+    public boolean isAssignableFrom(String type, String other) {
+        return type.equals(OBJECT) || getNode(other).getSupertypes().contains(type);
+    }
+
+    /**
+     * Get the most specific common superclass of two classes,
+     * following the contract of {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+     *
+     * @param type1 internal name of the first class
+     * @param type2 internal name of the second class
+     * @return internal name of the common superclass
+     * @throws TypeNotPresentException if one of the classes or their supertypes is unknown
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+
+        Node node1 = getNode(type1);
+        Node node2 = getNode(type2);
+        if (node2.getSupertypes().contains(type1)) {
+            return type1;
+        }
+        if (node1.getSupertypes().contains(type2)) {
+            return type2;
+        }
+        if (node1.isInterface || node2.isInterface) {
+            return OBJECT;
+        }
+
+        // The superclasses may be cyclic in a broken class path
+        Set<String> visited = new HashSet<>();
+        Node node = node1;
+        while (node.superName != null && visited.add(node.superName)) {
+            if (node2.getSupertypes().contains(node.superName)) {
+                return node.superName;
+            }
+            node = getNode(node.superName);
+        }
+        return OBJECT;
+    }
+
+    private Node getNode(String name) {
+        return findNode(name).orElseThrow(() -> new TypeNotPresentException(name.replace('/', '.'), null));
+    }
+
+    private Optional<Node> findNode(String name) {
+        Optional<Node> node = nodes.get(name);
+        if (node == null) {
+            // Nodes of the parent are copied, since their supertypes may differ in this index
+            node = parent.isPresent()
+                    ? parent.get().findNode(name).map(n -> new Node(n.name, n.superName, n.interfaces, n.isInterface))
+                    : readJrtNode(name);
+            Optional<Node> previous = nodes.putIfAbsent(name, node);
+            if (previous != null) {
+                node = previous;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Read the header of a class from the jrt image.
+     * The packages of the image are linked to the modules that contain them, so no module has to be searched.
+     */
+    private Optional<Node> readJrtNode(String name) {
+        if (jrt.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int packageEnd = name.lastIndexOf('/');
+        if (packageEnd < 0) {
+            return Optional.empty();
+        }
+
+        java.nio.file.Path packageDir = jrt.get().getPath("/packages", name.substring(0, packageEnd).replace('/', '.'));
+        if (!Files.isDirectory(packageDir)) {
+            return Optional.empty();
+        }
+
+        try (Stream<java.nio.file.Path> modules = Files.list(packageDir)) {
+            for (java.nio.file.Path module : (Iterable<java.nio.file.Path>) modules::iterator) {
+                java.nio.file.Path file = module.resolve(name + ".class");
+                if (Files.exists(file)) {
+                    ClassReader reader = new ClassReader(Files.readAllBytes(file));
+                    return Optional.of(new Node(name, reader.getSuperName(), Arrays.asList(reader.getInterfaces()),
+                            (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Optional.empty();
+    }
+
+    private class Node {
+        private final String name;
+        private final String superName;
+        private final List<String> interfaces;
+        private final boolean isInterface;
+
+        /**
+         * This class and all its superclasses and interfaces, computed on first use.
+         */
+        private volatile Set<String> supertypes;
+
+        private Node(String name, String superName, List<String> interfaces, boolean isInterface) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+
+        /**
+         * Walk the supertypes iteratively, since a broken class path may contain cyclic hierarchies
+         * and deep hierarchies would overflow the stack.
+         * The supertypes of nodes that were already computed are complete, so they are not walked again.
+         */
+        private Set<String> getSupertypes() {
+            Set<String> supertypes = this.supertypes;
+            if (supertypes == null) {
+                supertypes = new HashSet<>();
+                Deque<Node> worklist = new ArrayDeque<>();
+                worklist.push(this);
+                while (!worklist.isEmpty()) {
+                    Node node = worklist.pop();
+                    Set<String> computed = node.supertypes;
+                    if (computed != null) {
+                        supertypes.addAll(computed);
+                    } else if (supertypes.add(node.name)) {
+                        if (node.superName != null) {
+                            worklist.push(getNode(node.superName));
+                        }
+                        for (String iface : node.interfaces) {
+                            worklist.push(getNode(iface));
+                        }
+                    }
+                }
+                this.supertypes = supertypes = Collections.unmodifiableSet(supertypes);
+            }
+            return supertypes;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.conversion.ref2asm.BodyConverter;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * A Facade for the conversions from {@link Classfile Classfiles} with {@link RefBody RefBodies}
+ * to objectweb asm structures.
+ *
+ * The statements are written directly into the {@link MethodVisitor} without converting them
+ * into {@link StackBody StackBodies} first. Classes may mix both kinds of bodies.
+ */
+public class Ref2Asm {
+    /**
+     * Make a {@link ClassVisitor} visit a {@link Classfile}.
+     *
+     * Note: The frames are not visited, see {@link Stack2Asm#accept(Classfile, ClassVisitor)}.
+     *
+     * @param classfile the file that the {@link ClassVisitor} will visit.
+     * @param cv the ClassVisitor that will visit the class
+     */
+    public static void accept(Classfile classfile, ClassVisitor cv) {
+        Stack2Asm.accept(classfile, cv);
+    }
+
+    /**
+     * Convert a {@link Classfile} into a byte array of jvm bytecode.
+     *
+     * @param classfile the {@link Classfile} to convert
+     * @return the converted jvm bytecode
+     * @see Stack2Asm#toBytecode(Classfile)
+     */
+    public static byte[] toBytecode(Classfile classfile) {
+        return Stack2Asm.toBytecode(classfile);
+    }
+
+    /**
+     * Convert a {@link Classfile} into a byte array of jvm bytecode,
+     * looking up common superclasses in a {@link ClassHierarchy}.
+     *
+     * @param classfile the {@link Classfile} to convert
+     * @param hierarchy the classes referenced by the converted class
+     * @return the converted jvm bytecode
+     * @see Stack2Asm#toBytecode(Classfile, ClassHierarchy)
+     */
+    public static byte[] toBytecode(Classfile classfile, ClassHierarchy hierarchy) {
+        return Stack2Asm.toBytecode(classfile, hierarchy);
+    }
+
+    /**
+     * Convert a {@link Classfile} into a byte array of jvm bytecode,
+     * computing the frames with kasm's {@link io.runebox.kasm.ir.conversion.ref2asm.FrameComputer}.
+     *
+     * @param classfile the {@link Classfile} to convert
+     * @param hierarchy the classes referenced by the converted class
+     * @return the converted jvm bytecode
+     * @see Stack2Asm#toBytecodeWithFrameComputer(Classfile, ClassHierarchy)
+     */
+    public static byte[] toBytecodeWithFrameComputer(Classfile classfile, ClassHierarchy hierarchy) {
+        return Stack2Asm.toBytecodeWithFrameComputer(classfile, hierarchy);
+    }
+
+    /**
+     * Make a {@link MethodVisitor} visit the code of a {@link RefBody}.
+     *
+     * All events from {@link MethodVisitor#visitCode()} to {@link MethodVisitor#visitMaxs(int, int)} are visited.
+     *
+     * @param method the method containing the body
+     * @param body the body to visit
+     * @param mv the visitor of the method
+     */
+    public static void accept(Method method, RefBody body, MethodVisitor mv) {
+        new BodyConverter(method, body, mv).convert();
+    }
+}
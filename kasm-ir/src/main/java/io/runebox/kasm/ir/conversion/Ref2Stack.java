@@ -1,10 +1,14 @@
 package io.runebox.kasm.ir.conversion;
 
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
 import io.runebox.kasm.ir.conversion.ref2stack.BodyConverter;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Method;
 import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
 
 import java.util.Optional;
 
@@ -18,6 +22,8 @@ public class Ref2Stack {
      * @param classfile the classfile whose bodies should get converted
      */
     public static void convert(Classfile classfile) {
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
         for (Method method : classfile.getMethods()) {
             method.getBody().ifPresent(body -> {
                 if (body instanceof RefBody) {
@@ -27,6 +33,7 @@ public class Ref2Stack {
                 }
             });
         }
+        event.commit(Stage.REF_TO_STACK, classfile);
     }
 
     /**
@@ -36,8 +43,31 @@ public class Ref2Stack {
      * @return the converted {@link StackBody}
      */
     public static StackBody convert(RefBody refBody) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
         BodyConverter converter = new BodyConverter(refBody);
         converter.convert();
-        return converter.getStackBody();
+        return report(probe, refBody, converter.getStackBody());
+    }
+
+    /**
+     * Convert a {@link RefBody} into a {@link StackBody}, reusing analyses that were already computed.
+     *
+     * @param refBody the {@link RefBody} that should get converted
+     * @param analyses analyses of the body that are currently valid, e.g. as returned by {@link Stack2Ref#postProcess(RefBody)}
+     * @return the converted {@link StackBody}
+     */
+    public static StackBody convert(RefBody refBody, RefAnalysisCache analyses) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        BodyConverter converter = new BodyConverter(refBody, new StackBody(), analyses);
+        converter.convert();
+        return report(probe, refBody, converter.getStackBody());
+    }
+
+    private static StackBody report(Optional<ConversionMetrics.Probe> probe, RefBody refBody, StackBody stackBody) {
+        if (probe.isPresent()) {
+            probe.get().finish(Stage.REF_TO_STACK, Optional.empty(), refBody.getStatements().size(),
+                    stackBody.getInstructions().size(), stackBody.getLocals().size(), 0);
+        }
+        return stackBody;
     }
 }
@@ -0,0 +1,52 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.snapshot.SnapshotReader;
+import io.runebox.kasm.ir.conversion.snapshot.SnapshotWriter;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Facade for storing {@link Classfile Classfiles} in the binary snapshot format.
+ *
+ * A snapshot keeps {@link StackBody StackBodies} and {@link RefBody RefBodies} as they are,
+ * so loading it is much cheaper than converting the original bytecode again.
+ * Snapshots are memory-mapped when loaded and method bodies are decoded on their first access.
+ */
+public class Snapshot {
+    /**
+     * Write classfiles into a snapshot file.
+     *
+     * Lazily loaded bodies of the classes are materialized.
+     *
+     * @param classes the classes to write
+     * @param file the file to create or overwrite
+     * @throws IOException if the file could not be written
+     */
+    public static void write(Collection<Classfile> classes, Path file) throws IOException {
+        SnapshotWriter writer = new SnapshotWriter();
+        for (Classfile classfile : classes) {
+            writer.add(classfile);
+        }
+        writer.writeTo(file);
+    }
+
+    /**
+     * Load all classes of a snapshot file.
+     *
+     * The bodies of the methods are decoded on their first access through {@link Method#getBody()}.
+     *
+     * @param file the snapshot file
+     * @return the classes in the order they were written
+     * @throws IOException if the file could not be mapped
+     */
+    public static List<Classfile> read(Path file) throws IOException {
+        return SnapshotReader.open(file).readClasses();
+    }
+}
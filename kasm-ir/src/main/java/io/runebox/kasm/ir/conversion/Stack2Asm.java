@@ -1,13 +1,22 @@
 package io.runebox.kasm.ir.conversion;
 
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.conversion.stack2asm.FrameComputer;
+import io.runebox.kasm.ir.conversion.stack2asm.HierarchyClassWriter;
 import io.runebox.kasm.ir.conversion.stack2asm.KasmClassReader;
+import io.runebox.kasm.ir.conversion.stack2asm.MethodPassThrough;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.Optional;
+
 /**
  * A Facade for the conversions from {@link Classfile Classfiles} with {@link StackBody StackBodies}
  * to objectweb asm structures.
@@ -41,12 +50,89 @@ public class Stack2Asm {
     /**
      * Convert a {@link Classfile} into a byte array of jvm bytecode.
      *
+     * Methods of a {@link Asm2Stack#convertLazily(ClassReader) lazily converted} class whose bodies were never
+     * accessed and whose declarations are unchanged are copied byte-for-byte from the original class file.
+     * The constant pool of the original class is carried over in that case.
+     *
      * @param classfile the {@link Classfile} to convert
      * @return the converted jvm bytecode
      */
     public static byte[] toBytecode(Classfile classfile) {
-        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        accept(classfile, cw);
-        return cw.toByteArray();
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        Optional<MethodPassThrough> passThrough = MethodPassThrough.of(classfile);
+        ClassWriter cw = passThrough
+                .map(methods -> new ClassWriter(methods.getSource(), ClassWriter.COMPUTE_FRAMES))
+                .orElseGet(() -> new ClassWriter(ClassWriter.COMPUTE_FRAMES));
+        new KasmClassReader(classfile, passThrough).accept(cw);
+        byte[] bytecode = cw.toByteArray();
+        event.commit(Stage.STACK_TO_ASM, classfile);
+        return report(probe, classfile, bytecode);
+    }
+
+    /**
+     * Convert a {@link Classfile} into a byte array of jvm bytecode.
+     *
+     * Unlike {@link #toBytecode(Classfile)}, the common superclasses needed to compute the frames are
+     * looked up in a {@link ClassHierarchy} instead of being loaded by the class loader of asm.
+     * The hierarchy can be shared by many threads that write classes at once.
+     *
+     * @param classfile the {@link Classfile} to convert
+     * @param hierarchy the classes referenced by the converted class
+     * @return the converted jvm bytecode
+     * @throws TypeNotPresentException if the frames involve a class that is not in the hierarchy
+     * @see #toBytecodeWithFrameComputer(Classfile, ClassHierarchy)
+     */
+    public static byte[] toBytecode(Classfile classfile, ClassHierarchy hierarchy) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        Optional<MethodPassThrough> passThrough = MethodPassThrough.of(classfile);
+        ClassWriter cw = passThrough
+                .map(methods -> new HierarchyClassWriter(methods.getSource(), ClassWriter.COMPUTE_FRAMES, hierarchy))
+                .orElseGet(() -> new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, hierarchy));
+        new KasmClassReader(classfile, passThrough).accept(cw);
+        byte[] bytecode = cw.toByteArray();
+        event.commit(Stage.STACK_TO_ASM, classfile);
+        return report(probe, classfile, bytecode);
+    }
+
+    /**
+     * Convert a {@link Classfile} into a byte array of jvm bytecode, computing the frames with kasm's {@link FrameComputer}.
+     *
+     * Unlike {@link #toBytecode(Classfile, ClassHierarchy)}, kasm computes the frames and maxs of all generated methods
+     * itself from the control flow graph that the conversion builds anyway, so the {@link ClassWriter} does not
+     * analyse any method again. This is currently slower than letting asm compute the frames,
+     * so it has to be requested explicitly.
+     * The hierarchy can be shared by many threads that write classes at once.
+     *
+     * @param classfile the {@link Classfile} to convert
+     * @param hierarchy the classes referenced by the converted class
+     * @return the converted jvm bytecode
+     * @throws TypeNotPresentException if the frames involve a class that is not in the hierarchy
+     * @see FrameComputer
+     */
+    public static byte[] toBytecodeWithFrameComputer(Classfile classfile, ClassHierarchy hierarchy) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+        Optional<MethodPassThrough> passThrough = MethodPassThrough.of(classfile);
+        ClassWriter cw = passThrough
+                .map(methods -> new ClassWriter(methods.getSource(), 0))
+                .orElseGet(() -> new ClassWriter(0));
+        new KasmClassReader(classfile, passThrough, Optional.of(hierarchy)).accept(cw);
+        byte[] bytecode = cw.toByteArray();
+        event.commit(Stage.STACK_TO_ASM, classfile);
+        return report(probe, classfile, bytecode);
+    }
+
+    private static byte[] report(Optional<ConversionMetrics.Probe> probe, Classfile classfile, byte[] bytecode) {
+        if (probe.isPresent()) {
+            probe.get().stop();
+            probe.get().finish(Stage.STACK_TO_ASM, Optional.empty(), ConversionMetrics.getCodeSize(classfile),
+                    bytecode.length, 0, 0);
+        }
+        return bytecode;
     }
 }
@@ -1,26 +1,47 @@
 package io.runebox.kasm.ir.conversion;
 
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.MethodConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
 import io.runebox.kasm.ir.conversion.stack2ref.BodyConverter;
 import io.runebox.kasm.ir.conversion.stack2ref.processor.DirectReuseInliningPostProcessor;
 import io.runebox.kasm.ir.conversion.stack2ref.processor.LocalPartitioningPostProcessor;
 import io.runebox.kasm.ir.conversion.stack2ref.processor.LocalTypingPostProcessor;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.PassManager;
 import io.runebox.kasm.ir.conversion.stack2ref.processor.PostProcessor;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Method;
 import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Main entry point to the stack to ref conversion.
+ *
+ * All methods may be called from many threads at once, as long as each body is only converted by one thread.
+ * Every thread gets its own instances of the {@link PostProcessor PostProcessors},
+ * which are reused for all bodies converted on that thread.
+ * The post processors of a body share their analyses through a {@link PassManager}.
  */
 public class Stack2Ref {
-    private static PostProcessor[] POST_PROCESSORS = {
-            new DirectReuseInliningPostProcessor(),
-            new LocalPartitioningPostProcessor(),
-            new LocalTypingPostProcessor()
-    };
+    private static final ThreadLocal<PassManager> PASS_MANAGER = ThreadLocal.withInitial(Stack2Ref::newPassManager);
+
+    /**
+     * Create a new instance of every post processor in the order in which they are applied.
+     *
+     * @return the pass manager of one thread
+     */
+    private static PassManager newPassManager() {
+        return new PassManager(List.of(
+                new DirectReuseInliningPostProcessor(),
+                new LocalPartitioningPostProcessor(),
+                new LocalTypingPostProcessor()
+        ));
+    }
 
     /**
      * Take a class containing only methods with StackBodies and replace them against RefBodies.
@@ -28,6 +49,8 @@ public class Stack2Ref {
      * @param classfile classfile whose method bodies should get converted.
      */
     public static void convert(Classfile classfile) {
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
         for (Method method : classfile.getMethods()) {
             method.getBody().ifPresent(body -> {
                 if (body instanceof StackBody) {
@@ -37,6 +60,7 @@ public class Stack2Ref {
                 }
             });
         }
+        event.commit(Stage.STACK_TO_REF, classfile);
     }
 
     /**
@@ -48,14 +72,55 @@ public class Stack2Ref {
      * @return the converted ref body
      */
     public static RefBody convert(Classfile classfile, Method method, StackBody stackBody) {
+        return convertWithAnalyses(classfile, method, stackBody).getBody();
+    }
+
+    /**
+     * Build a {@link RefBody} from a {@link StackBody} and keep the analyses of its post processors.
+     *
+     * The analyses can be passed on to {@link Ref2Stack#convert(RefBody, RefAnalysisCache)},
+     * as long as the body is not modified in between.
+     *
+     * @param classfile the classfile that contains the method and body
+     * @param method the method contains the body
+     * @param stackBody the stackbody to be converted
+     * @return the analyses that are still valid for the converted body, which is their {@link RefAnalysisCache#getBody() body}
+     */
+    public static RefAnalysisCache convertWithAnalyses(Classfile classfile, Method method, StackBody stackBody) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        MethodConversionEvent event = new MethodConversionEvent();
+        event.begin();
         BodyConverter bodyConverter = new BodyConverter(classfile.getName(), method, stackBody);
         bodyConverter.convert();
         RefBody refBody = bodyConverter.getRefBody();
-
-        for (PostProcessor postProcessor : POST_PROCESSORS) {
-            postProcessor.process(refBody);
+        event.commit(classfile, method, stackBody, refBody);
+        if (probe.isPresent()) {
+            probe.get().finish(Stage.STACK_TO_REF, Optional.empty(), stackBody.getInstructions().size(),
+                    refBody.getStatements().size(), refBody.getLocals().size(), 0);
         }
+        return postProcess(classfile, method, refBody);
+    }
+
+    /**
+     * Apply all {@link PostProcessor PostProcessors} of the current thread to a freshly converted {@link RefBody}.
+     *
+     * @param refBody the body to patch
+     * @return the analyses that are still valid for the patched body
+     */
+    public static RefAnalysisCache postProcess(RefBody refBody) {
+        return PASS_MANAGER.get().run(refBody);
+    }
 
-        return refBody;
+    /**
+     * Apply all {@link PostProcessor PostProcessors} of the current thread to a freshly converted {@link RefBody}.
+     * The method is only used to describe the body in flight recorder events.
+     *
+     * @param classfile the classfile that contains the method
+     * @param method the method containing the body
+     * @param refBody the body to patch
+     * @return the analyses that are still valid for the patched body
+     */
+    public static RefAnalysisCache postProcess(Classfile classfile, Method method, RefBody refBody) {
+        return PASS_MANAGER.get().run(classfile, method, refBody);
     }
 }
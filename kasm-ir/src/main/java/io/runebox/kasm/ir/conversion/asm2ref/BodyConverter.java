@@ -0,0 +1,265 @@
+package io.runebox.kasm.ir.conversion.asm2ref;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.conversion.AsmInsnReader;
+import io.runebox.kasm.ir.conversion.AsmStackAnalysis;
+import io.runebox.kasm.ir.conversion.asm2stack.AsmUtil;
+import io.runebox.kasm.ir.conversion.stack2ref.AbstractBodyConverter;
+import io.runebox.kasm.ir.conversion.stack2ref.RefInsnWriter;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.*;
+
+/**
+ * Utility that builds a {@link RefBody} directly from an asm {@link MethodNode}.
+ *
+ * The asm instructions are emulated and converted with the same {@link RefInsnWriter}
+ * as in the stack to ref conversion, without building a {@link io.runebox.kasm.ir.stack.StackBody} first.
+ */
+public class BodyConverter extends AbstractBodyConverter<AbstractInsnNode, Integer> {
+    private final Classfile classfile;
+    private final Method method;
+    private final MethodNode mn;
+    private AsmStackAnalysis analysis;
+
+    /**
+     * Writer that is reused for every converted instruction.
+     */
+    private final RefInsnWriter<AbstractInsnNode, LabelNode, Integer> writer;
+
+    /**
+     * Reader that feeds instructions into the {@link #writer}.
+     */
+    private final AsmInsnReader reader;
+
+    public BodyConverter(Classfile classfile, Method method, MethodNode mn) {
+        this.classfile = classfile;
+        this.method = method;
+        this.mn = mn;
+        this.writer = new RefInsnWriter<>(this);
+        this.reader = new AsmInsnReader(writer);
+    }
+
+    public void convert() {
+        runAsmClassAnalysis();
+
+        convertLocals();
+
+        addEntryPoint(mn.instructions.getFirst());
+        convertTryCatchBlocks();
+        convertInsns();
+        resolveInsnsRefs();
+
+        convertLineNumbers();
+
+        insertConvertedStatements();
+    }
+
+    private void runAsmClassAnalysis() {
+        String owner = classfile.getName().join('/');
+        try {
+            this.analysis = new AsmStackAnalysis(mn);
+            this.analysis.analyze();
+        } catch (AnalyzerException e) {
+            throw new RuntimeException("Asm cannot analyze method " + owner + "#" + mn.name + mn.desc);
+        }
+    }
+
+    /**
+     * Create one local per local variable slot and type the locals of <tt>this</tt> and the parameters.
+     */
+    private void convertLocals() {
+        for (int i = 0; i < mn.maxLocals; i++) {
+            RefLocal refLocal = new RefLocal(null);
+            refBody.getLocals().add(refLocal);
+            localMap.put(i, refLocal);
+        }
+
+        int slot = 0;
+        Optional<RefLocal> thisLocal = Optional.empty();
+        if (!this.method.getFlag(Method.Flag.STATIC)) {
+            thisLocal = Optional.of(getLocal(slot++));
+        }
+
+        List<RefLocal> parameterLocals = new ArrayList<>();
+        for (Type paramType : this.method.getParameterTypes()) {
+            parameterLocals.add(getLocal(slot));
+            slot += JvmType.from(paramType).is64bit() ? 2 : 1;
+        }
+
+        convertThisAndParameterLocals(classfile.getName(), thisLocal, method.getParameterTypes(), parameterLocals);
+    }
+
+    /**
+     * Convert all try/catch blocks and add their handlers to the worklist.
+     */
+    private void convertTryCatchBlocks() {
+        for (TryCatchBlockNode block : mn.tryCatchBlocks) {
+            if (isRangeEmpty(block.start, block.end)) {
+                // This handler handles only dead code
+                continue;
+            }
+
+            Optional<Path> exceptionType = Optional.ofNullable(block.type).map(AsmUtil::pathFromInternalName);
+
+            List<ExceptionTypeAnnotation> typeAnnotations = new ArrayList<>();
+            if (block.visibleTypeAnnotations != null) {
+                for (TypeAnnotationNode anno : block.visibleTypeAnnotations) {
+                    typeAnnotations.add(AsmUtil.fromAsmExceptionTypeAnnotation(anno, true));
+                }
+            }
+
+            if (block.invisibleTypeAnnotations != null) {
+                for (TypeAnnotationNode anno : block.invisibleTypeAnnotations) {
+                    typeAnnotations.add(AsmUtil.fromAsmExceptionTypeAnnotation(anno, false));
+                }
+            }
+
+            convertTryCatchBlock(block.start, findLastInsn(block.end), block.handler, exceptionType, typeAnnotations);
+        }
+    }
+
+    /**
+     * Find the last reachable instruction before a label.
+     *
+     * @param label the exclusive end of a range
+     * @return the last instruction within the range
+     */
+    private AbstractInsnNode findLastInsn(LabelNode label) {
+        AbstractInsnNode node = label;
+        while ((node = node.getPrevious()) != null) {
+            if (node.getOpcode() >= 0 && node.getOpcode() != Opcodes.NOP && !isDeadCode(node)) {
+                return node;
+            }
+        }
+
+        throw new RuntimeException("Label could not be resolved");
+    }
+
+    @Override
+    protected Iterator<AbstractInsnNode> iterator(AbstractInsnNode start) {
+        return new Iterator<AbstractInsnNode>() {
+            private AbstractInsnNode next = start;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public AbstractInsnNode next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                AbstractInsnNode current = next;
+                next = next.getNext();
+                return current;
+            }
+        };
+    }
+
+    @Override
+    protected Iterable<AbstractInsnNode> getInstructions() {
+        return mn.instructions;
+    }
+
+    @Override
+    protected boolean continuesExecution(AbstractInsnNode instruction) {
+        switch (instruction.getOpcode()) {
+            case Opcodes.GOTO:
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH:
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.RETURN:
+            case Opcodes.ATHROW:
+                return false;
+
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    protected List<LabelNode> getBranchTargets(AbstractInsnNode instruction) {
+        switch (instruction.getType()) {
+            case AbstractInsnNode.JUMP_INSN:
+                return List.of(((JumpInsnNode) instruction).label);
+
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                TableSwitchInsnNode insn = (TableSwitchInsnNode) instruction;
+                List<LabelNode> targets = new ArrayList<>(insn.labels);
+                targets.add(insn.dflt);
+                return targets;
+            }
+
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                LookupSwitchInsnNode insn = (LookupSwitchInsnNode) instruction;
+                List<LabelNode> targets = new ArrayList<>(insn.labels);
+                targets.add(insn.dflt);
+                return targets;
+            }
+
+            default:
+                return List.of();
+        }
+    }
+
+    @Override
+    protected void convertInstruction(AbstractInsnNode instruction) {
+        writer.setInstruction(instruction);
+        reader.accept(instruction, analysis);
+    }
+
+    /**
+     * Check whether an instruction can be reached.
+     *
+     * @param instruction that gets checked
+     * @return is the instruction non-reachable
+     */
+    private boolean isDeadCode(AbstractInsnNode instruction) {
+        return !analysis.isReachable(instruction);
+    }
+
+    /**
+     * Check whether any reachable (= no dead code) instructions are within a range
+     * of instructions defined by two labels.
+     *
+     * @param start of the range
+     * @param end of the range
+     * @return whether the range contains no reachable statements
+     */
+    private boolean isRangeEmpty(LabelNode start, LabelNode end) {
+        AbstractInsnNode node = start;
+        do {
+            if (!isDeadCode(node)) {
+                return false;
+            }
+        } while ((node = node.getNext()) != end);
+        return true;
+    }
+
+    private void convertLineNumbers() {
+        for (AbstractInsnNode node : mn.instructions) {
+            if (node instanceof LineNumberNode && !isDeadCode(node)) {
+                LineNumberNode line = (LineNumberNode) node;
+                findCorrespondingStmt(line.start)
+                        .map(stmt -> new RefBody.LineNumber(line.line, stmt))
+                        .ifPresent(refBody.getLineNumbers()::add);
+            }
+        }
+    }
+}
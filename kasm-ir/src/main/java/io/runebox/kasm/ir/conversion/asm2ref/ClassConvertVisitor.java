@@ -0,0 +1,18 @@
+package io.runebox.kasm.ir.conversion.asm2ref;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * A {@link ClassVisitor} that creates a {@link Classfile} whose methods contain {@link RefBody RefBodies}.
+ */
+public class ClassConvertVisitor extends io.runebox.kasm.ir.conversion.asm2stack.ClassConvertVisitor {
+    @Override
+    protected MethodVisitor newMethodConvertVisitor(MethodVisitor mv, Method method, int access, String name,
+                                                    String descriptor, String signature, String[] exceptions) {
+        return new MethodConvertVisitor(mv, getClassfile(), method, access, name, descriptor, signature, exceptions);
+    }
+}
@@ -0,0 +1,34 @@
+package io.runebox.kasm.ir.conversion.asm2ref;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Visitor that converts all events of a method and stores them in a {@link Method} with a {@link RefBody}.
+ *
+ * Unlike the stack conversion, the code cannot be converted while it is visited:
+ * a {@link RefBody} is built by following the branches, so the visited code is collected in a {@link MethodNode}
+ * and converted at the end of the method.
+ */
+public class MethodConvertVisitor extends io.runebox.kasm.ir.conversion.asm2stack.MethodConvertVisitor {
+    public MethodConvertVisitor(MethodVisitor methodVisitor, Classfile classfile, Method method, int access, String name, String descriptor, String signature, String[] exceptions) {
+        super(methodVisitor, classfile, method, access, name, descriptor, signature, exceptions);
+    }
+
+    @Override
+    protected boolean canConvertWhileVisiting() {
+        // The RefBody conversion needs the whole method
+        return false;
+    }
+
+    @Override
+    protected Body convertBody(MethodNode mn) {
+        BodyConverter converter = new BodyConverter(this.classfile, this.method, mn);
+        converter.convert();
+        return converter.getRefBody();
+    }
+}
@@ -2,9 +2,14 @@ package io.runebox.kasm.ir.conversion.asm2stack;
 
 import io.runebox.kasm.ir.MethodDescriptor;
 import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.annotation.Annotation;
 import io.runebox.kasm.ir.type.*;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.TargetType;
 import io.runebox.kasm.ir.typeannotation.TypePath;
 import org.objectweb.asm.Attribute;
+import org.objectweb.asm.TypeReference;
+import org.objectweb.asm.tree.TypeAnnotationNode;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -172,6 +177,81 @@ public class AsmUtil {
         }
     }
 
+    /**
+     * Convert a type annotation on the exception type of a try/catch block.
+     *
+     * @param typeAnnotation the asm type annotation
+     * @param visible whether the annotation is visible at runtime
+     * @return the converted type annotation
+     */
+    public static ExceptionTypeAnnotation fromAsmExceptionTypeAnnotation(TypeAnnotationNode typeAnnotation, boolean visible) {
+        TypePath typePath = fromAsmTypePath(typeAnnotation.typePath);
+
+        Annotation annotation = new Annotation(pathFromInternalName(typeAnnotation.desc), visible);
+        typeAnnotation.accept(new AnnotationConvertVisitor(null, annotation));
+
+        return new ExceptionTypeAnnotation(typePath, annotation);
+    }
+
+    /**
+     * Convert the target of a type annotation on an instruction.
+     *
+     * @param tref the asm type reference
+     * @return the converted target type
+     */
+    public static TargetType.InsnTargetType fromAsmInsnTargetType(TypeReference tref) {
+        switch (tref.getSort()) {
+            case TypeReference.INSTANCEOF:
+                return new TargetType.InstanceOf();
+
+            case TypeReference.NEW:
+                return new TargetType.New();
+
+            case TypeReference.CONSTRUCTOR_REFERENCE:
+                return new TargetType.ConstructorReference();
+
+            case TypeReference.METHOD_REFERENCE:
+                return new TargetType.MethodReference();
+
+            case TypeReference.CAST:
+                return new TargetType.Cast(tref.getTypeArgumentIndex());
+
+            case TypeReference.CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT:
+                return new TargetType.ConstructorInvokeTypeParameter(tref.getTypeArgumentIndex());
+
+            case TypeReference.METHOD_INVOCATION_TYPE_ARGUMENT:
+                return new TargetType.MethodInvokeTypeParameter(tref.getTypeArgumentIndex());
+
+            case TypeReference.CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT:
+                return new TargetType.ConstructorReferenceTypeParameter(tref.getTypeArgumentIndex());
+
+            case TypeReference.METHOD_REFERENCE_TYPE_ARGUMENT:
+                return new TargetType.MethodReferenceTypeParameter(tref.getTypeArgumentIndex());
+
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * Convert the target of a type annotation on a local variable.
+     *
+     * @param tref the asm type reference
+     * @return the converted target type
+     */
+    public static TargetType.LocalTargetType fromAsmLocalTargetType(TypeReference tref) {
+        switch (tref.getSort()) {
+            case TypeReference.LOCAL_VARIABLE:
+                return new TargetType.LocalVariable();
+
+            case TypeReference.RESOURCE_VARIABLE:
+                return new TargetType.ResourceVariable();
+
+            default:
+                throw new AssertionError();
+        }
+    }
+
     public static RefType refTypeFromInternalName(String internalName) {
         return (RefType) fromAsmType(org.objectweb.asm.Type.getObjectType(internalName));
     }
@@ -0,0 +1,810 @@
+package io.runebox.kasm.ir.conversion.asm2stack;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.annotation.Annotation;
+import io.runebox.kasm.ir.conversion.AsmInsnReader;
+import io.runebox.kasm.ir.conversion.AsmStackAnalysis;
+import io.runebox.kasm.ir.conversion.AsmStackEmulator;
+import io.runebox.kasm.ir.conversion.AsmStackInsnWriter;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.TryCatchBlock;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.*;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.*;
+
+/**
+ * Visitor that converts the code of a method into a {@link StackBody} while the code is visited.
+ *
+ * Unlike the {@link BodyConverter}, instructions are converted as they are visited rather than after a complete {@link MethodNode}.
+ * The computational types of the stack, that are required to convert instructions like <tt>DUP2</tt>,
+ * are emulated along the visited instructions and reset at every visited frame.
+ * Dead code is converted like any other code and only removed when the end of the method is visited.
+ *
+ * Each visited instruction and label still becomes an asm node, since the {@link AsmInsnReader} converts nodes.
+ * The nodes are kept unlinked until the end of the method, because the fallback below must analyse the whole method.
+ * If frames are not visited (e.g. with {@link ClassReader#SKIP_FRAMES}), the computational types may still be unknown
+ * at reachable instructions. Only then the kept nodes are linked into an {@link InsnList} and analysed
+ * by an {@link AsmStackAnalysis}.
+ *
+ * Subroutines are not supported, so this visitor must not visit <tt>JSR</tt> or <tt>RET</tt> instructions.
+ * The {@link MethodConvertVisitor} stops using it, if it encounters one of them.
+ */
+public class BodyConvertVisitor extends MethodVisitor {
+    /**
+     * The event can be reached.
+     */
+    private static final byte REACHABLE = 1;
+
+    /**
+     * The event after this event cannot be reached from this event.
+     */
+    private static final byte UNCONDITIONAL = 2;
+
+    /**
+     * The computational types of the stack were unknown, so the instruction was not converted.
+     */
+    private static final byte UNRESOLVED = 4;
+
+    private static final Label[] NO_TARGETS = new Label[0];
+
+    private final Classfile classfile;
+    private final Method method;
+    private final String descriptor;
+    private final StackBody body = new StackBody();
+
+    private final ConversionContext ctx = new ConversionContext();
+    private final AsmStackInsnWriter writer = new AsmStackInsnWriter(ctx);
+    private final AsmInsnReader reader = new AsmInsnReader(writer);
+    private final AsmStackEmulator emulator = new AsmStackEmulator();
+
+    private final Map<Label, LabelInfo> labels = new IdentityHashMap<>();
+
+    /**
+     * Every visited instruction, label and line number is an event.
+     * The flags of all events in the order they were visited.
+     */
+    private byte[] eventFlags = new byte[32];
+
+    /**
+     * The number of {@link #instructions} that were converted before each event.
+     */
+    private int[] eventPositions = new int[32];
+
+    /**
+     * The node of each instruction or label event, otherwise <tt>null</tt>.
+     * They are only linked and analysed if an instruction remains {@link #UNRESOLVED}, and are dropped afterwards.
+     */
+    private AbstractInsnNode[] eventNodes = new AbstractInsnNode[32];
+    private int eventCount;
+
+    /**
+     * The events of all jumps and switches and the labels they jump to.
+     */
+    private int[] jumpEvents = new int[8];
+    private Label[] jumpTargets = new Label[8];
+    private int jumpCount;
+
+    /**
+     * All converted instructions including dead code.
+     */
+    private final List<Instruction> instructions = new ArrayList<>();
+
+    private final List<TryCatchBlockInfo> tryCatchBlocks = new ArrayList<>();
+    private final List<LocalVariableInfo> localVariables = new ArrayList<>();
+    private final List<LocalVariableAnnotationInfo> localVariableAnnotations = new ArrayList<>();
+    private final List<LineNumberInfo> lineNumbers = new ArrayList<>();
+
+    /**
+     * Instructions and annotations of {@link #UNRESOLVED} events that were converted after the end of the method.
+     */
+    private final Map<Integer, List<Instruction>> resolvedInstructions = new HashMap<>();
+    private final Map<Integer, List<InsnTypeAnnotation>> unresolvedAnnotations = new HashMap<>();
+
+    /**
+     * Events whose successors and jump targets were not marked as reachable yet.
+     */
+    private int[] worklist = new int[8];
+    private int worklistSize;
+
+    /**
+     * The instructions of all reachable events and the number of them before each event and after the last event.
+     */
+    private List<Instruction> bodyInstructions;
+    private int[] bodyPositions;
+
+    public BodyConvertVisitor(MethodVisitor methodVisitor, Classfile classfile, Method method, String descriptor) {
+        super(Opcodes.ASM7, methodVisitor);
+        this.classfile = classfile;
+        this.method = method;
+        this.descriptor = descriptor;
+
+        int slot = 0;
+        if (!method.getFlag(Method.Flag.STATIC)) {
+            ensureLocals(1);
+            this.body.setThisLocal(Optional.of(ctx.getLocal(slot++)));
+        }
+
+        for (Type paramType : method.getParameterTypes()) {
+            ensureLocals(slot + 1);
+            this.body.getParameterLocals().add(ctx.getLocal(slot));
+            slot += JvmType.from(paramType).is64bit() ? 2 : 1;
+        }
+    }
+
+    /**
+     * Get the converted body, once the end of the method was visited.
+     *
+     * @return the converted body
+     */
+    public StackBody getBody() {
+        return body;
+    }
+
+    /**
+     * Create the locals up to a local index, since the number of locals is only visited after the code.
+     */
+    private void ensureLocals(int count) {
+        while (ctx.getLocals().size() < count) {
+            StackLocal local = new StackLocal();
+            ctx.getLocals().add(local);
+            this.body.getLocals().add(local);
+        }
+    }
+
+    private LabelInfo getLabelInfo(Label label) {
+        return labels.computeIfAbsent(label, LabelInfo::new);
+    }
+
+    private LabelNode getLabelNode(Label label) {
+        return getLabelInfo(label).node;
+    }
+
+    private LabelNode[] getLabelNodes(Label[] labels) {
+        LabelNode[] nodes = new LabelNode[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            nodes[i] = getLabelNode(labels[i]);
+        }
+        return nodes;
+    }
+
+    private int addEvent(AbstractInsnNode node) {
+        if (eventCount == eventFlags.length) {
+            eventFlags = Arrays.copyOf(eventFlags, eventCount * 2);
+            eventPositions = Arrays.copyOf(eventPositions, eventCount * 2);
+            eventNodes = Arrays.copyOf(eventNodes, eventCount * 2);
+        }
+        eventPositions[eventCount] = instructions.size();
+        eventNodes[eventCount] = node;
+        return eventCount++;
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        super.visitFrame(type, numLocal, local, numStack, stack);
+
+        emulator.setFrameStack(type, numStack == 0 ? List.of() : Arrays.asList(stack).subList(0, numStack));
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        super.visitLabel(label);
+
+        LabelInfo info = getLabelInfo(label);
+        info.event = addEvent(info.node);
+
+        if (emulator.isBottomUnknown() && info.stack != null) {
+            // The label is only reached by a jump that was already visited
+            emulator.setStack(info.stack);
+        }
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        super.visitLineNumber(line, start);
+
+        lineNumbers.add(new LineNumberInfo(new StackBody.LineNumber(line, null), addEvent(null), start));
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        super.visitInsn(opcode);
+        convertInsn(new InsnNode(opcode));
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        super.visitIntInsn(opcode, operand);
+        convertInsn(new IntInsnNode(opcode, operand));
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        super.visitVarInsn(opcode, var);
+        ensureLocals(var + 1);
+        convertInsn(new VarInsnNode(opcode, var));
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        super.visitTypeInsn(opcode, type);
+        convertInsn(new TypeInsnNode(opcode, type));
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        super.visitFieldInsn(opcode, owner, name, descriptor);
+        convertInsn(new FieldInsnNode(opcode, owner, name, descriptor));
+    }
+
+    @Override
+    public void visitMethodInsn(int opcodeAndSource, String owner, String name, String descriptor, boolean isInterface) {
+        super.visitMethodInsn(opcodeAndSource, owner, name, descriptor, isInterface);
+        convertInsn(new MethodInsnNode(opcodeAndSource & ~Opcodes.SOURCE_MASK, owner, name, descriptor, isInterface));
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        convertInsn(new InvokeDynamicInsnNode(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments));
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        super.visitJumpInsn(opcode, label);
+        convertInsn(new JumpInsnNode(opcode, getLabelNode(label)), label);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        super.visitLdcInsn(value);
+        convertInsn(new LdcInsnNode(value));
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+        super.visitIincInsn(var, increment);
+        ensureLocals(var + 1);
+        convertInsn(new IincInsnNode(var, increment));
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+        convertInsn(new TableSwitchInsnNode(min, max, getLabelNode(dflt), getLabelNodes(labels)), getSwitchTargets(dflt, labels));
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+        convertInsn(new LookupSwitchInsnNode(getLabelNode(dflt), keys, getLabelNodes(labels)), getSwitchTargets(dflt, labels));
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        convertInsn(new MultiANewArrayInsnNode(descriptor, numDimensions));
+    }
+
+    private static Label[] getSwitchTargets(Label dflt, Label[] labels) {
+        Label[] targets = Arrays.copyOf(labels, labels.length + 1);
+        targets[labels.length] = dflt;
+        return targets;
+    }
+
+    private void convertInsn(AbstractInsnNode insn) {
+        convertInsn(insn, NO_TARGETS);
+    }
+
+    /**
+     * Convert an instruction and emulate its effect on the stack.
+     *
+     * The node carries the event to the {@link AsmInsnReader}. It is kept for {@link #resolveInstructions()},
+     * but only linked into an {@link InsnList} if some reachable instruction could not be converted here.
+     *
+     * @param insn the visited instruction
+     * @param targets the labels that the instruction jumps to
+     */
+    private void convertInsn(AbstractInsnNode insn, Label... targets) {
+        int event = addEvent(insn);
+        int stackLayout = emulator.getStackLayout();
+
+        boolean resolved;
+        try {
+            resolved = emulator.execute(insn);
+        } catch (AnalyzerException e) {
+            // This is fine as long as the instruction turns out to be dead code
+            emulator.setUnknown();
+            resolved = false;
+        }
+
+        if (resolved) {
+            reader.accept(insn, stackLayout);
+
+            List<Instruction> convertedInsns = writer.getInstructions();
+            for (int i = 0; i < convertedInsns.size(); i++) {
+                instructions.add(convertedInsns.get(i));
+            }
+            convertedInsns.clear();
+        } else {
+            eventFlags[event] |= UNRESOLVED;
+        }
+
+        for (Label target : targets) {
+            addJump(event, target);
+        }
+
+        if (AsmStackEmulator.isUnconditional(insn.getOpcode())) {
+            eventFlags[event] |= UNCONDITIONAL;
+            // The stack is unknown until a frame or a label that was jumped to is visited
+            emulator.setUnknown();
+        }
+    }
+
+    /**
+     * Register a jump from an instruction.
+     * The emulated stack is the stack at the target, if the target was not visited yet.
+     */
+    private void addJump(int event, Label label) {
+        if (jumpCount == jumpEvents.length) {
+            jumpEvents = Arrays.copyOf(jumpEvents, jumpCount * 2);
+            jumpTargets = Arrays.copyOf(jumpTargets, jumpCount * 2);
+        }
+        jumpEvents[jumpCount] = event;
+        jumpTargets[jumpCount] = label;
+        jumpCount++;
+
+        LabelInfo info = getLabelInfo(label);
+        if (info.event < 0 && info.stack == null && !emulator.isBottomUnknown()) {
+            info.stack = emulator.getStack();
+        }
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        super.visitTryCatchBlock(start, end, handler, type);
+
+        LabelInfo handlerInfo = getLabelInfo(handler);
+        if (handlerInfo.stack == null) {
+            handlerInfo.stack = new byte[] { 1 };
+        }
+
+        tryCatchBlocks.add(new TryCatchBlockInfo(start, end, handler, type));
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(int typeRef, org.objectweb.asm.TypePath typePath, String descriptor, boolean visible) {
+        AnnotationVisitor av = super.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible);
+
+        Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(descriptor), visible);
+        TryCatchBlockInfo block = tryCatchBlocks.get(new TypeReference(typeRef).getTryCatchBlockIndex());
+        block.typeAnnotations.add(new ExceptionTypeAnnotation(AsmUtil.fromAsmTypePath(typePath), annotation));
+
+        return new AnnotationConvertVisitor(av, annotation);
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(int typeRef, org.objectweb.asm.TypePath typePath, String descriptor, boolean visible) {
+        AnnotationVisitor av = super.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
+
+        Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(descriptor), visible);
+        TargetType.InsnTargetType targetType = AsmUtil.fromAsmInsnTargetType(new TypeReference(typeRef));
+        InsnTypeAnnotation typeAnnotation = new InsnTypeAnnotation(AsmUtil.fromAsmTypePath(typePath), annotation, targetType);
+
+        // The annotation belongs to the first instruction converted from the last visited instruction
+        int event = eventCount - 1;
+        if ((eventFlags[event] & UNRESOLVED) != 0) {
+            unresolvedAnnotations.computeIfAbsent(event, e -> new ArrayList<>()).add(typeAnnotation);
+        } else if (eventPositions[event] < instructions.size()) {
+            instructions.get(eventPositions[event]).getTypeAnnotations().add(typeAnnotation);
+        }
+
+        return new AnnotationConvertVisitor(av, annotation);
+    }
+
+    @Override
+    public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+        super.visitLocalVariable(name, descriptor, signature, start, end, index);
+
+        StackBody.LocalVariable localVar = new StackBody.LocalVariable(name, AsmUtil.fromDescriptor(descriptor),
+                Optional.ofNullable(signature), null, null, null);
+        localVariables.add(new LocalVariableInfo(localVar, start, end, index));
+    }
+
+    @Override
+    public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, org.objectweb.asm.TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+        AnnotationVisitor av = super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible);
+
+        Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(descriptor), visible);
+        TargetType.LocalTargetType targetType = AsmUtil.fromAsmLocalTargetType(new TypeReference(typeRef));
+        LocalVariableTypeAnnotation typeAnnotation = new LocalVariableTypeAnnotation(AsmUtil.fromAsmTypePath(typePath), annotation, targetType);
+        localVariableAnnotations.add(new LocalVariableAnnotationInfo(typeAnnotation, start, end, index));
+
+        return new AnnotationConvertVisitor(av, annotation);
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        super.visitMaxs(maxStack, maxLocals);
+        ensureLocals(maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        super.visitEnd();
+
+        computeReachability();
+        resolveInstructions();
+        eventNodes = null;
+        convertInstructions();
+        convertTryCatchBlocks();
+        convertLocalVariables();
+        convertLocalVariableAnnotations();
+        convertLineNumbers();
+        updateInsnCells();
+    }
+
+    private String getMethodName() {
+        return classfile.getName().join('/') + "#" + method.getName() + descriptor;
+    }
+
+    private int getEvent(Label label) {
+        LabelInfo info = labels.get(label);
+        if (info == null || info.event < 0) {
+            throw new RuntimeException("Label could not be resolved");
+        }
+        return info.event;
+    }
+
+    /**
+     * Mark all events that can be reached from the start of the method or an exception handler.
+     */
+    private void computeReachability() {
+        if (eventCount == 0) {
+            return;
+        }
+
+        markReachable(0);
+
+        // Handlers of reachable instructions may make further handlers reachable
+        boolean changed;
+        do {
+            changed = false;
+            for (TryCatchBlockInfo block : tryCatchBlocks) {
+                int handler = getEvent(block.handler);
+                if ((eventFlags[handler] & REACHABLE) == 0 && !isRangeEmpty(block.start, block.end)) {
+                    markReachable(handler);
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    private void markReachable(int event) {
+        addToWorklist(event);
+        while (worklistSize > 0) {
+            int current = worklist[--worklistSize];
+            while ((eventFlags[current] & REACHABLE) == 0) {
+                eventFlags[current] |= REACHABLE;
+
+                for (int jump = getFirstJump(current); jump < jumpCount && jumpEvents[jump] == current; jump++) {
+                    addToWorklist(getEvent(jumpTargets[jump]));
+                }
+
+                if ((eventFlags[current] & UNCONDITIONAL) != 0) {
+                    break;
+                }
+
+                current++;
+                if (current == eventCount) {
+                    throw new RuntimeException("Asm cannot analyze method " + getMethodName() + ": Execution can fall off the end of the code");
+                }
+            }
+        }
+    }
+
+    private void addToWorklist(int event) {
+        if (worklistSize == worklist.length) {
+            worklist = Arrays.copyOf(worklist, worklistSize * 2);
+        }
+        worklist[worklistSize++] = event;
+    }
+
+    /**
+     * Find the index of the first jump of an event. The jumps are sorted by their events.
+     */
+    private int getFirstJump(int event) {
+        int low = 0;
+        int high = jumpCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (jumpEvents[middle] < event) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Check whether any reachable (= no dead code) events are within a range defined by two labels.
+     *
+     * @param start of the range
+     * @param end of the range
+     * @return whether the range contains no reachable events
+     */
+    private boolean isRangeEmpty(Label start, Label end) {
+        int endEvent = getEvent(end);
+        for (int event = getEvent(start); event < endEvent; event++) {
+            if ((eventFlags[event] & REACHABLE) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert the reachable instructions whose computational types were unknown while they were visited.
+     */
+    private void resolveInstructions() {
+        boolean unresolved = false;
+        for (int event = 0; event < eventCount && !unresolved; event++) {
+            unresolved = (eventFlags[event] & (REACHABLE | UNRESOLVED)) == (REACHABLE | UNRESOLVED);
+        }
+        if (!unresolved) {
+            return;
+        }
+
+        MethodNode mn = new MethodNode();
+        mn.tryCatchBlocks = new ArrayList<>();
+        for (int event = 0; event < eventCount; event++) {
+            if (eventNodes[event] != null) {
+                mn.instructions.add(eventNodes[event]);
+            }
+        }
+        for (TryCatchBlockInfo block : tryCatchBlocks) {
+            mn.tryCatchBlocks.add(new TryCatchBlockNode(getLabelNode(block.start), getLabelNode(block.end),
+                    getLabelNode(block.handler), block.type));
+        }
+
+        AsmStackAnalysis analysis = new AsmStackAnalysis(mn);
+        try {
+            analysis.analyze();
+        } catch (AnalyzerException e) {
+            throw new RuntimeException("Asm cannot analyze method " + getMethodName());
+        }
+
+        for (int event = 0; event < eventCount; event++) {
+            if ((eventFlags[event] & (REACHABLE | UNRESOLVED)) != (REACHABLE | UNRESOLVED)) {
+                continue;
+            }
+
+            AbstractInsnNode insn = eventNodes[event];
+            reader.accept(insn, analysis.getStackLayout(insn));
+
+            List<Instruction> convertedInsns = new ArrayList<>(writer.getInstructions());
+            writer.getInstructions().clear();
+            resolvedInstructions.put(event, convertedInsns);
+
+            List<InsnTypeAnnotation> annotations = unresolvedAnnotations.get(event);
+            if (annotations != null && !convertedInsns.isEmpty()) {
+                convertedInsns.get(0).getTypeAnnotations().addAll(annotations);
+            }
+        }
+    }
+
+    /**
+     * Add the instructions of all reachable events to the body.
+     */
+    private void convertInstructions() {
+        bodyPositions = Arrays.copyOf(eventPositions, eventCount + 1);
+        bodyPositions[eventCount] = instructions.size();
+
+        boolean allConverted = true;
+        for (int event = 0; event < eventCount && allConverted; event++) {
+            allConverted = (eventFlags[event] & (REACHABLE | UNRESOLVED)) == REACHABLE;
+        }
+
+        if (allConverted) {
+            // There is no dead code, so all instructions are kept at their positions
+            bodyInstructions = instructions;
+        } else {
+            bodyInstructions = new ArrayList<>(instructions.size());
+            for (int event = 0; event < eventCount; event++) {
+                // Only the positions up to this event were overwritten yet
+                int start = eventPositions[event];
+                int end = bodyPositions[event + 1];
+                bodyPositions[event] = bodyInstructions.size();
+                if ((eventFlags[event] & REACHABLE) == 0) {
+                    // this instruction is dead code
+                    continue;
+                }
+
+                if ((eventFlags[event] & UNRESOLVED) != 0) {
+                    bodyInstructions.addAll(resolvedInstructions.get(event));
+                } else {
+                    for (int i = start; i < end; i++) {
+                        bodyInstructions.add(instructions.get(i));
+                    }
+                }
+            }
+            bodyPositions[eventCount] = bodyInstructions.size();
+        }
+
+        for (Instruction instruction : bodyInstructions) {
+            body.getInstructions().add(instruction);
+        }
+    }
+
+    private void convertTryCatchBlocks() {
+        for (TryCatchBlockInfo block : tryCatchBlocks) {
+            if (isRangeEmpty(block.start, block.end)) {
+                // This handler handles only dead code
+                continue;
+            }
+
+            Optional<Path> exceptionType = Optional.ofNullable(block.type).map(AsmUtil::pathFromInternalName);
+            TryCatchBlock tryCatchBlock = new TryCatchBlock(null, null, null, exceptionType);
+            tryCatchBlock.getTypeAnnotations().addAll(block.typeAnnotations);
+            this.body.getTryCatchBlocks().add(tryCatchBlock);
+
+            this.ctx.registerForwardInsnCell(getLabelNode(block.start), tryCatchBlock.getFirstCell());
+            this.ctx.registerBackwardInsnCell(getLabelNode(block.end), tryCatchBlock.getLastCell());
+            this.ctx.registerForwardInsnCell(getLabelNode(block.handler), tryCatchBlock.getHandlerCell());
+        }
+    }
+
+    private void convertLocalVariables() {
+        for (LocalVariableInfo info : localVariables) {
+            if (isRangeEmpty(info.start, info.end)) {
+                continue;
+            }
+
+            StackBody.LocalVariable localVar = info.localVariable;
+            localVar.setLocal(ctx.getLocal(info.index));
+            this.body.getLocalVariables().add(localVar);
+
+            this.ctx.registerForwardInsnCell(getLabelNode(info.start), localVar.getStartCell());
+            this.ctx.registerBackwardInsnCell(getLabelNode(info.end), localVar.getEndCell());
+        }
+    }
+
+    private void convertLocalVariableAnnotations() {
+        for (LocalVariableAnnotationInfo info : localVariableAnnotations) {
+            List<StackBody.LocalVariableAnnotation.Location> locations = new ArrayList<>();
+            for (int i = 0; i < info.start.length; i++) {
+                if (isRangeEmpty(info.start[i], info.end[i])) {
+                    continue;
+                }
+
+                StackBody.LocalVariableAnnotation.Location location = new StackBody.LocalVariableAnnotation.Location(null, null, ctx.getLocal(info.index[i]));
+                locations.add(location);
+
+                this.ctx.registerForwardInsnCell(getLabelNode(info.start[i]), location.getStartCell());
+                this.ctx.registerBackwardInsnCell(getLabelNode(info.end[i]), location.getEndCell());
+            }
+
+            if (locations.isEmpty()) {
+                // The annotated local variable exists only within dead code
+                continue;
+            }
+
+            body.getLocalVariableAnnotations().add(new StackBody.LocalVariableAnnotation(info.annotation, locations));
+        }
+    }
+
+    private void convertLineNumbers() {
+        for (LineNumberInfo info : lineNumbers) {
+            if ((eventFlags[info.event] & REACHABLE) == 0) {
+                continue;
+            }
+
+            this.body.getLineNumbers().add(info.lineNumber);
+            this.ctx.registerForwardInsnCell(getLabelNode(info.start), info.lineNumber.getInstructionCell());
+        }
+    }
+
+    private void updateInsnCells() {
+        ctx.getForwardLabelCells().forEach((label, insnCells) -> {
+            int position = bodyPositions[getEvent(label.getLabel())];
+            if (position == bodyInstructions.size()) {
+                throw new RuntimeException("Label could not be resolved");
+            }
+
+            Instruction firstInsn = bodyInstructions.get(position);
+            insnCells.forEach(cell -> cell.set(firstInsn));
+        });
+
+        ctx.getBackwardLabelCells().forEach((label, insnCells) -> {
+            int position = bodyPositions[getEvent(label.getLabel())];
+            if (position == 0) {
+                throw new RuntimeException("Label could not be resolved");
+            }
+
+            Instruction lastInsn = bodyInstructions.get(position - 1);
+            insnCells.forEach(cell -> cell.set(lastInsn));
+        });
+    }
+
+    private static class LabelInfo {
+        private final LabelNode node;
+
+        /**
+         * The event of the label or <tt>-1</tt> if the label was not visited yet.
+         */
+        private int event = -1;
+
+        /**
+         * Computational types of the stack at the label, if it is known from a jump or exception handler.
+         */
+        private byte[] stack;
+
+        LabelInfo(Label label) {
+            this.node = new LabelNode(label);
+        }
+    }
+
+    private static class TryCatchBlockInfo {
+        private final Label start;
+        private final Label end;
+        private final Label handler;
+        private final String type;
+        private final List<ExceptionTypeAnnotation> typeAnnotations = new ArrayList<>();
+
+        TryCatchBlockInfo(Label start, Label end, Label handler, String type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    private static class LocalVariableInfo {
+        private final StackBody.LocalVariable localVariable;
+        private final Label start;
+        private final Label end;
+        private final int index;
+
+        LocalVariableInfo(StackBody.LocalVariable localVariable, Label start, Label end, int index) {
+            this.localVariable = localVariable;
+            this.start = start;
+            this.end = end;
+            this.index = index;
+        }
+    }
+
+    private static class LocalVariableAnnotationInfo {
+        private final LocalVariableTypeAnnotation annotation;
+        private final Label[] start;
+        private final Label[] end;
+        private final int[] index;
+
+        LocalVariableAnnotationInfo(LocalVariableTypeAnnotation annotation, Label[] start, Label[] end, int[] index) {
+            this.annotation = annotation;
+            this.start = start;
+            this.end = end;
+            this.index = index;
+        }
+    }
+
+    private static class LineNumberInfo {
+        private final StackBody.LineNumber lineNumber;
+        private final int event;
+        private final Label start;
+
+        LineNumberInfo(StackBody.LineNumber lineNumber, int event, Label start) {
+            this.lineNumber = lineNumber;
+            this.event = event;
+            this.start = start;
+        }
+    }
+}
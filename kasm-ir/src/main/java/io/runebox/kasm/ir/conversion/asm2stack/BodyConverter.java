@@ -1,10 +1,12 @@
 package io.runebox.kasm.ir.conversion.asm2stack;
 
 import io.runebox.kasm.ir.conversion.AsmInsnReader;
+import io.runebox.kasm.ir.conversion.AsmStackAnalysis;
 import io.runebox.kasm.ir.conversion.AsmStackInsnWriter;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Method;
 import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.analysis.JvmType;
 import io.runebox.kasm.ir.annotation.Annotation;
 import io.runebox.kasm.ir.type.Type;
 import io.runebox.kasm.ir.typeannotation.*;
@@ -14,7 +16,7 @@ import io.runebox.kasm.ir.stack.TryCatchBlock;
 import io.runebox.kasm.ir.stack.insn.Instruction;
 import org.objectweb.asm.TypeReference;
 import org.objectweb.asm.tree.*;
-import org.objectweb.asm.tree.analysis.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
 
 import java.util.*;
 
@@ -25,7 +27,7 @@ public class BodyConverter {
     private final MethodNode mn;
 
     private final ConversionContext ctx = new ConversionContext();
-    private Frame<BasicValue>[] frames;
+    private AsmStackAnalysis analysis;
 
     private final Map<AbstractInsnNode, List<Instruction>> convertedInsns = new HashMap<>();
 
@@ -43,13 +45,14 @@ public class BodyConverter {
             this.body.getLocals().add(local);
         }
 
-        int localIndex = 0;
+        int slot = 0;
         if (!this.method.getFlag(Method.Flag.STATIC)) {
-            this.body.setThisLocal(Optional.of(ctx.getLocal(localIndex++)));
+            this.body.setThisLocal(Optional.of(ctx.getLocal(slot++)));
         }
 
         for (Type paramType : this.method.getParameterTypes()) {
-            this.body.getParameterLocals().add(ctx.getLocal(localIndex++));
+            this.body.getParameterLocals().add(ctx.getLocal(slot));
+            slot += JvmType.from(paramType).is64bit() ? 2 : 1;
         }
     }
 
@@ -69,8 +72,8 @@ public class BodyConverter {
     private void runAsmClassAnalysis() {
         String owner = classfile.getName().join('/');
         try {
-            Analyzer<BasicValue> analyzer = new Analyzer<>(new BasicInterpreter());
-            this.frames = analyzer.analyze(owner, mn);
+            this.analysis = new AsmStackAnalysis(mn);
+            this.analysis.analyze();
         } catch (AnalyzerException e) {
             throw new RuntimeException("Asm cannot analyze method " + owner + "#" + mn.name + mn.desc);
         }
@@ -83,8 +86,7 @@ public class BodyConverter {
         InsnList instructions = mn.instructions;
         for (int index = 0; index < instructions.size(); index++) {
             AbstractInsnNode insn = instructions.get(index);
-            Frame<BasicValue> frame = this.frames[index];
-            if (frame == null) {
+            if (!analysis.isReachable(index)) {
                 // this instruction is dead code
                 continue;
             }
@@ -98,7 +100,7 @@ public class BodyConverter {
                 continue;
             }
 
-            reader.accept(insn, frame);
+            reader.accept(insn, analysis);
 
             List<Instruction> convertedInsns = iw.getInstructions();
 
@@ -126,7 +128,7 @@ public class BodyConverter {
 
     private InsnTypeAnnotation convertInsnTypeAnnotation(TypeAnnotationNode typeAnnotation, boolean visible) {
         TypePath typePath = AsmUtil.fromAsmTypePath(typeAnnotation.typePath);
-        TargetType.InsnTargetType targetType = convertInsnTargetType(new TypeReference(typeAnnotation.typeRef));
+        TargetType.InsnTargetType targetType = AsmUtil.fromAsmInsnTargetType(new TypeReference(typeAnnotation.typeRef));
 
         Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(typeAnnotation.desc), visible);
         typeAnnotation.accept(new AnnotationConvertVisitor(null, annotation));
@@ -134,40 +136,6 @@ public class BodyConverter {
         return new InsnTypeAnnotation(typePath, annotation, targetType);
     }
 
-    private TargetType.InsnTargetType convertInsnTargetType(TypeReference tref) {
-        switch (tref.getSort()) {
-            case TypeReference.INSTANCEOF:
-                return new TargetType.InstanceOf();
-
-            case TypeReference.NEW:
-                return new TargetType.New();
-
-            case TypeReference.CONSTRUCTOR_REFERENCE:
-                return new TargetType.ConstructorReference();
-
-            case TypeReference.METHOD_REFERENCE:
-                return new TargetType.MethodReference();
-
-            case TypeReference.CAST:
-                return new TargetType.Cast(tref.getTypeArgumentIndex());
-
-            case TypeReference.CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT:
-                return new TargetType.ConstructorInvokeTypeParameter(tref.getTypeArgumentIndex());
-
-            case TypeReference.METHOD_INVOCATION_TYPE_ARGUMENT:
-                return new TargetType.MethodInvokeTypeParameter(tref.getTypeArgumentIndex());
-
-            case TypeReference.CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT:
-                return new TargetType.ConstructorReferenceTypeParameter(tref.getTypeArgumentIndex());
-
-            case TypeReference.METHOD_REFERENCE_TYPE_ARGUMENT:
-                return new TargetType.MethodReferenceTypeParameter(tref.getTypeArgumentIndex());
-
-            default:
-                throw new AssertionError();
-        }
-    }
-
     private void convertLineNumber(LineNumberNode insn) {
         StackBody.LineNumber line = new StackBody.LineNumber(insn.line, null);
         this.body.getLineNumbers().add(line);
@@ -191,27 +159,18 @@ public class BodyConverter {
 
             if (block.visibleTypeAnnotations != null) {
                 for (TypeAnnotationNode anno : block.visibleTypeAnnotations) {
-                    tryCatchBlock.getTypeAnnotations().add(convertExceptionTypeAnnotation(anno, true));
+                    tryCatchBlock.getTypeAnnotations().add(AsmUtil.fromAsmExceptionTypeAnnotation(anno, true));
                 }
             }
 
             if (block.invisibleTypeAnnotations != null) {
                 for (TypeAnnotationNode anno : block.invisibleTypeAnnotations) {
-                    tryCatchBlock.getTypeAnnotations().add(convertExceptionTypeAnnotation(anno, false));
+                    tryCatchBlock.getTypeAnnotations().add(AsmUtil.fromAsmExceptionTypeAnnotation(anno, false));
                 }
             }
         }
     }
 
-    private ExceptionTypeAnnotation convertExceptionTypeAnnotation(TypeAnnotationNode typeAnnotation, boolean visible) {
-        TypePath typePath = AsmUtil.fromAsmTypePath(typeAnnotation.typePath);
-
-        Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(typeAnnotation.desc), visible);
-        typeAnnotation.accept(new AnnotationConvertVisitor(null, annotation));
-
-        return new ExceptionTypeAnnotation(typePath, annotation);
-    }
-
     private void convertLocalVariables() {
         for (LocalVariableNode asmVar : mn.localVariables) {
             if (isRangeEmpty(asmVar.start, asmVar.end)) {
@@ -249,7 +208,7 @@ public class BodyConverter {
             return;
         }
 
-        TargetType.LocalTargetType targetType = convertLocalTargetType(new TypeReference(varAnno.typeRef));
+        TargetType.LocalTargetType targetType = AsmUtil.fromAsmLocalTargetType(new TypeReference(varAnno.typeRef));
         TypePath typePath = AsmUtil.fromAsmTypePath(varAnno.typePath);
 
         Annotation annotation = new Annotation(AsmUtil.pathFromInternalName(varAnno.desc), visible);
@@ -259,19 +218,6 @@ public class BodyConverter {
         body.getLocalVariableAnnotations().add(new StackBody.LocalVariableAnnotation(typeAnno, locations));
     }
 
-    private TargetType.LocalTargetType convertLocalTargetType(TypeReference tref) {
-        switch (tref.getSort()) {
-            case TypeReference.LOCAL_VARIABLE:
-                return new TargetType.LocalVariable();
-
-            case TypeReference.RESOURCE_VARIABLE:
-                return new TargetType.ResourceVariable();
-
-            default:
-                throw new AssertionError();
-        }
-    }
-
     private List<StackBody.LocalVariableAnnotation.Location> convertLocalVariableAnnotationLocations(LocalVariableAnnotationNode varAnno) {
         List<StackBody.LocalVariableAnnotation.Location> locations = new ArrayList<>();
 
@@ -306,8 +252,7 @@ public class BodyConverter {
     private boolean isRangeEmpty(LabelNode start, LabelNode end) {
         AbstractInsnNode node = start;
         do {
-            int insnIndex = mn.instructions.indexOf(node);
-            if (frames[insnIndex] != null) {
+            if (analysis.isReachable(node)) {
                 return false;
             }
         } while((node = node.getNext()) != end);
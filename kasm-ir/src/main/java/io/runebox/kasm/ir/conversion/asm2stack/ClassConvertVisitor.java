@@ -22,8 +22,41 @@ import java.util.stream.Stream;
 public class ClassConvertVisitor extends ClassVisitor {
     private Classfile classfile;
 
+    /**
+     * Reader used to convert method bodies on demand.
+     * If it is absent, the bodies are converted directly from the visited events.
+     */
+    private final Optional<ClassReader> lazyReader;
+
+    /**
+     * The parsing options used to convert lazily loaded bodies.
+     */
+    private final int lazyParsingOption;
+
+    /**
+     * Shared by the loaders of all methods of the class, created with the first loader.
+     */
+    private LazyClassBodies lazyBodies;
+
     public ClassConvertVisitor() {
         super(Opcodes.ASM7);
+        this.lazyReader = Optional.empty();
+        this.lazyParsingOption = 0;
+    }
+
+    /**
+     * Create a visitor that does not convert method bodies directly.
+     * Instead a {@link LazyBodyLoader} is registered that will convert the body on its first access.
+     *
+     * The class should be visited with {@link ClassReader#SKIP_CODE}.
+     *
+     * @param reader the reader of the visited class
+     * @param parsingOption the parsing options used when loading a body
+     */
+    public ClassConvertVisitor(ClassReader reader, int parsingOption) {
+        super(Opcodes.ASM7);
+        this.lazyReader = Optional.of(reader);
+        this.lazyParsingOption = parsingOption;
     }
 
     public Classfile getClassfile() {
@@ -196,8 +229,32 @@ public class ClassConvertVisitor extends ClassVisitor {
 
         this.classfile.getMethods().add(method);
 
+        if (lazyReader.isPresent() && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+            if (lazyBodies == null) {
+                lazyBodies = new LazyClassBodies(lazyReader.get(), lazyParsingOption, classfile);
+            }
+            method.setBodyLoader(new LazyBodyLoader(lazyBodies, access, name, descriptor));
+        }
+
         MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
-        mv = new MethodConvertVisitor(mv, classfile, method, access, name, descriptor, signature, exceptions);
+        mv = newMethodConvertVisitor(mv, method, access, name, descriptor, signature, exceptions);
         return mv;
     }
+
+    /**
+     * Create the visitor that converts the events of a method and stores them in a {@link Method}.
+     *
+     * @param mv visitor that the events get delegated to
+     * @param method the method that the events are stored in
+     * @param access access flags of the method
+     * @param name name of the method
+     * @param descriptor descriptor of the method
+     * @param signature generic signature of the method
+     * @param exceptions internal names of the checked exceptions
+     * @return the converting visitor
+     */
+    protected MethodVisitor newMethodConvertVisitor(MethodVisitor mv, Method method, int access, String name,
+                                                    String descriptor, String signature, String[] exceptions) {
+        return new MethodConvertVisitor(mv, classfile, method, access, name, descriptor, signature, exceptions);
+    }
 }
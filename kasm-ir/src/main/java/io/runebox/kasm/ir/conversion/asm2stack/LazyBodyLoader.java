@@ -0,0 +1,100 @@
+package io.runebox.kasm.ir.conversion.asm2stack;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.MethodDescriptor;
+import io.runebox.kasm.ir.conversion.AccessConverter;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassReader;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Convert the body of a single method on demand.
+ *
+ * Only the code of this method is converted, the code of all other methods of the class is skipped.
+ * The method is identified by the name and descriptor it had in the class file,
+ * so renaming the {@link Method} before its body gets loaded is fine.
+ */
+public class LazyBodyLoader implements Supplier<Optional<Body>> {
+    private final LazyClassBodies bodies;
+    private final int access;
+    private final String name;
+    private final String descriptor;
+
+    LazyBodyLoader(LazyClassBodies bodies, int access, String name, String descriptor) {
+        this.bodies = bodies;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Get the reader of the class that contains the method.
+     *
+     * @return the class reader
+     */
+    public ClassReader getReader() {
+        return bodies.getReader();
+    }
+
+    /**
+     * Get the name of the method as it is stored in the class file.
+     *
+     * @return the original method name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the descriptor of the method as it is stored in the class file.
+     *
+     * @return the original method descriptor
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Create a method that the body can be converted into.
+     *
+     * @return a method with the original name, descriptor and flags
+     */
+    Method newMethod() {
+        MethodDescriptor desc = AsmUtil.parseMethodDescriptor(descriptor);
+        Method method = new Method(name, desc.getParameterTypes(), desc.getReturnType());
+        method.getFlags().addAll(AccessConverter.METHOD.fromBitMap(access));
+        return method;
+    }
+
+    /**
+     * Get the converted code of the method.
+     *
+     * @return the converted {@link StackBody}
+     */
+    @Override
+    public Optional<Body> get() {
+        return bodies.load(this);
+    }
+
+    /**
+     * Loaders are equal if they load the same method from the same {@link ClassReader}.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LazyBodyLoader that = (LazyBodyLoader) o;
+        return bodies.getReader() == that.bodies.getReader() &&
+                Objects.equals(name, that.name) &&
+                Objects.equals(descriptor, that.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(bodies.getReader()), name, descriptor);
+    }
+}
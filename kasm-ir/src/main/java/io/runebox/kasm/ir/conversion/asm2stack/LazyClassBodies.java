@@ -0,0 +1,76 @@
+package io.runebox.kasm.ir.conversion.asm2stack;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.metrics.ClassConversionEvent;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Optional;
+
+/**
+ * The lazily loaded bodies of all methods of one class.
+ *
+ * Each access converts only the code of the requested method.
+ * The class is visited again for each body, but the visit skips the code of all other methods,
+ * as well as fields and annotations, so only their headers are read.
+ *
+ * Methods of the same class may load their bodies on different threads.
+ * The class reader and class file are only read, so the bodies are loaded concurrently.
+ */
+class LazyClassBodies {
+    private final ClassReader reader;
+    private final int parsingOption;
+    private final Classfile classfile;
+
+    LazyClassBodies(ClassReader reader, int parsingOption, Classfile classfile) {
+        this.reader = reader;
+        this.parsingOption = parsingOption & ~ClassReader.SKIP_CODE;
+        this.classfile = classfile;
+    }
+
+    ClassReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Convert the code of one method.
+     *
+     * @param loader the loader of the method
+     * @return the converted body
+     */
+    Optional<Body> load(LazyBodyLoader loader) {
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        ClassConversionEvent event = new ClassConversionEvent();
+        event.begin();
+
+        // The body is converted into a copy of the method, so that annotations
+        // and other method level information don't get added twice to the real method.
+        Method method = loader.newMethod();
+        String name = loader.getName();
+        String descriptor = loader.getDescriptor();
+
+        reader.accept(new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public MethodVisitor visitMethod(int access, String methodName, String methodDescriptor, String signature, String[] exceptions) {
+                return !methodName.equals(name) || !methodDescriptor.equals(descriptor) ? null :
+                        new MethodConvertVisitor(null, classfile, method, access, methodName, methodDescriptor, signature, exceptions);
+            }
+        }, parsingOption);
+
+        Optional<Body> body = method.getBody();
+
+        event.commit(Stage.ASM_TO_STACK, classfile);
+        if (probe.isPresent()) {
+            int codeSize = body.map(ConversionMetrics::getCodeSize).orElse(0);
+            int locals = body.map(ConversionMetrics::getLocalCount).orElse(0);
+            probe.get().finish(Stage.ASM_TO_STACK, Optional.empty(), 0, codeSize, locals, 0);
+        }
+        return body;
+    }
+}
@@ -1,6 +1,7 @@
 package io.runebox.kasm.ir.conversion.asm2stack;
 
 import io.runebox.kasm.ir.conversion.AccessConverter;
+import io.runebox.kasm.ir.Body;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Method;
 import io.runebox.kasm.ir.annotation.Annotation;
@@ -10,23 +11,50 @@ import io.runebox.kasm.ir.typeannotation.TargetType;
 import io.runebox.kasm.ir.stack.StackBody;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.JSRInlinerAdapter;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Visitor that converts all events and stores them in a {@link Method}.
+ *
+ * The code is converted while it is visited.
+ * Class files before version 51 may contain subroutines, so their code is also buffered in a {@link JSRInlinerAdapter}.
+ * If a <tt>JSR</tt> or <tt>RET</tt> instruction is visited, the conversion while visiting is abandoned
+ * and the buffered code is converted at the end of the method, after all subroutines were inlined.
  */
-public class MethodConvertVisitor extends JSRInlinerAdapter {
-    private final Classfile classfile;
-    private final Method method;
-    private StackBody body;
+public class MethodConvertVisitor extends MethodVisitor {
+    protected final Classfile classfile;
+    protected final Method method;
+
+    private final int access;
+    private final String name;
+    private final String descriptor;
+    private final String signature;
+    private final String[] exceptions;
+
+    /**
+     * Provides the converted body once the end of the method was visited, if the method has code.
+     */
+    private Optional<Supplier<Body>> body = Optional.empty();
+
+    /**
+     * Buffers the code of methods that may contain subroutines, while it is converted.
+     */
+    private Optional<MethodNode> subroutineBuffer = Optional.empty();
 
     public MethodConvertVisitor(MethodVisitor methodVisitor, Classfile classfile, Method method, int access, String name, String descriptor, String signature, String[] exceptions) {
-        super(Opcodes.ASM7, methodVisitor, access, name, descriptor, signature, exceptions);
+        super(Opcodes.ASM7, methodVisitor);
         this.method = method;
         this.classfile = classfile;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.signature = signature;
+        this.exceptions = exceptions;
     }
 
     @Override
@@ -120,18 +148,93 @@ public class MethodConvertVisitor extends JSRInlinerAdapter {
 
     @Override
     public void visitCode() {
+        if (!canConvertWhileVisiting()) {
+            MethodNode node = new JSRInlinerAdapter(this.mv, access, name, descriptor, signature, exceptions);
+            this.body = Optional.of(() -> convertBody(node));
+            this.mv = node;
+        } else {
+            MethodVisitor next = this.mv;
+            if (mayContainSubroutines()) {
+                MethodNode node = new JSRInlinerAdapter(this.mv, access, name, descriptor, signature, exceptions);
+                this.subroutineBuffer = Optional.of(node);
+                next = node;
+            }
+
+            BodyConvertVisitor visitor = new BodyConvertVisitor(next, this.classfile, this.method, this.descriptor);
+            this.body = Optional.of(visitor::getBody);
+            this.mv = visitor;
+        }
+
         super.visitCode();
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        if (opcode == Opcodes.JSR) {
+            inlineSubroutines();
+        }
+
+        super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        if (opcode == Opcodes.RET) {
+            inlineSubroutines();
+        }
+
+        super.visitVarInsn(opcode, var);
+    }
 
-        this.body = new StackBody();
-        this.method.setBody(Optional.of(this.body));
+    /**
+     * Stop converting the code while it is visited and convert the buffered code once its subroutines are inlined.
+     */
+    private void inlineSubroutines() {
+        this.subroutineBuffer.ifPresent(node -> {
+            if (this.mv != node) {
+                this.body = Optional.of(() -> convertBody(node));
+                this.mv = node;
+            }
+        });
     }
 
     @Override
     public void visitEnd() {
         super.visitEnd();
 
-        if (this.body != null) {
-            new BodyConverter(this.classfile, this.method, this.body, this).convert();
+        if (this.body.isPresent()) {
+            this.method.setBody(Optional.of(this.body.get().get()));
         }
     }
+
+    /**
+     * Check whether the code of the method can be converted by a {@link BodyConvertVisitor}.
+     *
+     * @return whether the code can be converted while it is visited, unless it contains subroutines
+     */
+    protected boolean canConvertWhileVisiting() {
+        return true;
+    }
+
+    /**
+     * Check whether the code of the method may contain <tt>JSR</tt> and <tt>RET</tt> instructions.
+     *
+     * @return whether the code must be buffered in case its subroutines must be inlined
+     */
+    private boolean mayContainSubroutines() {
+        // JSR and RET instructions are not allowed since version 51
+        return this.classfile.getVersion().getMajor() < Opcodes.V1_7;
+    }
+
+    /**
+     * Convert the buffered code of the method, after all JSR subroutines were inlined.
+     *
+     * @param mn the method with inlined subroutines
+     * @return the converted body
+     */
+    protected Body convertBody(MethodNode mn) {
+        StackBody body = new StackBody();
+        new BodyConverter(this.classfile, this.method, body, mn).convert();
+        return body;
+    }
 }
@@ -0,0 +1,45 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of all flight recorder events that concern a single method.
+ *
+ * The names are only computed once it is known that the event gets committed,
+ * so an event site costs nothing while the event is disabled.
+ * Method events are frequent, so they record no stack trace.
+ */
+@Category({"kasm", "Conversion"})
+@StackTrace(false)
+public abstract class AbstractMethodEvent extends Event {
+    @Label("Class")
+    protected String className;
+
+    @Label("Method Name")
+    protected String methodName;
+
+    @Label("Method Descriptor")
+    protected String methodDescriptor;
+
+    /**
+     * Set the names of the method and the class containing it.
+     *
+     * @param classfile the class containing the method or <tt>null</tt> if it is unknown
+     * @param method the method or <tt>null</tt> if it is unknown
+     */
+    protected void setMethod(Classfile classfile, Method method) {
+        if (classfile != null) {
+            this.className = classfile.getName().join('.');
+        }
+        if (method != null) {
+            this.methodName = method.getName();
+            this.methodDescriptor = AsmUtil.methodDescriptorToString(method.getReturnType(), method.getParameterTypes());
+        }
+    }
+}
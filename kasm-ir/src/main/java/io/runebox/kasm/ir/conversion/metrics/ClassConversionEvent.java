@@ -0,0 +1,44 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Classfile;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the conversion of a whole class by one of the facades.
+ *
+ * <pre><code>
+ *     ClassConversionEvent event = new ClassConversionEvent();
+ *     event.begin();
+ *     // convert the class
+ *     event.commit(Stage.ASM_TO_STACK, classfile);
+ * </code></pre>
+ */
+@Name("io.runebox.kasm.ClassConversion")
+@Label("Class Conversion")
+@Description("Conversion of a whole class")
+@Category({"kasm", "Conversion"})
+public class ClassConversionEvent extends Event {
+    @Label("Class")
+    private String className;
+
+    @Label("Stage")
+    private String stage;
+
+    /**
+     * End the event and commit it, if it is enabled and exceeded its threshold.
+     *
+     * @param stage the conversion that was applied
+     * @param classfile the converted class
+     */
+    public void commit(Stage stage, Classfile classfile) {
+        if (shouldCommit()) {
+            this.stage = stage.name();
+            this.className = classfile.getName().join('.');
+            commit();
+        }
+    }
+}
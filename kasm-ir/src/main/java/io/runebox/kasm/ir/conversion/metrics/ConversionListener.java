@@ -0,0 +1,21 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+/**
+ * Receives a {@link StageMeasurement} whenever a conversion stage completed.
+ *
+ * Listeners are called synchronously on the thread that ran the stage, possibly from many threads at once,
+ * so implementations must be thread-safe and should return quickly.
+ *
+ * A listener is installed with {@link ConversionMetrics#setListener(ConversionListener)}.
+ * If none is installed, the first implementation registered as a {@link java.util.ServiceLoader service} is used.
+ *
+ * @see MetricsCollector
+ */
+public interface ConversionListener {
+    /**
+     * Called after a stage completed successfully.
+     *
+     * @param measurement the costs of the stage
+     */
+    public void stageCompleted(StageMeasurement measurement);
+}
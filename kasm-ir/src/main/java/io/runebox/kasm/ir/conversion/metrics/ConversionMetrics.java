@@ -0,0 +1,217 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.objectweb.asm.ClassReader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Optional;
+import java.util.ServiceLoader;
+
+/**
+ * The {@link ConversionListener} that all conversion stages report into.
+ *
+ * If no listener is installed, the stages only check for one and measure nothing.
+ */
+public class ConversionMetrics {
+    /**
+     * Bean to measure the allocations of the current thread or <tt>null</tt> if the JVM does not support it.
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+
+    private static volatile Optional<ConversionListener> listener =
+            ServiceLoader.load(ConversionListener.class).findFirst();
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    public static Optional<ConversionListener> getListener() {
+        return listener;
+    }
+
+    /**
+     * Install the listener that all stages report into.
+     *
+     * @param listener the new listener or {@link Optional#empty()} to stop measuring
+     */
+    public static void setListener(Optional<ConversionListener> listener) {
+        ConversionMetrics.listener = listener;
+    }
+
+    /**
+     * Start measuring a stage on the current thread.
+     *
+     * @return the running measurement or {@link Optional#empty()} if no listener is installed
+     */
+    public static Optional<Probe> start() {
+        Optional<ConversionListener> listener = ConversionMetrics.listener;
+        return listener.isPresent() ? Optional.of(new Probe(listener.get())) : Optional.empty();
+    }
+
+    private static long getAllocatedBytes() {
+        return THREAD_BEAN == null ? -1 : THREAD_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Get the amount of instructions or statements of a body.
+     *
+     * @param body a {@link StackBody} or {@link RefBody}
+     * @return the size of the body
+     */
+    public static int getCodeSize(Body body) {
+        if (body instanceof StackBody) {
+            return ((StackBody) body).getInstructions().size();
+        } else if (body instanceof RefBody) {
+            return ((RefBody) body).getStatements().size();
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Get the amount of locals of a body.
+     *
+     * @param body a {@link StackBody} or {@link RefBody}
+     * @return the number of locals
+     */
+    public static int getLocalCount(Body body) {
+        if (body instanceof StackBody) {
+            return ((StackBody) body).getLocals().size();
+        } else if (body instanceof RefBody) {
+            return ((RefBody) body).getLocals().size();
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Get the amount of instructions or statements of all bodies of a class.
+     * Bodies that were not loaded yet are not counted and stay unloaded.
+     *
+     * @param classfile the class
+     * @return the size of all loaded bodies
+     */
+    public static int getCodeSize(Classfile classfile) {
+        int size = 0;
+        for (Method method : classfile.getMethods()) {
+            if (method.isBodyLoaded() && method.getBody().isPresent()) {
+                size += getCodeSize(method.getBody().get());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the amount of locals of all loaded bodies of a class.
+     *
+     * @param classfile the class
+     * @return the number of locals of all loaded bodies
+     */
+    public static int getLocalCount(Classfile classfile) {
+        int count = 0;
+        for (Method method : classfile.getMethods()) {
+            if (method.isBodyLoaded() && method.getBody().isPresent()) {
+                count += getLocalCount(method.getBody().get());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the size in bytes of the class file that a {@link ClassReader} reads.
+     *
+     * The reader does not expose its buffer without deprecated API, so the fields, methods and
+     * attributes after the constant pool are skipped until the end of the class is reached.
+     *
+     * @param cr the reader of the class
+     * @return the length of the class file
+     */
+    public static int getClassSize(ClassReader cr) {
+        // access flags, this class and super class
+        int offset = cr.header + 6;
+        offset += 2 + 2 * cr.readUnsignedShort(offset);
+
+        // fields and methods
+        for (int i = 0; i < 2; i++) {
+            int memberCount = cr.readUnsignedShort(offset);
+            offset += 2;
+            while (memberCount-- > 0) {
+                // access flags, name and descriptor
+                offset = skipAttributes(cr, offset + 6);
+            }
+        }
+
+        return skipAttributes(cr, offset);
+    }
+
+    private static int skipAttributes(ClassReader cr, int offset) {
+        int attributeCount = cr.readUnsignedShort(offset);
+        offset += 2;
+        while (attributeCount-- > 0) {
+            // name and length, followed by the content
+            offset += 6 + cr.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * A running measurement of one stage.
+     */
+    public static class Probe {
+        private final ConversionListener listener;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+
+        /**
+         * Wall time of the stage or <tt>-1</tt> while the stage is still running.
+         */
+        private long nanos = -1;
+        private long allocatedBytes;
+
+        private Probe(ConversionListener listener) {
+            this.listener = listener;
+            this.startAllocatedBytes = getAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stop measuring the stage, so that counting its results is not measured as part of the stage.
+         * Called implicitly by {@link #finish(Stage, Optional, int, int, int, int)}.
+         */
+        public void stop() {
+            if (nanos < 0) {
+                this.nanos = System.nanoTime() - startNanos;
+                this.allocatedBytes = startAllocatedBytes < 0 ? -1 : getAllocatedBytes() - startAllocatedBytes;
+            }
+        }
+
+        /**
+         * Report the completed stage to the listener.
+         *
+         * @param stage the completed stage
+         * @param component the measured part of the stage, e.g. the name of a post processor
+         * @param inputSize the size of the input of the stage
+         * @param outputSize the size of the output of the stage
+         * @param localsCreated the number of locals that were created by the stage
+         * @param localsRemoved the number of locals that were removed by the stage
+         */
+        public void finish(Stage stage, Optional<String> component, int inputSize, int outputSize,
+                           int localsCreated, int localsRemoved) {
+            stop();
+            listener.stageCompleted(new StageMeasurement(stage, component, nanos, allocatedBytes,
+                    inputSize, outputSize, localsCreated, localsRemoved));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the computation of the frames and maxs of one method.
+ */
+@Name("io.runebox.kasm.FrameComputation")
+@Label("Frame Computation")
+@Description("Computation of the frames and maxs of a method")
+public class FrameComputationEvent extends AbstractMethodEvent {
+    @Label("Instructions")
+    private int instructionCount;
+
+    /**
+     * End the event and commit it, if it is enabled and exceeded its threshold.
+     *
+     * @param classfile the class containing the method
+     * @param method the method
+     * @param instructionCount the number of instructions or statements of the body
+     */
+    public void commit(Classfile classfile, Method method, int instructionCount) {
+        if (shouldCommit()) {
+            setMethod(classfile, method);
+            this.instructionCount = instructionCount;
+            commit();
+        }
+    }
+}
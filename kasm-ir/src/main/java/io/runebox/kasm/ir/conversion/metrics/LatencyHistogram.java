@@ -0,0 +1,81 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with one bucket per power of two nanoseconds.
+ *
+ * Recording is lock free and scales with the number of threads, since every bucket is a {@link LongAdder}.
+ * Percentiles are accurate up to a factor of two, which is enough to tell where time goes.
+ */
+public class LatencyHistogram {
+    /**
+     * Bucket <tt>i</tt> counts latencies below <tt>2^i</tt> nanoseconds that are not counted by a smaller bucket.
+     * The last bucket also counts all larger latencies.
+     */
+    private static final int BUCKETS = 48;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Get the exclusive upper bound of a bucket.
+     *
+     * @param bucket index of the bucket
+     * @return the upper bound in nanoseconds
+     */
+    public static long getUpperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public void record(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+        buckets[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    /**
+     * Get the number of recorded latencies per bucket.
+     * The counts are not an atomic snapshot if latencies are recorded concurrently.
+     *
+     * @return the count of every bucket
+     */
+    public long[] getCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Estimate a percentile of the recorded latencies.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return upper bound of the bucket containing the percentile in nanoseconds or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(BUCKETS - 1);
+    }
+}
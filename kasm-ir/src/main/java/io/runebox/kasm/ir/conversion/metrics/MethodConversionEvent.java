@@ -0,0 +1,41 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the conversion of one {@link StackBody} into a {@link RefBody},
+ * without the post processors.
+ */
+@Name("io.runebox.kasm.MethodConversion")
+@Label("Method Conversion")
+@Description("Conversion of a stack body into a ref body")
+public class MethodConversionEvent extends AbstractMethodEvent {
+    @Label("Instructions")
+    private int instructionCount;
+
+    @Label("Statements")
+    private int statementCount;
+
+    /**
+     * End the event and commit it, if it is enabled and exceeded its threshold.
+     *
+     * @param classfile the class containing the method
+     * @param method the method containing the body
+     * @param stackBody the converted body
+     * @param refBody the result of the conversion
+     */
+    public void commit(Classfile classfile, Method method, StackBody stackBody, RefBody refBody) {
+        if (shouldCommit()) {
+            setMethod(classfile, method);
+            this.instructionCount = stackBody.getInstructions().size();
+            this.statementCount = refBody.getStatements().size();
+            commit();
+        }
+    }
+}
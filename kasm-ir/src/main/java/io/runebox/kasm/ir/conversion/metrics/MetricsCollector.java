@@ -0,0 +1,243 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link ConversionListener} that aggregates all measurements per stage and component.
+ *
+ * All counters are striped {@link LongAdder LongAdders}, so many converting threads can report at once
+ * without contending on a lock. The aggregates can be read at any time, e.g. by
+ * {@link #writePrometheus(Appendable) scraping them in the prometheus text format}.
+ *
+ * <pre><code>
+ *     MetricsCollector metrics = new MetricsCollector();
+ *     ConversionMetrics.setListener(Optional.of(metrics));
+ * </code></pre>
+ */
+public class MetricsCollector implements ConversionListener {
+    private final Map<Key, StageMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void stageCompleted(StageMeasurement measurement) {
+        Key key = new Key(measurement.getStage(), measurement.getComponent());
+        StageMetrics stageMetrics = metrics.get(key);
+        if (stageMetrics == null) {
+            stageMetrics = metrics.computeIfAbsent(key, StageMetrics::new);
+        }
+        stageMetrics.record(measurement);
+    }
+
+    /**
+     * Get the aggregated measurements of all stages and components that reported at least once.
+     *
+     * @return the metrics sorted by stage and component
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> list = new ArrayList<>(metrics.values());
+        list.sort(Comparator.comparing((StageMetrics m) -> m.getStage())
+                .thenComparing(m -> m.getComponent().orElse("")));
+        return list;
+    }
+
+    /**
+     * Get the aggregated measurements of a stage.
+     *
+     * @param stage the stage
+     * @param component the component of the stage or {@link Optional#empty()} for stages without components
+     * @return the metrics or {@link Optional#empty()} if the stage never reported
+     */
+    public Optional<StageMetrics> getMetrics(Stage stage, Optional<String> component) {
+        return Optional.ofNullable(metrics.get(new Key(stage, component)));
+    }
+
+    /**
+     * Forget all measurements.
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * Write all metrics in the prometheus text exposition format.
+     *
+     * @param out where to write the metrics
+     */
+    public void writePrometheus(Appendable out) {
+        try {
+            List<StageMetrics> list = getMetrics();
+            writeCounter(out, list, "kasm_stage_runs_total", "Completed stage runs", StageMetrics::getCount);
+            writeCounter(out, list, "kasm_stage_nanoseconds_total", "Wall time of all stage runs", StageMetrics::getTotalNanos);
+            writeCounter(out, list, "kasm_stage_allocated_bytes_total", "Bytes allocated by the stage threads", StageMetrics::getAllocatedBytes);
+            writeCounter(out, list, "kasm_stage_input_size_total", "Consumed instructions, statements or class file bytes", StageMetrics::getInputSize);
+            writeCounter(out, list, "kasm_stage_output_size_total", "Produced instructions, statements or class file bytes", StageMetrics::getOutputSize);
+            writeCounter(out, list, "kasm_stage_locals_created_total", "Locals created by the stage", StageMetrics::getLocalsCreated);
+            writeCounter(out, list, "kasm_stage_locals_removed_total", "Locals removed by the stage", StageMetrics::getLocalsRemoved);
+
+            String name = "kasm_stage_latency_seconds";
+            out.append("# HELP ").append(name).append(" Wall time of single stage runs\n");
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            for (StageMetrics stageMetrics : list) {
+                String labels = stageMetrics.getLabels();
+                long[] counts = stageMetrics.getLatencies().getCounts();
+                long cumulative = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    cumulative += counts[i];
+                    long bound = LatencyHistogram.getUpperBound(i);
+                    String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1e9);
+                    out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                            .append(Long.toString(cumulative)).append('\n');
+                }
+                out.append(name).append("_sum{").append(labels).append("} ")
+                        .append(Double.toString(stageMetrics.getTotalNanos() / 1e9)).append('\n');
+                out.append(name).append("_count{").append(labels).append("} ")
+                        .append(Long.toString(cumulative)).append('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCounter(Appendable out, List<StageMetrics> list, String name, String help,
+                              ToLongFunction<StageMetrics> value) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (StageMetrics stageMetrics : list) {
+            out.append(name).append('{').append(stageMetrics.getLabels()).append("} ")
+                    .append(Long.toString(value.applyAsLong(stageMetrics))).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (StageMetrics stageMetrics : getMetrics()) {
+            builder.append(stageMetrics).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static class Key {
+        private final Stage stage;
+        private final Optional<String> component;
+
+        Key(Stage stage, Optional<String> component) {
+            this.stage = stage;
+            this.component = component;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return stage == key.stage &&
+                    Objects.equals(component, key.component);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stage, component);
+        }
+    }
+
+    /**
+     * The aggregated measurements of one stage and component.
+     */
+    public static class StageMetrics {
+        private final Stage stage;
+        private final Optional<String> component;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder inputSize = new LongAdder();
+        private final LongAdder outputSize = new LongAdder();
+        private final LongAdder localsCreated = new LongAdder();
+        private final LongAdder localsRemoved = new LongAdder();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private StageMetrics(Key key) {
+            this.stage = key.stage;
+            this.component = key.component;
+        }
+
+        private void record(StageMeasurement measurement) {
+            count.increment();
+            totalNanos.add(measurement.getNanos());
+            if (measurement.getAllocatedBytes() > 0) {
+                allocatedBytes.add(measurement.getAllocatedBytes());
+            }
+            inputSize.add(measurement.getInputSize());
+            outputSize.add(measurement.getOutputSize());
+            localsCreated.add(measurement.getLocalsCreated());
+            localsRemoved.add(measurement.getLocalsRemoved());
+            latencies.record(measurement.getNanos());
+        }
+
+        private String getLabels() {
+            return "stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\",component=\"" + component.orElse("") + "\"";
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        public Optional<String> getComponent() {
+            return component;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+
+        public long getInputSize() {
+            return inputSize.sum();
+        }
+
+        public long getOutputSize() {
+            return outputSize.sum();
+        }
+
+        public long getLocalsCreated() {
+            return localsCreated.sum();
+        }
+
+        public long getLocalsRemoved() {
+            return localsRemoved.sum();
+        }
+
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        @Override
+        public String toString() {
+            return StageMetrics.class.getSimpleName() + '{' +
+                    "stage=" + stage +
+                    ", component=" + component +
+                    ", count=" + getCount() +
+                    ", totalNanos=" + getTotalNanos() +
+                    ", p50=" + latencies.getPercentile(50) +
+                    ", p99=" + latencies.getPercentile(99) +
+                    ", allocatedBytes=" + getAllocatedBytes() +
+                    ", inputSize=" + getInputSize() +
+                    ", outputSize=" + getOutputSize() +
+                    ", localsCreated=" + getLocalsCreated() +
+                    ", localsRemoved=" + getLocalsRemoved() +
+                    '}';
+        }
+    }
+}
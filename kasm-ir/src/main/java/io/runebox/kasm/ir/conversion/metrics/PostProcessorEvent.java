@@ -0,0 +1,46 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.stack2ref.processor.PostProcessor;
+import io.runebox.kasm.ir.ref.RefBody;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning one {@link PostProcessor} run on a body,
+ * including the analyses that the post processor requires.
+ */
+@Name("io.runebox.kasm.PostProcessor")
+@Label("Post Processor")
+@Description("One post processor run on a ref body")
+public class PostProcessorEvent extends AbstractMethodEvent {
+    @Label("Post Processor")
+    private String postProcessor;
+
+    @Label("Modified")
+    private boolean modified;
+
+    @Label("Statements")
+    private int statementCount;
+
+    /**
+     * End the event and commit it, if it is enabled and exceeded its threshold.
+     *
+     * @param classfile the class containing the method or <tt>null</tt> if it is unknown
+     * @param method the method containing the body or <tt>null</tt> if it is unknown
+     * @param postProcessor the post processor that ran
+     * @param body the processed body
+     * @param modified whether the post processor modified the body
+     */
+    public void commit(Classfile classfile, Method method, PostProcessor postProcessor, RefBody body, boolean modified) {
+        if (shouldCommit()) {
+            setMethod(classfile, method);
+            this.postProcessor = postProcessor.getClass().getSimpleName();
+            this.modified = modified;
+            this.statementCount = body.getStatements().size();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+/**
+ * The stages of the conversions that report a {@link StageMeasurement}.
+ */
+public enum Stage {
+    /**
+     * Parsing a class file and converting its code into {@link io.runebox.kasm.ir.stack.StackBody StackBodies},
+     * including the analysis of the stack. Reported once per class and once per lazily loaded body.
+     */
+    ASM_TO_STACK,
+
+    /**
+     * Parsing a class file and converting its code directly into {@link io.runebox.kasm.ir.ref.RefBody RefBodies}.
+     * Reported once per class, the post processors are reported separately.
+     */
+    ASM_TO_REF,
+
+    /**
+     * Converting a {@link io.runebox.kasm.ir.stack.StackBody} into a {@link io.runebox.kasm.ir.ref.RefBody},
+     * without the post processors. Reported once per body.
+     */
+    STACK_TO_REF,
+
+    /**
+     * Running one {@link io.runebox.kasm.ir.conversion.stack2ref.processor.PostProcessor} on a body.
+     * The component of the measurement is the name of the post processor.
+     */
+    POST_PROCESS,
+
+    /**
+     * Converting a {@link io.runebox.kasm.ir.ref.RefBody} into a {@link io.runebox.kasm.ir.stack.StackBody}.
+     * Reported once per body.
+     */
+    REF_TO_STACK,
+
+    /**
+     * Writing a class into jvm bytecode, including the frame computation. Reported once per class.
+     */
+    STACK_TO_ASM,
+
+    /**
+     * Computing the frames and maxs of one method with a {@link io.runebox.kasm.ir.conversion.AbstractFrameComputer}.
+     */
+    FRAMES
+}
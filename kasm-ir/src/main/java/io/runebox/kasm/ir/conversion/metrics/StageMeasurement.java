@@ -0,0 +1,92 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import java.util.Optional;
+
+/**
+ * The costs of running one {@link Stage} once, e.g. on one class or one body.
+ *
+ * The sizes count instructions of {@link io.runebox.kasm.ir.stack.StackBody StackBodies},
+ * statements of {@link io.runebox.kasm.ir.ref.RefBody RefBodies} or bytes of class files,
+ * depending on what the stage consumes and produces.
+ */
+public class StageMeasurement {
+    private final Stage stage;
+
+    /**
+     * The part of the stage that was measured, e.g. the name of a post processor.
+     */
+    private final Optional<String> component;
+
+    /**
+     * Wall time of the stage in nanoseconds.
+     */
+    private final long nanos;
+
+    /**
+     * Bytes allocated by the current thread during the stage, or <tt>-1</tt> if the JVM cannot measure it.
+     */
+    private final long allocatedBytes;
+
+    private final int inputSize;
+    private final int outputSize;
+    private final int localsCreated;
+    private final int localsRemoved;
+
+    public StageMeasurement(Stage stage, Optional<String> component, long nanos, long allocatedBytes,
+                            int inputSize, int outputSize, int localsCreated, int localsRemoved) {
+        this.stage = stage;
+        this.component = component;
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.localsCreated = localsCreated;
+        this.localsRemoved = localsRemoved;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public Optional<String> getComponent() {
+        return component;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public int getLocalsCreated() {
+        return localsCreated;
+    }
+
+    public int getLocalsRemoved() {
+        return localsRemoved;
+    }
+
+    @Override
+    public String toString() {
+        return StageMeasurement.class.getSimpleName() + '{' +
+                "stage=" + stage +
+                ", component=" + component +
+                ", nanos=" + nanos +
+                ", allocatedBytes=" + allocatedBytes +
+                ", inputSize=" + inputSize +
+                ", outputSize=" + outputSize +
+                ", localsCreated=" + localsCreated +
+                ", localsRemoved=" + localsRemoved +
+                '}';
+    }
+}
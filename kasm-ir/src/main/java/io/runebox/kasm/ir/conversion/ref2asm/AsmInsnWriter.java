@@ -0,0 +1,169 @@
+package io.runebox.kasm.ir.conversion.ref2asm;
+
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.AbstractAsmInsnWriter;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.analysis.Stack;
+import io.runebox.kasm.ir.analysis.StackEmulatingInsnVisitor;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link AbstractAsmInsnWriter} that writes the visited events directly into a {@link MethodVisitor}.
+ *
+ * The events are passed on to a {@link StackEmulatingInsnVisitor}, so the state of the stack
+ * is computed on the fly. It is used to select the opcodes and to compute the maximum stack size.
+ */
+public class AsmInsnWriter extends AbstractAsmInsnWriter<Statement, RefLocal> {
+    private final Method method;
+    private final MethodVisitor mv;
+    private final ConversionContext ctx;
+
+    /**
+     * The emulated stack before the next written opcode.
+     */
+    private final Stack<JvmType> stack;
+
+    /**
+     * The maximum amount of slots used on the stack so far.
+     */
+    private int maxStack = 0;
+
+    public AsmInsnWriter(Method method, MethodVisitor mv, ConversionContext ctx, StackEmulatingInsnVisitor<Statement, RefLocal> emulator) {
+        super(emulator);
+        this.method = method;
+        this.mv = mv;
+        this.ctx = ctx;
+        this.stack = emulator.getStack();
+        setStackFrame(this.stack);
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Account for a value that is pushed outside of the visited events.
+     *
+     * @param slots size of the stack after the value was pushed
+     */
+    public void requireMaxStack(int slots) {
+        this.maxStack = Math.max(this.maxStack, slots);
+    }
+
+    /**
+     * Update the maximum stack size before an opcode is written.
+     *
+     * Each statement starts and ends with an empty stack, so the size before each opcode covers all states.
+     */
+    private void updateMaxStack() {
+        int slots = 0;
+        Iterator<JvmType> iter = this.stack.peekIterator();
+        while (iter.hasNext()) {
+            slots += iter.next().is64bit() ? 2 : 1;
+        }
+        requireMaxStack(slots);
+    }
+
+    @Override
+    protected String describeLocal(RefLocal local) {
+        String descriptor = AsmUtil.methodDescriptorToString(method.getReturnType(), method.getParameterTypes());
+        return "local " + ctx.getLocalIndex(local) + " in method " + method.getName() + descriptor;
+    }
+
+    @Override
+    protected RefLocal getTempLocal(int index) {
+        return ctx.getTempLocal(index);
+    }
+
+    @Override
+    protected void writeInsn(int opcode) {
+        updateMaxStack();
+        mv.visitInsn(opcode);
+    }
+
+    @Override
+    protected void writeIntInsn(int opcode, int operand) {
+        updateMaxStack();
+        mv.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    protected void writeVarInsn(int opcode, RefLocal local) {
+        updateMaxStack();
+        mv.visitVarInsn(opcode, ctx.getLocalIndex(local));
+    }
+
+    @Override
+    protected void writeTypeInsn(int opcode, String type) {
+        updateMaxStack();
+        mv.visitTypeInsn(opcode, type);
+    }
+
+    @Override
+    protected void writeFieldInsn(int opcode, String owner, String name, String descriptor) {
+        updateMaxStack();
+        mv.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    @Override
+    protected void writeMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        updateMaxStack();
+        mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+    }
+
+    @Override
+    protected void writeInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod, Object[] bootstrapMethodArguments) {
+        updateMaxStack();
+        mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethod, bootstrapMethodArguments);
+    }
+
+    @Override
+    protected void writeJumpInsn(int opcode, Statement target) {
+        updateMaxStack();
+        mv.visitJumpInsn(opcode, ctx.getLabel(target));
+    }
+
+    @Override
+    protected void writeLdcInsn(Object value) {
+        updateMaxStack();
+        mv.visitLdcInsn(value);
+    }
+
+    @Override
+    protected void writeIincInsn(RefLocal local, int increment) {
+        updateMaxStack();
+        mv.visitIincInsn(ctx.getLocalIndex(local), increment);
+    }
+
+    @Override
+    protected void writeTableSwitchInsn(int min, int max, Statement defaultTarget, List<Statement> targets) {
+        updateMaxStack();
+        mv.visitTableSwitchInsn(min, max, ctx.getLabel(defaultTarget), getLabels(targets));
+    }
+
+    @Override
+    protected void writeLookupSwitchInsn(Statement defaultTarget, int[] keys, List<Statement> targets) {
+        updateMaxStack();
+        mv.visitLookupSwitchInsn(ctx.getLabel(defaultTarget), keys, getLabels(targets));
+    }
+
+    private Label[] getLabels(List<Statement> targets) {
+        return targets.stream()
+                .map(ctx::getLabel)
+                .toArray(Label[]::new);
+    }
+
+    @Override
+    protected void writeMultiANewArrayInsn(String descriptor, int dimensions) {
+        updateMaxStack();
+        mv.visitMultiANewArrayInsn(descriptor, dimensions);
+    }
+}
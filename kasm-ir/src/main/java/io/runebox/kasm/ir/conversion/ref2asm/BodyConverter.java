@@ -0,0 +1,373 @@
+package io.runebox.kasm.ir.conversion.ref2asm;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.annotation.Annotation;
+import io.runebox.kasm.ir.analysis.StackEmulatingInsnVisitor;
+import io.runebox.kasm.ir.analysis.Stack;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.FrameComputationEvent;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.conversion.ref2stack.RefInsnReader;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import io.runebox.kasm.ir.conversion.stack2asm.KasmAnnotationReader;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.stmt.BranchStmt;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
+import io.runebox.kasm.ir.util.RefCfgGraph;
+import org.objectweb.asm.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Utility that writes a {@link RefBody} directly into a {@link MethodVisitor}.
+ *
+ * Each statement is converted into opcodes while the stack is emulated on the fly.
+ * Unlike the conversion through a {@link io.runebox.kasm.ir.stack.StackBody},
+ * no intermediate instructions, asm tree nodes or second stack analysis are required.
+ *
+ * The maxs are always visited. If a {@link ClassHierarchy} is supplied, the frames are computed by a
+ * {@link FrameComputer} before the statements are written and each frame is visited where it applies.
+ */
+public class BodyConverter {
+    private final Method method;
+    private final RefBody refBody;
+    private final MethodVisitor mv;
+
+    /**
+     * The class containing the method, it is only required to compute frames.
+     */
+    private final Optional<Classfile> owner;
+
+    /**
+     * Hierarchy used to compute the frames of the body, or empty if the visitor computes them.
+     */
+    private final Optional<ClassHierarchy> frameHierarchy;
+
+    private RefCfgGraph graph;
+    private ConversionContext ctx;
+
+    /**
+     * Labels that mark the end of the code of a statement.
+     */
+    private Map<Statement, Label> endLabels;
+
+    /**
+     * Handlers that directly store the caught exception in their local.
+     */
+    private Map<Statement, RefLocal> inlineHandlers;
+
+    /**
+     * Handlers that store the caught exception at the end of the method and jump to the actual handler.
+     */
+    private List<HandlerStub> handlerStubs;
+
+    /**
+     * Computed frames or empty if no frames are visited.
+     */
+    private Optional<FrameComputer> frameComputer;
+
+    public BodyConverter(Method method, RefBody refBody, MethodVisitor mv) {
+        this.method = method;
+        this.refBody = refBody;
+        this.mv = mv;
+        this.owner = Optional.empty();
+        this.frameHierarchy = Optional.empty();
+    }
+
+    /**
+     * Create a converter that also visits the frames of the body.
+     *
+     * @param owner the class containing the method
+     * @param method the method of the body
+     * @param refBody the body to write
+     * @param mv visitor that receives the code
+     * @param frameHierarchy supertypes of all classes that occur within the body
+     */
+    public BodyConverter(Classfile owner, Method method, RefBody refBody, MethodVisitor mv, ClassHierarchy frameHierarchy) {
+        this.method = method;
+        this.refBody = refBody;
+        this.mv = mv;
+        this.owner = Optional.of(owner);
+        this.frameHierarchy = Optional.of(frameHierarchy);
+    }
+
+    public void convert() {
+        this.graph = new RefCfgGraph(refBody);
+        this.ctx = new ConversionContext(method, refBody);
+        this.endLabels = new HashMap<>();
+        this.inlineHandlers = new HashMap<>();
+        this.handlerStubs = new ArrayList<>();
+
+        mv.visitCode();
+
+        convertTryCatchBlocks();
+        requireBranchTargetLabels();
+        this.frameComputer = frameHierarchy
+                .filter(hierarchy -> owner.get().getVersion().getMajor() >= Opcodes.V1_6)
+                .map(hierarchy -> computeFrames(owner.get(), hierarchy));
+        int maxStack = convertStatements();
+
+        convertLocalVariables();
+        convertLocalVariableAnnotations();
+
+        mv.visitMaxs(maxStack, ctx.getMaxLocals());
+    }
+
+    /**
+     * Compute the frames of the body.
+     * Class files before version 50 must not contain StackMapTable frames, so only their maxs are visited.
+     */
+    private FrameComputer computeFrames(Classfile classfile, ClassHierarchy hierarchy) {
+        String ownerName = AsmUtil.toInternalName(classfile.getName());
+
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        FrameComputationEvent event = new FrameComputationEvent();
+        event.begin();
+        FrameComputer computer = new FrameComputer(ownerName, method, refBody, graph, ctx, hierarchy, inlineHandlers.keySet());
+        computer.compute();
+        int size = refBody.getStatements().size();
+        event.commit(classfile, method, size);
+        if (probe.isPresent()) {
+            probe.get().finish(Stage.FRAMES, Optional.empty(), size, size, 0, 0);
+        }
+        return computer;
+    }
+
+    private Label getEndLabel(Statement statement) {
+        return this.endLabels.computeIfAbsent(statement, x -> new Label());
+    }
+
+    /**
+     * Check whether a range of statements consists only out of dead code.
+     *
+     * @param start first statement of the range
+     * @param end last statement of the range
+     * @return contains the range only dead code
+     */
+    private boolean isRangeEmpty(Statement start, Statement end) {
+        return graph.isDeadCode(start, end);
+    }
+
+    /**
+     * Visit all try/catch blocks that protect reachable code.
+     *
+     * In the ref intermediation caught exceptions are stored in locals while the jvm pushes them onto the stack.
+     * If all blocks of a handler use the same local and the handler cannot be reached otherwise,
+     * the exception is stored directly before the handler. Otherwise a store followed by a goto
+     * to the actual handler is appended at the end of the method for each local.
+     */
+    private void convertTryCatchBlocks() {
+        List<TryCatchBlock> blocks = refBody.getTryCatchBlocks().stream()
+                .filter(block -> !isRangeEmpty(block.getFirst(), block.getLast()))
+                .collect(Collectors.toList());
+
+        Map<Statement, Map<RefLocal, Label>> handlerLabels = new HashMap<>();
+        blocks.stream()
+                .collect(Collectors.groupingBy(TryCatchBlock::getHandler, LinkedHashMap::new,
+                        Collectors.mapping(TryCatchBlock::getExceptionLocal, Collectors.toCollection(LinkedHashSet::new))))
+                .forEach((handler, locals) -> {
+                    Map<RefLocal, Label> labels = new HashMap<>();
+                    if (locals.size() == 1 && graph.getPredecessorCount(graph.getBlockOf(handler)) == 0) {
+                        RefLocal local = locals.iterator().next();
+                        inlineHandlers.put(handler, local);
+                        labels.put(local, ctx.getLabel(handler));
+                    } else {
+                        for (RefLocal local : locals) {
+                            HandlerStub stub = new HandlerStub(new Label(), local, handler, ctx.getLabel(handler));
+                            handlerStubs.add(stub);
+                            labels.put(local, stub.label);
+                        }
+                    }
+                    handlerLabels.put(handler, labels);
+                });
+
+        for (TryCatchBlock block : blocks) {
+            Label start = ctx.getLabel(block.getFirst());
+            Label end = getEndLabel(block.getLast());
+            Label handler = handlerLabels.get(block.getHandler()).get(block.getExceptionLocal());
+            String type = block.getException().map(AsmUtil::toInternalName).orElse(null);
+
+            mv.visitTryCatchBlock(start, end, handler, type);
+            convertTryCatchBlockAnnotations(block.getTypeAnnotations());
+        }
+    }
+
+    private void convertTryCatchBlockAnnotations(List<ExceptionTypeAnnotation> typeAnnotations) {
+        for (ExceptionTypeAnnotation typeAnnotation : typeAnnotations) {
+            Annotation annotation = typeAnnotation.getAnnotation();
+            int typeRef = TypeReference.newTypeReference(TypeReference.EXCEPTION_PARAMETER).getValue();
+            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
+            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
+
+            AnnotationVisitor av = mv.visitTryCatchAnnotation(typeRef, typePath, descriptor, annotation.isRuntimeVisible());
+            if (av != null) {
+                new KasmAnnotationReader(annotation).accept(av);
+            }
+        }
+    }
+
+    /**
+     * Create the labels of all branch targets before any statement is visited,
+     * since a label must be visited at the position of its statement.
+     */
+    private void requireBranchTargetLabels() {
+        for (Statement statement : refBody.getStatements()) {
+            if (statement instanceof BranchStmt && !graph.isDeadCode(statement)) {
+                ((BranchStmt) statement).getBranchTargets().forEach(ctx::getLabel);
+            }
+        }
+
+        for (RefBody.LineNumber lineNumber : refBody.getLineNumbers()) {
+            ctx.getLabel(lineNumber.getStatement());
+        }
+
+        for (RefBody.LocalVariable localVariable : refBody.getLocalVariables()) {
+            ctx.getLabel(localVariable.getStart());
+            getEndLabel(localVariable.getEnd());
+        }
+
+        for (RefBody.LocalVariableAnnotation annotation : refBody.getLocalVariableAnnotations()) {
+            for (RefBody.LocalVariableAnnotation.Location location : annotation.getLocations()) {
+                ctx.getLabel(location.getStart());
+                getEndLabel(location.getEnd());
+            }
+        }
+    }
+
+    /**
+     * Visit the code of all reachable statements followed by the handler stubs.
+     *
+     * @return the maximum stack size
+     */
+    private int convertStatements() {
+        Map<Statement, List<Integer>> lineNumbers = new HashMap<>();
+        for (RefBody.LineNumber lineNumber : refBody.getLineNumbers()) {
+            lineNumbers.computeIfAbsent(lineNumber.getStatement(), x -> new ArrayList<>()).add(lineNumber.getLine());
+        }
+
+        StackEmulatingInsnVisitor<Statement, RefLocal> emulator = new StackEmulatingInsnVisitor<>(null, new Stack.Mutable<>());
+        AsmInsnWriter writer = new AsmInsnWriter(method, mv, ctx, emulator);
+        RefInsnReader reader = new RefInsnReader(writer);
+
+        int index = 0;
+        for (Statement statement : refBody.getStatements()) {
+            Optional<Label> label = ctx.findLabel(statement);
+            label.ifPresent(mv::visitLabel);
+
+            if (!graph.isDeadCode(statement)) {
+                label.ifPresent(start -> lineNumbers.getOrDefault(statement, List.of())
+                        .forEach(line -> mv.visitLineNumber(line, start)));
+
+                RefLocal exceptionLocal = inlineHandlers.get(statement);
+                if (frameComputer.isPresent()) {
+                    if (exceptionLocal != null) {
+                        frameComputer.get().visitHandlerFrame(statement, exceptionLocal, mv);
+                    } else {
+                        frameComputer.get().visitFrame(index, mv);
+                    }
+                }
+
+                if (exceptionLocal != null) {
+                    writer.requireMaxStack(1);
+                    mv.visitVarInsn(Opcodes.ASTORE, ctx.getLocalIndex(exceptionLocal));
+                }
+
+                emulator.getStack().clear();
+                reader.accept(statement);
+            }
+
+            Label endLabel = endLabels.get(statement);
+            if (endLabel != null) {
+                mv.visitLabel(endLabel);
+            }
+            index++;
+        }
+
+        for (HandlerStub stub : handlerStubs) {
+            writer.requireMaxStack(1);
+            mv.visitLabel(stub.label);
+            frameComputer.ifPresent(frames -> frames.visitHandlerFrame(stub.handler, stub.local, mv));
+            mv.visitVarInsn(Opcodes.ASTORE, ctx.getLocalIndex(stub.local));
+            mv.visitJumpInsn(Opcodes.GOTO, stub.target);
+        }
+
+        return writer.getMaxStack();
+    }
+
+    private void convertLocalVariables() {
+        for (RefBody.LocalVariable local : refBody.getLocalVariables()) {
+            if (isRangeEmpty(local.getStart(), local.getEnd())) {
+                continue;
+            }
+
+            String name = local.getName();
+            String descriptor = AsmUtil.toDescriptor(local.getType());
+            String signature = local.getSignature().orElse(null);
+            Label start = ctx.getLabel(local.getStart());
+            Label end = getEndLabel(local.getEnd());
+            int index = ctx.getLocalIndex(local.getLocal());
+
+            mv.visitLocalVariable(name, descriptor, signature, start, end, index);
+        }
+    }
+
+    private void convertLocalVariableAnnotations() {
+        for (RefBody.LocalVariableAnnotation localAnnotation : refBody.getLocalVariableAnnotations()) {
+            List<RefBody.LocalVariableAnnotation.Location> locations = localAnnotation.getLocations().stream()
+                    .filter(location -> !isRangeEmpty(location.getStart(), location.getEnd()))
+                    .collect(Collectors.toList());
+
+            if (locations.isEmpty()) {
+                continue;
+            }
+
+            LocalVariableTypeAnnotation typeAnnotation = localAnnotation.getAnnotation();
+            Annotation annotation = typeAnnotation.getAnnotation();
+            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
+
+            int typeRef = AsmUtil.toAsmTypeReference(typeAnnotation.getTargetType()).getValue();
+            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
+
+            Label[] start = locations.stream()
+                    .map(location -> ctx.getLabel(location.getStart()))
+                    .toArray(Label[]::new);
+
+            Label[] end = locations.stream()
+                    .map(location -> getEndLabel(location.getEnd()))
+                    .toArray(Label[]::new);
+
+            int[] index = locations.stream()
+                    .mapToInt(location -> ctx.getLocalIndex(location.getLocal()))
+                    .toArray();
+
+            AnnotationVisitor av = mv.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, annotation.isRuntimeVisible());
+            if (av != null) {
+                new KasmAnnotationReader(annotation).accept(av);
+            }
+        }
+    }
+
+    /**
+     * Code appended to the end of the method that stores a caught exception and jumps to the actual handler.
+     */
+    private static class HandlerStub {
+        private final Label label;
+        private final RefLocal local;
+        private final Statement handler;
+        private final Label target;
+
+        HandlerStub(Label label, RefLocal local, Statement handler, Label target) {
+            this.label = label;
+            this.local = local;
+            this.handler = handler;
+            this.target = target;
+        }
+    }
+}
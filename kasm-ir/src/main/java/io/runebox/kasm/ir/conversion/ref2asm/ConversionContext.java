@@ -0,0 +1,127 @@
+package io.runebox.kasm.ir.conversion.ref2asm;
+
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.type.DoubleType;
+import io.runebox.kasm.ir.type.LongType;
+import io.runebox.kasm.ir.type.Type;
+import org.objectweb.asm.Label;
+
+import java.util.*;
+
+public class ConversionContext {
+    /**
+     * Map ref locals to the index of their first slot in the local variable array.
+     */
+    private final Map<RefLocal, Integer> localIndices = new HashMap<>();
+
+    /**
+     * Locals used to convert dup instructions that cannot be represented as one opcode.
+     */
+    private final List<RefLocal> tempLocals = new ArrayList<>();
+
+    /**
+     * Labels that mark the beginning of the code of a statement.
+     */
+    private final Map<Statement, Label> labels = new HashMap<>();
+
+    /**
+     * The index of the next unused slot.
+     */
+    private int nextLocalIndex = 0;
+
+    /**
+     * Assign the slots of <tt>this</tt> and the parameters as specified by the jvm
+     * and append all other locals of the body.
+     *
+     * @param method the method containing the body
+     * @param body the converted body
+     */
+    public ConversionContext(Method method, RefBody body) {
+        body.getThisLocal().ifPresent(local -> assignLocalIndex(local, 1));
+
+        Iterator<Type> parameterTypeIter = method.getParameterTypes().iterator();
+        for (RefLocal local : body.getArgumentLocals()) {
+            Type type = parameterTypeIter.hasNext() ? parameterTypeIter.next() : local.getType();
+            assignLocalIndex(local, getSize(type));
+        }
+
+        for (RefLocal local : body.getLocals()) {
+            getLocalIndex(local);
+        }
+    }
+
+    /**
+     * Get the amount of slots that a local of a certain type requires.
+     * Locals whose type is not yet known reserve two slots, so any value fits into them.
+     *
+     * @param type type of the local
+     * @return either one or two
+     */
+    private static int getSize(Type type) {
+        return type == null || type instanceof LongType || type instanceof DoubleType ? 2 : 1;
+    }
+
+    private int assignLocalIndex(RefLocal local, int size) {
+        int index = this.nextLocalIndex;
+        this.localIndices.put(local, index);
+        this.nextLocalIndex += size;
+        return index;
+    }
+
+    /**
+     * Get the index of a local.
+     * If the local is not contained within the body, new slots are assigned for it.
+     *
+     * @param local whose index we want
+     * @return index of the first slot of the local
+     */
+    public int getLocalIndex(RefLocal local) {
+        Integer index = this.localIndices.get(local);
+        return index == null ? assignLocalIndex(local, getSize(local.getType())) : index;
+    }
+
+    /**
+     * Get a local that can be used to temporarily store values of any type.
+     *
+     * @param index the first, second, ... temporary local
+     * @return the same local for each index
+     */
+    public RefLocal getTempLocal(int index) {
+        while (index >= this.tempLocals.size()) {
+            this.tempLocals.add(new RefLocal(null));
+        }
+        return this.tempLocals.get(index);
+    }
+
+    /**
+     * Get the amount of slots used by all locals.
+     *
+     * @return the maximum size of the local variable array
+     */
+    public int getMaxLocals() {
+        return nextLocalIndex;
+    }
+
+    /**
+     * Get the label that marks the beginning of the code of a statement.
+     *
+     * @param statement the statement
+     * @return the same label for each statement
+     */
+    public Label getLabel(Statement statement) {
+        return this.labels.computeIfAbsent(statement, x -> new Label());
+    }
+
+    /**
+     * Get the label of a statement if one was requested.
+     *
+     * @param statement the statement
+     * @return the label or empty if no label is required
+     */
+    public Optional<Label> findLabel(Statement statement) {
+        return Optional.ofNullable(this.labels.get(statement));
+    }
+}
@@ -0,0 +1,121 @@
+package io.runebox.kasm.ir.conversion.ref2asm;
+
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.AbstractFrameComputer;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.ref2stack.RefInsnReader;
+import io.runebox.kasm.ir.conversion.stack2asm.AsmUtil;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.stmt.BranchStmt;
+import io.runebox.kasm.ir.util.RefCfgGraph;
+import io.runebox.kasm.ir.util.StackInsnVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Compute the frames of a {@link RefBody} written by the {@link BodyConverter}.
+ *
+ * Each statement starts with an empty stack, so only the handlers need frames with a value on the stack.
+ * They receive the exception on the stack and store it into the local of their try/catch block,
+ * either directly before the handler statement or in a stub at the end of the method.
+ * Those handlers get the frame before the store, while the handler statement gets a frame of its own
+ * only if it is also reached by the jump of a stub.
+ */
+public class FrameComputer extends AbstractFrameComputer<Statement, RefLocal> {
+    private final RefBody body;
+    private final RefCfgGraph graph;
+    private final ConversionContext ctx;
+
+    /**
+     * Handlers whose exception is stored directly before the handler statement.
+     */
+    private final Set<Statement> inlineHandlers;
+
+    /**
+     * The handler for each exception local of each handler statement.
+     */
+    private final Map<Statement, Map<RefLocal, Handler>> handlers = new IdentityHashMap<>();
+
+    public FrameComputer(String owner, Method method, RefBody body, RefCfgGraph graph, ConversionContext ctx,
+                         ClassHierarchy hierarchy, Set<Statement> inlineHandlers) {
+        super(owner, method, graph, hierarchy);
+        this.body = body;
+        this.graph = graph;
+        this.ctx = ctx;
+        this.inlineHandlers = inlineHandlers;
+    }
+
+    /**
+     * Visit the frame before the caught exception is stored into the local of the handler.
+     *
+     * @param handler first statement of the handler
+     * @param local the local that receives the exception
+     * @param mv visitor that receives the frame
+     */
+    public void visitHandlerFrame(Statement handler, RefLocal local, MethodVisitor mv) {
+        visitHandlerFrame(handlers.get(handler).get(local), mv);
+    }
+
+    @Override
+    protected Collection<Statement> getBranchTargets(Statement statement) {
+        return statement instanceof BranchStmt ? ((BranchStmt) statement).getBranchTargets() : Collections.emptySet();
+    }
+
+    @Override
+    protected Consumer<Statement> createReader(StackInsnVisitor<Statement, RefLocal> iv) {
+        return new RefInsnReader(iv)::accept;
+    }
+
+    @Override
+    protected Optional<RefLocal> getThisLocal() {
+        return body.getThisLocal();
+    }
+
+    @Override
+    protected List<RefLocal> getParameterLocals() {
+        return body.getArgumentLocals();
+    }
+
+    @Override
+    protected int getLocalIndex(RefLocal local) {
+        return ctx.getLocalIndex(local);
+    }
+
+    @Override
+    protected int getLocalCount() {
+        return ctx.getMaxLocals();
+    }
+
+    /**
+     * The writer does not mark the <tt>new</tt> instructions within a statement,
+     * so an uninitialized object that outlives its statement refers to the start of the statement instead.
+     * The jvm rejects such a frame, but so it would reject the code without it.
+     */
+    @Override
+    protected Label getNewLabel(Statement statement) {
+        return ctx.getLabel(statement);
+    }
+
+    @Override
+    protected void addHandlers() {
+        for (TryCatchBlock block : body.getTryCatchBlocks()) {
+            if (graph.isDeadCode(block.getFirst(), block.getLast())) {
+                continue;
+            }
+
+            Statement statement = block.getHandler();
+            RefLocal local = block.getExceptionLocal();
+            Handler handler = handlers.computeIfAbsent(statement, x -> new HashMap<>())
+                    .computeIfAbsent(local, x -> new Handler(statement, ctx.getLocalIndex(local), !inlineHandlers.contains(statement)));
+
+            String type = block.getException().map(AsmUtil::toInternalName).orElse(THROWABLE);
+            addProtectedRange(handler, type, block.getFirst(), block.getLast());
+        }
+    }
+}
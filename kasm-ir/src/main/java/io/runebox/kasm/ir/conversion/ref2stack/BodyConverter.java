@@ -8,6 +8,8 @@ import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.ref.RefLocal;
 import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
 import io.runebox.kasm.ir.util.RefCfgGraph;
 import io.runebox.kasm.ir.stack.StackBody;
 import io.runebox.kasm.ir.stack.StackLocal;
@@ -31,9 +33,20 @@ public class BodyConverter {
     }
 
     public BodyConverter(RefBody refBody, StackBody stackBody) {
+        this(refBody, stackBody, new RefAnalysisCache(refBody));
+    }
+
+    /**
+     * Create a converter that takes the control flow graph from already computed analyses.
+     *
+     * @param refBody the body to convert
+     * @param stackBody the body that receives the instructions
+     * @param analyses analyses of the ref body that are currently valid
+     */
+    public BodyConverter(RefBody refBody, StackBody stackBody, RefAnalysisCache analyses) {
         this.refBody = refBody;
         this.stackBody = stackBody;
-        this.graph = new RefCfgGraph(refBody);
+        this.graph = analyses.get(RefAnalysis.CFG);
     }
 
     public StackBody getStackBody() {
@@ -80,31 +93,22 @@ public class BodyConverter {
     }
 
     private void convertInstructions() {
-        Deque<RefCfgGraph.Node> worklist = new ArrayDeque<>();
-        Set<RefCfgGraph.Node> visited = new HashSet<>();
-
-        worklist.add(graph.getNode(refBody.getStatements().getFirst()));
-        for (TryCatchBlock tryCatchBlock : refBody.getTryCatchBlocks()) {
-            worklist.add(graph.getNode(tryCatchBlock.getHandler()));
-        }
-
         StackInsnWriter writer = new StackInsnWriter(ctx);
         RefInsnReader reader = new RefInsnReader(writer);
 
-        RefCfgGraph.Node node;
-        while ((node = worklist.poll()) != null) {
-            Statement statement = node.getInstruction();
-
-            if (!visited.add(node)) {
+        for (int block = 0; block < graph.getBlockCount(); block++) {
+            if (!graph.isReachable(block)) {
                 continue;
             }
 
-            reader.accept(statement);
-            List<Instruction> instructions = writer.getInstructions();
-            convertedStatements.put(statement, new ArrayList<>(instructions));
-            instructions.clear();
+            for (int index = graph.getBlockStart(block); index < graph.getBlockEnd(block); index++) {
+                Statement statement = graph.getInstruction(index);
 
-            worklist.addAll(node.getSucceeding());
+                reader.accept(statement);
+                List<Instruction> instructions = writer.getInstructions();
+                convertedStatements.put(statement, new ArrayList<>(instructions));
+                instructions.clear();
+            }
         }
     }
 
@@ -136,16 +140,17 @@ public class BodyConverter {
         // In the ref intermediation caught exceptions a stored in locals while they are put onto
         // the stack in the stack intermediation. Therefore a StoreInsn that pops the caught exception
         // from the stack and stores it in the corresponding local has to be inserted for each handler.
+        // The handlers are visited in the order of their first try/catch block, so the output does not depend on hash codes.
 
+        Map<TryCatchBlock, StoreInsn> handlerInsns = new IdentityHashMap<>();
         refBody.getTryCatchBlocks().stream()
-                .collect(Collectors.groupingBy(TryCatchBlock::getHandler))
+                .collect(Collectors.groupingBy(TryCatchBlock::getHandler, LinkedHashMap::new, Collectors.toList()))
                 .forEach((handler, blocksForHandler) -> {
             Instruction handlerInsn = getInstruction(handler);
             Map<RefLocal, List<TryCatchBlock>> handlersByLocal = blocksForHandler.stream()
-                    .collect(Collectors.groupingBy(TryCatchBlock::getExceptionLocal));
+                    .collect(Collectors.groupingBy(TryCatchBlock::getExceptionLocal, LinkedHashMap::new, Collectors.toList()));
 
-            RefCfgGraph.Node handlerNode = graph.getNode(handler);
-            if (handlersByLocal.size() == 1 && handlerNode.getSucceeding().isEmpty()) {
+            if (handlersByLocal.size() == 1 && !hasSuccessors(handler)) {
                 // Since each try/catch blocks pointing at this handler instructions has the same local,
                 // we will insert the StoreInsn directly before the actual handler instruction.
 
@@ -156,7 +161,7 @@ public class BodyConverter {
                 StoreInsn assignInsn = new StoreInsn(ObjectType.OBJECT, ctx.getStackLocal(local));
                 stackBody.getInstructions().insertBefore(handlerInsn, assignInsn);
 
-                convertTryCatchBlocks(blocks, assignInsn);
+                blocks.forEach(block -> handlerInsns.put(block, assignInsn));
             } else {
                 // There are multiple try/catch blocks pointing at this handler instruction each
                 // having different locals. We will append the corresponding StoreInsn at the end of
@@ -167,20 +172,35 @@ public class BodyConverter {
                     GotoInsn gotoInsn = new GotoInsn(handlerInsn);
                     stackBody.getInstructions().addAll(List.of(assignInsn, gotoInsn));
 
-                    convertTryCatchBlocks(blocksForLocal, assignInsn);
+                    blocksForLocal.forEach(block -> handlerInsns.put(block, assignInsn));
                 });
             }
         });
+
+        // The jvm picks the first matching try/catch block, so they keep their order.
+        for (TryCatchBlock refBlock : refBody.getTryCatchBlocks()) {
+            convertTryCatchBlock(refBlock, handlerInsns.get(refBlock));
+        }
     }
 
-    private void convertTryCatchBlocks(List<TryCatchBlock> blocks, StoreInsn handlerInsn) {
-        for (TryCatchBlock refBlock : blocks) {
-            Instruction firstInsn = getInstruction(refBlock.getFirst());
-            Instruction lastInsn = getInstruction(refBlock.getLast());
-            Optional<Path> exception = refBlock.getException();
+    /**
+     * Check whether any statement may be executed after a reachable statement.
+     *
+     * @param statement the statement
+     * @return does the statement fall through or branch anywhere
+     */
+    private boolean hasSuccessors(Statement statement) {
+        int index = graph.indexOf(statement);
+        int block = graph.getBlock(index);
+        return index + 1 < graph.getBlockEnd(block) || graph.getSuccessorCount(block) > 0;
+    }
 
-            stackBody.getTryCatchBlocks().add(new io.runebox.kasm.ir.stack.TryCatchBlock(firstInsn, lastInsn, handlerInsn, exception));
-        }
+    private void convertTryCatchBlock(TryCatchBlock refBlock, StoreInsn handlerInsn) {
+        Instruction firstInsn = getInstruction(refBlock.getFirst());
+        Instruction lastInsn = getInstruction(refBlock.getLast());
+        Optional<Path> exception = refBlock.getException();
+
+        stackBody.getTryCatchBlocks().add(new io.runebox.kasm.ir.stack.TryCatchBlock(firstInsn, lastInsn, handlerInsn, exception));
     }
 
     private void convertLocalVariables() {
@@ -39,7 +39,9 @@ public class RefInsnReader {
             } else if (statement instanceof IfStmt) {
                 convertIfStatement((IfStmt) statement);
             } else if (statement instanceof SwitchStmt) {
-                iv.visitSwitch(((SwitchStmt) statement).getBranchTable(), ((SwitchStmt) statement).getDefaultTarget());
+                SwitchStmt switchStmt = (SwitchStmt) statement;
+                accept(switchStmt.getValue());
+                iv.visitSwitch(switchStmt.getBranchTable(), switchStmt.getDefaultTarget());
             } else {
                 throw new AssertionError();
             }
@@ -126,16 +128,19 @@ public class RefInsnReader {
         Expression value = statement.getValue();
 
         if (variable instanceof ArrayBoxExpr) {
+            ArrayBoxExpr arrayBoxExpr = (ArrayBoxExpr) variable;
+            accept(arrayBoxExpr.getArray());
+            accept(arrayBoxExpr.getIndex());
             accept(value);
             iv.visitArrayStore(value.getType());
         } else if (variable instanceof RefLocal) {
             convertVariableAssignment((RefLocal) variable, value);
         } else if (variable instanceof AbstractFieldExpr) {
             AbstractFieldExpr fieldExpr = (AbstractFieldExpr) variable;
-            boolean isStatic = value instanceof StaticFieldExpr;
+            boolean isStatic = variable instanceof StaticFieldExpr;
 
-            if (value instanceof InstanceFieldExpr) {
-                accept(((InstanceFieldExpr) value).getInstance());
+            if (variable instanceof InstanceFieldExpr) {
+                accept(((InstanceFieldExpr) variable).getInstance());
             }
             accept(value);
             iv.visitFieldSet(fieldExpr.getField(), isStatic);
@@ -168,7 +173,7 @@ public class RefInsnReader {
             } else if (value instanceof SubExpr) {
                 SubExpr sub = (SubExpr) value;
 
-                if (sub.getValue1() == value && sub.getValue2() instanceof ConstantExpr) {
+                if (sub.getValue1() == variable && sub.getValue2() instanceof ConstantExpr) {
                     PushableConstant constant = ((ConstantExpr) sub.getValue2()).getConstant();
                     if (constant instanceof IntConstant) {
                         iv.visitIncrement(variable, -(((IntConstant) constant).getValue()));
@@ -179,7 +184,7 @@ public class RefInsnReader {
         }
 
         accept(value);
-        iv.visitStore(value.getType(), variable);
+        iv.visitStore(toLocalType(value.getType()), variable);
     }
 
     private void convertInvokeStatement(InvokeStmt statement) {
@@ -359,12 +364,20 @@ public class RefInsnReader {
             accept(arrayBoxExpr.getIndex());
             iv.visitArrayLoad(arrayBoxExpr.getType());
         } else if (expression instanceof RefLocal) {
-            iv.visitLoad(expression.getType(), (RefLocal) expression);
+            iv.visitLoad(toLocalType(expression.getType()), (RefLocal) expression);
         } else {
             throw new AssertionError();
         }
     }
 
+    /**
+     * Locals hold boolean, byte, char and short values as ints,
+     * so loads and stores of such values are int loads and stores.
+     */
+    private static Type toLocalType(Type type) {
+        return type instanceof IntLikeType ? IntType.getInstance() : type;
+    }
+
     private void convertCast(CastExpr expression) {
         Type toType = expression.getType();
         Type fromType = expression.getValue().getType();
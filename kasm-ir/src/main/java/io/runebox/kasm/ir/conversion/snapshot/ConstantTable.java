@@ -0,0 +1,165 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.type.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shared tables of strings, paths and types of a snapshot that is written.
+ *
+ * Each distinct value is stored only once and referenced by its index.
+ * The index zero is reserved for absent values.
+ */
+public class ConstantTable {
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private final Map<Path, Integer> pathIndices = new HashMap<>();
+    private final List<Path> paths = new ArrayList<>();
+
+    private final Map<Type, Integer> typeIndices = new HashMap<>();
+    private final List<Type> types = new ArrayList<>();
+
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    public int getPathCount() {
+        return paths.size();
+    }
+
+    public int getTypeCount() {
+        return types.size();
+    }
+
+    /**
+     * Get the index of a string and add it to the table if necessary.
+     *
+     * @param string the string or <tt>null</tt>
+     * @return index of the string or zero for <tt>null</tt>
+     */
+    public int getStringIndex(String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            strings.add(string);
+            stringIndices.put(string, index = strings.size());
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of a path and add it to the table if necessary.
+     *
+     * @param path the path or <tt>null</tt>
+     * @return index of the path or zero for <tt>null</tt>
+     */
+    public int getPathIndex(Path path) {
+        if (path == null) {
+            return 0;
+        }
+
+        Integer index = pathIndices.get(path);
+        if (index == null) {
+            path.getPackage().forEach(this::getStringIndex);
+            getStringIndex(path.getName());
+
+            paths.add(path);
+            pathIndices.put(path, index = paths.size());
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of a type and add it to the table if necessary.
+     *
+     * @param type the type or <tt>null</tt>
+     * @return index of the type or zero for <tt>null</tt>
+     */
+    public int getTypeIndex(Type type) {
+        if (type == null) {
+            return 0;
+        }
+
+        Integer index = typeIndices.get(type);
+        if (index == null) {
+            if (type instanceof ObjectType) {
+                getPathIndex(((ObjectType) type).getName());
+            } else if (type instanceof ArrayType) {
+                // The base type must precede the array type, so it can be resolved while reading.
+                getTypeIndex(((ArrayType) type).getBaseType());
+            }
+
+            types.add(type);
+            typeIndices.put(type, index = types.size());
+        }
+        return index;
+    }
+
+    /**
+     * Write all strings, paths and types.
+     *
+     * @param out the output that receives the entries
+     * @param offsets receives the offset of each entry relative to the start of <tt>out</tt>
+     */
+    public void writeEntries(SnapshotOutput out, SnapshotOutput offsets) {
+        for (String string : strings) {
+            offsets.writeInt(out.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        for (Path path : paths) {
+            offsets.writeInt(out.size());
+            out.writeVarInt(path.getPackage().size());
+            for (String pkg : path.getPackage()) {
+                out.writeVarInt(getStringIndex(pkg));
+            }
+            out.writeVarInt(getStringIndex(path.getName()));
+        }
+
+        for (Type type : types) {
+            offsets.writeInt(out.size());
+            writeType(out, type);
+        }
+    }
+
+    private void writeType(SnapshotOutput out, Type type) {
+        if (type instanceof BooleanType) {
+            out.writeByte(SnapshotFormat.TYPE_BOOLEAN);
+        } else if (type instanceof ByteType) {
+            out.writeByte(SnapshotFormat.TYPE_BYTE);
+        } else if (type instanceof CharType) {
+            out.writeByte(SnapshotFormat.TYPE_CHAR);
+        } else if (type instanceof ShortType) {
+            out.writeByte(SnapshotFormat.TYPE_SHORT);
+        } else if (type instanceof IntType) {
+            out.writeByte(SnapshotFormat.TYPE_INT);
+        } else if (type instanceof LongType) {
+            out.writeByte(SnapshotFormat.TYPE_LONG);
+        } else if (type instanceof FloatType) {
+            out.writeByte(SnapshotFormat.TYPE_FLOAT);
+        } else if (type instanceof DoubleType) {
+            out.writeByte(SnapshotFormat.TYPE_DOUBLE);
+        } else if (type instanceof ObjectType) {
+            out.writeByte(SnapshotFormat.TYPE_OBJECT);
+            out.writeVarInt(getPathIndex(((ObjectType) type).getName()));
+        } else if (type instanceof ArrayType) {
+            ArrayType arrayType = (ArrayType) type;
+            out.writeByte(SnapshotFormat.TYPE_ARRAY);
+            out.writeVarInt(getTypeIndex(arrayType.getBaseType()));
+            out.writeVarInt(arrayType.getDimensions());
+        } else {
+            throw new AssertionError();
+        }
+    }
+}
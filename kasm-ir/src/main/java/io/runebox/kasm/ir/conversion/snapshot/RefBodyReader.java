@@ -0,0 +1,345 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.MethodDescriptor;
+import io.runebox.kasm.ir.MethodRef;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.constant.BootstrapConstant;
+import io.runebox.kasm.ir.constant.PushableConstant;
+import io.runebox.kasm.ir.handle.Handle;
+import io.runebox.kasm.ir.ref.*;
+import io.runebox.kasm.ir.ref.condition.*;
+import io.runebox.kasm.ir.ref.expr.*;
+import io.runebox.kasm.ir.ref.invoke.*;
+import io.runebox.kasm.ir.ref.stmt.*;
+import io.runebox.kasm.ir.type.ArrayType;
+import io.runebox.kasm.ir.type.RefType;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
+import io.runebox.kasm.ir.util.IntrusiveInsertList;
+import io.runebox.kasm.ir.util.RWCell;
+
+import java.util.*;
+
+/**
+ * Read a {@link RefBody} written by a {@link RefBodyWriter}.
+ *
+ * Branch targets are left empty while the statements are read and resolved once all statements exist.
+ */
+public class RefBodyReader {
+    private final SnapshotInput in;
+
+    private final List<RefLocal> locals = new ArrayList<>();
+    private final List<Statement> statements = new ArrayList<>();
+    private final Map<RWCell<Statement>, Integer> statementReferences = new HashMap<>();
+
+    public RefBodyReader(SnapshotInput in) {
+        this.in = in;
+    }
+
+    public RefBody read() {
+        RefBody body = new RefBody();
+
+        int declaredLocals = in.readVarInt();
+        for (int i = 0; i < declaredLocals; i++) {
+            locals.add(new RefLocal(in.readType()));
+        }
+        body.setLocals(new ArrayList<>(locals));
+
+        body.setThisLocal(in.readBoolean() ? Optional.of(readLocal()) : Optional.empty());
+        int argumentCount = in.readVarInt();
+        List<RefLocal> argumentLocals = new ArrayList<>(argumentCount);
+        for (int i = 0; i < argumentCount; i++) {
+            argumentLocals.add(readLocal());
+        }
+        body.setArgumentLocals(argumentLocals);
+
+        int statementCount = in.readVarInt();
+        for (int i = 0; i < statementCount; i++) {
+            statements.add(readStatement());
+        }
+        statementReferences.forEach((cell, index) -> cell.set(statements.get(index)));
+        body.setStatements(new IntrusiveInsertList<>(statements));
+
+        int tryCatchBlockCount = in.readVarInt();
+        for (int i = 0; i < tryCatchBlockCount; i++) {
+            Statement first = readStatementReference();
+            Statement last = readStatementReference();
+            Statement handler = readStatementReference();
+            Optional<Path> exception = in.readOptionalPath();
+            TryCatchBlock block = new TryCatchBlock(first, last, handler, exception, readLocal());
+
+            int typeAnnotationCount = in.readVarInt();
+            for (int j = 0; j < typeAnnotationCount; j++) {
+                block.getTypeAnnotations().add(in.readExceptionTypeAnnotation());
+            }
+            body.getTryCatchBlocks().add(block);
+        }
+
+        int localVariableCount = in.readVarInt();
+        for (int i = 0; i < localVariableCount; i++) {
+            String name = in.readString();
+            Type type = in.readType();
+            Optional<String> signature = in.readOptionalString();
+            Statement start = readStatementReference();
+            Statement end = readStatementReference();
+            body.getLocalVariables().add(new RefBody.LocalVariable(name, type, signature, start, end, readLocal()));
+        }
+
+        int localAnnotationCount = in.readVarInt();
+        for (int i = 0; i < localAnnotationCount; i++) {
+            LocalVariableTypeAnnotation annotation = in.readLocalVariableTypeAnnotation();
+
+            int locationCount = in.readVarInt();
+            List<RefBody.LocalVariableAnnotation.Location> locations = new ArrayList<>(locationCount);
+            for (int j = 0; j < locationCount; j++) {
+                Statement start = readStatementReference();
+                Statement end = readStatementReference();
+                locations.add(new RefBody.LocalVariableAnnotation.Location(start, end, readLocal()));
+            }
+            body.getLocalVariableAnnotations().add(new RefBody.LocalVariableAnnotation(annotation, locations));
+        }
+
+        int lineNumberCount = in.readVarInt();
+        for (int i = 0; i < lineNumberCount; i++) {
+            int line = in.readVarInt();
+            body.getLineNumbers().add(new RefBody.LineNumber(line, readStatementReference()));
+        }
+
+        return body;
+    }
+
+    private Statement readStatementReference() {
+        return statements.get(in.readVarInt());
+    }
+
+    /**
+     * Read a reference to a statement that might not have been read yet.
+     * The cell gets assigned once all statements were read.
+     */
+    private void readStatementReference(RWCell<Statement> cell) {
+        statementReferences.put(cell, in.readVarInt());
+    }
+
+    /**
+     * Read the index of a local.
+     * Locals that are not listed in {@link RefBody#getLocals()} are created on their first occurrence.
+     */
+    private RefLocal readLocal() {
+        int index = in.readVarInt();
+        if (index == locals.size()) {
+            locals.add(new RefLocal(in.readType()));
+        }
+        return locals.get(index);
+    }
+
+    private Statement readStatement() {
+        int tag = in.readByte();
+        switch (tag) {
+            case SnapshotFormat.STMT_ASSIGN: {
+                Variable variable = (Variable) readExpression();
+                return new AssignStmt(variable, readExpression());
+            }
+            case SnapshotFormat.STMT_GOTO: {
+                GotoStmt gotoStmt = new GotoStmt(null);
+                readStatementReference(gotoStmt.getTargetCell());
+                return gotoStmt;
+            }
+            case SnapshotFormat.STMT_IF: {
+                IfStmt ifStmt = new IfStmt(readCondition(), null);
+                readStatementReference(ifStmt.getTargetCell());
+                return ifStmt;
+            }
+            case SnapshotFormat.STMT_INVOKE:
+                return new InvokeStmt(readInvoke());
+            case SnapshotFormat.STMT_MONITOR_ENTER:
+                return new MonitorEnterStmt(readExpression());
+            case SnapshotFormat.STMT_MONITOR_EXIT:
+                return new MonitorExitStmt(readExpression());
+            case SnapshotFormat.STMT_RETURN:
+                return new ReturnStmt(in.readBoolean() ? Optional.of(readExpression()) : Optional.empty());
+            case SnapshotFormat.STMT_SWITCH: {
+                Expression value = readExpression();
+                int count = in.readVarInt();
+                LinkedHashMap<Integer, Statement> branchTable = new LinkedHashMap<>();
+                int[] keys = new int[count];
+                int[] targets = new int[count];
+                for (int i = 0; i < count; i++) {
+                    keys[i] = in.readSignedVarInt();
+                    targets[i] = in.readVarInt();
+                    branchTable.put(keys[i], null);
+                }
+
+                SwitchStmt switchStmt = new SwitchStmt(value, branchTable, null);
+                for (int i = 0; i < count; i++) {
+                    statementReferences.put(switchStmt.getBranchTableCell(keys[i]), targets[i]);
+                }
+                readStatementReference(switchStmt.getDefaultTargetCell());
+                return switchStmt;
+            }
+            case SnapshotFormat.STMT_THROW:
+                return new ThrowStmt(readExpression());
+            default:
+                throw new IllegalStateException("Unknown statement tag " + tag);
+        }
+    }
+
+    private Condition readCondition() {
+        int tag = in.readByte();
+        Expression value1 = readExpression();
+        Expression value2 = readExpression();
+        switch (tag) {
+            case SnapshotFormat.COND_EQ: return new Equal(value1, value2);
+            case SnapshotFormat.COND_NE: return new NonEqual(value1, value2);
+            case SnapshotFormat.COND_LT: return new LessThan(value1, value2);
+            case SnapshotFormat.COND_LE: return new LessEqual(value1, value2);
+            case SnapshotFormat.COND_GT: return new GreaterThan(value1, value2);
+            case SnapshotFormat.COND_GE: return new GreaterEqual(value1, value2);
+            default:
+                throw new IllegalStateException("Unknown condition tag " + tag);
+        }
+    }
+
+    private AbstractInvoke readInvoke() {
+        int kind = in.readByte();
+        switch (kind) {
+            case SnapshotFormat.INVOKE_STATIC: {
+                MethodRef method = in.readMethodRef();
+                boolean isInterface = in.readBoolean();
+                return new InvokeStatic(method, readExpressions(), isInterface);
+            }
+            case SnapshotFormat.INVOKE_VIRTUAL: {
+                MethodRef method = in.readMethodRef();
+                Expression instance = readExpression();
+                return new InvokeVirtual(method, instance, readExpressions());
+            }
+            case SnapshotFormat.INVOKE_INTERFACE: {
+                MethodRef method = in.readMethodRef();
+                Expression instance = readExpression();
+                return new InvokeInterface(method, instance, readExpressions());
+            }
+            case SnapshotFormat.INVOKE_SPECIAL: {
+                MethodRef method = in.readMethodRef();
+                boolean isInterface = in.readBoolean();
+                Expression instance = readExpression();
+                return new InvokeSpecial(method, instance, readExpressions(), isInterface);
+            }
+            case SnapshotFormat.INVOKE_DYNAMIC: {
+                String name = in.readString();
+                MethodDescriptor descriptor = in.readMethodDescriptor();
+                Handle bootstrapMethod = in.readHandle();
+                List<BootstrapConstant> bootstrapArguments = in.readConstants(BootstrapConstant.class);
+                return new InvokeDynamic(name, descriptor, bootstrapMethod, bootstrapArguments, readExpressions());
+            }
+            default:
+                throw new IllegalStateException("Unknown invoke kind " + kind);
+        }
+    }
+
+    private List<Expression> readExpressions() {
+        int count = in.readVarInt();
+        List<Expression> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(readExpression());
+        }
+        return expressions;
+    }
+
+    private Expression readExpression() {
+        int tag = in.readByte();
+        switch (tag) {
+            case SnapshotFormat.EXPR_LOCAL:
+                return readLocal();
+            case SnapshotFormat.EXPR_CONSTANT:
+                return new ConstantExpr((PushableConstant) in.readConstant());
+            case SnapshotFormat.EXPR_ADD: {
+                Expression value1 = readExpression();
+                return new AddExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_SUB: {
+                Expression value1 = readExpression();
+                return new SubExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_MUL: {
+                Expression value1 = readExpression();
+                return new MulExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_DIV: {
+                Expression value1 = readExpression();
+                return new DivExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_MOD: {
+                Expression value1 = readExpression();
+                return new ModExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_AND: {
+                Expression value1 = readExpression();
+                return new AndExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_OR: {
+                Expression value1 = readExpression();
+                return new OrExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_XOR: {
+                Expression value1 = readExpression();
+                return new XorExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_SHL: {
+                Expression value1 = readExpression();
+                return new ShlExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_SHR: {
+                Expression value1 = readExpression();
+                return new ShrExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_USHR: {
+                Expression value1 = readExpression();
+                return new UShrExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_CMP: {
+                Expression value1 = readExpression();
+                return new CmpExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_CMPL: {
+                Expression value1 = readExpression();
+                return new CmplExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_CMPG: {
+                Expression value1 = readExpression();
+                return new CmpgExpr(value1, readExpression());
+            }
+            case SnapshotFormat.EXPR_NEG:
+                return new NegExpr(readExpression());
+            case SnapshotFormat.EXPR_ARRAY_BOX: {
+                Expression array = readExpression();
+                return new ArrayBoxExpr(array, readExpression());
+            }
+            case SnapshotFormat.EXPR_ARRAY_LENGTH:
+                return new ArrayLengthExpr(readExpression());
+            case SnapshotFormat.EXPR_CAST: {
+                Type type = in.readType();
+                return new CastExpr(type, readExpression());
+            }
+            case SnapshotFormat.EXPR_INSTANCE_OF: {
+                RefType checkType = (RefType) in.readType();
+                return new InstanceOfExpr(checkType, readExpression());
+            }
+            case SnapshotFormat.EXPR_INSTANCE_FIELD: {
+                FieldRef field = in.readFieldRef();
+                return new InstanceFieldExpr(field, readExpression());
+            }
+            case SnapshotFormat.EXPR_STATIC_FIELD:
+                return new StaticFieldExpr(in.readFieldRef());
+            case SnapshotFormat.EXPR_INVOKE:
+                return new InvokeExpr(readInvoke());
+            case SnapshotFormat.EXPR_NEW:
+                return new NewExpr(in.readPath());
+            case SnapshotFormat.EXPR_NEW_ARRAY: {
+                ArrayType type = (ArrayType) in.readType();
+                return new NewArrayExpr(type, readExpressions());
+            }
+            default:
+                throw new IllegalStateException("Unknown expression tag " + tag);
+        }
+    }
+}
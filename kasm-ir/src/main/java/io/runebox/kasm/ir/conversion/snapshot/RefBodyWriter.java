@@ -0,0 +1,318 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.ref.Expression;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.condition.*;
+import io.runebox.kasm.ir.ref.expr.*;
+import io.runebox.kasm.ir.ref.invoke.*;
+import io.runebox.kasm.ir.ref.stmt.*;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Write a {@link RefBody} into a snapshot.
+ *
+ * Statements and locals are referenced by their index, expressions are written as trees.
+ */
+public class RefBodyWriter {
+    private final SnapshotOutput out;
+
+    private final Map<Statement, Integer> statementIndices = new HashMap<>();
+    private final Map<RefLocal, Integer> localIndices = new HashMap<>();
+
+    public RefBodyWriter(SnapshotOutput out) {
+        this.out = out;
+    }
+
+    public void write(RefBody body) {
+        int index = 0;
+        for (Statement statement : body.getStatements()) {
+            statementIndices.put(statement, index++);
+        }
+
+        out.writeVarInt(body.getLocals().size());
+        for (RefLocal local : body.getLocals()) {
+            localIndices.put(local, localIndices.size());
+            out.writeType(local.getType());
+        }
+
+        out.writeBoolean(body.getThisLocal().isPresent());
+        body.getThisLocal().ifPresent(this::writeLocal);
+        out.writeVarInt(body.getArgumentLocals().size());
+        body.getArgumentLocals().forEach(this::writeLocal);
+
+        out.writeVarInt(body.getStatements().size());
+        for (Statement statement : body.getStatements()) {
+            writeStatement(statement);
+        }
+
+        out.writeVarInt(body.getTryCatchBlocks().size());
+        for (TryCatchBlock block : body.getTryCatchBlocks()) {
+            writeStatementReference(block.getFirst());
+            writeStatementReference(block.getLast());
+            writeStatementReference(block.getHandler());
+            out.writeOptionalPath(block.getException());
+            writeLocal(block.getExceptionLocal());
+
+            out.writeVarInt(block.getTypeAnnotations().size());
+            for (ExceptionTypeAnnotation typeAnnotation : block.getTypeAnnotations()) {
+                out.writeTypeAnnotation(typeAnnotation);
+            }
+        }
+
+        out.writeVarInt(body.getLocalVariables().size());
+        for (RefBody.LocalVariable localVariable : body.getLocalVariables()) {
+            out.writeString(localVariable.getName());
+            out.writeType(localVariable.getType());
+            out.writeOptionalString(localVariable.getSignature());
+            writeStatementReference(localVariable.getStart());
+            writeStatementReference(localVariable.getEnd());
+            writeLocal(localVariable.getLocal());
+        }
+
+        out.writeVarInt(body.getLocalVariableAnnotations().size());
+        for (RefBody.LocalVariableAnnotation localAnnotation : body.getLocalVariableAnnotations()) {
+            out.writeTypeAnnotation(localAnnotation.getAnnotation());
+            out.writeTargetType(localAnnotation.getAnnotation().getTargetType());
+
+            out.writeVarInt(localAnnotation.getLocations().size());
+            for (RefBody.LocalVariableAnnotation.Location location : localAnnotation.getLocations()) {
+                writeStatementReference(location.getStart());
+                writeStatementReference(location.getEnd());
+                writeLocal(location.getLocal());
+            }
+        }
+
+        out.writeVarInt(body.getLineNumbers().size());
+        for (RefBody.LineNumber lineNumber : body.getLineNumbers()) {
+            out.writeVarInt(lineNumber.getLine());
+            writeStatementReference(lineNumber.getStatement());
+        }
+    }
+
+    private void writeStatementReference(Statement statement) {
+        Integer index = statementIndices.get(statement);
+        if (index == null) {
+            throw new IllegalStateException("Statement is not part of the body: " + statement);
+        }
+        out.writeVarInt(index);
+    }
+
+    /**
+     * Write the index of a local.
+     *
+     * Locals that are not listed in {@link RefBody#getLocals()} get the next free index on their first occurrence.
+     * Their type directly follows the index in that case.
+     */
+    private void writeLocal(RefLocal local) {
+        Integer index = localIndices.get(local);
+        if (index == null) {
+            localIndices.put(local, index = localIndices.size());
+            out.writeVarInt(index);
+            out.writeType(local.getType());
+        } else {
+            out.writeVarInt(index);
+        }
+    }
+
+    private void writeStatement(Statement statement) {
+        if (statement instanceof AssignStmt) {
+            AssignStmt assignStmt = (AssignStmt) statement;
+            out.writeByte(SnapshotFormat.STMT_ASSIGN);
+            writeExpression(assignStmt.getVariable());
+            writeExpression(assignStmt.getValue());
+        } else if (statement instanceof GotoStmt) {
+            out.writeByte(SnapshotFormat.STMT_GOTO);
+            writeStatementReference(((GotoStmt) statement).getTarget());
+        } else if (statement instanceof IfStmt) {
+            IfStmt ifStmt = (IfStmt) statement;
+            out.writeByte(SnapshotFormat.STMT_IF);
+            writeCondition(ifStmt.getCondition());
+            writeStatementReference(ifStmt.getTarget());
+        } else if (statement instanceof InvokeStmt) {
+            out.writeByte(SnapshotFormat.STMT_INVOKE);
+            writeInvoke(((InvokeStmt) statement).getInvoke());
+        } else if (statement instanceof MonitorEnterStmt) {
+            out.writeByte(SnapshotFormat.STMT_MONITOR_ENTER);
+            writeExpression(((MonitorEnterStmt) statement).getValue());
+        } else if (statement instanceof MonitorExitStmt) {
+            out.writeByte(SnapshotFormat.STMT_MONITOR_EXIT);
+            writeExpression(((MonitorExitStmt) statement).getValue());
+        } else if (statement instanceof ReturnStmt) {
+            Optional<Expression> value = ((ReturnStmt) statement).getValue();
+            out.writeByte(SnapshotFormat.STMT_RETURN);
+            out.writeBoolean(value.isPresent());
+            value.ifPresent(this::writeExpression);
+        } else if (statement instanceof SwitchStmt) {
+            SwitchStmt switchStmt = (SwitchStmt) statement;
+            out.writeByte(SnapshotFormat.STMT_SWITCH);
+            writeExpression(switchStmt.getValue());
+            out.writeVarInt(switchStmt.getBranchTable().size());
+            switchStmt.getBranchTable().forEach((key, target) -> {
+                out.writeSignedVarInt(key);
+                writeStatementReference(target);
+            });
+            writeStatementReference(switchStmt.getDefaultTarget());
+        } else if (statement instanceof ThrowStmt) {
+            out.writeByte(SnapshotFormat.STMT_THROW);
+            writeExpression(((ThrowStmt) statement).getValue());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    private void writeCondition(Condition condition) {
+        if (condition instanceof Equal) {
+            out.writeByte(SnapshotFormat.COND_EQ);
+        } else if (condition instanceof NonEqual) {
+            out.writeByte(SnapshotFormat.COND_NE);
+        } else if (condition instanceof LessThan) {
+            out.writeByte(SnapshotFormat.COND_LT);
+        } else if (condition instanceof LessEqual) {
+            out.writeByte(SnapshotFormat.COND_LE);
+        } else if (condition instanceof GreaterThan) {
+            out.writeByte(SnapshotFormat.COND_GT);
+        } else if (condition instanceof GreaterEqual) {
+            out.writeByte(SnapshotFormat.COND_GE);
+        } else {
+            throw new AssertionError();
+        }
+
+        writeExpression(condition.getValue1());
+        writeExpression(condition.getValue2());
+    }
+
+    private void writeInvoke(AbstractInvoke invoke) {
+        if (invoke instanceof InvokeStatic) {
+            InvokeStatic invokeStatic = (InvokeStatic) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_STATIC);
+            out.writeMethodRef(invokeStatic.getMethod());
+            out.writeBoolean(invokeStatic.isInterface());
+        } else if (invoke instanceof InvokeVirtual) {
+            InvokeVirtual invokeVirtual = (InvokeVirtual) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_VIRTUAL);
+            out.writeMethodRef(invokeVirtual.getMethod());
+            writeExpression(invokeVirtual.getInstance());
+        } else if (invoke instanceof InvokeInterface) {
+            InvokeInterface invokeInterface = (InvokeInterface) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_INTERFACE);
+            out.writeMethodRef(invokeInterface.getMethod());
+            writeExpression(invokeInterface.getInstance());
+        } else if (invoke instanceof InvokeSpecial) {
+            InvokeSpecial invokeSpecial = (InvokeSpecial) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_SPECIAL);
+            out.writeMethodRef(invokeSpecial.getMethod());
+            out.writeBoolean(invokeSpecial.isInterface());
+            writeExpression(invokeSpecial.getInstance());
+        } else if (invoke instanceof InvokeDynamic) {
+            InvokeDynamic invokeDynamic = (InvokeDynamic) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_DYNAMIC);
+            out.writeString(invokeDynamic.getName());
+            out.writeMethodDescriptor(invokeDynamic.getDescriptor());
+            out.writeHandle(invokeDynamic.getBootstrapMethod());
+            out.writeConstants(invokeDynamic.getBootstrapArguments());
+        } else {
+            throw new AssertionError();
+        }
+
+        writeExpressions(invoke.getArguments());
+    }
+
+    private void writeExpressions(List<Expression> expressions) {
+        out.writeVarInt(expressions.size());
+        expressions.forEach(this::writeExpression);
+    }
+
+    private void writeBinaryExpr(int tag, AbstractBinaryExpr expr) {
+        out.writeByte(tag);
+        writeExpression(expr.getValue1());
+        writeExpression(expr.getValue2());
+    }
+
+    private void writeExpression(Expression expression) {
+        if (expression instanceof RefLocal) {
+            out.writeByte(SnapshotFormat.EXPR_LOCAL);
+            writeLocal((RefLocal) expression);
+        } else if (expression instanceof ConstantExpr) {
+            out.writeByte(SnapshotFormat.EXPR_CONSTANT);
+            out.writeConstant(((ConstantExpr) expression).getConstant());
+        } else if (expression instanceof AddExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_ADD, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof SubExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_SUB, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof MulExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_MUL, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof DivExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_DIV, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof ModExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_MOD, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof AndExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_AND, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof OrExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_OR, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof XorExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_XOR, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof ShlExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_SHL, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof ShrExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_SHR, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof UShrExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_USHR, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof CmpExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_CMP, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof CmplExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_CMPL, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof CmpgExpr) {
+            writeBinaryExpr(SnapshotFormat.EXPR_CMPG, (AbstractBinaryExpr) expression);
+        } else if (expression instanceof NegExpr) {
+            out.writeByte(SnapshotFormat.EXPR_NEG);
+            writeExpression(((NegExpr) expression).getValue());
+        } else if (expression instanceof ArrayBoxExpr) {
+            ArrayBoxExpr arrayBox = (ArrayBoxExpr) expression;
+            out.writeByte(SnapshotFormat.EXPR_ARRAY_BOX);
+            writeExpression(arrayBox.getArray());
+            writeExpression(arrayBox.getIndex());
+        } else if (expression instanceof ArrayLengthExpr) {
+            out.writeByte(SnapshotFormat.EXPR_ARRAY_LENGTH);
+            writeExpression(((ArrayLengthExpr) expression).getArray());
+        } else if (expression instanceof CastExpr) {
+            CastExpr castExpr = (CastExpr) expression;
+            out.writeByte(SnapshotFormat.EXPR_CAST);
+            out.writeType(castExpr.getType());
+            writeExpression(castExpr.getValue());
+        } else if (expression instanceof InstanceOfExpr) {
+            InstanceOfExpr instanceOfExpr = (InstanceOfExpr) expression;
+            out.writeByte(SnapshotFormat.EXPR_INSTANCE_OF);
+            out.writeType(instanceOfExpr.getCheckType());
+            writeExpression(instanceOfExpr.getValue());
+        } else if (expression instanceof InstanceFieldExpr) {
+            InstanceFieldExpr fieldExpr = (InstanceFieldExpr) expression;
+            out.writeByte(SnapshotFormat.EXPR_INSTANCE_FIELD);
+            out.writeFieldRef(fieldExpr.getField());
+            writeExpression(fieldExpr.getInstance());
+        } else if (expression instanceof StaticFieldExpr) {
+            out.writeByte(SnapshotFormat.EXPR_STATIC_FIELD);
+            out.writeFieldRef(((StaticFieldExpr) expression).getField());
+        } else if (expression instanceof InvokeExpr) {
+            out.writeByte(SnapshotFormat.EXPR_INVOKE);
+            writeInvoke(((InvokeExpr) expression).getInvoke());
+        } else if (expression instanceof NewExpr) {
+            out.writeByte(SnapshotFormat.EXPR_NEW);
+            out.writePath(((NewExpr) expression).getPath());
+        } else if (expression instanceof NewArrayExpr) {
+            NewArrayExpr newArrayExpr = (NewArrayExpr) expression;
+            out.writeByte(SnapshotFormat.EXPR_NEW_ARRAY);
+            out.writeType(newArrayExpr.getType());
+            writeExpressions(newArrayExpr.getDimensionSizes());
+        } else {
+            throw new AssertionError();
+        }
+    }
+}
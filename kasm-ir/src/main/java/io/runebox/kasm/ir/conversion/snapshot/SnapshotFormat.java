@@ -0,0 +1,200 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.stack.insn.IfInsn;
+
+import java.util.List;
+
+/**
+ * Constants of the binary snapshot format.
+ *
+ * A snapshot file is laid out as follows, all fixed size numbers are big endian:
+ * <pre>
+ *     u4 magic, u2 version
+ *     u4 string count, u4 path count, u4 type count, u4 class count
+ *     u4 offsets of all strings, paths, types and classes (relative to the start of the data section)
+ *     data section: strings, paths, types, classes
+ * </pre>
+ *
+ * Strings, paths and types are stored once in shared tables and referenced by index.
+ * An index of zero denotes an absent value, the first entry of a table has the index one.
+ * Most other numbers are stored as variable length integers.
+ *
+ * The code of each method is prefixed by its length, so it can be skipped and decoded lazily.
+ */
+public final class SnapshotFormat {
+    public static final int MAGIC = 0x4B41534D;
+
+    /**
+     * Bumped whenever the layout changes. Snapshots of other versions are rejected.
+     */
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 4 + 2 + 4 * 4;
+
+    // Types
+    public static final int TYPE_BOOLEAN = 0;
+    public static final int TYPE_BYTE = 1;
+    public static final int TYPE_CHAR = 2;
+    public static final int TYPE_SHORT = 3;
+    public static final int TYPE_INT = 4;
+    public static final int TYPE_LONG = 5;
+    public static final int TYPE_FLOAT = 6;
+    public static final int TYPE_DOUBLE = 7;
+    public static final int TYPE_OBJECT = 8;
+    public static final int TYPE_ARRAY = 9;
+
+    // Bodies
+    public static final int BODY_NONE = 0;
+    public static final int BODY_STACK = 1;
+    public static final int BODY_REF = 2;
+
+    // Constants
+    public static final int CONSTANT_NULL = 0;
+    public static final int CONSTANT_INT = 1;
+    public static final int CONSTANT_LONG = 2;
+    public static final int CONSTANT_FLOAT = 3;
+    public static final int CONSTANT_DOUBLE = 4;
+    public static final int CONSTANT_STRING = 5;
+    public static final int CONSTANT_CLASS = 6;
+    public static final int CONSTANT_HANDLE = 7;
+    public static final int CONSTANT_METHOD_TYPE = 8;
+    public static final int CONSTANT_DYNAMIC = 9;
+
+    // Handles
+    public static final int HANDLE_GET_FIELD = 0;
+    public static final int HANDLE_GET_STATIC = 1;
+    public static final int HANDLE_SET_FIELD = 2;
+    public static final int HANDLE_SET_STATIC = 3;
+    public static final int HANDLE_INVOKE_INTERFACE = 4;
+    public static final int HANDLE_INVOKE_SPECIAL = 5;
+    public static final int HANDLE_INVOKE_STATIC = 6;
+    public static final int HANDLE_INVOKE_VIRTUAL = 7;
+    public static final int HANDLE_NEW_INSTANCE = 8;
+
+    // Annotation values
+    public static final int VALUE_BOOLEAN = 0;
+    public static final int VALUE_BYTE = 1;
+    public static final int VALUE_CHAR = 2;
+    public static final int VALUE_SHORT = 3;
+    public static final int VALUE_INT = 4;
+    public static final int VALUE_LONG = 5;
+    public static final int VALUE_FLOAT = 6;
+    public static final int VALUE_DOUBLE = 7;
+    public static final int VALUE_STRING = 8;
+    public static final int VALUE_CLASS = 9;
+    public static final int VALUE_ENUM = 10;
+    public static final int VALUE_ARRAY = 11;
+    public static final int VALUE_ANNOTATION = 12;
+
+    // Invokes (shared by stack and ref bodies)
+    public static final int INVOKE_STATIC = 0;
+    public static final int INVOKE_VIRTUAL = 1;
+    public static final int INVOKE_INTERFACE = 2;
+    public static final int INVOKE_SPECIAL = 3;
+    public static final int INVOKE_DYNAMIC = 4;
+
+    // Stack instructions
+    public static final int INSN_PUSH = 0;
+    public static final int INSN_NEG = 1;
+    public static final int INSN_ADD = 2;
+    public static final int INSN_SUB = 3;
+    public static final int INSN_MUL = 4;
+    public static final int INSN_DIV = 5;
+    public static final int INSN_MOD = 6;
+    public static final int INSN_AND = 7;
+    public static final int INSN_OR = 8;
+    public static final int INSN_XOR = 9;
+    public static final int INSN_SHL = 10;
+    public static final int INSN_SHR = 11;
+    public static final int INSN_USHR = 12;
+    public static final int INSN_CMP = 13;
+    public static final int INSN_CMPL = 14;
+    public static final int INSN_CMPG = 15;
+    public static final int INSN_NEW_ARRAY = 16;
+    public static final int INSN_ARRAY_LENGTH = 17;
+    public static final int INSN_ARRAY_LOAD = 18;
+    public static final int INSN_ARRAY_STORE = 19;
+    public static final int INSN_SWAP = 20;
+    public static final int INSN_POP = 21;
+    public static final int INSN_DUP = 22;
+    public static final int INSN_DUP_X1 = 23;
+    public static final int INSN_DUP_X2 = 24;
+    public static final int INSN_DUP2 = 25;
+    public static final int INSN_DUP2_X1 = 26;
+    public static final int INSN_DUP2_X2 = 27;
+    public static final int INSN_LOAD = 28;
+    public static final int INSN_STORE = 29;
+    public static final int INSN_INCREMENT = 30;
+    public static final int INSN_NEW = 31;
+    public static final int INSN_INSTANCE_OF = 32;
+    public static final int INSN_PRIMITIVE_CAST = 33;
+    public static final int INSN_REFERENCE_CAST = 34;
+    public static final int INSN_RETURN = 35;
+    public static final int INSN_THROW = 36;
+    public static final int INSN_MONITOR_ENTER = 37;
+    public static final int INSN_MONITOR_EXIT = 38;
+    public static final int INSN_FIELD_GET = 39;
+    public static final int INSN_FIELD_SET = 40;
+    public static final int INSN_INVOKE = 41;
+    public static final int INSN_GOTO = 42;
+    public static final int INSN_IF = 43;
+    public static final int INSN_SWITCH = 44;
+
+    /**
+     * All conditions of {@link IfInsn IfInsns}, stored by their index in this list.
+     */
+    public static final List<IfInsn.Condition> IF_CONDITIONS = List.of(
+            IfInsn.IF_NULL, IfInsn.IF_NONNULL,
+            IfInsn.IF_EQ_ZERO, IfInsn.IF_NE_ZERO, IfInsn.IF_LT_ZERO, IfInsn.IF_LE_ZERO, IfInsn.IF_GT_ZERO, IfInsn.IF_GE_ZERO,
+            IfInsn.IF_REF_EQ, IfInsn.IF_REF_NE,
+            IfInsn.IF_INT_EQ, IfInsn.IF_INT_NE, IfInsn.IF_INT_LT, IfInsn.IF_INT_LE, IfInsn.IF_INT_GT, IfInsn.IF_INT_GE);
+
+    // Statements
+    public static final int STMT_ASSIGN = 0;
+    public static final int STMT_GOTO = 1;
+    public static final int STMT_IF = 2;
+    public static final int STMT_INVOKE = 3;
+    public static final int STMT_MONITOR_ENTER = 4;
+    public static final int STMT_MONITOR_EXIT = 5;
+    public static final int STMT_RETURN = 6;
+    public static final int STMT_SWITCH = 7;
+    public static final int STMT_THROW = 8;
+
+    // Conditions
+    public static final int COND_EQ = 0;
+    public static final int COND_NE = 1;
+    public static final int COND_LT = 2;
+    public static final int COND_LE = 3;
+    public static final int COND_GT = 4;
+    public static final int COND_GE = 5;
+
+    // Expressions
+    public static final int EXPR_LOCAL = 0;
+    public static final int EXPR_CONSTANT = 1;
+    public static final int EXPR_ADD = 2;
+    public static final int EXPR_SUB = 3;
+    public static final int EXPR_MUL = 4;
+    public static final int EXPR_DIV = 5;
+    public static final int EXPR_MOD = 6;
+    public static final int EXPR_AND = 7;
+    public static final int EXPR_OR = 8;
+    public static final int EXPR_XOR = 9;
+    public static final int EXPR_SHL = 10;
+    public static final int EXPR_SHR = 11;
+    public static final int EXPR_USHR = 12;
+    public static final int EXPR_CMP = 13;
+    public static final int EXPR_CMPL = 14;
+    public static final int EXPR_CMPG = 15;
+    public static final int EXPR_NEG = 16;
+    public static final int EXPR_ARRAY_BOX = 17;
+    public static final int EXPR_ARRAY_LENGTH = 18;
+    public static final int EXPR_CAST = 19;
+    public static final int EXPR_INSTANCE_OF = 20;
+    public static final int EXPR_INSTANCE_FIELD = 21;
+    public static final int EXPR_STATIC_FIELD = 22;
+    public static final int EXPR_INVOKE = 23;
+    public static final int EXPR_NEW = 24;
+    public static final int EXPR_NEW_ARRAY = 25;
+
+    private SnapshotFormat() {}
+}
@@ -0,0 +1,403 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.MethodDescriptor;
+import io.runebox.kasm.ir.MethodRef;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.annotation.*;
+import io.runebox.kasm.ir.constant.*;
+import io.runebox.kasm.ir.handle.*;
+import io.runebox.kasm.ir.type.RefType;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A cursor that decodes the primitives of the snapshot format from a {@link ByteBuffer}.
+ * It is the counterpart of {@link SnapshotOutput}.
+ *
+ * Only absolute reads are performed on the buffer, so many cursors may read the same buffer concurrently.
+ */
+public class SnapshotInput {
+    private final SnapshotTables tables;
+    private final ByteBuffer buffer;
+    private int position;
+
+    public SnapshotInput(SnapshotTables tables, int position) {
+        this.tables = tables;
+        this.buffer = tables.getBuffer();
+        this.position = position;
+    }
+
+    public SnapshotTables getTables() {
+        return tables;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void skip(int bytes) {
+        this.position += bytes;
+    }
+
+    public int readByte() {
+        return buffer.get(position++) & 0xFF;
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public void readBytes(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position++);
+        }
+    }
+
+    public int readShort() {
+        int value = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        return value;
+    }
+
+    public int readInt() {
+        int value = buffer.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() {
+        long value = buffer.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public int readSignedVarInt() {
+        int zigzag = readVarInt();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public long readSignedVarLong() {
+        long zigzag = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get(position++);
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public String readString() {
+        return tables.getString(readVarInt());
+    }
+
+    public Optional<String> readOptionalString() {
+        return Optional.ofNullable(readString());
+    }
+
+    public Path readPath() {
+        return tables.getPath(readVarInt());
+    }
+
+    public Optional<Path> readOptionalPath() {
+        return Optional.ofNullable(readPath());
+    }
+
+    public List<Path> readPaths() {
+        int count = readVarInt();
+        List<Path> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            paths.add(readPath());
+        }
+        return paths;
+    }
+
+    public Type readType() {
+        return tables.getType(readVarInt());
+    }
+
+    public Optional<Type> readOptionalType() {
+        return Optional.ofNullable(readType());
+    }
+
+    public List<Type> readTypes() {
+        int count = readVarInt();
+        List<Type> types = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            types.add(readType());
+        }
+        return types;
+    }
+
+    /**
+     * Read a set of enum constants written by {@link SnapshotOutput#writeFlags(Set)}.
+     *
+     * @param flagClass class of the enum
+     * @param <E> type of the enum
+     * @return a mutable set of the flags
+     */
+    public <E extends Enum<E>> Set<E> readFlags(Class<E> flagClass) {
+        long mask = readSignedVarLong();
+        Set<E> flags = new HashSet<>();
+        for (E flag : flagClass.getEnumConstants()) {
+            if ((mask & (1L << flag.ordinal())) != 0) {
+                flags.add(flag);
+            }
+        }
+        return flags;
+    }
+
+    public FieldRef readFieldRef() {
+        Path owner = readPath();
+        String name = readString();
+        return new FieldRef(owner, name, readType());
+    }
+
+    public MethodRef readMethodRef() {
+        Path owner = readPath();
+        String name = readString();
+        List<Type> arguments = readTypes();
+        return new MethodRef(owner, name, arguments, readOptionalType());
+    }
+
+    public MethodDescriptor readMethodDescriptor() {
+        List<Type> parameterTypes = readTypes();
+        return new MethodDescriptor(parameterTypes, readOptionalType());
+    }
+
+    public Handle readHandle() {
+        int kind = readByte();
+        switch (kind) {
+            case SnapshotFormat.HANDLE_GET_FIELD: return new GetFieldHandle(readFieldRef());
+            case SnapshotFormat.HANDLE_GET_STATIC: return new GetStaticHandle(readFieldRef());
+            case SnapshotFormat.HANDLE_SET_FIELD: return new SetFieldHandle(readFieldRef());
+            case SnapshotFormat.HANDLE_SET_STATIC: return new SetStaticHandle(readFieldRef());
+            case SnapshotFormat.HANDLE_INVOKE_INTERFACE: return new InvokeInterfaceHandle(readMethodRef());
+            case SnapshotFormat.HANDLE_INVOKE_VIRTUAL: return new InvokeVirtualHandle(readMethodRef());
+            case SnapshotFormat.HANDLE_NEW_INSTANCE: return new NewInstanceHandle(readMethodRef());
+            case SnapshotFormat.HANDLE_INVOKE_SPECIAL: {
+                MethodRef methodRef = readMethodRef();
+                return new InvokeSpecialHandle(methodRef, readBoolean());
+            }
+            case SnapshotFormat.HANDLE_INVOKE_STATIC: {
+                MethodRef methodRef = readMethodRef();
+                return new InvokeStaticHandle(methodRef, readBoolean());
+            }
+            default:
+                throw new IllegalStateException("Unknown handle kind " + kind);
+        }
+    }
+
+    public Constant readConstant() {
+        int kind = readByte();
+        switch (kind) {
+            case SnapshotFormat.CONSTANT_NULL: return NullConstant.getInstance();
+            case SnapshotFormat.CONSTANT_INT: return new IntConstant(readSignedVarInt());
+            case SnapshotFormat.CONSTANT_LONG: return new LongConstant(readSignedVarLong());
+            case SnapshotFormat.CONSTANT_FLOAT: return new FloatConstant(readFloat());
+            case SnapshotFormat.CONSTANT_DOUBLE: return new DoubleConstant(readDouble());
+            case SnapshotFormat.CONSTANT_STRING: return new StringConstant(readString());
+            case SnapshotFormat.CONSTANT_CLASS: return new ClassConstant((RefType) readType());
+            case SnapshotFormat.CONSTANT_HANDLE: return new HandleConstant(readHandle());
+            case SnapshotFormat.CONSTANT_METHOD_TYPE: {
+                List<Type> argumentTypes = readTypes();
+                return new MethodTypeConstant(argumentTypes, readOptionalType());
+            }
+            case SnapshotFormat.CONSTANT_DYNAMIC: {
+                String name = readString();
+                Type type = readType();
+                Handle bootstrapMethod = readHandle();
+                return new DynamicConstant(name, type, bootstrapMethod, readConstants(BootstrapConstant.class));
+            }
+            default:
+                throw new IllegalStateException("Unknown constant kind " + kind);
+        }
+    }
+
+    public <C extends Constant> List<C> readConstants(Class<C> constantClass) {
+        int count = readVarInt();
+        List<C> constants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            constants.add(constantClass.cast(readConstant()));
+        }
+        return constants;
+    }
+
+    public Annotation readAnnotation() {
+        Path type = readPath();
+        boolean isRuntimeVisible = readBoolean();
+        return new Annotation(type, isRuntimeVisible, readAnnotationValues());
+    }
+
+    public List<Annotation> readAnnotations() {
+        int count = readVarInt();
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            annotations.add(readAnnotation());
+        }
+        return annotations;
+    }
+
+    private LinkedHashMap<String, AnnotationValue> readAnnotationValues() {
+        int count = readVarInt();
+        LinkedHashMap<String, AnnotationValue> values = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = readString();
+            values.put(name, readAnnotationValue());
+        }
+        return values;
+    }
+
+    public AnnotationValue readAnnotationValue() {
+        int kind = readByte();
+        switch (kind) {
+            case SnapshotFormat.VALUE_BOOLEAN: return new BooleanAnnotationValue(readBoolean());
+            case SnapshotFormat.VALUE_BYTE: return new ByteAnnotationValue((byte) readByte());
+            case SnapshotFormat.VALUE_CHAR: return new CharAnnotationValue((char) readVarInt());
+            case SnapshotFormat.VALUE_SHORT: return new ShortAnnotationValue((short) readSignedVarInt());
+            case SnapshotFormat.VALUE_INT: return new IntAnnotationValue(readSignedVarInt());
+            case SnapshotFormat.VALUE_LONG: return new LongAnnotationValue(readSignedVarLong());
+            case SnapshotFormat.VALUE_FLOAT: return new FloatAnnotationValue(readFloat());
+            case SnapshotFormat.VALUE_DOUBLE: return new DoubleAnnotationValue(readDouble());
+            case SnapshotFormat.VALUE_STRING: return new StringAnnotationValue(readString());
+            case SnapshotFormat.VALUE_CLASS: return new ClassAnnotationValue(readType());
+            case SnapshotFormat.VALUE_ENUM: {
+                Path type = readPath();
+                return new EnumAnnotationValue(type, readString());
+            }
+            case SnapshotFormat.VALUE_ARRAY: {
+                int count = readVarInt();
+                List<AnnotationValue> array = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    array.add(readAnnotationValue());
+                }
+                return new ArrayAnnotationValue(array);
+            }
+            case SnapshotFormat.VALUE_ANNOTATION: {
+                Path type = readPath();
+                return new AnnotationAnnotationValue(type, readAnnotationValues());
+            }
+            default:
+                throw new IllegalStateException("Unknown annotation value kind " + kind);
+        }
+    }
+
+    public TypePath readTypePath() {
+        int count = readVarInt();
+        List<TypePath.Kind> kinds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int sort = readByte();
+            switch (sort) {
+                case 0: // TypePath.Kind.Array
+                    kinds.add(new TypePath.Kind.Array());
+                    break;
+                case TypePath.Kind.InnerClass.SORT:
+                    kinds.add(new TypePath.Kind.InnerClass());
+                    break;
+                case TypePath.Kind.WildcardBound.SORT:
+                    kinds.add(new TypePath.Kind.WildcardBound());
+                    break;
+                case TypePath.Kind.TypeArgument.SORT:
+                    kinds.add(new TypePath.Kind.TypeArgument(readVarInt()));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown type path sort " + sort);
+            }
+        }
+        return new TypePath(kinds);
+    }
+
+    /**
+     * Read a target type written by {@link SnapshotOutput#writeTargetType(TargetType)}.
+     *
+     * @return the target type
+     */
+    public TargetType readTargetType() {
+        int sort = readByte();
+        switch (sort) {
+            case TargetType.TypeParameterBound.SORT: {
+                int parameterIndex = readVarInt();
+                return new TargetType.TypeParameterBound(parameterIndex, readVarInt());
+            }
+            case TargetType.Extends.SORT: return new TargetType.Extends();
+            case TargetType.Implements.SORT: return new TargetType.Implements(readVarInt());
+            case TargetType.TypeParameter.SORT: return new TargetType.TypeParameter(readVarInt());
+            case TargetType.ReturnType.SORT: return new TargetType.ReturnType();
+            case TargetType.MethodReceiver.SORT: return new TargetType.MethodReceiver();
+            case TargetType.MethodParameter.SORT: return new TargetType.MethodParameter(readVarInt());
+            case TargetType.CheckedException.SORT: return new TargetType.CheckedException(readVarInt());
+            case TargetType.InstanceOf.SORT: return new TargetType.InstanceOf();
+            case TargetType.New.SORT: return new TargetType.New();
+            case TargetType.ConstructorReference.SORT: return new TargetType.ConstructorReference();
+            case TargetType.MethodReference.SORT: return new TargetType.MethodReference();
+            case TargetType.Cast.SORT: return new TargetType.Cast(readVarInt());
+            case TargetType.ConstructorInvokeTypeParameter.SORT: return new TargetType.ConstructorInvokeTypeParameter(readVarInt());
+            case TargetType.MethodInvokeTypeParameter.SORT: return new TargetType.MethodInvokeTypeParameter(readVarInt());
+            case TargetType.ConstructorReferenceTypeParameter.SORT: return new TargetType.ConstructorReferenceTypeParameter(readVarInt());
+            case TargetType.MethodReferenceTypeParameter.SORT: return new TargetType.MethodReferenceTypeParameter(readVarInt());
+            case TargetType.LocalVariable.SORT: return new TargetType.LocalVariable();
+            case TargetType.ResourceVariable.SORT: return new TargetType.ResourceVariable();
+            default:
+                throw new IllegalStateException("Unknown target type sort " + sort);
+        }
+    }
+
+    public ClassTypeAnnotation readClassTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        Annotation annotation = readAnnotation();
+        return new ClassTypeAnnotation(typePath, annotation, (TargetType.ClassTargetType) readTargetType());
+    }
+
+    public MethodTypeAnnotation readMethodTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        Annotation annotation = readAnnotation();
+        return new MethodTypeAnnotation(typePath, annotation, (TargetType.MethodTargetType) readTargetType());
+    }
+
+    public InsnTypeAnnotation readInsnTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        Annotation annotation = readAnnotation();
+        return new InsnTypeAnnotation(typePath, annotation, (TargetType.InsnTargetType) readTargetType());
+    }
+
+    public LocalVariableTypeAnnotation readLocalVariableTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        Annotation annotation = readAnnotation();
+        return new LocalVariableTypeAnnotation(typePath, annotation, (TargetType.LocalTargetType) readTargetType());
+    }
+
+    public FieldTypeAnnotation readFieldTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        return new FieldTypeAnnotation(typePath, readAnnotation());
+    }
+
+    public ExceptionTypeAnnotation readExceptionTypeAnnotation() {
+        TypePath typePath = readTypePath();
+        return new ExceptionTypeAnnotation(typePath, readAnnotation());
+    }
+}
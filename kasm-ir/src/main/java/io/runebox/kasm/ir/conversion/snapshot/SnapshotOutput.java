@@ -0,0 +1,421 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.MethodDescriptor;
+import io.runebox.kasm.ir.MethodRef;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.annotation.*;
+import io.runebox.kasm.ir.constant.*;
+import io.runebox.kasm.ir.handle.*;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * A growable byte buffer that encodes the primitives of the snapshot format
+ * and the values that are shared by classes and method bodies, like constants and annotations.
+ *
+ * Strings, paths and types are added to a {@link ConstantTable} and only their index is written.
+ */
+public class SnapshotOutput {
+    private final ConstantTable table;
+
+    private byte[] data = new byte[64];
+    private int size = 0;
+
+    public SnapshotOutput(ConstantTable table) {
+        this.table = table;
+    }
+
+    public ConstantTable getTable() {
+        return table;
+    }
+
+    /**
+     * Get the amount of bytes written so far.
+     *
+     * @return number of written bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + additional));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, data, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Append everything written into another output.
+     *
+     * @param other the output to append
+     */
+    public void writeOutput(SnapshotOutput other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public void writeShort(int value) {
+        ensureCapacity(2);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Write a fixed size big endian int.
+     *
+     * @param value the int to write
+     */
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        data[size++] = (byte) (value >>> 24);
+        data[size++] = (byte) (value >>> 16);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    public void writeFloat(float value) {
+        writeInt(Float.floatToRawIntBits(value));
+    }
+
+    public void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Write a non-negative int in as few bytes as possible.
+     *
+     * Each byte stores seven bits, the highest bit marks that another byte follows.
+     *
+     * @param value the int to write, interpreted as unsigned
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Write an int that is likely small in magnitude but might be negative.
+     *
+     * @param value the int to write
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        ensureCapacity(10);
+        while ((zigzag & ~0x7FL) != 0) {
+            data[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        data[size++] = (byte) zigzag;
+    }
+
+    public void writeString(String string) {
+        writeVarInt(table.getStringIndex(string));
+    }
+
+    public void writeOptionalString(Optional<String> string) {
+        writeString(string.orElse(null));
+    }
+
+    public void writePath(Path path) {
+        writeVarInt(table.getPathIndex(path));
+    }
+
+    public void writeOptionalPath(Optional<Path> path) {
+        writePath(path.orElse(null));
+    }
+
+    public void writePaths(List<Path> paths) {
+        writeVarInt(paths.size());
+        for (Path path : paths) {
+            writePath(path);
+        }
+    }
+
+    public void writeType(Type type) {
+        writeVarInt(table.getTypeIndex(type));
+    }
+
+    public void writeOptionalType(Optional<? extends Type> type) {
+        writeType(type.orElse(null));
+    }
+
+    public void writeTypes(List<? extends Type> types) {
+        writeVarInt(types.size());
+        for (Type type : types) {
+            writeType(type);
+        }
+    }
+
+    /**
+     * Write a set of enum constants as a bit mask of their ordinals.
+     *
+     * @param flags the set of flags
+     */
+    public void writeFlags(Set<? extends Enum<?>> flags) {
+        long mask = 0;
+        for (Enum<?> flag : flags) {
+            mask |= 1L << flag.ordinal();
+        }
+        writeSignedVarLong(mask);
+    }
+
+    public void writeFieldRef(FieldRef fieldRef) {
+        writePath(fieldRef.getOwner());
+        writeString(fieldRef.getName());
+        writeType(fieldRef.getType());
+    }
+
+    public void writeMethodRef(MethodRef methodRef) {
+        writePath(methodRef.getOwner());
+        writeString(methodRef.getName());
+        writeTypes(methodRef.getArguments());
+        writeOptionalType(methodRef.getReturnType());
+    }
+
+    public void writeMethodDescriptor(MethodDescriptor descriptor) {
+        writeTypes(descriptor.getParameterTypes());
+        writeOptionalType(descriptor.getReturnType());
+    }
+
+    public void writeHandle(Handle handle) {
+        if (handle instanceof AbstractFieldHandle) {
+            if (handle instanceof GetFieldHandle) {
+                writeByte(SnapshotFormat.HANDLE_GET_FIELD);
+            } else if (handle instanceof GetStaticHandle) {
+                writeByte(SnapshotFormat.HANDLE_GET_STATIC);
+            } else if (handle instanceof SetFieldHandle) {
+                writeByte(SnapshotFormat.HANDLE_SET_FIELD);
+            } else if (handle instanceof SetStaticHandle) {
+                writeByte(SnapshotFormat.HANDLE_SET_STATIC);
+            } else {
+                throw new AssertionError();
+            }
+            writeFieldRef(((AbstractFieldHandle) handle).getFieldRef());
+        } else if (handle instanceof AbstractMethodHandle) {
+            if (handle instanceof InvokeInterfaceHandle) {
+                writeByte(SnapshotFormat.HANDLE_INVOKE_INTERFACE);
+            } else if (handle instanceof InvokeSpecialHandle) {
+                writeByte(SnapshotFormat.HANDLE_INVOKE_SPECIAL);
+            } else if (handle instanceof InvokeStaticHandle) {
+                writeByte(SnapshotFormat.HANDLE_INVOKE_STATIC);
+            } else if (handle instanceof InvokeVirtualHandle) {
+                writeByte(SnapshotFormat.HANDLE_INVOKE_VIRTUAL);
+            } else if (handle instanceof NewInstanceHandle) {
+                writeByte(SnapshotFormat.HANDLE_NEW_INSTANCE);
+            } else {
+                throw new AssertionError();
+            }
+            writeMethodRef(((AbstractMethodHandle) handle).getMethodRef());
+
+            if (handle instanceof AbstractAmbiguousMethodHandle) {
+                writeBoolean(((AbstractAmbiguousMethodHandle) handle).isInterface());
+            }
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    public void writeConstant(Constant constant) {
+        if (constant instanceof NullConstant) {
+            writeByte(SnapshotFormat.CONSTANT_NULL);
+        } else if (constant instanceof IntConstant) {
+            writeByte(SnapshotFormat.CONSTANT_INT);
+            writeSignedVarInt(((IntConstant) constant).getValue());
+        } else if (constant instanceof LongConstant) {
+            writeByte(SnapshotFormat.CONSTANT_LONG);
+            writeSignedVarLong(((LongConstant) constant).getValue());
+        } else if (constant instanceof FloatConstant) {
+            writeByte(SnapshotFormat.CONSTANT_FLOAT);
+            writeFloat(((FloatConstant) constant).getValue());
+        } else if (constant instanceof DoubleConstant) {
+            writeByte(SnapshotFormat.CONSTANT_DOUBLE);
+            writeDouble(((DoubleConstant) constant).getValue());
+        } else if (constant instanceof StringConstant) {
+            writeByte(SnapshotFormat.CONSTANT_STRING);
+            writeString(((StringConstant) constant).getValue());
+        } else if (constant instanceof ClassConstant) {
+            writeByte(SnapshotFormat.CONSTANT_CLASS);
+            writeType(((ClassConstant) constant).getValue());
+        } else if (constant instanceof HandleConstant) {
+            writeByte(SnapshotFormat.CONSTANT_HANDLE);
+            writeHandle(((HandleConstant) constant).getHandle());
+        } else if (constant instanceof MethodTypeConstant) {
+            MethodTypeConstant methodType = (MethodTypeConstant) constant;
+            writeByte(SnapshotFormat.CONSTANT_METHOD_TYPE);
+            writeTypes(methodType.getArgumentTypes());
+            writeOptionalType(methodType.getReturnType());
+        } else if (constant instanceof DynamicConstant) {
+            DynamicConstant dynamic = (DynamicConstant) constant;
+            writeByte(SnapshotFormat.CONSTANT_DYNAMIC);
+            writeString(dynamic.getName());
+            writeType(dynamic.getType());
+            writeHandle(dynamic.getBootstrapMethod());
+            writeConstants(dynamic.getBootstrapArguments());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    public void writeConstants(List<? extends Constant> constants) {
+        writeVarInt(constants.size());
+        for (Constant constant : constants) {
+            writeConstant(constant);
+        }
+    }
+
+    public void writeAnnotation(Annotation annotation) {
+        writePath(annotation.getType());
+        writeBoolean(annotation.isRuntimeVisible());
+        writeAnnotationValues(annotation.getValues());
+    }
+
+    public void writeAnnotations(List<Annotation> annotations) {
+        writeVarInt(annotations.size());
+        for (Annotation annotation : annotations) {
+            writeAnnotation(annotation);
+        }
+    }
+
+    private void writeAnnotationValues(Map<String, AnnotationValue> values) {
+        writeVarInt(values.size());
+        values.forEach((name, value) -> {
+            writeString(name);
+            writeAnnotationValue(value);
+        });
+    }
+
+    public void writeAnnotationValue(AnnotationValue value) {
+        if (value instanceof BooleanAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_BOOLEAN);
+            writeBoolean(((BooleanAnnotationValue) value).getValue());
+        } else if (value instanceof ByteAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_BYTE);
+            writeByte(((ByteAnnotationValue) value).getValue());
+        } else if (value instanceof CharAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_CHAR);
+            writeVarInt(((CharAnnotationValue) value).getValue());
+        } else if (value instanceof ShortAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_SHORT);
+            writeSignedVarInt(((ShortAnnotationValue) value).getValue());
+        } else if (value instanceof IntAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_INT);
+            writeSignedVarInt(((IntAnnotationValue) value).getValue());
+        } else if (value instanceof LongAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_LONG);
+            writeSignedVarLong(((LongAnnotationValue) value).getValue());
+        } else if (value instanceof FloatAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_FLOAT);
+            writeFloat(((FloatAnnotationValue) value).getValue());
+        } else if (value instanceof DoubleAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_DOUBLE);
+            writeDouble(((DoubleAnnotationValue) value).getValue());
+        } else if (value instanceof StringAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_STRING);
+            writeString(((StringAnnotationValue) value).getValue());
+        } else if (value instanceof ClassAnnotationValue) {
+            writeByte(SnapshotFormat.VALUE_CLASS);
+            writeType(((ClassAnnotationValue) value).getValue());
+        } else if (value instanceof EnumAnnotationValue) {
+            EnumAnnotationValue enumValue = (EnumAnnotationValue) value;
+            writeByte(SnapshotFormat.VALUE_ENUM);
+            writePath(enumValue.getType());
+            writeString(enumValue.getName());
+        } else if (value instanceof ArrayAnnotationValue) {
+            List<AnnotationValue> array = ((ArrayAnnotationValue) value).getArray();
+            writeByte(SnapshotFormat.VALUE_ARRAY);
+            writeVarInt(array.size());
+            for (AnnotationValue element : array) {
+                writeAnnotationValue(element);
+            }
+        } else if (value instanceof AnnotationAnnotationValue) {
+            AnnotationAnnotationValue annotation = (AnnotationAnnotationValue) value;
+            writeByte(SnapshotFormat.VALUE_ANNOTATION);
+            writePath(annotation.getType());
+            writeAnnotationValues(annotation.getValues());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Write the path and annotation of a type annotation.
+     * The target type must be written separately, since not all type annotations have one.
+     *
+     * @param typeAnnotation the type annotation
+     */
+    public void writeTypeAnnotation(AbstractTypeAnnotation typeAnnotation) {
+        List<TypePath.Kind> kinds = typeAnnotation.getTypePath().getPaths();
+        writeVarInt(kinds.size());
+        for (TypePath.Kind kind : kinds) {
+            writeByte(kind.getSort());
+            if (kind instanceof TypePath.Kind.TypeArgument) {
+                writeVarInt(((TypePath.Kind.TypeArgument) kind).getTypeArgumentIndex());
+            }
+        }
+
+        writeAnnotation(typeAnnotation.getAnnotation());
+    }
+
+    public void writeTargetType(TargetType targetType) {
+        writeByte(targetType.getSort());
+        if (targetType instanceof TargetType.TypeParameterBound) {
+            TargetType.TypeParameterBound bound = (TargetType.TypeParameterBound) targetType;
+            writeVarInt(bound.getParameterIndex());
+            writeVarInt(bound.getBoundIndex());
+        } else if (targetType instanceof TargetType.Implements) {
+            writeVarInt(((TargetType.Implements) targetType).getIndex());
+        } else if (targetType instanceof TargetType.TypeParameter) {
+            writeVarInt(((TargetType.TypeParameter) targetType).getParameterIndex());
+        } else if (targetType instanceof TargetType.MethodParameter) {
+            writeVarInt(((TargetType.MethodParameter) targetType).getParameter());
+        } else if (targetType instanceof TargetType.CheckedException) {
+            writeVarInt(((TargetType.CheckedException) targetType).getException());
+        } else if (targetType instanceof TargetType.Cast) {
+            writeVarInt(((TargetType.Cast) targetType).getIntersection());
+        } else if (targetType instanceof TargetType.AbstractTypeParameterInsnTargetType) {
+            writeVarInt(((TargetType.AbstractTypeParameterInsnTargetType) targetType).getTypeParameter());
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, size);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,323 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.*;
+import io.runebox.kasm.ir.Module;
+import io.runebox.kasm.ir.annotation.Annotation;
+import io.runebox.kasm.ir.annotation.AnnotationValue;
+import io.runebox.kasm.ir.constant.FieldConstant;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.ClassTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.FieldTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.MethodTypeAnnotation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Read classfiles from a snapshot written by a {@link SnapshotWriter}.
+ *
+ * Only the header and the offsets are read when a snapshot is opened.
+ * Classes are decoded on request and may be decoded concurrently by many threads.
+ * If lazy bodies are enabled, the code of a method is only decoded once {@link Method#getBody()} is called.
+ */
+public class SnapshotReader {
+    private final SnapshotTables tables;
+
+    /**
+     * Offsets of the classes relative to the data section.
+     */
+    private final int[] classOffsets;
+
+    /**
+     * Decode method bodies on their first access instead of while reading a class.
+     */
+    private boolean lazyBodies = true;
+
+    public SnapshotReader(ByteBuffer buffer) {
+        int magic = buffer.getInt(0);
+        if (magic != SnapshotFormat.MAGIC) {
+            throw new IllegalStateException("Not a snapshot, magic is 0x" + Integer.toHexString(magic));
+        }
+
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != SnapshotFormat.VERSION) {
+            throw new IllegalStateException("Unsupported snapshot version " + version +
+                    ", expected " + SnapshotFormat.VERSION);
+        }
+
+        int position = 6;
+        int stringCount = buffer.getInt(position);
+        int pathCount = buffer.getInt(position + 4);
+        int typeCount = buffer.getInt(position + 8);
+        int classCount = buffer.getInt(position + 12);
+        position = SnapshotFormat.HEADER_SIZE;
+
+        int[] stringOffsets = new int[stringCount];
+        for (int i = 0; i < stringCount; i++, position += 4) {
+            stringOffsets[i] = buffer.getInt(position);
+        }
+
+        int[] pathOffsets = new int[pathCount];
+        for (int i = 0; i < pathCount; i++, position += 4) {
+            pathOffsets[i] = buffer.getInt(position);
+        }
+
+        int[] typeOffsets = new int[typeCount];
+        for (int i = 0; i < typeCount; i++, position += 4) {
+            typeOffsets[i] = buffer.getInt(position);
+        }
+
+        this.classOffsets = new int[classCount];
+        for (int i = 0; i < classCount; i++, position += 4) {
+            classOffsets[i] = buffer.getInt(position);
+        }
+
+        this.tables = new SnapshotTables(buffer, position, stringOffsets, pathOffsets, typeOffsets);
+    }
+
+    /**
+     * Map a snapshot file into memory and open it.
+     *
+     * @param file the snapshot file
+     * @return reader of the snapshot
+     * @throws IOException if the file could not be mapped
+     */
+    public static SnapshotReader open(java.nio.file.Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new SnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public boolean isLazyBodies() {
+        return lazyBodies;
+    }
+
+    public void setLazyBodies(boolean lazyBodies) {
+        this.lazyBodies = lazyBodies;
+    }
+
+    public int getClassCount() {
+        return classOffsets.length;
+    }
+
+    /**
+     * Decode a class of the snapshot.
+     *
+     * Every call creates a new {@link Classfile}, that shares no mutable state with other decoded classes.
+     *
+     * @param index index of the class in the order it was added to the {@link SnapshotWriter}
+     * @return the decoded class
+     */
+    public Classfile readClass(int index) {
+        SnapshotInput in = new SnapshotInput(tables, tables.getDataStart() + classOffsets[index]);
+
+        Classfile.Version version = new Classfile.Version(in.readVarInt(), in.readVarInt());
+        Set<Classfile.Flag> flags = in.readFlags(Classfile.Flag.class);
+        Path name = in.readPath();
+        Path supertype = in.readPath();
+        Classfile classfile = new Classfile(version, name, supertype, in.readPaths());
+        classfile.setFlags(flags);
+        classfile.setSignature(in.readOptionalString());
+        classfile.setSource(in.readOptionalString());
+        classfile.setSourceDebug(in.readOptionalString());
+
+        int innerClassCount = in.readVarInt();
+        List<Classfile.InnerClass> innerClasses = new ArrayList<>(innerClassCount);
+        for (int i = 0; i < innerClassCount; i++) {
+            Path innerClassName = in.readPath();
+            Optional<Path> outerName = in.readOptionalPath();
+            Optional<String> innerName = in.readOptionalString();
+            Set<Classfile.InnerClass.Flag> innerFlags = in.readFlags(Classfile.InnerClass.Flag.class);
+            innerClasses.add(new Classfile.InnerClass(innerClassName, outerName, innerName, innerFlags));
+        }
+        classfile.setInnerClasses(innerClasses);
+
+        if (in.readBoolean()) {
+            Path owner = in.readPath();
+            Optional<String> methodName = in.readOptionalString();
+            Optional<MethodDescriptor> descriptor = in.readBoolean() ? Optional.of(in.readMethodDescriptor()) : Optional.empty();
+            classfile.setEnclosingMethod(Optional.of(new Classfile.EnclosingMethod(owner, methodName, descriptor)));
+        }
+
+        classfile.setNestHost(in.readOptionalPath());
+        classfile.setNestMembers(in.readPaths());
+        classfile.setModule(in.readBoolean() ? Optional.of(readModule(in)) : Optional.empty());
+
+        classfile.setAnnotations(in.readAnnotations());
+        int typeAnnotationCount = in.readVarInt();
+        List<ClassTypeAnnotation> typeAnnotations = new ArrayList<>(typeAnnotationCount);
+        for (int i = 0; i < typeAnnotationCount; i++) {
+            typeAnnotations.add(in.readClassTypeAnnotation());
+        }
+        classfile.setTypeAnnotations(typeAnnotations);
+        classfile.setAttributes(readAttributes(in));
+
+        int fieldCount = in.readVarInt();
+        List<Field> fields = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(readField(in));
+        }
+        classfile.setFields(fields);
+
+        int methodCount = in.readVarInt();
+        List<Method> methods = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            methods.add(readMethod(in));
+        }
+        classfile.setMethods(methods);
+
+        return classfile;
+    }
+
+    /**
+     * Decode all classes of the snapshot.
+     *
+     * @return the classes in the order they were written
+     */
+    public List<Classfile> readClasses() {
+        List<Classfile> classes = new ArrayList<>(classOffsets.length);
+        for (int i = 0; i < classOffsets.length; i++) {
+            classes.add(readClass(i));
+        }
+        return classes;
+    }
+
+    private Module readModule(SnapshotInput in) {
+        Path name = in.readPath();
+        Set<Module.Flag> flags = in.readFlags(Module.Flag.class);
+        Optional<String> version = in.readOptionalString();
+        Optional<Path> mainClass = in.readOptionalPath();
+        List<Path> packages = in.readPaths();
+
+        int requireCount = in.readVarInt();
+        List<Module.Require> requires = new ArrayList<>(requireCount);
+        for (int i = 0; i < requireCount; i++) {
+            Path requireName = in.readPath();
+            Set<Module.Require.Flag> requireFlags = in.readFlags(Module.Require.Flag.class);
+            requires.add(new Module.Require(requireName, requireFlags, in.readOptionalString()));
+        }
+
+        int exportCount = in.readVarInt();
+        List<Module.Export> exports = new ArrayList<>(exportCount);
+        for (int i = 0; i < exportCount; i++) {
+            Path exportName = in.readPath();
+            Set<Module.Export.Flag> exportFlags = in.readFlags(Module.Export.Flag.class);
+            exports.add(new Module.Export(exportName, exportFlags, in.readPaths()));
+        }
+
+        int openCount = in.readVarInt();
+        List<Module.Open> opens = new ArrayList<>(openCount);
+        for (int i = 0; i < openCount; i++) {
+            Path openName = in.readPath();
+            Set<Module.Open.Flag> openFlags = in.readFlags(Module.Open.Flag.class);
+            opens.add(new Module.Open(openName, openFlags, in.readPaths()));
+        }
+
+        List<Path> uses = in.readPaths();
+
+        int provideCount = in.readVarInt();
+        List<Module.Provide> provides = new ArrayList<>(provideCount);
+        for (int i = 0; i < provideCount; i++) {
+            Path service = in.readPath();
+            provides.add(new Module.Provide(service, in.readPaths()));
+        }
+
+        return new Module(name, flags, version, mainClass, packages, requires, exports, opens, uses, provides);
+    }
+
+    private List<Attribute> readAttributes(SnapshotInput in) {
+        int count = in.readVarInt();
+        List<Attribute> attributes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readString();
+            byte[] data = new byte[in.readVarInt()];
+            in.readBytes(data);
+            attributes.add(new Attribute(name, data));
+        }
+        return attributes;
+    }
+
+    private Field readField(SnapshotInput in) {
+        Set<Field.Flag> flags = in.readFlags(Field.Flag.class);
+        String name = in.readString();
+        Type type = in.readType();
+        Optional<String> signature = in.readOptionalString();
+        Optional<FieldConstant> value = in.readBoolean() ? Optional.of((FieldConstant) in.readConstant()) : Optional.empty();
+        List<Annotation> annotations = in.readAnnotations();
+
+        int typeAnnotationCount = in.readVarInt();
+        List<FieldTypeAnnotation> typeAnnotations = new ArrayList<>(typeAnnotationCount);
+        for (int i = 0; i < typeAnnotationCount; i++) {
+            typeAnnotations.add(in.readFieldTypeAnnotation());
+        }
+
+        return new Field(flags, name, type, signature, value, annotations, typeAnnotations, readAttributes(in));
+    }
+
+    private Method readMethod(SnapshotInput in) {
+        Set<Method.Flag> flags = in.readFlags(Method.Flag.class);
+        String name = in.readString();
+        List<Type> parameterTypes = in.readTypes();
+        Optional<Type> returnType = in.readOptionalType();
+        List<Path> exceptions = in.readPaths();
+        Optional<String> signature = in.readOptionalString();
+        Optional<AnnotationValue> defaultValue = in.readBoolean() ? Optional.of(in.readAnnotationValue()) : Optional.empty();
+
+        int parameterCount = in.readVarInt();
+        List<Method.Parameter> parameterInfo = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            Optional<String> parameterName = in.readOptionalString();
+            parameterInfo.add(new Method.Parameter(parameterName, in.readFlags(Method.Parameter.Flag.class)));
+        }
+
+        int parameterAnnotationCount = in.readVarInt();
+        List<List<Annotation>> parameterAnnotations = new ArrayList<>(parameterAnnotationCount);
+        for (int i = 0; i < parameterAnnotationCount; i++) {
+            parameterAnnotations.add(in.readAnnotations());
+        }
+        List<Annotation> annotations = in.readAnnotations();
+
+        int typeAnnotationCount = in.readVarInt();
+        List<MethodTypeAnnotation> typeAnnotations = new ArrayList<>(typeAnnotationCount);
+        for (int i = 0; i < typeAnnotationCount; i++) {
+            typeAnnotations.add(in.readMethodTypeAnnotation());
+        }
+        List<Attribute> attributes = readAttributes(in);
+
+        Method method = new Method(flags, name, parameterTypes, returnType, exceptions, signature, defaultValue,
+                parameterInfo, parameterAnnotations, annotations, typeAnnotations, attributes, Optional.empty());
+
+        int bodyKind = in.readByte();
+        if (bodyKind != SnapshotFormat.BODY_NONE) {
+            int length = in.readInt();
+            int position = in.getPosition();
+            in.skip(length);
+
+            if (lazyBodies) {
+                method.setBodyLoader(() -> Optional.of(readBody(bodyKind, position)));
+            } else {
+                method.setBody(Optional.of(readBody(bodyKind, position)));
+            }
+        }
+
+        return method;
+    }
+
+    private Body readBody(int kind, int position) {
+        SnapshotInput in = new SnapshotInput(tables, position);
+        switch (kind) {
+            case SnapshotFormat.BODY_STACK:
+                return new StackBodyReader(in).read();
+            case SnapshotFormat.BODY_REF:
+                return new RefBodyReader(in).read();
+            default:
+                throw new IllegalStateException("Unknown body kind " + kind);
+        }
+    }
+}
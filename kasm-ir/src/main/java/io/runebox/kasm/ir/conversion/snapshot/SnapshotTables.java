@@ -0,0 +1,137 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.type.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shared tables of strings, paths and types of a snapshot that is read.
+ *
+ * Entries are decoded on their first access and cached afterwards,
+ * so opening a large snapshot only reads the offsets of the entries.
+ * The tables may be accessed by many threads. Concurrent first accesses may decode an entry twice,
+ * which is harmless since all entries are immutable.
+ */
+public class SnapshotTables {
+    private final ByteBuffer buffer;
+
+    /**
+     * Position of the data section within the buffer.
+     */
+    private final int dataStart;
+
+    private final int[] stringOffsets;
+    private final int[] pathOffsets;
+    private final int[] typeOffsets;
+
+    private final String[] strings;
+    private final Path[] paths;
+    private final Type[] types;
+
+    public SnapshotTables(ByteBuffer buffer, int dataStart, int[] stringOffsets, int[] pathOffsets, int[] typeOffsets) {
+        this.buffer = buffer;
+        this.dataStart = dataStart;
+        this.stringOffsets = stringOffsets;
+        this.pathOffsets = pathOffsets;
+        this.typeOffsets = typeOffsets;
+        this.strings = new String[stringOffsets.length];
+        this.paths = new Path[pathOffsets.length];
+        this.types = new Type[typeOffsets.length];
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getDataStart() {
+        return dataStart;
+    }
+
+    /**
+     * Get a string by its index.
+     *
+     * @param index the index as written by {@link ConstantTable#getStringIndex(String)}
+     * @return the string or <tt>null</tt> for the index zero
+     */
+    public String getString(int index) {
+        if (index == 0) {
+            return null;
+        }
+
+        String string = strings[index - 1];
+        if (string == null) {
+            SnapshotInput in = new SnapshotInput(this, dataStart + stringOffsets[index - 1]);
+            int length = in.readVarInt();
+            byte[] bytes = new byte[length];
+            in.readBytes(bytes);
+            strings[index - 1] = string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    /**
+     * Get a path by its index.
+     *
+     * @param index the index as written by {@link ConstantTable#getPathIndex(Path)}
+     * @return the path or <tt>null</tt> for the index zero
+     */
+    public Path getPath(int index) {
+        if (index == 0) {
+            return null;
+        }
+
+        Path path = paths[index - 1];
+        if (path == null) {
+            SnapshotInput in = new SnapshotInput(this, dataStart + pathOffsets[index - 1]);
+            int packageCount = in.readVarInt();
+            List<String> pkg = new ArrayList<>(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                pkg.add(in.readString());
+            }
+            paths[index - 1] = path = new Path(pkg, in.readString());
+        }
+        return path;
+    }
+
+    /**
+     * Get a type by its index.
+     *
+     * @param index the index as written by {@link ConstantTable#getTypeIndex(Type)}
+     * @return the type or <tt>null</tt> for the index zero
+     */
+    public Type getType(int index) {
+        if (index == 0) {
+            return null;
+        }
+
+        Type type = types[index - 1];
+        if (type == null) {
+            types[index - 1] = type = readType(new SnapshotInput(this, dataStart + typeOffsets[index - 1]));
+        }
+        return type;
+    }
+
+    private Type readType(SnapshotInput in) {
+        int sort = in.readByte();
+        switch (sort) {
+            case SnapshotFormat.TYPE_BOOLEAN: return BooleanType.getInstance();
+            case SnapshotFormat.TYPE_BYTE: return ByteType.getInstance();
+            case SnapshotFormat.TYPE_CHAR: return CharType.getInstance();
+            case SnapshotFormat.TYPE_SHORT: return ShortType.getInstance();
+            case SnapshotFormat.TYPE_INT: return IntType.getInstance();
+            case SnapshotFormat.TYPE_LONG: return LongType.getInstance();
+            case SnapshotFormat.TYPE_FLOAT: return FloatType.getInstance();
+            case SnapshotFormat.TYPE_DOUBLE: return DoubleType.getInstance();
+            case SnapshotFormat.TYPE_OBJECT: return new ObjectType(in.readPath());
+            case SnapshotFormat.TYPE_ARRAY:
+                Type baseType = in.readType();
+                return new ArrayType(baseType, in.readVarInt());
+            default:
+                throw new IllegalStateException("Unknown type sort " + sort);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.*;
+import io.runebox.kasm.ir.Module;
+import io.runebox.kasm.ir.annotation.Annotation;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.typeannotation.ClassTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.FieldTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.MethodTypeAnnotation;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Collect classfiles and write them into a snapshot.
+ *
+ * All classes share one table of strings, paths and types.
+ * The bodies of methods are materialized while they are added.
+ *
+ * @see SnapshotReader
+ */
+public class SnapshotWriter {
+    private final ConstantTable table = new ConstantTable();
+
+    /**
+     * The encoded classes, all sharing {@link #table}.
+     */
+    private final SnapshotOutput classes = new SnapshotOutput(table);
+
+    /**
+     * Offsets of the classes within {@link #classes}.
+     */
+    private final List<Integer> classOffsets = new ArrayList<>();
+
+    public int getClassCount() {
+        return classOffsets.size();
+    }
+
+    /**
+     * Add a classfile to the snapshot.
+     *
+     * @param classfile the classfile to add
+     */
+    public void add(Classfile classfile) {
+        classOffsets.add(classes.size());
+        writeClass(classes, classfile);
+    }
+
+    /**
+     * Write the snapshot with all classes that were added so far.
+     *
+     * @param out stream that receives the snapshot
+     * @throws IOException if writing to the stream failed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        SnapshotOutput data = new SnapshotOutput(table);
+        SnapshotOutput offsets = new SnapshotOutput(table);
+        table.writeEntries(data, offsets);
+
+        int classStart = data.size();
+        for (int classOffset : classOffsets) {
+            offsets.writeInt(classStart + classOffset);
+        }
+        data.writeOutput(classes);
+
+        SnapshotOutput header = new SnapshotOutput(table);
+        header.writeInt(SnapshotFormat.MAGIC);
+        header.writeShort(SnapshotFormat.VERSION);
+        header.writeInt(table.getStringCount());
+        header.writeInt(table.getPathCount());
+        header.writeInt(table.getTypeCount());
+        header.writeInt(classOffsets.size());
+
+        header.writeTo(out);
+        offsets.writeTo(out);
+        data.writeTo(out);
+    }
+
+    /**
+     * Write the snapshot into a file.
+     *
+     * @param file the file that gets created or overwritten
+     * @throws IOException if writing the file failed
+     */
+    public void writeTo(java.nio.file.Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            writeTo(out);
+        }
+    }
+
+    private void writeClass(SnapshotOutput out, Classfile classfile) {
+        out.writeVarInt(classfile.getVersion().getMajor());
+        out.writeVarInt(classfile.getVersion().getMinor());
+        out.writeFlags(classfile.getFlags());
+        out.writePath(classfile.getName());
+        out.writePath(classfile.getSupertype());
+        out.writePaths(classfile.getInterfaces());
+        out.writeOptionalString(classfile.getSignature());
+        out.writeOptionalString(classfile.getSource());
+        out.writeOptionalString(classfile.getSourceDebug());
+
+        out.writeVarInt(classfile.getInnerClasses().size());
+        for (Classfile.InnerClass innerClass : classfile.getInnerClasses()) {
+            out.writePath(innerClass.getName());
+            out.writeOptionalPath(innerClass.getOuterName());
+            out.writeOptionalString(innerClass.getInnerName());
+            out.writeFlags(innerClass.getFlags());
+        }
+
+        Optional<Classfile.EnclosingMethod> enclosingMethod = classfile.getEnclosingMethod();
+        out.writeBoolean(enclosingMethod.isPresent());
+        enclosingMethod.ifPresent(method -> {
+            out.writePath(method.getOwner());
+            out.writeOptionalString(method.getName());
+            out.writeBoolean(method.getDescriptor().isPresent());
+            method.getDescriptor().ifPresent(out::writeMethodDescriptor);
+        });
+
+        out.writeOptionalPath(classfile.getNestHost());
+        out.writePaths(classfile.getNestMembers());
+
+        out.writeBoolean(classfile.getModule().isPresent());
+        classfile.getModule().ifPresent(module -> writeModule(out, module));
+
+        out.writeAnnotations(classfile.getAnnotations());
+        out.writeVarInt(classfile.getTypeAnnotations().size());
+        for (ClassTypeAnnotation typeAnnotation : classfile.getTypeAnnotations()) {
+            out.writeTypeAnnotation(typeAnnotation);
+            out.writeTargetType(typeAnnotation.getTargetType());
+        }
+        writeAttributes(out, classfile.getAttributes());
+
+        out.writeVarInt(classfile.getFields().size());
+        for (Field field : classfile.getFields()) {
+            writeField(out, field);
+        }
+
+        out.writeVarInt(classfile.getMethods().size());
+        for (Method method : classfile.getMethods()) {
+            writeMethod(out, method);
+        }
+    }
+
+    private void writeModule(SnapshotOutput out, Module module) {
+        out.writePath(module.getModule());
+        out.writeFlags(module.getAccessFlags());
+        out.writeOptionalString(module.getVersion());
+        out.writeOptionalPath(module.getMainClass());
+        out.writePaths(module.getPackages());
+
+        out.writeVarInt(module.getRequires().size());
+        for (Module.Require require : module.getRequires()) {
+            out.writePath(require.getName());
+            out.writeFlags(require.getFlags());
+            out.writeOptionalString(require.getVersion());
+        }
+
+        out.writeVarInt(module.getExports().size());
+        for (Module.Export export : module.getExports()) {
+            out.writePath(export.getName());
+            out.writeFlags(export.getFlags());
+            out.writePaths(export.getModules());
+        }
+
+        out.writeVarInt(module.getOpens().size());
+        for (Module.Open open : module.getOpens()) {
+            out.writePath(open.getName());
+            out.writeFlags(open.getFlags());
+            out.writePaths(open.getModules());
+        }
+
+        out.writePaths(module.getUses());
+
+        out.writeVarInt(module.getProvides().size());
+        for (Module.Provide provide : module.getProvides()) {
+            out.writePath(provide.getService());
+            out.writePaths(provide.getProviders());
+        }
+    }
+
+    private void writeAttributes(SnapshotOutput out, List<Attribute> attributes) {
+        out.writeVarInt(attributes.size());
+        for (Attribute attribute : attributes) {
+            out.writeString(attribute.getName());
+            out.writeVarInt(attribute.getData().length);
+            out.writeBytes(attribute.getData());
+        }
+    }
+
+    private void writeField(SnapshotOutput out, Field field) {
+        out.writeFlags(field.getFlags());
+        out.writeString(field.getName());
+        out.writeType(field.getType());
+        out.writeOptionalString(field.getSignature());
+        out.writeBoolean(field.getValue().isPresent());
+        field.getValue().ifPresent(out::writeConstant);
+        out.writeAnnotations(field.getAnnotations());
+
+        out.writeVarInt(field.getTypeAnnotations().size());
+        for (FieldTypeAnnotation typeAnnotation : field.getTypeAnnotations()) {
+            out.writeTypeAnnotation(typeAnnotation);
+        }
+        writeAttributes(out, field.getAttributes());
+    }
+
+    private void writeMethod(SnapshotOutput out, Method method) {
+        out.writeFlags(method.getFlags());
+        out.writeString(method.getName());
+        out.writeTypes(method.getParameterTypes());
+        out.writeOptionalType(method.getReturnType());
+        out.writePaths(method.getExceptions());
+        out.writeOptionalString(method.getSignature());
+        out.writeBoolean(method.getDefaultValue().isPresent());
+        method.getDefaultValue().ifPresent(out::writeAnnotationValue);
+
+        out.writeVarInt(method.getParameterInfo().size());
+        for (Method.Parameter parameter : method.getParameterInfo()) {
+            out.writeOptionalString(parameter.getName());
+            out.writeFlags(parameter.getFlags());
+        }
+
+        out.writeVarInt(method.getParameterAnnotations().size());
+        for (List<Annotation> annotations : method.getParameterAnnotations()) {
+            out.writeAnnotations(annotations);
+        }
+        out.writeAnnotations(method.getAnnotations());
+
+        out.writeVarInt(method.getTypeAnnotations().size());
+        for (MethodTypeAnnotation typeAnnotation : method.getTypeAnnotations()) {
+            out.writeTypeAnnotation(typeAnnotation);
+            out.writeTargetType(typeAnnotation.getTargetType());
+        }
+        writeAttributes(out, method.getAttributes());
+
+        writeBody(out, method.getBody());
+    }
+
+    /**
+     * Write a body prefixed by its kind and length, so readers can skip it or decode it later.
+     */
+    private void writeBody(SnapshotOutput out, Optional<Body> bodyOpt) {
+        if (!bodyOpt.isPresent()) {
+            out.writeByte(SnapshotFormat.BODY_NONE);
+            return;
+        }
+
+        Body body = bodyOpt.get();
+        SnapshotOutput code = new SnapshotOutput(table);
+        if (body instanceof StackBody) {
+            out.writeByte(SnapshotFormat.BODY_STACK);
+            new StackBodyWriter(code).write((StackBody) body);
+        } else if (body instanceof RefBody) {
+            out.writeByte(SnapshotFormat.BODY_REF);
+            new RefBodyWriter(code).write((RefBody) body);
+        } else {
+            throw new AssertionError();
+        }
+
+        out.writeInt(code.size());
+        out.writeOutput(code);
+    }
+}
@@ -0,0 +1,343 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.MethodDescriptor;
+import io.runebox.kasm.ir.MethodRef;
+import io.runebox.kasm.ir.constant.BootstrapConstant;
+import io.runebox.kasm.ir.constant.PushableConstant;
+import io.runebox.kasm.ir.handle.Handle;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.TryCatchBlock;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.stack.invoke.*;
+import io.runebox.kasm.ir.type.ArrayType;
+import io.runebox.kasm.ir.type.PrimitiveType;
+import io.runebox.kasm.ir.type.RefType;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
+import io.runebox.kasm.ir.util.AbstractStackInsnWriter;
+import io.runebox.kasm.ir.util.IntrusiveInsertList;
+import io.runebox.kasm.ir.util.RWCell;
+
+import java.util.*;
+
+/**
+ * Read a {@link StackBody} written by a {@link StackBodyWriter}.
+ *
+ * The events are replayed into an {@link AbstractStackInsnWriter} that builds the instructions.
+ * References to instructions are resolved once all instructions were read.
+ */
+public class StackBodyReader {
+    private final SnapshotInput in;
+
+    private final List<StackLocal> locals = new ArrayList<>();
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final Map<RWCell<Instruction>, Integer> instructionReferences = new HashMap<>();
+
+    public StackBodyReader(SnapshotInput in) {
+        this.in = in;
+    }
+
+    public StackBody read() {
+        StackBody body = new StackBody();
+
+        int declaredLocals = in.readVarInt();
+        for (int i = 0; i < declaredLocals; i++) {
+            locals.add(new StackLocal());
+        }
+        body.setLocals(new ArrayList<>(locals));
+
+        body.setThisLocal(in.readBoolean() ? Optional.of(readLocal()) : Optional.empty());
+        int parameterCount = in.readVarInt();
+        List<StackLocal> parameterLocals = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            parameterLocals.add(readLocal());
+        }
+        body.setParameterLocals(parameterLocals);
+
+        InsnWriter writer = new InsnWriter();
+        int instructionCount = in.readVarInt();
+        for (int i = 0; i < instructionCount; i++) {
+            readInstruction(writer);
+
+            Instruction instruction = writer.getInstructions().get(i);
+            int typeAnnotationCount = in.readVarInt();
+            for (int j = 0; j < typeAnnotationCount; j++) {
+                instruction.getTypeAnnotations().add(in.readInsnTypeAnnotation());
+            }
+        }
+        instructions.addAll(writer.getInstructions());
+        instructionReferences.forEach((cell, index) -> cell.set(instructions.get(index)));
+        body.setInstructions(new IntrusiveInsertList<>(instructions));
+
+        int tryCatchBlockCount = in.readVarInt();
+        for (int i = 0; i < tryCatchBlockCount; i++) {
+            Instruction first = readInstructionReference();
+            Instruction last = readInstructionReference();
+            Instruction handler = readInstructionReference();
+            TryCatchBlock block = new TryCatchBlock(first, last, handler, in.readOptionalPath());
+
+            int typeAnnotationCount = in.readVarInt();
+            for (int j = 0; j < typeAnnotationCount; j++) {
+                block.getTypeAnnotations().add(in.readExceptionTypeAnnotation());
+            }
+            body.getTryCatchBlocks().add(block);
+        }
+
+        int localVariableCount = in.readVarInt();
+        for (int i = 0; i < localVariableCount; i++) {
+            String name = in.readString();
+            Type type = in.readType();
+            Optional<String> signature = in.readOptionalString();
+            Instruction start = readInstructionReference();
+            Instruction end = readInstructionReference();
+            body.getLocalVariables().add(new StackBody.LocalVariable(name, type, signature, start, end, readLocal()));
+        }
+
+        int localAnnotationCount = in.readVarInt();
+        for (int i = 0; i < localAnnotationCount; i++) {
+            LocalVariableTypeAnnotation annotation = in.readLocalVariableTypeAnnotation();
+
+            int locationCount = in.readVarInt();
+            List<StackBody.LocalVariableAnnotation.Location> locations = new ArrayList<>(locationCount);
+            for (int j = 0; j < locationCount; j++) {
+                Instruction start = readInstructionReference();
+                Instruction end = readInstructionReference();
+                locations.add(new StackBody.LocalVariableAnnotation.Location(start, end, readLocal()));
+            }
+            body.getLocalVariableAnnotations().add(new StackBody.LocalVariableAnnotation(annotation, locations));
+        }
+
+        int lineNumberCount = in.readVarInt();
+        for (int i = 0; i < lineNumberCount; i++) {
+            int line = in.readVarInt();
+            body.getLineNumbers().add(new StackBody.LineNumber(line, readInstructionReference()));
+        }
+
+        return body;
+    }
+
+    private Instruction readInstructionReference() {
+        return instructions.get(in.readVarInt());
+    }
+
+    /**
+     * Read the index of a local.
+     * Locals that are not listed in {@link StackBody#getLocals()} are created on their first occurrence.
+     */
+    private StackLocal readLocal() {
+        int index = in.readVarInt();
+        while (index >= locals.size()) {
+            locals.add(new StackLocal());
+        }
+        return locals.get(index);
+    }
+
+    private Invoke readInvoke() {
+        int kind = in.readByte();
+        switch (kind) {
+            case SnapshotFormat.INVOKE_STATIC: {
+                MethodRef method = in.readMethodRef();
+                return new StaticInvoke(method, in.readBoolean());
+            }
+            case SnapshotFormat.INVOKE_VIRTUAL:
+                return new VirtualInvoke(in.readMethodRef());
+            case SnapshotFormat.INVOKE_INTERFACE:
+                return new InterfaceInvoke(in.readMethodRef());
+            case SnapshotFormat.INVOKE_SPECIAL: {
+                MethodRef method = in.readMethodRef();
+                return new SpecialInvoke(method, in.readBoolean());
+            }
+            case SnapshotFormat.INVOKE_DYNAMIC: {
+                String name = in.readString();
+                MethodDescriptor descriptor = in.readMethodDescriptor();
+                Handle bootstrapMethod = in.readHandle();
+                return new DynamicInvoke(name, descriptor, bootstrapMethod, in.readConstants(BootstrapConstant.class));
+            }
+            default:
+                throw new IllegalStateException("Unknown invoke kind " + kind);
+        }
+    }
+
+    private void readInstruction(InsnWriter iv) {
+        int opcode = in.readByte();
+        switch (opcode) {
+            case SnapshotFormat.INSN_PUSH:
+                iv.visitPush((PushableConstant) in.readConstant());
+                break;
+            case SnapshotFormat.INSN_NEG:
+                iv.visitNeg(in.readType());
+                break;
+            case SnapshotFormat.INSN_ADD:
+                iv.visitAdd(in.readType());
+                break;
+            case SnapshotFormat.INSN_SUB:
+                iv.visitSub(in.readType());
+                break;
+            case SnapshotFormat.INSN_MUL:
+                iv.visitMul(in.readType());
+                break;
+            case SnapshotFormat.INSN_DIV:
+                iv.visitDiv(in.readType());
+                break;
+            case SnapshotFormat.INSN_MOD:
+                iv.visitMod(in.readType());
+                break;
+            case SnapshotFormat.INSN_AND:
+                iv.visitAnd(in.readType());
+                break;
+            case SnapshotFormat.INSN_OR:
+                iv.visitOr(in.readType());
+                break;
+            case SnapshotFormat.INSN_XOR:
+                iv.visitXor(in.readType());
+                break;
+            case SnapshotFormat.INSN_SHL:
+                iv.visitShl(in.readType());
+                break;
+            case SnapshotFormat.INSN_SHR:
+                iv.visitShr(in.readType());
+                break;
+            case SnapshotFormat.INSN_USHR:
+                iv.visitUShr(in.readType());
+                break;
+            case SnapshotFormat.INSN_CMP:
+                iv.visitCmp();
+                break;
+            case SnapshotFormat.INSN_CMPL:
+                iv.visitCmpl(in.readType());
+                break;
+            case SnapshotFormat.INSN_CMPG:
+                iv.visitCmpg(in.readType());
+                break;
+            case SnapshotFormat.INSN_NEW_ARRAY: {
+                ArrayType type = (ArrayType) in.readType();
+                iv.visitNewArray(type, in.readVarInt());
+                break;
+            }
+            case SnapshotFormat.INSN_ARRAY_LENGTH:
+                iv.visitArrayLength();
+                break;
+            case SnapshotFormat.INSN_ARRAY_LOAD:
+                iv.visitArrayLoad(in.readType());
+                break;
+            case SnapshotFormat.INSN_ARRAY_STORE:
+                iv.visitArrayStore(in.readType());
+                break;
+            case SnapshotFormat.INSN_SWAP:
+                iv.visitSwap();
+                break;
+            case SnapshotFormat.INSN_POP:
+                iv.visitPop();
+                break;
+            case SnapshotFormat.INSN_DUP:
+                iv.visitDup();
+                break;
+            case SnapshotFormat.INSN_DUP_X1:
+                iv.visitDupX1();
+                break;
+            case SnapshotFormat.INSN_DUP_X2:
+                iv.visitDupX2();
+                break;
+            case SnapshotFormat.INSN_DUP2:
+                iv.visitDup2();
+                break;
+            case SnapshotFormat.INSN_DUP2_X1:
+                iv.visitDup2X1();
+                break;
+            case SnapshotFormat.INSN_DUP2_X2:
+                iv.visitDup2X2();
+                break;
+            case SnapshotFormat.INSN_LOAD: {
+                Type type = in.readType();
+                iv.visitLoad(type, readLocal());
+                break;
+            }
+            case SnapshotFormat.INSN_STORE: {
+                Type type = in.readType();
+                iv.visitStore(type, readLocal());
+                break;
+            }
+            case SnapshotFormat.INSN_INCREMENT: {
+                StackLocal local = readLocal();
+                iv.visitIncrement(local, in.readSignedVarInt());
+                break;
+            }
+            case SnapshotFormat.INSN_NEW:
+                iv.visitNew(in.readPath());
+                break;
+            case SnapshotFormat.INSN_INSTANCE_OF:
+                iv.visitInstanceOf((RefType) in.readType());
+                break;
+            case SnapshotFormat.INSN_PRIMITIVE_CAST: {
+                PrimitiveType from = (PrimitiveType) in.readType();
+                iv.visitPrimitiveCast(from, (PrimitiveType) in.readType());
+                break;
+            }
+            case SnapshotFormat.INSN_REFERENCE_CAST:
+                iv.visitReferenceCast((RefType) in.readType());
+                break;
+            case SnapshotFormat.INSN_RETURN:
+                iv.visitReturn(in.readOptionalType());
+                break;
+            case SnapshotFormat.INSN_THROW:
+                iv.visitThrow();
+                break;
+            case SnapshotFormat.INSN_MONITOR_ENTER:
+                iv.visitMonitorEnter();
+                break;
+            case SnapshotFormat.INSN_MONITOR_EXIT:
+                iv.visitMonitorExit();
+                break;
+            case SnapshotFormat.INSN_FIELD_GET: {
+                FieldRef field = in.readFieldRef();
+                iv.visitFieldGet(field, in.readBoolean());
+                break;
+            }
+            case SnapshotFormat.INSN_FIELD_SET: {
+                FieldRef field = in.readFieldRef();
+                iv.visitFieldSet(field, in.readBoolean());
+                break;
+            }
+            case SnapshotFormat.INSN_INVOKE:
+                iv.visitInvokeInsn(readInvoke());
+                break;
+            case SnapshotFormat.INSN_GOTO:
+                iv.visitGoto(in.readVarInt());
+                break;
+            case SnapshotFormat.INSN_IF: {
+                int condition = in.readByte();
+                iv.visitIf(SnapshotFormat.IF_CONDITIONS.get(condition), in.readVarInt());
+                break;
+            }
+            case SnapshotFormat.INSN_SWITCH: {
+                int count = in.readVarInt();
+                Map<Integer, Integer> targetTable = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    int key = in.readSignedVarInt();
+                    targetTable.put(key, in.readVarInt());
+                }
+                iv.visitSwitch(targetTable, in.readVarInt());
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown instruction opcode " + opcode);
+        }
+    }
+
+    /**
+     * Builds the instructions. Branch targets are instruction indices, locals are already resolved.
+     */
+    private class InsnWriter extends AbstractStackInsnWriter<Integer, StackLocal> {
+        @Override
+        public void registerTargetCell(Integer target, RWCell<Instruction> cell) {
+            instructionReferences.put(cell, target);
+        }
+
+        @Override
+        public StackLocal convertLocal(StackLocal local) {
+            return local;
+        }
+    }
+}
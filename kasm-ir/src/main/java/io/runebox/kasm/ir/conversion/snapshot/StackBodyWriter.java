@@ -0,0 +1,421 @@
+package io.runebox.kasm.ir.conversion.snapshot;
+
+import io.runebox.kasm.ir.FieldRef;
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.constant.PushableConstant;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.TryCatchBlock;
+import io.runebox.kasm.ir.stack.insn.IfInsn;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.stack.invoke.*;
+import io.runebox.kasm.ir.type.ArrayType;
+import io.runebox.kasm.ir.type.PrimitiveType;
+import io.runebox.kasm.ir.type.RefType;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.InsnTypeAnnotation;
+import io.runebox.kasm.ir.util.StackInsnReader;
+import io.runebox.kasm.ir.util.StackInsnVisitor;
+
+import java.util.*;
+
+/**
+ * Write a {@link StackBody} into a snapshot.
+ *
+ * The instructions are encoded as the events of a {@link StackInsnVisitor}.
+ * Instructions and locals are referenced by their index.
+ */
+public class StackBodyWriter extends StackInsnVisitor<Instruction, StackLocal> {
+    private final SnapshotOutput out;
+
+    private final Map<Instruction, Integer> instructionIndices = new HashMap<>();
+    private final Map<StackLocal, Integer> localIndices = new HashMap<>();
+
+    public StackBodyWriter(SnapshotOutput out) {
+        super(null);
+        this.out = out;
+    }
+
+    public void write(StackBody body) {
+        int index = 0;
+        for (Instruction instruction : body.getInstructions()) {
+            instructionIndices.put(instruction, index++);
+        }
+
+        out.writeVarInt(body.getLocals().size());
+        for (StackLocal local : body.getLocals()) {
+            localIndices.put(local, localIndices.size());
+        }
+
+        writeOptionalLocal(body.getThisLocal());
+        out.writeVarInt(body.getParameterLocals().size());
+        body.getParameterLocals().forEach(this::writeLocal);
+
+        out.writeVarInt(body.getInstructions().size());
+        StackInsnReader reader = new StackInsnReader(this);
+        for (Instruction instruction : body.getInstructions()) {
+            reader.accept(instruction);
+
+            List<InsnTypeAnnotation> typeAnnotations = instruction.getTypeAnnotations();
+            out.writeVarInt(typeAnnotations.size());
+            for (InsnTypeAnnotation typeAnnotation : typeAnnotations) {
+                out.writeTypeAnnotation(typeAnnotation);
+                out.writeTargetType(typeAnnotation.getTargetType());
+            }
+        }
+
+        out.writeVarInt(body.getTryCatchBlocks().size());
+        for (TryCatchBlock block : body.getTryCatchBlocks()) {
+            writeInstruction(block.getFirst());
+            writeInstruction(block.getLast());
+            writeInstruction(block.getHandler());
+            out.writeOptionalPath(block.getExceptionType());
+
+            out.writeVarInt(block.getTypeAnnotations().size());
+            for (ExceptionTypeAnnotation typeAnnotation : block.getTypeAnnotations()) {
+                out.writeTypeAnnotation(typeAnnotation);
+            }
+        }
+
+        out.writeVarInt(body.getLocalVariables().size());
+        for (StackBody.LocalVariable localVariable : body.getLocalVariables()) {
+            out.writeString(localVariable.getName());
+            out.writeType(localVariable.getType());
+            out.writeOptionalString(localVariable.getSignature());
+            writeInstruction(localVariable.getStart());
+            writeInstruction(localVariable.getEnd());
+            writeLocal(localVariable.getLocal());
+        }
+
+        out.writeVarInt(body.getLocalVariableAnnotations().size());
+        for (StackBody.LocalVariableAnnotation localAnnotation : body.getLocalVariableAnnotations()) {
+            out.writeTypeAnnotation(localAnnotation.getAnnotation());
+            out.writeTargetType(localAnnotation.getAnnotation().getTargetType());
+
+            out.writeVarInt(localAnnotation.getLocations().size());
+            for (StackBody.LocalVariableAnnotation.Location location : localAnnotation.getLocations()) {
+                writeInstruction(location.getStart());
+                writeInstruction(location.getEnd());
+                writeLocal(location.getLocal());
+            }
+        }
+
+        out.writeVarInt(body.getLineNumbers().size());
+        for (StackBody.LineNumber lineNumber : body.getLineNumbers()) {
+            out.writeVarInt(lineNumber.getLine());
+            writeInstruction(lineNumber.getInstruction());
+        }
+    }
+
+    private void writeInstruction(Instruction instruction) {
+        Integer index = instructionIndices.get(instruction);
+        if (index == null) {
+            throw new IllegalStateException("Instruction is not part of the body: " + instruction);
+        }
+        out.writeVarInt(index);
+    }
+
+    /**
+     * Write the index of a local.
+     *
+     * Locals that are not listed in {@link StackBody#getLocals()} get the next free index on their first occurrence.
+     */
+    private void writeLocal(StackLocal local) {
+        Integer index = localIndices.get(local);
+        if (index == null) {
+            localIndices.put(local, index = localIndices.size());
+        }
+        out.writeVarInt(index);
+    }
+
+    private void writeOptionalLocal(Optional<StackLocal> local) {
+        out.writeBoolean(local.isPresent());
+        local.ifPresent(this::writeLocal);
+    }
+
+    private void writeInvoke(Invoke invoke) {
+        if (invoke instanceof StaticInvoke) {
+            out.writeByte(SnapshotFormat.INVOKE_STATIC);
+            out.writeMethodRef(((StaticInvoke) invoke).getMethod());
+            out.writeBoolean(((StaticInvoke) invoke).isInterface());
+        } else if (invoke instanceof VirtualInvoke) {
+            out.writeByte(SnapshotFormat.INVOKE_VIRTUAL);
+            out.writeMethodRef(((VirtualInvoke) invoke).getMethod());
+        } else if (invoke instanceof InterfaceInvoke) {
+            out.writeByte(SnapshotFormat.INVOKE_INTERFACE);
+            out.writeMethodRef(((InterfaceInvoke) invoke).getMethod());
+        } else if (invoke instanceof SpecialInvoke) {
+            out.writeByte(SnapshotFormat.INVOKE_SPECIAL);
+            out.writeMethodRef(((SpecialInvoke) invoke).getMethod());
+            out.writeBoolean(((SpecialInvoke) invoke).isInterface());
+        } else if (invoke instanceof DynamicInvoke) {
+            DynamicInvoke dynamicInvoke = (DynamicInvoke) invoke;
+            out.writeByte(SnapshotFormat.INVOKE_DYNAMIC);
+            out.writeString(dynamicInvoke.getName());
+            out.writeMethodDescriptor(dynamicInvoke.getDescriptor());
+            out.writeHandle(dynamicInvoke.getBootstrapMethod());
+            out.writeConstants(dynamicInvoke.getBootstrapArguments());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    private void writeTypedInsn(int opcode, Type type) {
+        out.writeByte(opcode);
+        out.writeType(type);
+    }
+
+    @Override
+    public void visitPush(PushableConstant constant) {
+        out.writeByte(SnapshotFormat.INSN_PUSH);
+        out.writeConstant(constant);
+    }
+
+    @Override
+    public void visitNeg(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_NEG, type);
+    }
+
+    @Override
+    public void visitAdd(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_ADD, type);
+    }
+
+    @Override
+    public void visitSub(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_SUB, type);
+    }
+
+    @Override
+    public void visitMul(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_MUL, type);
+    }
+
+    @Override
+    public void visitDiv(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_DIV, type);
+    }
+
+    @Override
+    public void visitMod(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_MOD, type);
+    }
+
+    @Override
+    public void visitAnd(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_AND, type);
+    }
+
+    @Override
+    public void visitOr(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_OR, type);
+    }
+
+    @Override
+    public void visitXor(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_XOR, type);
+    }
+
+    @Override
+    public void visitShl(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_SHL, type);
+    }
+
+    @Override
+    public void visitShr(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_SHR, type);
+    }
+
+    @Override
+    public void visitUShr(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_USHR, type);
+    }
+
+    @Override
+    public void visitCmp() {
+        out.writeByte(SnapshotFormat.INSN_CMP);
+    }
+
+    @Override
+    public void visitCmpl(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_CMPL, type);
+    }
+
+    @Override
+    public void visitCmpg(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_CMPG, type);
+    }
+
+    @Override
+    public void visitNewArray(ArrayType type, int initializedDimensions) {
+        writeTypedInsn(SnapshotFormat.INSN_NEW_ARRAY, type);
+        out.writeVarInt(initializedDimensions);
+    }
+
+    @Override
+    public void visitArrayLength() {
+        out.writeByte(SnapshotFormat.INSN_ARRAY_LENGTH);
+    }
+
+    @Override
+    public void visitArrayLoad(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_ARRAY_LOAD, type);
+    }
+
+    @Override
+    public void visitArrayStore(Type type) {
+        writeTypedInsn(SnapshotFormat.INSN_ARRAY_STORE, type);
+    }
+
+    @Override
+    public void visitSwap() {
+        out.writeByte(SnapshotFormat.INSN_SWAP);
+    }
+
+    @Override
+    public void visitPop() {
+        out.writeByte(SnapshotFormat.INSN_POP);
+    }
+
+    @Override
+    public void visitDup() {
+        out.writeByte(SnapshotFormat.INSN_DUP);
+    }
+
+    @Override
+    public void visitDupX1() {
+        out.writeByte(SnapshotFormat.INSN_DUP_X1);
+    }
+
+    @Override
+    public void visitDupX2() {
+        out.writeByte(SnapshotFormat.INSN_DUP_X2);
+    }
+
+    @Override
+    public void visitDup2() {
+        out.writeByte(SnapshotFormat.INSN_DUP2);
+    }
+
+    @Override
+    public void visitDup2X1() {
+        out.writeByte(SnapshotFormat.INSN_DUP2_X1);
+    }
+
+    @Override
+    public void visitDup2X2() {
+        out.writeByte(SnapshotFormat.INSN_DUP2_X2);
+    }
+
+    @Override
+    public void visitLoad(Type type, StackLocal local) {
+        writeTypedInsn(SnapshotFormat.INSN_LOAD, type);
+        writeLocal(local);
+    }
+
+    @Override
+    public void visitStore(Type type, StackLocal local) {
+        writeTypedInsn(SnapshotFormat.INSN_STORE, type);
+        writeLocal(local);
+    }
+
+    @Override
+    public void visitIncrement(StackLocal local, int value) {
+        out.writeByte(SnapshotFormat.INSN_INCREMENT);
+        writeLocal(local);
+        out.writeSignedVarInt(value);
+    }
+
+    @Override
+    public void visitNew(Path type) {
+        out.writeByte(SnapshotFormat.INSN_NEW);
+        out.writePath(type);
+    }
+
+    @Override
+    public void visitInstanceOf(RefType type) {
+        writeTypedInsn(SnapshotFormat.INSN_INSTANCE_OF, type);
+    }
+
+    @Override
+    public void visitPrimitiveCast(PrimitiveType from, PrimitiveType to) {
+        writeTypedInsn(SnapshotFormat.INSN_PRIMITIVE_CAST, from);
+        out.writeType(to);
+    }
+
+    @Override
+    public void visitReferenceCast(RefType type) {
+        writeTypedInsn(SnapshotFormat.INSN_REFERENCE_CAST, type);
+    }
+
+    @Override
+    public void visitReturn(Optional<Type> type) {
+        out.writeByte(SnapshotFormat.INSN_RETURN);
+        out.writeOptionalType(type);
+    }
+
+    @Override
+    public void visitThrow() {
+        out.writeByte(SnapshotFormat.INSN_THROW);
+    }
+
+    @Override
+    public void visitMonitorEnter() {
+        out.writeByte(SnapshotFormat.INSN_MONITOR_ENTER);
+    }
+
+    @Override
+    public void visitMonitorExit() {
+        out.writeByte(SnapshotFormat.INSN_MONITOR_EXIT);
+    }
+
+    @Override
+    public void visitFieldGet(FieldRef fieldRef, boolean isStatic) {
+        out.writeByte(SnapshotFormat.INSN_FIELD_GET);
+        out.writeFieldRef(fieldRef);
+        out.writeBoolean(isStatic);
+    }
+
+    @Override
+    public void visitFieldSet(FieldRef fieldRef, boolean isStatic) {
+        out.writeByte(SnapshotFormat.INSN_FIELD_SET);
+        out.writeFieldRef(fieldRef);
+        out.writeBoolean(isStatic);
+    }
+
+    @Override
+    public void visitInvokeInsn(Invoke invoke) {
+        out.writeByte(SnapshotFormat.INSN_INVOKE);
+        writeInvoke(invoke);
+    }
+
+    @Override
+    public void visitGoto(Instruction target) {
+        out.writeByte(SnapshotFormat.INSN_GOTO);
+        writeInstruction(target);
+    }
+
+    @Override
+    public void visitIf(IfInsn.Condition condition, Instruction target) {
+        int conditionIndex = SnapshotFormat.IF_CONDITIONS.indexOf(condition);
+        if (conditionIndex < 0) {
+            throw new IllegalStateException("Unknown condition: " + condition);
+        }
+
+        out.writeByte(SnapshotFormat.INSN_IF);
+        out.writeByte(conditionIndex);
+        writeInstruction(target);
+    }
+
+    @Override
+    public void visitSwitch(Map<Integer, Instruction> targetTable, Instruction defaultTarget) {
+        out.writeByte(SnapshotFormat.INSN_SWITCH);
+        out.writeVarInt(targetTable.size());
+        targetTable.forEach((key, target) -> {
+            out.writeSignedVarInt(key);
+            writeInstruction(target);
+        });
+        writeInstruction(defaultTarget);
+    }
+}
@@ -0,0 +1,150 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.conversion.AbstractAsmInsnWriter;
+import io.runebox.kasm.ir.analysis.Stack;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link AbstractAsmInsnWriter} that writes the visited events directly into a {@link MethodVisitor}.
+ *
+ * The {@link #setStackFrame(Stack) state of the stack} must be set before each instruction is visited.
+ * Branch targets are referenced by the {@link ConversionContext#getLabel(Instruction) labels} of their instructions.
+ */
+public class AsmInsnWriter extends AbstractAsmInsnWriter<Instruction, StackLocal> {
+    private final MethodVisitor mv;
+    private final ConversionContext ctx;
+
+    /**
+     * Locals used to convert dup instructions that cannot be represented as one opcode.
+     */
+    private final List<StackLocal> tempLocals = new ArrayList<>();
+
+    /**
+     * Called once after the next opcode was written or <tt>null</tt>.
+     */
+    private Runnable afterNextInsn;
+
+    public AsmInsnWriter(MethodVisitor mv, ConversionContext ctx) {
+        super(null);
+        this.mv = mv;
+        this.ctx = ctx;
+    }
+
+    /**
+     * Run an action right after the next opcode was written, e.g. to visit the type annotations of that opcode.
+     *
+     * @param action the action to run
+     */
+    public void visitAfterNextInsn(Runnable action) {
+        this.afterNextInsn = action;
+    }
+
+    private void afterInsn() {
+        if (afterNextInsn != null) {
+            Runnable action = afterNextInsn;
+            afterNextInsn = null;
+            action.run();
+        }
+    }
+
+    @Override
+    protected StackLocal getTempLocal(int index) {
+        while (index >= tempLocals.size()) {
+            tempLocals.add(new StackLocal());
+        }
+        return tempLocals.get(index);
+    }
+
+    @Override
+    protected void writeInsn(int opcode) {
+        mv.visitInsn(opcode);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeIntInsn(int opcode, int operand) {
+        mv.visitIntInsn(opcode, operand);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeVarInsn(int opcode, StackLocal local) {
+        mv.visitVarInsn(opcode, ctx.getLocalIndex(local));
+        afterInsn();
+    }
+
+    @Override
+    protected void writeTypeInsn(int opcode, String type) {
+        mv.visitTypeInsn(opcode, type);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeFieldInsn(int opcode, String owner, String name, String descriptor) {
+        mv.visitFieldInsn(opcode, owner, name, descriptor);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod, Object[] bootstrapMethodArguments) {
+        mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethod, bootstrapMethodArguments);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeJumpInsn(int opcode, Instruction target) {
+        mv.visitJumpInsn(opcode, ctx.getLabel(target));
+        afterInsn();
+    }
+
+    @Override
+    protected void writeLdcInsn(Object value) {
+        mv.visitLdcInsn(value);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeIincInsn(StackLocal local, int increment) {
+        mv.visitIincInsn(ctx.getLocalIndex(local), increment);
+        afterInsn();
+    }
+
+    @Override
+    protected void writeTableSwitchInsn(int min, int max, Instruction defaultTarget, List<Instruction> targets) {
+        mv.visitTableSwitchInsn(min, max, ctx.getLabel(defaultTarget), getLabels(targets));
+        afterInsn();
+    }
+
+    @Override
+    protected void writeLookupSwitchInsn(Instruction defaultTarget, int[] keys, List<Instruction> targets) {
+        mv.visitLookupSwitchInsn(ctx.getLabel(defaultTarget), keys, getLabels(targets));
+        afterInsn();
+    }
+
+    private Label[] getLabels(List<Instruction> targets) {
+        Label[] labels = new Label[targets.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = ctx.getLabel(targets.get(i));
+        }
+        return labels;
+    }
+
+    @Override
+    protected void writeMultiANewArrayInsn(String descriptor, int dimensions) {
+        mv.visitMultiANewArrayInsn(descriptor, dimensions);
+        afterInsn();
+    }
+}
@@ -3,7 +3,9 @@ package io.runebox.kasm.ir.conversion.stack2asm;
 import io.runebox.kasm.ir.MethodDescriptor;
 import io.runebox.kasm.ir.Path;
 import io.runebox.kasm.ir.type.*;
+import io.runebox.kasm.ir.typeannotation.TargetType;
 import io.runebox.kasm.ir.typeannotation.TypePath;
+import org.objectweb.asm.TypeReference;
 
 import java.util.List;
 import java.util.Optional;
@@ -124,4 +126,47 @@ public class AsmUtil {
         }
         return org.objectweb.asm.TypePath.fromString(builder.toString());
     }
+
+    public static TypeReference toAsmTypeReference(TargetType.LocalTargetType targetType) {
+        if (targetType instanceof TargetType.LocalVariable) {
+            return TypeReference.newTypeReference(TypeReference.LOCAL_VARIABLE);
+        } else if (targetType instanceof TargetType.ResourceVariable) {
+            return TypeReference.newTypeReference(TypeReference.RESOURCE_VARIABLE);
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    public static TypeReference toAsmTypeReference(TargetType.InsnTargetType targetType) {
+        if (targetType instanceof TargetType.InstanceOf) {
+            return TypeReference.newTypeReference(TypeReference.INSTANCEOF);
+        } else if (targetType instanceof TargetType.New) {
+            return TypeReference.newTypeReference(TypeReference.NEW);
+        } else if (targetType instanceof TargetType.ConstructorReference) {
+            return TypeReference.newTypeReference(TypeReference.CONSTRUCTOR_REFERENCE);
+        } else if (targetType instanceof TargetType.MethodReference) {
+            return TypeReference.newTypeReference(TypeReference.METHOD_REFERENCE);
+        } else if (targetType instanceof TargetType.Cast) {
+            int intersection = ((TargetType.Cast) targetType).getIntersection();
+            return TypeReference.newTypeArgumentReference(TypeReference.CAST, intersection);
+        } else if (targetType instanceof TargetType.AbstractTypeParameterInsnTargetType) {
+            int sort;
+            if (targetType instanceof TargetType.ConstructorInvokeTypeParameter) {
+                sort = TypeReference.CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT;
+            } else if (targetType instanceof TargetType.MethodInvokeTypeParameter) {
+                sort = TypeReference.METHOD_INVOCATION_TYPE_ARGUMENT;
+            } else if (targetType instanceof TargetType.ConstructorReferenceTypeParameter) {
+                sort = TypeReference.CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT;
+            } else if (targetType instanceof TargetType.MethodReferenceTypeParameter) {
+                sort = TypeReference.METHOD_REFERENCE_TYPE_ARGUMENT;
+            } else {
+                throw new AssertionError();
+            }
+
+            int typeParameterIndex = ((TargetType.AbstractTypeParameterInsnTargetType) targetType).getTypeParameter();
+            return TypeReference.newTypeArgumentReference(sort, typeParameterIndex);
+        } else {
+            throw new AssertionError();
+        }
+    }
 }
@@ -0,0 +1,342 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.annotation.Annotation;
+import io.runebox.kasm.ir.analysis.Analysis;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.analysis.Stack;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.FrameComputationEvent;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.TryCatchBlock;
+import io.runebox.kasm.ir.stack.insn.BranchInsn;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.InsnTypeAnnotation;
+import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
+import io.runebox.kasm.ir.util.StackInsnReader;
+import org.objectweb.asm.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Utility that writes a {@link StackBody} directly into a {@link MethodVisitor}.
+ *
+ * The instructions are walked once and their opcodes are visited right away.
+ * Labels are only created for instructions that are referenced by branches, try/catch blocks,
+ * line numbers or local variables, so no asm tree nodes are allocated.
+ *
+ * If a {@link ClassHierarchy} is supplied, the frames and maxs are computed by a {@link FrameComputer}
+ * on the control flow graph of the {@link Analysis} before the instructions are written,
+ * and each frame is visited together with the label of its block.
+ * Otherwise neither the frames nor the maxs of the method are visited.
+ */
+public class BodyConverter {
+    private final Method method;
+    private final StackBody body;
+    private final MethodVisitor mv;
+
+    /**
+     * The class containing the method, it is only required to compute frames.
+     */
+    private final Optional<Classfile> owner;
+
+    /**
+     * Hierarchy used to compute the frames and maxs of the body, or empty if the visitor computes them.
+     */
+    private final Optional<ClassHierarchy> frameHierarchy;
+
+    private Analysis analysis;
+    private ConversionContext ctx;
+
+    /**
+     * Labels that mark the end of the code of an instruction.
+     */
+    private Map<Instruction, Label> endLabels;
+
+    /**
+     * Computed frames or empty if the visitor computes them.
+     */
+    private Optional<FrameComputer> frameComputer;
+
+    /**
+     * Whether the computed frames are visited.
+     * Class files before version 50 must not contain StackMapTable frames, so only their maxs are visited.
+     */
+    private boolean visitFrames;
+
+    public BodyConverter(Method method, StackBody body, MethodVisitor mv) {
+        this.method = method;
+        this.body = body;
+        this.mv = mv;
+        this.owner = Optional.empty();
+        this.frameHierarchy = Optional.empty();
+    }
+
+    /**
+     * Create a converter that also visits the frames and maxs of the body.
+     *
+     * @param owner the class containing the method
+     * @param method the method of the body
+     * @param body the body to write
+     * @param mv visitor that receives the code
+     * @param frameHierarchy supertypes of all classes that occur within the body
+     */
+    public BodyConverter(Classfile owner, Method method, StackBody body, MethodVisitor mv, ClassHierarchy frameHierarchy) {
+        this.method = method;
+        this.body = body;
+        this.mv = mv;
+        this.owner = Optional.of(owner);
+        this.frameHierarchy = Optional.of(frameHierarchy);
+    }
+
+    public void convert() {
+        this.analysis = new Analysis(body);
+        this.analysis.analyze();
+        this.ctx = new ConversionContext(method, body);
+        this.endLabels = new HashMap<>();
+        this.frameComputer = frameHierarchy.map(hierarchy -> computeFrames(owner.get(), hierarchy));
+
+        mv.visitCode();
+
+        convertTryCatchBlocks();
+        requireLabels();
+        convertInstructions();
+
+        convertLocalVariables();
+        convertLocalVariableAnnotations();
+
+        if (frameComputer.isPresent()) {
+            mv.visitMaxs(frameComputer.get().getMaxStack(), ctx.getMaxLocals());
+        } else {
+            mv.visitMaxs(0, 0);
+        }
+    }
+
+    private FrameComputer computeFrames(Classfile classfile, ClassHierarchy hierarchy) {
+        String ownerName = AsmUtil.toInternalName(classfile.getName());
+        this.visitFrames = classfile.getVersion().getMajor() >= Opcodes.V1_6;
+
+        Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+        FrameComputationEvent event = new FrameComputationEvent();
+        event.begin();
+        FrameComputer computer = new FrameComputer(ownerName, method, body, analysis.getGraph(), ctx, hierarchy);
+        computer.compute();
+        int size = body.getInstructions().size();
+        event.commit(classfile, method, size);
+        if (probe.isPresent()) {
+            probe.get().finish(Stage.FRAMES, Optional.empty(), size, size, 0, 0);
+        }
+        return computer;
+    }
+
+    private Label getEndLabel(Instruction instruction) {
+        return this.endLabels.computeIfAbsent(instruction, x -> new Label());
+    }
+
+    private boolean isReachable(Instruction instruction) {
+        return analysis.getStackState(instruction).isPresent();
+    }
+
+    /**
+     * Check whether a range of instructions is only dead code.
+     *
+     * @param start first instruction of the instruction range
+     * @param end last instruction of the instruction range
+     * @return contains the instruction range only dead code
+     */
+    private boolean isRangeEmpty(Instruction start, Instruction end) {
+        return !analysis.isRangeReachable(start, end);
+    }
+
+    private void convertTryCatchBlocks() {
+        int index = 0;
+        for (TryCatchBlock block : body.getTryCatchBlocks()) {
+            if (isRangeEmpty(block.getFirst(), block.getLast())) {
+                continue;
+            }
+
+            Label start = ctx.getLabel(block.getFirst());
+            Label end = getEndLabel(block.getLast());
+            Label handler = ctx.getLabel(block.getHandler());
+            String type = block.getExceptionType().map(AsmUtil::toInternalName).orElse(null);
+
+            mv.visitTryCatchBlock(start, end, handler, type);
+            convertTryCatchBlockAnnotations(block.getTypeAnnotations(), index++);
+        }
+    }
+
+    private void convertTryCatchBlockAnnotations(List<ExceptionTypeAnnotation> typeAnnotations, int blockIndex) {
+        for (ExceptionTypeAnnotation typeAnnotation : typeAnnotations) {
+            Annotation annotation = typeAnnotation.getAnnotation();
+            int typeRef = TypeReference.newTryCatchReference(blockIndex).getValue();
+            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
+            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
+
+            AnnotationVisitor av = mv.visitTryCatchAnnotation(typeRef, typePath, descriptor, annotation.isRuntimeVisible());
+            if (av != null) {
+                new KasmAnnotationReader(annotation).accept(av);
+            }
+        }
+    }
+
+    /**
+     * Create the labels of all referenced instructions before any instruction is visited,
+     * since a label must be visited at the position of its instruction.
+     */
+    private void requireLabels() {
+        for (Instruction instruction : body.getInstructions()) {
+            if (instruction instanceof BranchInsn && isReachable(instruction)) {
+                ((BranchInsn) instruction).getBranchTargets().forEach(ctx::getLabel);
+            }
+        }
+
+        for (StackBody.LineNumber lineNumber : body.getLineNumbers()) {
+            ctx.getLabel(lineNumber.getInstruction());
+        }
+
+        for (StackBody.LocalVariable local : body.getLocalVariables()) {
+            if (!isRangeEmpty(local.getStart(), local.getEnd())) {
+                ctx.getLabel(local.getStart());
+                getEndLabel(local.getEnd());
+            }
+        }
+
+        for (StackBody.LocalVariableAnnotation annotation : body.getLocalVariableAnnotations()) {
+            for (StackBody.LocalVariableAnnotation.Location location : annotation.getLocations()) {
+                if (!isRangeEmpty(location.getStart(), location.getEnd())) {
+                    ctx.getLabel(location.getStart());
+                    getEndLabel(location.getEnd());
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the labels, line numbers and opcodes of all instructions in one pass.
+     */
+    private void convertInstructions() {
+        Map<Instruction, List<Integer>> lineNumbers = new HashMap<>();
+        for (StackBody.LineNumber lineNumber : body.getLineNumbers()) {
+            lineNumbers.computeIfAbsent(lineNumber.getInstruction(), x -> new ArrayList<>()).add(lineNumber.getLine());
+        }
+
+        AsmInsnWriter writer = new AsmInsnWriter(mv, ctx);
+        StackInsnReader reader = new StackInsnReader(writer);
+
+        int index = 0;
+        for (Instruction instruction : body.getInstructions()) {
+            Optional<Label> label = ctx.findLabel(instruction);
+            label.ifPresent(mv::visitLabel);
+
+            Optional<Stack.Immutable<JvmType>> stackState = analysis.getStackState(instruction);
+            if (stackState.isPresent()) {
+                if (visitFrames) {
+                    frameComputer.get().visitFrame(index, mv);
+                }
+
+                label.ifPresent(start -> lineNumbers.getOrDefault(instruction, List.of())
+                        .forEach(line -> mv.visitLineNumber(line, start)));
+
+                List<InsnTypeAnnotation> typeAnnotations = instruction.getTypeAnnotations();
+                if (!typeAnnotations.isEmpty()) {
+                    writer.visitAfterNextInsn(() -> convertInsnAnnotations(typeAnnotations));
+                }
+
+                writer.setStackFrame(stackState.get());
+                reader.accept(instruction);
+            }
+
+            Label endLabel = endLabels.get(instruction);
+            if (endLabel != null) {
+                mv.visitLabel(endLabel);
+            }
+            index++;
+        }
+    }
+
+    private void convertInsnAnnotations(List<InsnTypeAnnotation> typeAnnotations) {
+        for (InsnTypeAnnotation typeAnnotation : typeAnnotations) {
+            Annotation annotation = typeAnnotation.getAnnotation();
+            int typeRef = AsmUtil.toAsmTypeReference(typeAnnotation.getTargetType()).getValue();
+            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
+            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
+
+            AnnotationVisitor av = mv.visitInsnAnnotation(typeRef, typePath, descriptor, annotation.isRuntimeVisible());
+            if (av != null) {
+                new KasmAnnotationReader(annotation).accept(av);
+            }
+        }
+    }
+
+    private void convertLocalVariables() {
+        for (StackBody.LocalVariable local : body.getLocalVariables()) {
+            if (isRangeEmpty(local.getStart(), local.getEnd())) {
+                continue;
+            }
+
+            String name = local.getName();
+            String descriptor = AsmUtil.toDescriptor(local.getType());
+            String signature = local.getSignature().orElse(null);
+            Label start = ctx.getLabel(local.getStart());
+            Label end = getEndLabel(local.getEnd());
+            int index = getLocalIndex(local.getLocal());
+
+            mv.visitLocalVariable(name, descriptor, signature, start, end, index);
+        }
+    }
+
+    private void convertLocalVariableAnnotations() {
+        for (StackBody.LocalVariableAnnotation localAnnotation : body.getLocalVariableAnnotations()) {
+            List<StackBody.LocalVariableAnnotation.Location> locations = localAnnotation.getLocations().stream()
+                    .filter(location -> !isRangeEmpty(location.getStart(), location.getEnd()))
+                    .collect(Collectors.toList());
+
+            if (locations.isEmpty()) {
+                continue;
+            }
+
+            LocalVariableTypeAnnotation typeAnnotation = localAnnotation.getAnnotation();
+            Annotation annotation = typeAnnotation.getAnnotation();
+            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
+
+            int typeRef = AsmUtil.toAsmTypeReference(typeAnnotation.getTargetType()).getValue();
+            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
+
+            Label[] start = locations.stream()
+                    .map(location -> ctx.getLabel(location.getStart()))
+                    .toArray(Label[]::new);
+
+            Label[] end = locations.stream()
+                    .map(location -> getEndLabel(location.getEnd()))
+                    .toArray(Label[]::new);
+
+            int[] index = locations.stream()
+                    .mapToInt(location -> getLocalIndex(location.getLocal()))
+                    .toArray();
+
+            AnnotationVisitor av = mv.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, annotation.isRuntimeVisible());
+            if (av != null) {
+                new KasmAnnotationReader(annotation).accept(av);
+            }
+        }
+    }
+
+    /**
+     * Get the index of a local.
+     *
+     * @param local local whose index we want
+     * @return index of the local
+     */
+    private int getLocalIndex(StackLocal local) {
+        if (!body.getLocals().contains(local)) {
+            throw new IllegalStateException("Local is not contained within the body");
+        }
+        return ctx.getLocalIndex(local);
+    }
+}
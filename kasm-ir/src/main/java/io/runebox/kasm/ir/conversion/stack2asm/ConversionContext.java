@@ -1,47 +1,164 @@
 package io.runebox.kasm.ir.conversion.stack2asm;
 
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.analysis.JvmType;
+import io.runebox.kasm.ir.type.Type;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.stack.StackBody;
 import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.insn.IncrementInsn;
 import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.stack.insn.LoadInsn;
+import io.runebox.kasm.ir.stack.insn.StoreInsn;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.tree.LabelNode;
 
 import java.util.*;
 
 public class ConversionContext {
-    private final List<StackLocal> locals;
+    /**
+     * Map locals to the index of their first slot in the local variable array.
+     */
+    private final Map<StackLocal, Integer> localIndices = new HashMap<>();
     private final Map<Instruction, List<RWCell<LabelNode>>> convertedLabels = new HashMap<>();
 
-    public ConversionContext(StackBody body) {
+    /**
+     * Labels that mark the beginning of the code of an instruction.
+     */
+    private final Map<Instruction, Label> labels = new HashMap<>();
+
+    /**
+     * The index of the next unused slot.
+     */
+    private int nextLocalIndex = 0;
+
+    /**
+     * Assign the slots of <tt>this</tt> and the parameters as specified by the jvm
+     * and append all other locals of the body.
+     *
+     * Locals that hold a long or double value take two slots.
+     * Bodies read from class files list one local per slot, so the local after such a local
+     * is usually the unused second slot of it. That local gets the second slot if nothing refers to it,
+     * so these bodies keep their slots. Bodies from other sources list ordinary locals there.
+     *
+     * @param method the method containing the body
+     * @param body the converted body
+     */
+    public ConversionContext(Method method, StackBody body) {
+        Set<StackLocal> usedLocals = new HashSet<>();
+        Set<StackLocal> wideLocals = new HashSet<>();
+        collectUsedLocals(body, usedLocals, wideLocals);
+
         List<StackLocal> allLocals = body.getLocals();
-        this.locals = new ArrayList<>(allLocals.size());
+        Map<StackLocal, StackLocal> nextLocals = new HashMap<>();
+        for (int i = 0; i + 1 < allLocals.size(); i++) {
+            nextLocals.put(allLocals.get(i), allLocals.get(i + 1));
+        }
+
+        body.getThisLocal().ifPresent(local -> assignLocalIndex(local, false, nextLocals, usedLocals));
 
-        body.getThisLocal().ifPresent(this.locals::add);
-        this.locals.addAll(body.getParameterLocals());
+        Iterator<Type> parameterTypeIter = method.getParameterTypes().iterator();
+        for (StackLocal local : body.getParameterLocals()) {
+            boolean isWide = parameterTypeIter.hasNext() ? JvmType.from(parameterTypeIter.next()).is64bit() : wideLocals.contains(local);
+            assignLocalIndex(local, isWide, nextLocals, usedLocals);
+        }
 
-        Set<StackLocal> refAndThisLocal = new HashSet<>(this.locals);
         for (StackLocal local : allLocals) {
-            if (!refAndThisLocal.contains(local)) {
-                this.locals.add(local);
+            if (!localIndices.containsKey(local)) {
+                assignLocalIndex(local, wideLocals.contains(local), nextLocals, usedLocals);
             }
         }
     }
 
     /**
-     * Get the unique index of a local.
+     * Collect the locals that need a slot of their own, since they are accessed by an instruction,
+     * hold <tt>this</tt> or a parameter or are referenced by debug information.
+     *
+     * @param body the converted body
+     * @param usedLocals set that receives the used locals
+     * @param wideLocals set that receives the locals that hold long or double values
+     */
+    private static void collectUsedLocals(StackBody body, Set<StackLocal> usedLocals, Set<StackLocal> wideLocals) {
+        usedLocals.addAll(body.getParameterLocals());
+        body.getThisLocal().ifPresent(usedLocals::add);
+
+        for (Instruction instruction : body.getInstructions()) {
+            if (instruction instanceof LoadInsn) {
+                LoadInsn insn = (LoadInsn) instruction;
+                addUsedLocal(insn.getLocal(), insn.getType(), usedLocals, wideLocals);
+            } else if (instruction instanceof StoreInsn) {
+                StoreInsn insn = (StoreInsn) instruction;
+                addUsedLocal(insn.getLocal(), insn.getType(), usedLocals, wideLocals);
+            } else if (instruction instanceof IncrementInsn) {
+                usedLocals.add(((IncrementInsn) instruction).getLocal());
+            }
+        }
+
+        for (StackBody.LocalVariable localVariable : body.getLocalVariables()) {
+            usedLocals.add(localVariable.getLocal());
+        }
+
+        for (StackBody.LocalVariableAnnotation annotation : body.getLocalVariableAnnotations()) {
+            for (StackBody.LocalVariableAnnotation.Location location : annotation.getLocations()) {
+                usedLocals.add(location.getLocal());
+            }
+        }
+    }
+
+    private static void addUsedLocal(StackLocal local, Type type, Set<StackLocal> usedLocals, Set<StackLocal> wideLocals) {
+        usedLocals.add(local);
+        if (JvmType.from(type).is64bit()) {
+            wideLocals.add(local);
+        }
+    }
+
+    /**
+     * Assign the next unused slots to a local.
+     *
+     * @param local the local
+     * @param isWide whether the local holds long or double values
+     * @param nextLocals maps locals to the local that is listed after them in the body
+     * @param usedLocals locals that need a slot of their own
+     */
+    private void assignLocalIndex(StackLocal local, boolean isWide, Map<StackLocal, StackLocal> nextLocals, Set<StackLocal> usedLocals) {
+        int index = assignLocalIndex(local, isWide ? 2 : 1);
+        if (isWide) {
+            StackLocal next = nextLocals.get(local);
+            if (next != null && !usedLocals.contains(next) && !localIndices.containsKey(next)) {
+                // The unused second slot of the local
+                localIndices.put(next, index + 1);
+            }
+        }
+    }
+
+    private int assignLocalIndex(StackLocal local, int size) {
+        int index = this.nextLocalIndex;
+        this.localIndices.put(local, index);
+        this.nextLocalIndex += size;
+        return index;
+    }
+
+    /**
+     * Get the index of a local.
      * If the local in not contained within {@link StackBody#getLocals()},
-     * then a new index is assigned for that local.
+     * then new slots are assigned for that local.
+     * These locals reserve two slots, so any value fits into them.
      *
      * @param local whose index we want
-     * @return local index
+     * @return index of the first slot of the local
      */
     public int getLocalIndex(StackLocal local) {
-        int index = locals.indexOf(local);
-        if (index < 0) {
-            index = locals.size();
-            locals.add(local);
-        }
-        return index;
+        Integer index = this.localIndices.get(local);
+        return index == null ? assignLocalIndex(local, 2) : index;
+    }
+
+    /**
+     * Get the amount of slots that were assigned so far, including the slots of temporary locals.
+     *
+     * @return the size of the local variable array
+     */
+    public int getMaxLocals() {
+        return this.nextLocalIndex;
     }
 
     public void registerLabel(Instruction target, RWCell<LabelNode> labelCell) {
@@ -52,4 +169,24 @@ public class ConversionContext {
     public Map<Instruction, List<RWCell<LabelNode>>> getConvertedLabels() {
         return convertedLabels;
     }
+
+    /**
+     * Get the label that marks the beginning of the code of an instruction.
+     *
+     * @param instruction the instruction
+     * @return the same label for each instruction
+     */
+    public Label getLabel(Instruction instruction) {
+        return this.labels.computeIfAbsent(instruction, x -> new Label());
+    }
+
+    /**
+     * Get the label of an instruction if one was requested.
+     *
+     * @param instruction the instruction
+     * @return the label or empty if no label is required
+     */
+    public Optional<Label> findLabel(Instruction instruction) {
+        return Optional.ofNullable(this.labels.get(instruction));
+    }
 }
@@ -0,0 +1,85 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.AbstractFrameComputer;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.StackLocal;
+import io.runebox.kasm.ir.stack.TryCatchBlock;
+import io.runebox.kasm.ir.stack.insn.BranchInsn;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import io.runebox.kasm.ir.util.StackCfgGraph;
+import io.runebox.kasm.ir.util.StackInsnReader;
+import io.runebox.kasm.ir.util.StackInsnVisitor;
+import org.objectweb.asm.Label;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Compute the frames and the maximal stack size of a {@link StackBody} written by the {@link BodyConverter}.
+ *
+ * It runs on the {@link StackCfgGraph} that the {@link io.runebox.kasm.ir.analysis.Analysis} of the converter built.
+ * The slots of the locals are those assigned by the {@link ConversionContext} of the converter.
+ */
+public class FrameComputer extends AbstractFrameComputer<Instruction, StackLocal> {
+    private final StackBody body;
+    private final StackCfgGraph graph;
+    private final ConversionContext ctx;
+
+    public FrameComputer(String owner, Method method, StackBody body, StackCfgGraph graph, ConversionContext ctx, ClassHierarchy hierarchy) {
+        super(owner, method, graph, hierarchy);
+        this.body = body;
+        this.graph = graph;
+        this.ctx = ctx;
+    }
+
+    @Override
+    protected Collection<Instruction> getBranchTargets(Instruction instruction) {
+        return instruction instanceof BranchInsn ? ((BranchInsn) instruction).getBranchTargets() : Collections.emptyList();
+    }
+
+    @Override
+    protected Consumer<Instruction> createReader(StackInsnVisitor<Instruction, StackLocal> iv) {
+        return new StackInsnReader(iv)::accept;
+    }
+
+    @Override
+    protected Optional<StackLocal> getThisLocal() {
+        return body.getThisLocal();
+    }
+
+    @Override
+    protected List<StackLocal> getParameterLocals() {
+        return body.getParameterLocals();
+    }
+
+    @Override
+    protected int getLocalIndex(StackLocal local) {
+        return ctx.getLocalIndex(local);
+    }
+
+    @Override
+    protected int getLocalCount() {
+        return ctx.getMaxLocals();
+    }
+
+    @Override
+    protected Label getNewLabel(Instruction instruction) {
+        return ctx.getLabel(instruction);
+    }
+
+    @Override
+    protected void addHandlers() {
+        Map<Instruction, Handler> handlers = new IdentityHashMap<>();
+        for (TryCatchBlock block : body.getTryCatchBlocks()) {
+            if (graph.isDeadCode(block.getFirst(), block.getLast())) {
+                continue;
+            }
+
+            Handler handler = handlers.computeIfAbsent(block.getHandler(), Handler::new);
+            String type = block.getExceptionType().map(AsmUtil::toInternalName).orElse(THROWABLE);
+            addProtectedRange(handler, type, block.getFirst(), block.getLast());
+        }
+    }
+}
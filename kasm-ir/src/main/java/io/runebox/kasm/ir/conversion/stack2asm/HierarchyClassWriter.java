@@ -0,0 +1,32 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A {@link ClassWriter} that computes common superclasses from a {@link ClassHierarchy}
+ * instead of loading the classes through a class loader.
+ */
+public class HierarchyClassWriter extends ClassWriter {
+    private final ClassHierarchy hierarchy;
+
+    public HierarchyClassWriter(int flags, ClassHierarchy hierarchy) {
+        super(flags);
+        this.hierarchy = hierarchy;
+    }
+
+    public HierarchyClassWriter(ClassReader classReader, int flags, ClassHierarchy hierarchy) {
+        super(classReader, flags);
+        this.hierarchy = hierarchy;
+    }
+
+    public ClassHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return hierarchy.getCommonSuperClass(type1, type2);
+    }
+}
@@ -1,6 +1,7 @@
 package io.runebox.kasm.ir.conversion.stack2asm;
 
 import io.runebox.kasm.ir.conversion.AccessConverter;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
 import io.runebox.kasm.ir.Attribute;
 import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Field;
@@ -19,8 +20,29 @@ import java.util.Optional;
 public class KasmClassReader {
     private final Classfile classfile;
 
+    /**
+     * Untouched methods that are copied from their source class file instead of being generated.
+     */
+    private final Optional<MethodPassThrough> passThrough;
+
+    /**
+     * Hierarchy used to compute the frames and maxs of generated methods,
+     * or empty if the visitor computes them.
+     */
+    private final Optional<ClassHierarchy> frameHierarchy;
+
     public KasmClassReader(Classfile classfile) {
+        this(classfile, Optional.empty());
+    }
+
+    public KasmClassReader(Classfile classfile, Optional<MethodPassThrough> passThrough) {
+        this(classfile, passThrough, Optional.empty());
+    }
+
+    public KasmClassReader(Classfile classfile, Optional<MethodPassThrough> passThrough, Optional<ClassHierarchy> frameHierarchy) {
         this.classfile = classfile;
+        this.passThrough = passThrough;
+        this.frameHierarchy = frameHierarchy;
     }
 
     public void accept(ClassVisitor cv) {
@@ -197,6 +219,11 @@ public class KasmClassReader {
 
     private void visitMethods(ClassVisitor cv) {
         for (Method method : classfile.getMethods()) {
+            if (passThrough.isPresent() && passThrough.get().isCopied(method)) {
+                passThrough.get().visitMethod(cv, method);
+                continue;
+            }
+
             int access = AccessConverter.METHOD.toBitMap(method.getFlags());
             String name = method.getName();
             String descriptor = AsmUtil.methodDescriptorToString(method.getReturnType(), method.getParameterTypes());
@@ -207,8 +234,13 @@ public class KasmClassReader {
 
             MethodVisitor mv = cv.visitMethod(access, name, descriptor, signature, exceptions);
             if (mv != null) {
-                new KasmMethodReader(method).accept(mv);
+                frameHierarchy
+                        .map(hierarchy -> new KasmMethodReader(classfile, method, hierarchy))
+                        .orElseGet(() -> new KasmMethodReader(method))
+                        .accept(mv);
             }
         }
+
+        passThrough.ifPresent(MethodPassThrough::copyMethods);
     }
 }
@@ -1,30 +1,51 @@
 package io.runebox.kasm.ir.conversion.stack2asm;
 
 import io.runebox.kasm.ir.conversion.AccessConverter;
-import io.runebox.kasm.ir.conversion.AsmInsnNodeWriter;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
 import io.runebox.kasm.ir.Attribute;
+import io.runebox.kasm.ir.Classfile;
 import io.runebox.kasm.ir.Method;
 import io.runebox.kasm.ir.annotation.Annotation;
 import io.runebox.kasm.ir.annotation.AnnotationValue;
 import io.runebox.kasm.ir.typeannotation.*;
+import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.stack.StackBody;
-import io.runebox.kasm.ir.stack.StackLocal;
-import io.runebox.kasm.ir.stack.TryCatchBlock;
-import io.runebox.kasm.ir.stack.insn.Instruction;
-import io.runebox.kasm.ir.util.StackInsnReader;
-import io.runebox.kasm.ir.analysis.Analysis;
 import org.objectweb.asm.*;
 import org.objectweb.asm.TypePath;
-import org.objectweb.asm.tree.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class KasmMethodReader {
     private final Method method;
 
+    /**
+     * The class containing the method, it is only required to compute frames.
+     */
+    private final Optional<Classfile> owner;
+
+    /**
+     * Hierarchy used to compute the frames and maxs of the body, or empty if the visitor computes them.
+     */
+    private final Optional<ClassHierarchy> frameHierarchy;
+
     public KasmMethodReader(Method method) {
         this.method = method;
+        this.owner = Optional.empty();
+        this.frameHierarchy = Optional.empty();
+    }
+
+    /**
+     * Create a reader that also visits the frames of the body.
+     * They are computed by the body converter before the code is written.
+     *
+     * @param owner the class containing the method
+     * @param method the method to visit
+     * @param frameHierarchy supertypes of all classes that occur within the body
+     */
+    public KasmMethodReader(Classfile owner, Method method, ClassHierarchy frameHierarchy) {
+        this.method = method;
+        this.owner = Optional.of(owner);
+        this.frameHierarchy = Optional.of(frameHierarchy);
     }
 
     public void accept(MethodVisitor mv) {
@@ -133,371 +154,28 @@ public class KasmMethodReader {
     }
 
     private void visitBody(MethodVisitor mv) {
-        method.getBody().map(body -> (StackBody) body).ifPresent(body -> {
-            MethodNode mn = new MethodNode();
-
-            Analysis analysis = new Analysis(body);
-            analysis.analyze();
-
-            LabelResolver labelResolver = convertInstructions(body, analysis, mn.instructions);
-
-            insertLineNumberNodes(body.getLineNumbers(), mn.instructions, labelResolver);
-
-            convertLocalVariables(body, analysis, labelResolver, mn);
-            convertLocalVariableAnnotations(body, analysis, labelResolver, mn);
-
-            convertTryCatchBlocks(body, analysis, labelResolver, mn);
-
-            mn.accept(mv);
-        });
-    }
-
-    private LabelResolver convertInstructions(StackBody body, Analysis analysis, InsnList insnList) {
-        Map<Instruction, List<AbstractInsnNode>> convertedInsns = new HashMap<>();
-        ConversionContext ctx = new ConversionContext(body);
-
-        AsmInsnNodeWriter insnWriter = new AsmInsnNodeWriter(ctx);
-        StackInsnReader insnReader = new StackInsnReader(insnWriter);
-
-        for (Instruction instruction : body.getInstructions()) {
-            analysis.getStackState(instruction).ifPresent(stackFrame -> {
-                insnWriter.setStackFrame(stackFrame);
-                insnReader.accept(instruction);
-
-                List<AbstractInsnNode> asmInsns = insnWriter.getConvertedInsns();
-                convertInsnAnnotation(instruction.getTypeAnnotations(), asmInsns.get(0));
-                asmInsns.forEach(insnList::add);
-                convertedInsns.put(instruction, new ArrayList<>(asmInsns));
-                asmInsns.clear();
-            });
-        }
-
-        LabelResolver labelResolver = new LabelResolver(insnList, convertedInsns);
-
-        // Resolve all labels used within instructions
-        ctx.getConvertedLabels().forEach((insn, labelCells) -> {
-            LabelNode labelNode = labelResolver.getForwardLabel(insn);
-            labelCells.forEach(cell -> cell.set(labelNode));
-        });
-
-        return labelResolver;
-    }
-
-    private void convertInsnAnnotation(List<InsnTypeAnnotation> typeAnnotations, AbstractInsnNode insn) {
-        for (InsnTypeAnnotation typeAnnotation : typeAnnotations) {
-            Annotation annotation = typeAnnotation.getAnnotation();
-            int typeRef = convertInsnTargetType(typeAnnotation.getTargetType()).getValue();
-            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
-            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
-
-            TypeAnnotationNode annotationNode = new TypeAnnotationNode(typeRef, typePath, descriptor);
-            new KasmAnnotationReader(annotation).accept(annotationNode);
-            getInsnTypeAnnotationList(insn, annotation.isRuntimeVisible()).add(annotationNode);
-        }
-    }
-
-    private TypeReference convertInsnTargetType(TargetType.InsnTargetType targetType) {
-        if (targetType instanceof TargetType.InstanceOf) {
-            return TypeReference.newTypeReference(TypeReference.INSTANCEOF);
-        } else if (targetType instanceof TargetType.New) {
-            return TypeReference.newTypeReference(TypeReference.NEW);
-        } else if (targetType instanceof TargetType.ConstructorReference) {
-            return TypeReference.newTypeReference(TypeReference.CONSTRUCTOR_REFERENCE);
-        } else if (targetType instanceof TargetType.MethodReference) {
-            return TypeReference.newTypeReference(TypeReference.METHOD_REFERENCE);
-        } else if (targetType instanceof TargetType.Cast) {
-            int intersection = ((TargetType.Cast) targetType).getIntersection();
-            return TypeReference.newTypeArgumentReference(TypeReference.CAST, intersection);
-        } else if (targetType instanceof TargetType.AbstractTypeParameterInsnTargetType) {
-            int sort;
-            if (targetType instanceof TargetType.ConstructorInvokeTypeParameter) {
-                sort = TypeReference.CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT;
-            } else if (targetType instanceof TargetType.MethodInvokeTypeParameter) {
-                sort = TypeReference.METHOD_INVOCATION_TYPE_ARGUMENT;
-            } else if (targetType instanceof TargetType.ConstructorReferenceTypeParameter) {
-                sort = TypeReference.CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT;
-            } else if (targetType instanceof TargetType.MethodReferenceTypeParameter) {
-                sort = TypeReference.METHOD_REFERENCE_TYPE_ARGUMENT;
+        method.getBody().ifPresent(body -> {
+            if (body instanceof RefBody) {
+                visitRefBody(mv, (RefBody) body);
             } else {
-                throw new AssertionError();
-            }
-
-            int typeParameterIndex = ((TargetType.AbstractTypeParameterInsnTargetType) targetType).getTypeParameter();
-            return TypeReference.newTypeArgumentReference(sort, typeParameterIndex);
-        } else {
-            throw new AssertionError();
-        }
-    }
-
-    /**
-     * Get (and initialize if necessary) the list for visible or invisible instruction type annotations.
-     *
-     * @param insn instruction containing the annotation list
-     * @param isVisible request the list of visible or invisible annotations
-     * @return the requested list of type annotations
-     */
-    private List<TypeAnnotationNode> getInsnTypeAnnotationList(AbstractInsnNode insn, boolean isVisible) {
-        if (isVisible) {
-            if (insn.visibleTypeAnnotations == null) {
-                insn.visibleTypeAnnotations = new ArrayList<>();
-            }
-            return insn.visibleTypeAnnotations;
-        } else {
-            if (insn.invisibleTypeAnnotations == null) {
-                insn.invisibleTypeAnnotations = new ArrayList<>();
-            }
-            return insn.invisibleTypeAnnotations;
-        }
-    }
-
-
-    private void insertLineNumberNodes(List<StackBody.LineNumber> lineNumbers, InsnList insnList, LabelResolver labelResolver) {
-        for (StackBody.LineNumber lineNumber : lineNumbers) {
-            LabelNode labelNode = labelResolver.getForwardLabel(lineNumber.getInstruction());
-            LineNumberNode lineNumberNode = new LineNumberNode(lineNumber.getLine(), labelNode);
-            insnList.insert(labelNode, lineNumberNode);
-        }
-    }
-
-    private void convertLocalVariables(StackBody body, Analysis analysis, LabelResolver labelResolver, MethodNode mn) {
-        for (StackBody.LocalVariable local : body.getLocalVariables()) {
-            if (isRangeEmpty(body, analysis, local.getStart(), local.getEnd())) {
-                continue;
-            }
-
-            String name = local.getName();
-            String descriptor = AsmUtil.toDescriptor(local.getType());
-            String signature = local.getSignature().orElse(null);
-            LabelNode start = labelResolver.getForwardLabel(local.getStart());
-            LabelNode end = labelResolver.getBackwardLabel(local.getEnd());
-            int index = getLocalIndex(body, local.getLocal());
-
-            if (mn.localVariables == null) {
-                mn.localVariables = new ArrayList<>();
-            }
-            mn.localVariables.add(new LocalVariableNode(name, descriptor, signature, start, end, index));
-        }
-    }
-
-    private void convertLocalVariableAnnotations(StackBody body, Analysis analysis, LabelResolver labelResolver, MethodNode mn) {
-        for (StackBody.LocalVariableAnnotation localAnnotation : body.getLocalVariableAnnotations()) {
-            List<StackBody.LocalVariableAnnotation.Location> locations = localAnnotation.getLocations().stream()
-                    .filter(location -> !isRangeEmpty(body, analysis, location.getStart(), location.getEnd()))
-                    .collect(Collectors.toList());
-
-            if (locations.isEmpty()) {
-                continue;
-            }
-
-            LocalVariableTypeAnnotation typeAnnotation = localAnnotation.getAnnotation();
-            Annotation annotation = typeAnnotation.getAnnotation();
-            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
-
-            int typeRef = convertLocalTargetType(typeAnnotation.getTargetType()).getValue();
-            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
-
-            LabelNode[] start = locations.stream()
-                    .map(location -> labelResolver.getForwardLabel(location.getStart()))
-                    .toArray(LabelNode[]::new);
-
-            LabelNode[] end = locations.stream()
-                    .map(location -> labelResolver.getBackwardLabel(location.getStart()))
-                    .toArray(LabelNode[]::new);
-
-            int[] index = locations.stream()
-                    .mapToInt(location -> getLocalIndex(body, location.getLocal()))
-                    .toArray();
-
-            LocalVariableAnnotationNode annotationNode = new LocalVariableAnnotationNode(typeRef, typePath, start, end, index, descriptor);
-            new KasmAnnotationReader(annotation).accept(annotationNode);
-            getLocalVariableAnnotationList(mn, annotation.isRuntimeVisible()).add(annotationNode);
-        }
-    }
-
-    /**
-     * Get (and initialize if necessary) the list for visible or invisible local type annotations.
-     *
-     * @param mn method node containing the annotation list
-     * @param isVisible do we want the list for visible or invisible annotations
-     * @return the list of visible or invisible local variable type annotations
-     */
-    private List<LocalVariableAnnotationNode> getLocalVariableAnnotationList(MethodNode mn, boolean isVisible) {
-        List<LocalVariableAnnotationNode> annotationList;
-        if (isVisible) {
-            if (mn.visibleLocalVariableAnnotations == null) {
-                mn.visibleLocalVariableAnnotations = new ArrayList<>();
-            }
-            annotationList = mn.visibleLocalVariableAnnotations;
-        } else {
-            if (mn.invisibleLocalVariableAnnotations == null) {
-                mn.invisibleLocalVariableAnnotations = new ArrayList<>();
+                visitStackBody(mv, (StackBody) body);
             }
-            annotationList = mn.invisibleLocalVariableAnnotations;
-        }
-        return annotationList;
+        });
     }
 
-    private TypeReference convertLocalTargetType(TargetType.LocalTargetType targetType) {
-        if (targetType instanceof TargetType.LocalVariable) {
-            return TypeReference.newTypeReference(TypeReference.LOCAL_VARIABLE);
-        } else if (targetType instanceof TargetType.ResourceVariable) {
-            return TypeReference.newTypeReference(TypeReference.RESOURCE_VARIABLE);
+    private void visitRefBody(MethodVisitor mv, RefBody body) {
+        if (frameHierarchy.isEmpty()) {
+            new io.runebox.kasm.ir.conversion.ref2asm.BodyConverter(method, body, mv).convert();
         } else {
-            throw new AssertionError();
-        }
-    }
-
-    private void convertTryCatchBlocks(StackBody body, Analysis analysis, LabelResolver labelResolver, MethodNode mn) {
-        for (TryCatchBlock block : body.getTryCatchBlocks()) {
-            if (isRangeEmpty(body, analysis, block.getFirst(), block.getLast())) {
-                continue;
-            }
-
-            LabelNode start = labelResolver.getForwardLabel(block.getFirst());
-            LabelNode end = labelResolver.getForwardLabel(block.getLast());
-            LabelNode handler = labelResolver.getForwardLabel(block.getHandler());
-            String type = block.getExceptionType().map(AsmUtil::toInternalName).orElse(null);
-
-            TryCatchBlockNode node = new TryCatchBlockNode(start, end, handler, type);
-            convertTryCatchBlockAnnotations(block, node);
-
-            if (mn.tryCatchBlocks == null) {
-                mn.tryCatchBlocks = new ArrayList<>();
-            }
-            mn.tryCatchBlocks.add(node);
-        }
-    }
-
-    private void convertTryCatchBlockAnnotations(TryCatchBlock block, TryCatchBlockNode node) {
-        for (ExceptionTypeAnnotation typeAnnotation : block.getTypeAnnotations()) {
-            Annotation annotation = typeAnnotation.getAnnotation();
-            int typeRef = TypeReference.newTypeReference(TypeReference.EXCEPTION_PARAMETER).getValue();
-            TypePath typePath = AsmUtil.toAsmTypePath(typeAnnotation.getTypePath());
-            String descriptor = AsmUtil.pathToDescriptor(annotation.getType());
-
-            TypeAnnotationNode annotationNode = new TypeAnnotationNode(typeRef, typePath, descriptor);
-            new KasmAnnotationReader(annotation).accept(annotationNode);
-            getTryCatchBlockAnnotationList(node, annotation.isRuntimeVisible()).add(annotationNode);
+            new io.runebox.kasm.ir.conversion.ref2asm.BodyConverter(owner.get(), method, body, mv, frameHierarchy.get()).convert();
         }
     }
 
-    /**
-     * Get (and initialize if necessary) the list of visible or invisible try/catch type annotations.
-     *
-     * @param node try/catch block containing the annotation list
-     * @param isVisible request the list of visible or invisible annotations
-     * @return the requested list of type annotations
-     */
-    private List<TypeAnnotationNode> getTryCatchBlockAnnotationList(TryCatchBlockNode node, boolean isVisible) {
-        List<LocalVariableAnnotationNode> annotationList;
-        if (isVisible) {
-            if (node.visibleTypeAnnotations == null) {
-                node.visibleTypeAnnotations = new ArrayList<>();
-            }
-            return node.visibleTypeAnnotations;
+    private void visitStackBody(MethodVisitor mv, StackBody body) {
+        if (frameHierarchy.isEmpty()) {
+            new BodyConverter(method, body, mv).convert();
         } else {
-            if (node.invisibleTypeAnnotations == null) {
-                node.invisibleTypeAnnotations = new ArrayList<>();
-            }
-            return node.invisibleTypeAnnotations;
-        }
-    }
-
-    /**
-     * Get the index of a local.
-     *
-     * @param body that contains the local
-     * @param local local whose index we want
-     * @return index of the local
-     */
-    private int getLocalIndex(StackBody body, StackLocal local) {
-        int index = body.getLocals().indexOf(local);
-        if (index < 0) {
-            throw new IllegalStateException("Local is not contained within the body");
-        }
-        return index;
-    }
-
-    /**
-     * Check whether a range of instructions is only dead code.
-     *
-     * @param stackBody body containing the instructions
-     * @param analysis cfg analysis of all instructions within the method
-     * @param start first instruction of the instruction range
-     * @param end last instruction of the instruction range
-     * @return contains the instruction range only dead code
-     */
-    private boolean isRangeEmpty(StackBody stackBody, Analysis analysis, Instruction start, Instruction end) {
-        Iterator<Instruction> iter = stackBody.getInstructions().iterator(start);
-        while (iter.hasNext()) {
-            Instruction instruction = iter.next();
-
-            if (analysis.getStackState(instruction).isPresent()) {
-                // This instruction is no dead code
-                return false;
-            }
-
-            if (instruction == end) {
-                return true;
-            }
-        }
-
-        // The "start" instruction is not succeeded by the "end" instruction
-        throw new IllegalStateException("Illegal instruction range");
-    }
-
-    private static class LabelResolver {
-        private final InsnList insnList;
-        private final Map<Instruction, List<AbstractInsnNode>> convertedInsns;
-
-        private final Map<Instruction, LabelNode> forwardLabels = new HashMap<>();
-        private final Map<Instruction, LabelNode> backwardLabels = new HashMap<>();
-
-        LabelResolver(InsnList insnList, Map<Instruction, List<AbstractInsnNode>> convertedInsns) {
-            this.insnList = insnList;
-            this.convertedInsns = convertedInsns;
-        }
-
-        /**
-         * Get a {@link LabelNode} that targets the {@link AbstractInsnNode} corresponding
-         * to a certain {@link Instruction}. If there is no such {@link LabelNode} it will be
-         * created and inserted into the instruction list of this method.
-         *
-         * @param insn whose corresponding label we want
-         * @return a {@link LabelNode} corresponding to the request instruction
-         */
-        public LabelNode getForwardLabel(Instruction insn) {
-            return forwardLabels.computeIfAbsent(insn, x -> {
-                LabelNode labelNode = new LabelNode(new Label());
-                List<AbstractInsnNode> asmInsns = getAsmInsns(insn);
-                insnList.insertBefore(asmInsns.get(0), labelNode);
-                return labelNode;
-            });
-        }
-
-        /**
-         * Similar to {@link LabelResolver#getForwardLabel(Instruction)} but the returned
-         * {@link LabelNode} succeeds the request instruction instead of preceding it.
-         *
-         * @param insn whose label do we want
-         * @return {@link LabelNode} inserted after the corresponding instruction.
-         */
-        public LabelNode getBackwardLabel(Instruction insn) {
-            return backwardLabels.computeIfAbsent(insn, x -> {
-                LabelNode labelNode = new LabelNode(new Label());
-                List<AbstractInsnNode> asmInsns = getAsmInsns(insn);
-                AbstractInsnNode lastAsmInsn = asmInsns.get(asmInsns.size() - 1);
-                insnList.insert(lastAsmInsn, labelNode);
-                return labelNode;
-            });
-        }
-
-        private List<AbstractInsnNode> getAsmInsns(Instruction insn) {
-            List<AbstractInsnNode> asmInsns = convertedInsns.get(insn);
-            if (asmInsns == null || asmInsns.isEmpty()) {
-                throw new IllegalStateException();
-            }
-            return asmInsns;
+            new BodyConverter(owner.get(), method, body, mv, frameHierarchy.get()).convert();
         }
     }
 }
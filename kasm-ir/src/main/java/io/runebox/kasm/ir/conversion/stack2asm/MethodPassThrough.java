@@ -0,0 +1,200 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.asm2stack.ClassConvertVisitor;
+import io.runebox.kasm.ir.conversion.asm2stack.LazyBodyLoader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Copy untouched methods from the class file they were parsed from instead of regenerating them.
+ *
+ * A method is untouched if its body was loaded lazily and was not modified since,
+ * i.e. it was either never accessed or its {@link Body#getModificationCount() modification count} is unchanged,
+ * and none of its other properties (name, flags, annotations, ...) were changed.
+ * If the class gets written by a {@link ClassWriter} that was created with the {@link #getSource() source reader},
+ * asm copies those methods byte-for-byte including their StackMapTable,
+ * so only the other methods pay for frame computation.
+ */
+public class MethodPassThrough {
+    /**
+     * The class file that the untouched methods were parsed from.
+     */
+    private final ClassReader source;
+
+    /**
+     * Methods of the {@link Classfile} that are copied and their declaration in the source class file.
+     */
+    private final Map<Method, Declaration> copiedMethods;
+
+    /**
+     * Visitors that were created for copied methods by name and descriptor.
+     * They receive the copied methods in {@link #copyMethods()}.
+     */
+    private final Map<String, MethodVisitor> reservedVisitors = new HashMap<>();
+
+    private MethodPassThrough(ClassReader source, Map<Method, Declaration> copiedMethods) {
+        this.source = source;
+        this.copiedMethods = copiedMethods;
+    }
+
+    /**
+     * Find all methods of a class that can be copied from their source.
+     *
+     * @param classfile the class that will be written
+     * @return the pass-through or empty if no method can be copied
+     */
+    public static Optional<MethodPassThrough> of(Classfile classfile) {
+        ClassReader source = null;
+        Map<String, Method> candidates = new HashMap<>();
+        for (Method method : classfile.getMethods()) {
+            Optional<Supplier<Optional<Body>>> loader = method.getUnmodifiedBodyLoader();
+            if (!loader.isPresent() || !(loader.get() instanceof LazyBodyLoader)) {
+                continue;
+            }
+
+            LazyBodyLoader lazyLoader = (LazyBodyLoader) loader.get();
+            if (source == null) {
+                source = lazyLoader.getReader();
+            } else if (source != lazyLoader.getReader()) {
+                // Methods from another class are regenerated
+                continue;
+            }
+
+            candidates.put(lazyLoader.getName() + lazyLoader.getDescriptor(), method);
+        }
+
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // Parse the method declarations again to detect changes to any other property of the methods
+        ClassConvertVisitor original = new ClassConvertVisitor();
+        Map<String, Declaration> declarations = new HashMap<>();
+        source.accept(new ClassVisitor(Opcodes.ASM7, original) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                declarations.put(name + descriptor, new Declaration(access, name, descriptor, signature, exceptions));
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+        }, ClassReader.SKIP_CODE);
+
+        Map<Method, Declaration> copiedMethods = new IdentityHashMap<>();
+        for (Method originalMethod : original.getClassfile().getMethods()) {
+            String key = originalMethod.getName() + AsmUtil.methodDescriptorToString(originalMethod.getReturnType(), originalMethod.getParameterTypes());
+            Method method = candidates.get(key);
+            if (method != null && isDeclarationUnchanged(originalMethod, method)) {
+                copiedMethods.put(method, declarations.get(key));
+            }
+        }
+
+        return copiedMethods.isEmpty() ? Optional.empty() :
+                Optional.of(new MethodPassThrough(source, copiedMethods));
+    }
+
+    private static boolean isDeclarationUnchanged(Method original, Method method) {
+        return Objects.equals(original.getFlags(), method.getFlags()) &&
+                Objects.equals(original.getName(), method.getName()) &&
+                Objects.equals(original.getParameterTypes(), method.getParameterTypes()) &&
+                Objects.equals(original.getReturnType(), method.getReturnType()) &&
+                Objects.equals(original.getExceptions(), method.getExceptions()) &&
+                Objects.equals(original.getSignature(), method.getSignature()) &&
+                Objects.equals(original.getDefaultValue(), method.getDefaultValue()) &&
+                Objects.equals(original.getParameterInfo(), method.getParameterInfo()) &&
+                Objects.equals(original.getParameterAnnotations(), method.getParameterAnnotations()) &&
+                Objects.equals(original.getAnnotations(), method.getAnnotations()) &&
+                Objects.equals(original.getTypeAnnotations(), method.getTypeAnnotations()) &&
+                Objects.equals(original.getAttributes(), method.getAttributes());
+    }
+
+    /**
+     * Get the reader of the class file that the copied methods are taken from.
+     *
+     * @return the source class reader
+     */
+    public ClassReader getSource() {
+        return source;
+    }
+
+    /**
+     * Check whether a method will be copied from the source.
+     *
+     * @param method a method of the written class
+     * @return true if the method must not be generated
+     */
+    public boolean isCopied(Method method) {
+        return copiedMethods.containsKey(method);
+    }
+
+    /**
+     * Visit the declaration of a copied method.
+     *
+     * This reserves the position of the method in the written class.
+     * Its content is visited later by {@link #copyMethods()}.
+     *
+     * @param target visitor of the written class
+     * @param method a copied method
+     */
+    public void visitMethod(ClassVisitor target, Method method) {
+        Declaration declaration = copiedMethods.get(method);
+        if (declaration == null) {
+            throw new IllegalArgumentException("Method " + method.getName() + " is not copied");
+        }
+
+        MethodVisitor mv = target.visitMethod(declaration.access, declaration.name,
+                declaration.descriptor, declaration.signature, declaration.exceptions);
+        if (mv != null) {
+            reservedVisitors.put(declaration.name + declaration.descriptor, mv);
+        }
+    }
+
+    /**
+     * Visit the content of all methods that were declared with {@link #visitMethod(ClassVisitor, Method)}.
+     *
+     * The methods are copied byte-for-byte if the visitor is a {@link ClassWriter}
+     * that was created with the {@link #getSource() source reader}.
+     * Otherwise the events of the methods are visited as usual,
+     * but only after the declarations of all other methods.
+     */
+    public void copyMethods() {
+        if (reservedVisitors.isEmpty()) {
+            return;
+        }
+
+        source.accept(new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return reservedVisitors.remove(name + descriptor);
+            }
+        }, 0);
+    }
+
+    /**
+     * Declaration of a method exactly as it is stored in the source class file.
+     *
+     * A {@link ClassWriter} only copies a method if it gets visited with the same values.
+     */
+    private static class Declaration {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final String signature;
+        private final String[] exceptions;
+
+        private Declaration(int access, String name, String descriptor, String signature, String[] exceptions) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.exceptions = exceptions;
+        }
+    }
+}
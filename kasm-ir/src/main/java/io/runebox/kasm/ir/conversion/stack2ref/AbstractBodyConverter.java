@@ -0,0 +1,357 @@
+package io.runebox.kasm.ir.conversion.stack2ref;
+
+import io.runebox.kasm.ir.Path;
+import io.runebox.kasm.ir.analysis.Stack;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.type.ObjectType;
+import io.runebox.kasm.ir.type.Type;
+import io.runebox.kasm.ir.typeannotation.ExceptionTypeAnnotation;
+import io.runebox.kasm.ir.util.RWCell;
+
+import java.util.*;
+
+/**
+ * Base class of utilities that build a {@link RefBody} from a sequence of stack based instructions.
+ *
+ * The instructions are emulated along the control flow with a stack of {@link StackValue StackValues}
+ * and converted through a {@link RefInsnWriter}.
+ *
+ * @param <K> type of the instructions
+ * @param <L> type of the locals referenced by the instructions
+ */
+public abstract class AbstractBodyConverter<K, L> {
+    protected final RefBody refBody;
+
+    /**
+     * Map locals in stack representation to the corresponding ref locals.
+     */
+    protected final Map<L, RefLocal> localMap = new HashMap<>();
+
+    /**
+     * Cells that should be assigned to the statement corresponding to a certain instructions.
+     * Resolving them may create locals, so they are kept in insertion order to create the locals in a stable order.
+     */
+    private final Map<K, List<RWCell<Statement>>> instructionReferences = new LinkedHashMap<>();
+
+    /**
+     * Map instructions to the statements that represent them.
+     */
+    private final Map<K, List<Statement>> convertedStatements = new HashMap<>();
+
+    private final Map<K, StackDelta<K>> stackDeltaMap = new HashMap<>();
+
+    private final Stack.Mutable<StackValue<K>> stack = new Stack.Mutable<>();
+
+    /**
+     * Blocks of instructions that must still be converted.
+     */
+    private final Queue<CfgNode> worklist = new ArrayDeque<>();
+
+    /**
+     * Map an instruction to all instruction that branch to it and have already been visited,
+     * together with the stack that the branch did carry to it.
+     */
+    private final Map<K, Map<K, Stack.Immutable<StackValue<K>>>> visitedBranches = new HashMap<>();
+
+    /**
+     * Map the first instruction of each exception handler to the local that holds the caught exception.
+     */
+    private final Map<K, RefLocal> handlerLocals = new HashMap<>();
+
+    protected AbstractBodyConverter() {
+        this.refBody = new RefBody();
+    }
+
+    public RefBody getRefBody() {
+        return refBody;
+    }
+
+    public RefLocal getLocal(L local) {
+        return this.localMap.get(local);
+    }
+
+    /**
+     * Create and add a new local without setting its type.
+     *
+     * @return a new local
+     */
+    public RefLocal newLocal() {
+        return newLocal(null);
+    }
+
+    /**
+     * Create a new local and add it to the body.
+     *
+     * @param type of the created local
+     * @return a new local
+     */
+    public RefLocal newLocal(Type type) {
+        RefLocal local = new RefLocal(type);
+        this.refBody.getLocals().add(local);
+        return local;
+    }
+
+    public void registerInsnReference(K instruction, RWCell<Statement> statementCell) {
+        List<RWCell<Statement>> cells = this.instructionReferences.computeIfAbsent(instruction, x -> new ArrayList<>());
+        cells.add(statementCell);
+    }
+
+    public Map<K, List<Statement>> getConvertedStatements() {
+        return convertedStatements;
+    }
+
+    public void addStatement(K instruction, Statement statement) {
+        List<Statement> statements = convertedStatements.computeIfAbsent(instruction, x -> new ArrayList<>());
+        statements.add(statement);
+    }
+
+    public Map<K, StackDelta<K>> getStackDeltaMap() {
+        return stackDeltaMap;
+    }
+
+    public StackValue<K> pop() {
+        return this.stack.pop();
+    }
+
+    public void push(StackValue<K> stackValue) {
+        this.stack.push(stackValue);
+    }
+
+    /**
+     * Iterate over the instructions of the body, starting with a certain instruction.
+     *
+     * @param start first instruction returned by the iterator
+     * @return iterator over the instruction and all its successors
+     */
+    protected abstract Iterator<K> iterator(K start);
+
+    /**
+     * Get all instructions of the body in their order.
+     *
+     * @return all instructions
+     */
+    protected abstract Iterable<K> getInstructions();
+
+    /**
+     * Check whether the execution might continue with the next instruction.
+     *
+     * @param instruction the instruction to check
+     * @return false for unconditional branches, returns and throws
+     */
+    protected abstract boolean continuesExecution(K instruction);
+
+    /**
+     * Get all instructions that an instruction might branch to.
+     *
+     * @param instruction the instruction to check
+     * @return the branch targets or an empty list if the instruction is no branch
+     */
+    protected abstract List<? extends K> getBranchTargets(K instruction);
+
+    /**
+     * Emulate one instruction on the current stack and convert it.
+     *
+     * @param instruction the instruction to convert
+     */
+    protected abstract void convertInstruction(K instruction);
+
+    /**
+     * Set the types of the locals that hold <tt>this</tt> and the parameters.
+     *
+     * @param thisType type of the class containing the method
+     * @param thisLocal local that holds <tt>this</tt>
+     * @param parameterTypes types of the parameters
+     * @param parameterLocals locals holding the parameters
+     */
+    protected void convertThisAndParameterLocals(Path thisType, Optional<RefLocal> thisLocal,
+                                                 List<Type> parameterTypes, List<RefLocal> parameterLocals) {
+        thisLocal.ifPresent(refLocal -> {
+            refLocal.setType(new ObjectType(thisType));
+            refBody.setThisLocal(Optional.of(refLocal));
+        });
+
+        Iterator<Type> argTypeIter = parameterTypes.iterator();
+        Iterator<RefLocal> argLocalIter = parameterLocals.iterator();
+        while (argTypeIter.hasNext()) {
+            RefLocal refLocal = argLocalIter.next();
+            refLocal.setType(argTypeIter.next());
+            refBody.getArgumentLocals().add(refLocal);
+        }
+    }
+
+    /**
+     * Add an instruction where the conversion should start with an empty stack.
+     *
+     * @param instruction first instruction of the method
+     */
+    protected void addEntryPoint(K instruction) {
+        worklist.add(new CfgNode(instruction, new Stack.Immutable<>()));
+    }
+
+    /**
+     * Convert a try/catch block and add its handler as entry point of the conversion.
+     *
+     * All blocks with the same handler share one local for the caught exception,
+     * since the code of the handler is converted only once and can only read one local.
+     * If the blocks catch different types, the local is typed as {@link Throwable}.
+     *
+     * @param first first instruction of the protected range
+     * @param last last instruction of the protected range
+     * @param handler first instruction of the exception handler
+     * @param exception type of the caught exception or empty to catch any exception
+     * @param typeAnnotations type annotations on the exception type
+     */
+    protected void convertTryCatchBlock(K first, K last, K handler, Optional<Path> exception,
+                                        List<ExceptionTypeAnnotation> typeAnnotations) {
+        ObjectType exceptionType = new ObjectType(exception.orElse(Path.THROWABLE));
+        RefLocal caughtExceptionLocal = handlerLocals.get(handler);
+        if (caughtExceptionLocal == null) {
+            caughtExceptionLocal = newLocal(exceptionType);
+            handlerLocals.put(handler, caughtExceptionLocal);
+
+            Stack.Mutable<StackValue<K>> stack = new Stack.Mutable<>();
+            stack.push(new StackValue<>(handler, caughtExceptionLocal));
+            worklist.add(new CfgNode(handler, stack.toImmutable()));
+        } else if (!exceptionType.equals(caughtExceptionLocal.getType())) {
+            caughtExceptionLocal.setType(new ObjectType(Path.THROWABLE));
+        }
+
+        TryCatchBlock refTryCatchBlock = new TryCatchBlock(null, null, null, exception, caughtExceptionLocal);
+        refTryCatchBlock.getTypeAnnotations().addAll(typeAnnotations);
+
+        registerInsnReference(first, refTryCatchBlock.getFirstCell());
+        registerInsnReference(last, refTryCatchBlock.getLastCell());
+        registerInsnReference(handler, refTryCatchBlock.getHandlerCell());
+
+        this.refBody.getTryCatchBlocks().add(refTryCatchBlock);
+    }
+
+    /**
+     * Convert all instructions reachable from the entry points.
+     */
+    protected void convertInsns() {
+        while (!worklist.isEmpty()) {
+            CfgNode node = worklist.poll();
+            this.stack.loadFrom(node.stack);
+
+            Iterator<K> insnIter = iterator(node.instruction);
+            K instruction;
+            do {
+                if (insnIter.hasNext()) {
+                    instruction = insnIter.next();
+                } else {
+                    throw new IllegalStateException("Unexpected end of method");
+                }
+
+                convertInstruction(instruction);
+
+                for (K branchTarget : getBranchTargets(instruction)) {
+                    Map<K, Stack.Immutable<StackValue<K>>> visitedCauses =
+                            visitedBranches.computeIfAbsent(branchTarget, x -> new HashMap<>());
+                    Stack.Immutable<StackValue<K>> visitedStack = visitedCauses.get(instruction);
+                    if (visitedStack == null) {
+                        Stack.Immutable<StackValue<K>> stack = this.stack.toImmutable();
+                        visitedCauses.put(instruction, stack);
+                        worklist.add(new CfgNode(branchTarget, stack));
+                    } else {
+                        // The branch target was already converted with the stack of an earlier visit.
+                        // Values that differ on this path must end up in the same locals.
+                        StackDelta.merge(this, visitedStack.toList(), this.stack.toList());
+                    }
+                }
+            } while (continuesExecution(instruction));
+        }
+    }
+
+    protected void resolveInsnsRefs() {
+        this.instructionReferences.forEach((insn, stmtCells) -> {
+            Statement stmt = getCorrespondingStmt(insn);
+            stmtCells.forEach(cell -> cell.set(stmt));
+        });
+    }
+
+    /**
+     * Find the converted {@link Statement} that corresponds to an instruction.
+     *
+     * If the instruction converted to an expression, that expression will be stored in a local
+     * and the {@link AssignStmt} is returned.
+     *
+     * If the instruction is neither a statement nor an expression, than the statement
+     * corresponding to the next instruction is returned.
+     *
+     * @param instruction whose correspondent statement we want.
+     * @return statement that corresponding to the instruction
+     */
+    protected Statement getCorrespondingStmt(K instruction) {
+        // Should not be absent for valid bytecode
+        return findCorrespondingStmt(instruction).orElseThrow(AssertionError::new);
+    }
+
+    /**
+     * Find the converted {@link Statement} that corresponds to an instruction.
+     *
+     * @param instruction whose correspondent statement we want.
+     * @return statement that corresponding to the instruction or empty if no instruction is converted until the end
+     * @see #getCorrespondingStmt(Object)
+     */
+    protected Optional<Statement> findCorrespondingStmt(K instruction) {
+        Iterator<K> insnIter = iterator(instruction);
+        while (insnIter.hasNext()) {
+            Optional<Statement> correspondingLocalOpt = getCorrespondingStmtOpt(insnIter.next());
+            if (correspondingLocalOpt.isPresent()) {
+                return correspondingLocalOpt;
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private Optional<Statement> getCorrespondingStmtOpt(K instruction) {
+        List<Statement> convertedStatements = this.convertedStatements.get(instruction);
+        if (convertedStatements != null && !convertedStatements.isEmpty()) {
+            // The instruction did convert into a statement,
+            return Optional.of(convertedStatements.get(0));
+        } else {
+            StackDelta<K> delta = this.stackDeltaMap.get(instruction);
+
+            if (delta != null && delta.getPush().isPresent()) {
+                // This instruction converted into an expression.
+                // If we store it in a local, that AssignStatement can be returned.
+                StackValue<K> push = delta.getPush().get();
+                return Optional.of(push.storeInLocal(this, newLocal()));
+            } else {
+                // This instruction converts neither to a statement, nor does it push a value.
+                // Therefore there cannot be a corresponding statement.
+                return Optional.empty();
+            }
+        }
+    }
+
+    protected void insertConvertedStatements() {
+        for (K instruction : getInstructions()) {
+            for (Statement statement : this.convertedStatements.getOrDefault(instruction, List.of())) {
+                refBody.getStatements().add(statement);
+            }
+        }
+    }
+
+    private class CfgNode {
+        /**
+         * First instruction of this cfg block.
+         */
+        private final K instruction;
+        /**
+         * Values on the stack
+         */
+        private final Stack.Immutable<StackValue<K>> stack;
+
+        public CfgNode(K instruction, Stack.Immutable<StackValue<K>> stack) {
+            this.instruction = instruction;
+            this.stack = stack;
+        }
+    }
+}
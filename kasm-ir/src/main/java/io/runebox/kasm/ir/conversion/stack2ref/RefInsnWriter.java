@@ -20,9 +20,7 @@ import io.runebox.kasm.ir.ref.invoke.AbstractInstanceInvoke;
 import io.runebox.kasm.ir.ref.invoke.AbstractInvoke;
 import io.runebox.kasm.ir.ref.invoke.InvokeStatic;
 import io.runebox.kasm.ir.ref.stmt.*;
-import io.runebox.kasm.ir.stack.StackLocal;
 import io.runebox.kasm.ir.stack.insn.IfInsn;
-import io.runebox.kasm.ir.stack.insn.Instruction;
 import io.runebox.kasm.ir.stack.invoke.Invoke;
 import io.runebox.kasm.ir.stack.invoke.SpecialInvoke;
 import io.runebox.kasm.ir.util.StackInsnVisitor;
@@ -32,20 +30,27 @@ import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
-    private final BodyConverter converter;
+/**
+ * Instruction visitor that emulates the stack and converts the visited instructions into statements.
+ *
+ * @param <K> type of the converted instructions
+ * @param <I> type of the branch targets
+ * @param <L> type of the locals
+ */
+public class RefInsnWriter<K, I extends K, L> extends StackInsnVisitor<I, L> {
+    private final AbstractBodyConverter<K, L> converter;
 
     /**
      * Instance of the current visited instruction
      */
-    private Instruction instruction;
+    private K instruction;
 
-    public RefInsnWriter(BodyConverter converter) {
+    public RefInsnWriter(AbstractBodyConverter<K, L> converter) {
         super(null);
         this.converter = converter;
     }
 
-    public void setInstruction(Instruction instruction) {
+    public void setInstruction(K instruction) {
         this.instruction = instruction;
     }
 
@@ -55,18 +60,18 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
      * @param pops values popped from the stack
      * @param convertInstruction lambda that converts the instruction and returns the pushed value
      */
-    private void convertOrElseMerge(List<StackValue> pops, Supplier<Optional<StackValue>> convertInstruction) {
-        StackDelta delta = converter.getStackDeltaMap().get(instruction);
+    private void convertOrElseMerge(List<StackValue<K>> pops, Supplier<Optional<StackValue<K>>> convertInstruction) {
+        StackDelta<K> delta = converter.getStackDeltaMap().get(instruction);
 
         if (delta == null) {
-            Optional<StackValue> push = convertInstruction.get();
-            delta = new StackDelta(pops, push);
+            Optional<StackValue<K>> push = convertInstruction.get();
+            delta = new StackDelta<>(pops, push);
             converter.getStackDeltaMap().put(instruction, delta);
         } else {
             delta.merge(converter, pops);
         }
 
-        for (StackValue pop : pops) {
+        for (StackValue<K> pop : pops) {
             List<RWCell<Expression>> references = pop.getReferences();
 
             // if a value is referenced multiple times, move it to a local.
@@ -89,34 +94,34 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     @Override
     public void visitPush(PushableConstant constant) {
         convertOrElseMerge(List.of(), () ->
-                Optional.of(new StackValue(instruction, new ConstantExpr(constant))));
+                Optional.of(new StackValue<>(instruction, new ConstantExpr(constant))));
 
         super.visitPush(constant);
     }
 
     @Override
     public void visitNeg(Type type) {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
         convertOrElseMerge(List.of(value), () -> {
             NegExpr expr = new NegExpr(value.getValue());
             value.addReference(expr.getValueCell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
 
         super.visitNeg(type);
     }
 
     private void convertBinaryMathExpr(BiFunction<Expression, Expression, AbstractBinaryExpr> newMathExpression) {
-        StackValue value2 = converter.pop();
-        StackValue value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
+        StackValue<K> value1 = converter.pop();
 
         convertOrElseMerge(List.of(value2, value1), () -> {
             AbstractBinaryExpr expr = newMathExpression.apply(value1.getValue(), value2.getValue());
             value1.addReference(expr.getValue1Cell());
             value2.addReference(expr.getValue2Cell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
     }
 
@@ -206,7 +211,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitNewArray(ArrayType type, int initializedDimensions) {
-        List<StackValue> dimensions = new ArrayList<>(initializedDimensions);
+        List<StackValue<K>> dimensions = new ArrayList<>(initializedDimensions);
         for (int i = 0; i < initializedDimensions; i++) {
             dimensions.add(converter.pop());
         }
@@ -215,32 +220,32 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
         convertOrElseMerge(dimensions, () -> {
             List<Expression> dimensionSizes = dimensions.stream()
-                    .map(StackValue::getValue)
+                    .map(StackValue<K>::getValue)
                     .collect(Collectors.toList());
 
             NewArrayExpr expr = new NewArrayExpr(type, dimensionSizes);
 
-            Iterator<StackValue> valueIter = dimensions.iterator();
+            Iterator<StackValue<K>> valueIter = dimensions.iterator();
             Iterator<RWCell<Expression>> cellIter = expr.getDimensionSizeCells().iterator();
             while(valueIter.hasNext()) {
                 valueIter.next().addReference(cellIter.next());
             }
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
         super.visitNewArray(type, initializedDimensions);
     }
 
     @Override
     public void visitArrayLength() {
-        StackValue array = converter.pop();
+        StackValue<K> array = converter.pop();
 
         convertOrElseMerge(List.of(array), () -> {
             ArrayLengthExpr expr = new ArrayLengthExpr(array.getValue());
 
             array.addReference(expr.getArrayCell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
 
         super.visitArrayLength();
@@ -248,8 +253,8 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitArrayLoad(Type type) {
-        StackValue index = converter.pop();
-        StackValue array = converter.pop();
+        StackValue<K> index = converter.pop();
+        StackValue<K> array = converter.pop();
 
         convertOrElseMerge(List.of(index, array), () -> {
             ArrayBoxExpr expr = new ArrayBoxExpr(array.getValue(), index.getValue());
@@ -257,7 +262,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
             array.addReference(expr.getArrayCell());
             index.addReference(expr.getIndexCell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
 
         super.visitArrayLoad(type);
@@ -265,9 +270,9 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitArrayStore(Type type) {
-        StackValue value = converter.pop();
-        StackValue index = converter.pop();
-        StackValue array = converter.pop();
+        StackValue<K> value = converter.pop();
+        StackValue<K> index = converter.pop();
+        StackValue<K> array = converter.pop();
 
         convertOrElseMerge(List.of(value, index, array), () -> {
             ArrayBoxExpr expr = new ArrayBoxExpr(array.getValue(), index.getValue());
@@ -286,8 +291,8 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitSwap() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
         converter.push(value1);
         converter.push(value2);
 
@@ -303,7 +308,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDup() {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
         converter.push(value);
         converter.push(value);
 
@@ -312,8 +317,8 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDupX1() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
 
         converter.push(value1);
 
@@ -325,9 +330,9 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDupX2() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
-        StackValue value3 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
+        StackValue<K> value3 = converter.pop();
 
         converter.push(value1);
 
@@ -340,8 +345,8 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDup2() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
 
         converter.push(value2);
         converter.push(value1);
@@ -354,9 +359,9 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDup2X1() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
-        StackValue value3 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
+        StackValue<K> value3 = converter.pop();
 
         converter.push(value2);
         converter.push(value1);
@@ -370,10 +375,10 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitDup2X2() {
-        StackValue value1 = converter.pop();
-        StackValue value2 = converter.pop();
-        StackValue value3 = converter.pop();
-        StackValue value4 = converter.pop();
+        StackValue<K> value1 = converter.pop();
+        StackValue<K> value2 = converter.pop();
+        StackValue<K> value3 = converter.pop();
+        StackValue<K> value4 = converter.pop();
 
         converter.push(value2);
         converter.push(value1);
@@ -387,18 +392,18 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     }
 
     @Override
-    public void visitLoad(Type type, StackLocal stackLocal) {
+    public void visitLoad(Type type, L stackLocal) {
         convertOrElseMerge(List.of(), () -> {
             RefLocal refLocal = converter.getLocal(stackLocal);
-            return Optional.of(new StackValue(instruction, refLocal));
+            return Optional.of(new StackValue<>(instruction, refLocal));
         });
 
         super.visitLoad(type, stackLocal);
     }
 
     @Override
-    public void visitStore(Type type, StackLocal stackLocal) {
-        StackValue value = converter.pop();
+    public void visitStore(Type type, L stackLocal) {
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             RefLocal refLocal = converter.getLocal(stackLocal);
@@ -414,7 +419,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     }
 
     @Override
-    public void visitIncrement(StackLocal stackLocal, int value) {
+    public void visitIncrement(L stackLocal, int value) {
         convertOrElseMerge(List.of(), () -> {
             RefLocal refLocal = converter.getLocal(stackLocal);
             AssignStmt statement = new AssignStmt(refLocal, new AddExpr(refLocal, new ConstantExpr(new IntConstant(1))));
@@ -431,7 +436,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
         convertOrElseMerge(List.of(), () -> {
             NewExpr expr = new NewExpr(type);
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
 
         super.visitNew(type);
@@ -439,28 +444,28 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitInstanceOf(RefType type) {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             InstanceOfExpr expr = new InstanceOfExpr(type, value.getValue());
 
             value.addReference(expr.getValueCell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
 
         super.visitInstanceOf(type);
     }
 
     private void visitCast(Type type) {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             CastExpr expr = new CastExpr(type, value.getValue());
 
             value.addReference(expr.getValueCell());
 
-            return Optional.of(new StackValue(instruction, expr));
+            return Optional.of(new StackValue<>(instruction, expr));
         });
     }
 
@@ -480,10 +485,10 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitReturn(Optional<Type> type) {
-        Optional<StackValue> valueOpt = type.map(x -> converter.pop());
+        Optional<StackValue<K>> valueOpt = type.map(x -> converter.pop());
 
         convertOrElseMerge(valueOpt.map(List::of).orElseGet(List::of), () -> {
-            ReturnStmt stmt = new ReturnStmt(valueOpt.map(StackValue::getValue));
+            ReturnStmt stmt = new ReturnStmt(valueOpt.map(StackValue<K>::getValue));
 
             valueOpt.ifPresent(value -> value.addReference(stmt.getValueCell().get()));
 
@@ -496,7 +501,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitThrow() {
-        StackValue exception = converter.pop();
+        StackValue<K> exception = converter.pop();
 
         convertOrElseMerge(List.of(exception), () -> {
             ThrowStmt stmt = new ThrowStmt(exception.getValue());
@@ -512,7 +517,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitMonitorEnter() {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             MonitorEnterStmt stmt = new MonitorEnterStmt(value.getValue());
@@ -528,7 +533,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitMonitorExit() {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             MonitorExitStmt stmt = new MonitorExitStmt(value.getValue());
@@ -547,16 +552,16 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
         if (isStatic) {
             convertOrElseMerge(List.of(), () -> {
                 StaticFieldExpr expr = new StaticFieldExpr(fieldRef);
-                return Optional.of(new StackValue(instruction, expr));
+                return Optional.of(new StackValue<>(instruction, expr));
             });
         } else {
-            StackValue instance = converter.pop();
+            StackValue<K> instance = converter.pop();
             convertOrElseMerge(List.of(instance), () -> {
                 InstanceFieldExpr expr = new InstanceFieldExpr(fieldRef, instance.getValue());
 
                 instance.addReference(expr.getInstanceCell());
 
-                return Optional.of(new StackValue(instruction, expr));
+                return Optional.of(new StackValue<>(instruction, expr));
             });
         }
 
@@ -565,7 +570,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
 
     @Override
     public void visitFieldSet(FieldRef fieldRef, boolean isStatic) {
-        StackValue value = converter.pop();
+        StackValue<K> value = converter.pop();
 
         if (isStatic) {
             convertOrElseMerge(List.of(value), () -> {
@@ -578,7 +583,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
                 return Optional.empty();
             });
         } else {
-            StackValue instance = converter.pop();
+            StackValue<K> instance = converter.pop();
 
             convertOrElseMerge(List.of(value, instance), () -> {
                 InstanceFieldExpr expr = new InstanceFieldExpr(fieldRef, instance.getValue());
@@ -599,15 +604,15 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     public void visitInvokeInsn(Invoke stackInvoke) {
         MethodDescriptor descriptor = stackInvoke.getDescriptor();
 
-        List<StackValue> argumentValues = descriptor.getParameterTypes().stream()
+        List<StackValue<K>> argumentValues = descriptor.getParameterTypes().stream()
                 .map(x -> converter.pop())
                 .collect(Collectors.toList());
         Collections.reverse(argumentValues);
 
-        Optional<StackValue> instanceOpt = stackInvoke instanceof io.runebox.kasm.ir.stack.invoke.AbstractInstanceInvoke ?
+        Optional<StackValue<K>> instanceOpt = stackInvoke instanceof io.runebox.kasm.ir.stack.invoke.AbstractInstanceInvoke ?
                 Optional.of(converter.pop()) : Optional.empty();
 
-        List<StackValue> allPops = new ArrayList<>(argumentValues);
+        List<StackValue<K>> allPops = new ArrayList<>(argumentValues);
         instanceOpt.ifPresent(allPops::add);
         convertOrElseMerge(allPops, () -> {
             AbstractInvoke refInvoke = convertAbstractInvoke(stackInvoke, argumentValues, instanceOpt);
@@ -617,7 +622,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
                 instanceOpt.get().addReference(instanceCell);
             }
 
-            Iterator<StackValue> argIter = argumentValues.iterator();
+            Iterator<StackValue<K>> argIter = argumentValues.iterator();
             Iterator<RWCell<Expression>> cellIter = refInvoke.getArgumentCells().iterator();
             while(argIter.hasNext()) {
                 argIter.next().addReference(cellIter.next());
@@ -627,7 +632,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
                 RefLocal local = converter.newLocal();
                 AssignStmt stmt = new AssignStmt(local, new InvokeExpr(refInvoke));
                 converter.addStatement(instruction, stmt);
-                return Optional.of(new StackValue(instruction, local));
+                return Optional.of(new StackValue<>(instruction, local));
             } else {
                 InvokeStmt stmt = new InvokeStmt(refInvoke);
                 converter.addStatement(instruction, stmt);
@@ -638,9 +643,9 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
         super.visitInvokeInsn(stackInvoke);
     }
 
-    private AbstractInvoke convertAbstractInvoke(Invoke stackInvoke, List<StackValue> argumentValues, Optional<StackValue> instanceOpt) {
+    private AbstractInvoke convertAbstractInvoke(Invoke stackInvoke, List<StackValue<K>> argumentValues, Optional<StackValue<K>> instanceOpt) {
         List<Expression> arguments = argumentValues.stream()
-                .map(StackValue::getValue)
+                .map(StackValue<K>::getValue)
                 .collect(Collectors.toList());
 
         if (stackInvoke instanceof io.runebox.kasm.ir.stack.invoke.AbstractInstanceInvoke) {
@@ -670,7 +675,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     }
 
     @Override
-    public void visitGoto(Instruction target) {
+    public void visitGoto(I target) {
         convertOrElseMerge(List.of(), () -> {
             GotoStmt stmt = new GotoStmt(null);
 
@@ -684,13 +689,13 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     }
 
     @Override
-    public void visitIf(IfInsn.Condition stackCondition, Instruction target) {
-        Optional<StackValue> value2Opt = stackCondition.getCompareValue() instanceof IfInsn.StackValue ?
+    public void visitIf(IfInsn.Condition stackCondition, I target) {
+        Optional<StackValue<K>> value2Opt = stackCondition.getCompareValue() instanceof IfInsn.StackValue ?
                 Optional.of(converter.pop()) : Optional.empty();
 
-        StackValue value1 = converter.pop();
+        StackValue<K> value1 = converter.pop();
 
-        List<StackValue> allPops = new ArrayList<>();
+        List<StackValue<K>> allPops = new ArrayList<>();
         allPops.add(value1);
         value2Opt.ifPresent(allPops::add);
 
@@ -710,7 +715,7 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
         super.visitIf(stackCondition, target);
     }
 
-    private Expression convertIfCompareValue(IfInsn.Condition stackCondition, Optional<StackValue> value2Opt) {
+    private Expression convertIfCompareValue(IfInsn.Condition stackCondition, Optional<StackValue<K>> value2Opt) {
         IfInsn.CompareValue compareValue = stackCondition.getCompareValue();
         if (compareValue instanceof IfInsn.StackValue) {
             return value2Opt.get().getValue();
@@ -742,8 +747,8 @@ public class RefInsnWriter extends StackInsnVisitor<Instruction, StackLocal> {
     }
 
     @Override
-    public void visitSwitch(Map<Integer, Instruction> targetTable, Instruction defaultTarget) {
-        StackValue value = converter.pop();
+    public void visitSwitch(Map<Integer, I> targetTable, I defaultTarget) {
+        StackValue<K> value = converter.pop();
 
         convertOrElseMerge(List.of(value), () -> {
             LinkedHashMap<Integer, Statement> refBranchTable = new LinkedHashMap<>();
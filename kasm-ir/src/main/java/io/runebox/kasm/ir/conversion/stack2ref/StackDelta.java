@@ -9,45 +9,56 @@ import java.util.Optional;
 
 /**
  * Stores the changes that an instruction applies to the stack.
+ *
+ * @param <K> type of the instructions
  */
-public class StackDelta {
+public class StackDelta<K> {
     /**
      * Values popped by the instruction.
      */
-    private List<StackValue> pops;
+    private List<StackValue<K>> pops;
 
     /**
      * Value pushed by the instruction.
      */
-    private Optional<StackValue> push;
+    private Optional<StackValue<K>> push;
 
-    public StackDelta(List<StackValue> pops, Optional<StackValue> push) {
+    public StackDelta(List<StackValue<K>> pops, Optional<StackValue<K>> push) {
         this.pops = pops;
         this.push = push;
     }
 
-    public Optional<StackValue> getPush() {
+    public Optional<StackValue<K>> getPush() {
         return push;
     }
 
-    public void merge(BodyConverter converter, List<StackValue> pops) {
-        if (pops.size() != this.pops.size()) {
+    public void merge(AbstractBodyConverter<K, ?> converter, List<StackValue<K>> pops) {
+        merge(converter, this.pops, pops);
+    }
+
+    /**
+     * Merge the values of two paths, so that values that differ get stored in the same local.
+     *
+     * @param converter that currently converts the instructions
+     * @param valuesA values of the first path
+     * @param valuesB values of the second path
+     * @param <K> type of the instructions
+     */
+    public static <K> void merge(AbstractBodyConverter<K, ?> converter, List<StackValue<K>> valuesA, List<StackValue<K>> valuesB) {
+        if (valuesA.size() != valuesB.size()) {
             // Two stack frames should be merged that do not have equal stack heights.
             // This would not be able to pass the classfile verifier.
             throw new IllegalArgumentException("Illegal bytecode");
         }
 
-        Iterator<StackValue> thisPopIter = this.pops.iterator();
-        Iterator<StackValue> thatPopIter = pops.iterator();
-        while (thisPopIter.hasNext()) {
-            StackValue thisPop = thisPopIter.next();
-            StackValue thatPop = thatPopIter.next();
-
-            merge(converter, thisPop, thatPop);
+        Iterator<StackValue<K>> iterA = valuesA.iterator();
+        Iterator<StackValue<K>> iterB = valuesB.iterator();
+        while (iterA.hasNext()) {
+            merge(converter, iterA.next(), iterB.next());
         }
     }
 
-    private void merge(BodyConverter converter, StackValue valueA, StackValue valueB) {
+    private static <K> void merge(AbstractBodyConverter<K, ?> converter, StackValue<K> valueA, StackValue<K> valueB) {
         Expression exprA = valueA.getValue();
         Expression exprB = valueB.getValue();
 
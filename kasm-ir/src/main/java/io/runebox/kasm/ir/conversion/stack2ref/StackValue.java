@@ -4,7 +4,6 @@ import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.ref.Expression;
 import io.runebox.kasm.ir.ref.RefLocal;
 import io.runebox.kasm.ir.ref.stmt.AssignStmt;
-import io.runebox.kasm.ir.stack.insn.Instruction;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,12 +11,14 @@ import java.util.Optional;
 
 /**
  * An expression that represents a value on the stack and all references to it.
+ *
+ * @param <K> type of the instructions
  */
-public class StackValue {
+public class StackValue<K> {
     /**
      * Instruction that created the value.
      */
-    private Instruction instruction;
+    private K instruction;
 
     private Optional<AssignStmt> assignStatement = Optional.empty();
 
@@ -31,12 +32,12 @@ public class StackValue {
      */
     private List<RWCell<Expression>> references = new ArrayList<>();
 
-    public StackValue(Instruction instruction, Expression value) {
+    public StackValue(K instruction, Expression value) {
         this.instruction = instruction;
         this.value = value;
     }
 
-    public Instruction getInstruction() {
+    public K getInstruction() {
         return instruction;
     }
 
@@ -74,7 +75,7 @@ public class StackValue {
      * @param local that will get assigned to that statement
      * @return statement that stores the value in the local
      */
-    public AssignStmt storeInLocal(BodyConverter converter, RefLocal local) {
+    public AssignStmt storeInLocal(AbstractBodyConverter<K, ?> converter, RefLocal local) {
         Expression oldValue = this.value;
         this.setValue(local);
 
@@ -86,9 +87,7 @@ public class StackValue {
             AssignStmt assignment = new AssignStmt(local, oldValue);
             this.assignStatement = Optional.of(assignment);
 
-            converter.getConvertedStatements()
-                    .computeIfAbsent(this.instruction, x -> new ArrayList<>())
-                    .add(assignment);
+            converter.addStatement(this.instruction, assignment);
 
             return assignment;
         }
@@ -7,9 +7,14 @@ import io.runebox.kasm.ir.ref.RefLocal;
 import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.stmt.AssignStmt;
 import io.runebox.kasm.ir.util.CommonOperations;
+import io.runebox.kasm.ir.util.RCell;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * A PostProcessor that inlines values stored in a local and that are only referenced by the immediately following statement.
@@ -22,33 +27,46 @@ import java.util.Map;
  */
 public class DirectReuseInliningPostProcessor implements PostProcessor {
     @Override
-    public void process(RefBody body) {
+    public Set<RefAnalysis<?>> getRequiredAnalyses() {
+        return Set.of(RefAnalysis.LOCAL_READS, RefAnalysis.LOCAL_WRITES);
+    }
+
+    @Override
+    public boolean process(RefBody body, RefAnalysisCache analyses) {
         final InsertList<Statement> statements = body.getStatements();
-        final Map<RefLocal, List<Statement>> localReadMap = CommonOperations.getLocalReadMap(body);
-        final Map<RefLocal, List<AssignStmt>> localWriteMap = CommonOperations.getLocalWriteMap(body);
+        final Map<RefLocal, List<Statement>> localReadMap = analyses.get(RefAnalysis.LOCAL_READS);
+        final Map<RefLocal, List<AssignStmt>> localWriteMap = analyses.get(RefAnalysis.LOCAL_WRITES);
 
-        List.copyOf(body.getLocals()).forEach(local -> {
+        boolean modified = false;
+        for (RefLocal local : List.copyOf(body.getLocals())) {
             List<Statement> readingStatements = localReadMap.getOrDefault(local, List.of());
             List<AssignStmt> writingStatements = localWriteMap.getOrDefault(local, List.of());
             if (writingStatements.size() != 1 || readingStatements.size() != 1) {
                 // The local is read or written none or multiple times, so we cannot inline it.
-                return;
+                continue;
             }
 
             Statement readingStatement = readingStatements.get(0);
             AssignStmt writingStatement = writingStatements.get(0);
             if (statements.getNext(writingStatement) != readingStatement) {
                 // The statement that reads from the local does not directly succeed the writing statements.
-                return;
+                continue;
             }
 
-            readingStatement.getAllReadValueCells().stream()
+            List<RCell<Expression>> readCells = readingStatement.getAllReadValueCells().stream()
                     .filter(cell -> cell.get() == local)
-                    .findAny().get()
-                    .w(Expression.class).set(writingStatement.getValue());
+                    .collect(Collectors.toList());
+            if (readCells.size() != 1) {
+                // The statement reads the local several times, e.g. the instance in "local.field = local.field + 1".
+                continue;
+            }
+
+            readCells.get(0).w(Expression.class).set(writingStatement.getValue());
 
             CommonOperations.removeStatement(body, writingStatement);
             CommonOperations.removeLocal(body, local);
-        });
+            modified = true;
+        }
+        return modified;
     }
 }
@@ -6,12 +6,13 @@ import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.ref.RefLocal;
 import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.stmt.AssignStmt;
-import io.runebox.kasm.ir.util.CommonOperations;
-import io.runebox.kasm.ir.util.LocalStateAnalysis;
-import io.runebox.kasm.ir.util.RefCfgGraph;
+import io.runebox.kasm.ir.util.LocalStateAnalysis.State;
+import io.runebox.kasm.ir.util.ReachingDefinitionAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+import io.runebox.kasm.ir.util.RefUtils;
 
-import java.util.ArrayList;
-import java.util.Set;
+import java.util.*;
 
 /**
  * This postprocessor detects uses of locals that are independent from each other.
@@ -47,50 +48,70 @@ import java.util.Set;
  */
 public class LocalPartitioningPostProcessor implements PostProcessor {
     @Override
-    public void process(RefBody body) {
-        RefCfgGraph graph = new RefCfgGraph(body);
-        LocalStateAnalysis stateAnalysis = new LocalStateAnalysis(graph);
+    public Set<RefAnalysis<?>> getRequiredAnalyses() {
+        return Set.of(RefAnalysis.REACHING_DEFINITIONS);
+    }
+
+    /**
+     * Only expressions are replaced, so the control flow stays the same.
+     */
+    @Override
+    public Set<RefAnalysis<?>> getPreservedAnalyses() {
+        return Set.of(RefAnalysis.CFG, RefAnalysis.DOMINATORS, RefAnalysis.POST_DOMINATORS);
+    }
+
+    @Override
+    public boolean process(RefBody body, RefAnalysisCache analyses) {
+        ReachingDefinitionAnalysis definitions = analyses.get(RefAnalysis.REACHING_DEFINITIONS);
 
+        Map<Set<State>, RefLocal> groupLocals = new IdentityHashMap<>();
+        Set<RefLocal> partitionedLocals = Collections.newSetFromMap(new IdentityHashMap<>());
         for (RefLocal local : new ArrayList<>(body.getLocals())) {
-            LocalStateAnalysis.LocalStates localState = stateAnalysis.getLocalStates(local);
-            for (Set<LocalStateAnalysis.State> group : localState.getGroups()) {
-                processGroup(body, local, localState, group);
+            for (Set<State> group : definitions.getGroups(local)) {
+                groupLocals.put(group, processGroup(body, group));
+                partitionedLocals.add(local);
             }
         }
+
+        if (partitionedLocals.isEmpty()) {
+            return false;
+        }
+
+        // Update all references that read from the partitioned locals
+        for (Statement statement : body.getStatements()) {
+            for (RCell<Expression> cell : statement.getAllReadValueCells()) {
+                if (cell.get() instanceof RefLocal) {
+                    definitions.getReadGroup(statement, (RefLocal) cell.get())
+                            .ifPresent(group -> cell.w(RefLocal.class).set(groupLocals.get(group)));
+                }
+            }
+        }
+
+        // Removes the old locals if they are no longer used.
+        Set<Expression> usedExpressions = Collections.newSetFromMap(new IdentityHashMap<>());
+        RefUtils.getExpressionCells(body).forEach(cell -> usedExpressions.add(cell.get()));
+        body.getLocals().removeIf(local -> partitionedLocals.contains(local) && !usedExpressions.contains(local));
+        return true;
     }
 
     /**
-     * Assign a new local to one group of distinct uses of a local.
+     * Assign a new local to the assign statements of one group of distinct uses of a local.
      *
      * @param body the body of the method
-     * @param local the locals whose states the group represents
-     * @param localState a analysis of the states of the local
-     * @param group a groups of states that the locals may have
+     * @param group a groups of definitions that reach common statements
+     * @return the local for the group
      */
-    private void processGroup(RefBody body, RefLocal local, LocalStateAnalysis.LocalStates localState, Set<LocalStateAnalysis.State> group) {
+    private RefLocal processGroup(RefBody body, Set<State> group) {
         RefLocal newLocal = getLocalForGroup(body, group);
 
-        // Update the assign instructions
-        for (LocalStateAnalysis.State state : group) {
-            if (state instanceof LocalStateAnalysis.State.Stmt) {
-                AssignStmt assignment = ((LocalStateAnalysis.State.Stmt) state).getStatement();
+        for (State state : group) {
+            if (state instanceof State.Stmt) {
+                AssignStmt assignment = ((State.Stmt) state).getStatement();
                 assignment.setVariable(newLocal);
             }
         }
 
-        // Update all references within the group that read from the local
-        for (LocalStateAnalysis.State state : group) {
-            for (Statement statement : localState.getStatement(state)) {
-                for (RCell<Expression> cell : statement.getAllReadValueCells()) {
-                    if (cell.get() == local) {
-                        cell.w(RefLocal.class).set(newLocal);
-                    }
-                }
-            }
-        }
-
-        // Removes the old local if it no longer used.
-        CommonOperations.removeLocal(body, local);
+        return newLocal;
     }
 
     /**
@@ -100,12 +121,12 @@ public class LocalPartitioningPostProcessor implements PostProcessor {
      * @param assignGroup the assign group for which a local is requested
      * @return a not yet typed local that will be used for this assignment group
      */
-    private RefLocal getLocalForGroup(RefBody body, Set<LocalStateAnalysis.State> assignGroup) {
-        for (LocalStateAnalysis.State assign : assignGroup) {
-            if (assign instanceof LocalStateAnalysis.State.This) {
+    private RefLocal getLocalForGroup(RefBody body, Set<State> assignGroup) {
+        for (State assign : assignGroup) {
+            if (assign instanceof State.This) {
                 return body.getThisLocal().get();
-            } else if (assign instanceof LocalStateAnalysis.State.Parameter) {
-                return  body.getArgumentLocals().get(((LocalStateAnalysis.State.Parameter) assign).getIndex());
+            } else if (assign instanceof State.Parameter) {
+                return  body.getArgumentLocals().get(((State.Parameter) assign).getIndex());
             }
         }
 
@@ -5,6 +5,10 @@ import io.runebox.kasm.ir.ref.RefBody;
 import io.runebox.kasm.ir.ref.RefLocal;
 import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+
+import java.util.Set;
 
 /**
  * Compute and assign types to all locals.
@@ -15,8 +19,17 @@ import io.runebox.kasm.ir.ref.stmt.AssignStmt;
  * It will split such locals into multiple ones that may each have different types.
  */
 public class LocalTypingPostProcessor implements PostProcessor {
+    /**
+     * Only the types and the list of locals change, so the control flow stays the same.
+     */
+    @Override
+    public Set<RefAnalysis<?>> getPreservedAnalyses() {
+        return Set.of(RefAnalysis.CFG, RefAnalysis.DOMINATORS, RefAnalysis.POST_DOMINATORS);
+    }
+
     @Override
-    public void process(RefBody body) {
+    public boolean process(RefBody body, RefAnalysisCache analyses) {
+        boolean modified = false;
         for (Statement statement : body.getStatements()) {
             if (statement instanceof AssignStmt) {
                 AssignStmt assignment = (AssignStmt) statement;
@@ -24,12 +37,13 @@ public class LocalTypingPostProcessor implements PostProcessor {
                 if (assignment.getVariable() instanceof RefLocal) {
                     RefLocal local = (RefLocal) assignment.getVariable();
                     Type requiredType = assignment.getValue().getType();
-                    mergeType(local, requiredType);
+                    modified |= mergeType(local, requiredType);
                 }
             }
         }
 
-        body.getLocals().removeIf(local -> local.getType() == null);
+        modified |= body.getLocals().removeIf(local -> local.getType() == null);
+        return modified;
     }
 
     /**
@@ -37,28 +51,29 @@ public class LocalTypingPostProcessor implements PostProcessor {
      *
      * @param local the local whose type gets modified
      * @param mergeType the type that the local should be able to store
+     * @return whether the type of the local changed
      */
-    private void mergeType(RefLocal local, Type mergeType) {
+    private boolean mergeType(RefLocal local, Type mergeType) {
         Type currentType = local.getType();
         if (currentType == null) {
             local.setType(mergeType);
-            return;
+            return true;
         }
 
         if (mergeType.equals(currentType)) {
-            return;
+            return false;
         }
 
         if (mergeType instanceof RefType && currentType instanceof RefType) {
             // We have two different RefTypes, so we just set the type to 'java.lang.Object'.
             // Computing the 'greatest' common supertype would require that we have all their superclasses e.g. on the classpath.
             local.setType(ObjectType.OBJECT);
-            return;
+            return !currentType.equals(ObjectType.OBJECT);
         }
 
         if (mergeType instanceof IntLikeType && currentType instanceof IntLikeType) {
             local.setType(IntType.getInstance());
-            return;
+            return !currentType.equals(IntType.getInstance());
         }
 
         throw new AssertionError("Cannot merge types " + mergeType + " and " + currentType);
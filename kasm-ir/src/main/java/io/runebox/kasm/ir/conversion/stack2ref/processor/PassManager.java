@@ -0,0 +1,129 @@
+package io.runebox.kasm.ir.conversion.stack2ref.processor;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.PostProcessorEvent;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Run a sequence of {@link PostProcessor PostProcessors} on a body, sharing the analyses between them.
+ *
+ * Analyses are only invalidated if a post processor reports that it modified the body,
+ * and analyses that the post processor declares as preserved survive the modification.
+ *
+ * Like the post processors it runs, an instance must only be used by one thread at a time.
+ *
+ * Every post processor run is reported as a {@link Stage#POST_PROCESS} stage and as a {@link PostProcessorEvent},
+ * including the computation of the analyses it requires.
+ */
+public class PassManager {
+    private final List<PostProcessor> postProcessors;
+
+    public PassManager(List<PostProcessor> postProcessors) {
+        this.postProcessors = List.copyOf(postProcessors);
+    }
+
+    public List<PostProcessor> getPostProcessors() {
+        return postProcessors;
+    }
+
+    /**
+     * Apply all post processors to a body.
+     *
+     * @param body the body to patch
+     * @return the analyses that are still valid for the patched body
+     */
+    public RefAnalysisCache run(RefBody body) {
+        RefAnalysisCache analyses = new RefAnalysisCache(body);
+        run(null, null, body, analyses);
+        return analyses;
+    }
+
+    /**
+     * Apply all post processors to the body of a method.
+     * The method is only used to describe the body in flight recorder events.
+     *
+     * @param classfile the class containing the method
+     * @param method the method containing the body
+     * @param body the body to patch
+     * @return the analyses that are still valid for the patched body
+     */
+    public RefAnalysisCache run(Classfile classfile, Method method, RefBody body) {
+        RefAnalysisCache analyses = new RefAnalysisCache(body);
+        run(classfile, method, body, analyses);
+        return analyses;
+    }
+
+    /**
+     * Apply all post processors to a body, reusing analyses that were already computed.
+     *
+     * @param body the body to patch
+     * @param analyses analyses of the body that are currently valid
+     */
+    public void run(RefBody body, RefAnalysisCache analyses) {
+        run(null, null, body, analyses);
+    }
+
+    private void run(Classfile classfile, Method method, RefBody body, RefAnalysisCache analyses) {
+        if (analyses.getBody() != body) {
+            throw new IllegalArgumentException("The analyses belong to another body");
+        }
+
+        for (PostProcessor postProcessor : postProcessors) {
+            PostProcessorEvent event = new PostProcessorEvent();
+            event.begin();
+            Optional<ConversionMetrics.Probe> probe = ConversionMetrics.start();
+            Set<RefLocal> localsBefore = probe.isPresent() ? getLocals(body) : Set.of();
+            int statementsBefore = body.getStatements().size();
+
+            for (RefAnalysis<?> analysis : postProcessor.getRequiredAnalyses()) {
+                analyses.get(analysis);
+            }
+
+            boolean modified = postProcessor.process(body, analyses);
+            if (modified) {
+                analyses.invalidateAllExcept(postProcessor.getPreservedAnalyses());
+            }
+
+            event.commit(classfile, method, postProcessor, body, modified);
+
+            if (probe.isPresent()) {
+                report(probe.get(), postProcessor, body, statementsBefore, localsBefore);
+            }
+        }
+    }
+
+    private static Set<RefLocal> getLocals(RefBody body) {
+        Set<RefLocal> locals = Collections.newSetFromMap(new IdentityHashMap<>());
+        locals.addAll(body.getLocals());
+        return locals;
+    }
+
+    private void report(ConversionMetrics.Probe probe, PostProcessor postProcessor, RefBody body,
+                        int statementsBefore, Set<RefLocal> localsBefore) {
+        probe.stop();
+
+        Set<RefLocal> localsAfter = getLocals(body);
+        int created = 0;
+        for (RefLocal local : localsAfter) {
+            if (!localsBefore.contains(local)) {
+                created++;
+            }
+        }
+        int removed = localsBefore.size() - (localsAfter.size() - created);
+
+        String name = postProcessor.getClass().getSimpleName();
+        probe.finish(Stage.POST_PROCESS, Optional.of(name), statementsBefore, body.getStatements().size(), created, removed);
+    }
+}
@@ -1,10 +1,47 @@
 package io.runebox.kasm.ir.conversion.stack2ref.processor;
 
 import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+
+import java.util.Set;
 
 /**
  * Apply patches to an already build RefBody
+ *
+ * An instance is only used by one thread at a time, but it is reused for many bodies.
+ * Any state must therefore be reset at the start of {@link #process(RefBody, RefAnalysisCache)}.
+ *
+ * Analyses of the body should be requested from the {@link RefAnalysisCache} instead of being computed,
+ * so they can be shared with other post processors.
  */
 public interface PostProcessor {
-    public void process(RefBody body);
+    /**
+     * Patch a body.
+     *
+     * @param body the body to patch
+     * @param analyses cached analyses of the body, they are valid when this method is called
+     * @return whether the body was modified
+     */
+    public boolean process(RefBody body, RefAnalysisCache analyses);
+
+    /**
+     * Get the analyses that {@link #process(RefBody, RefAnalysisCache)} requests.
+     * They are computed before the post processor runs.
+     *
+     * @return the required analyses
+     */
+    public default Set<RefAnalysis<?>> getRequiredAnalyses() {
+        return Set.of();
+    }
+
+    /**
+     * Get the analyses that stay valid if {@link #process(RefBody, RefAnalysisCache)} modified the body.
+     * All other analyses are invalidated after a modification.
+     *
+     * @return the preserved analyses
+     */
+    public default Set<RefAnalysis<?>> getPreservedAnalyses() {
+        return Set.of();
+    }
 }
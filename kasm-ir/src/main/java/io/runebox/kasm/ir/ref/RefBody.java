@@ -4,7 +4,7 @@ import io.runebox.kasm.ir.Body;
 import io.runebox.kasm.ir.type.Type;
 import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
 import io.runebox.kasm.ir.util.InsertList;
-import io.runebox.kasm.ir.util.LinkedInsertList;
+import io.runebox.kasm.ir.util.IntrusiveInsertList;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.ref.stmt.AssignStmt;
 
@@ -36,7 +36,7 @@ public class RefBody implements Body {
     /**
      * The statements of this method.
      */
-    private InsertList<Statement> statements = new LinkedInsertList<>();
+    private InsertList<Statement> statements = new IntrusiveInsertList<>();
 
     /**
      * The try-catch-blocks of this method.
@@ -58,11 +58,18 @@ public class RefBody implements Body {
      */
     private List<LineNumber> lineNumbers = new ArrayList<>();
 
+    /**
+     * Modifications through the setters and {@link #markModified()}.
+     * The modifications of replaced statements lists are added, so the total count never decreases.
+     */
+    private int modificationCount;
+
     public List<RefLocal> getLocals() {
         return locals;
     }
 
     public void setLocals(List<RefLocal> locals) {
+        modificationCount++;
         this.locals = locals;
     }
 
@@ -71,6 +78,7 @@ public class RefBody implements Body {
     }
 
     public void setThisLocal(Optional<RefLocal> thisLocal) {
+        modificationCount++;
         this.thisLocal = thisLocal;
     }
 
@@ -79,6 +87,7 @@ public class RefBody implements Body {
     }
 
     public void setArgumentLocals(List<RefLocal> argumentLocals) {
+        modificationCount++;
         this.argumentLocals = argumentLocals;
     }
 
@@ -87,6 +96,7 @@ public class RefBody implements Body {
     }
 
     public void setStatements(InsertList<Statement> statements) {
+        modificationCount += this.statements.getModificationCount() + 1;
         this.statements = statements;
     }
 
@@ -95,6 +105,7 @@ public class RefBody implements Body {
     }
 
     public void setTryCatchBlocks(List<TryCatchBlock> tryCatchBlocks) {
+        modificationCount++;
         this.tryCatchBlocks = tryCatchBlocks;
     }
 
@@ -103,6 +114,7 @@ public class RefBody implements Body {
     }
 
     public void setLocalVariables(List<LocalVariable> localVariables) {
+        modificationCount++;
         this.localVariables = localVariables;
     }
 
@@ -111,6 +123,7 @@ public class RefBody implements Body {
     }
 
     public void setLocalVariableAnnotations(List<LocalVariableAnnotation> localVariableAnnotations) {
+        modificationCount++;
         this.localVariableAnnotations = localVariableAnnotations;
     }
 
@@ -119,9 +132,20 @@ public class RefBody implements Body {
     }
 
     public void setLineNumbers(List<LineNumber> lineNumbers) {
+        modificationCount++;
         this.lineNumbers = lineNumbers;
     }
 
+    @Override
+    public int getModificationCount() {
+        return modificationCount + statements.getModificationCount();
+    }
+
+    @Override
+    public void markModified() {
+        modificationCount++;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
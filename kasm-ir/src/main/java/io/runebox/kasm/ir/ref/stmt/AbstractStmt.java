@@ -0,0 +1,10 @@
+package io.runebox.kasm.ir.ref.stmt;
+
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.util.ListNode;
+
+/**
+ * Base class of all statements, so that they can be stored in an {@link io.runebox.kasm.ir.util.IntrusiveInsertList}.
+ */
+public abstract class AbstractStmt extends ListNode implements Statement {
+}
@@ -3,11 +3,10 @@ package io.runebox.kasm.ir.ref.stmt;
 import io.runebox.kasm.ir.util.RCell;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.ref.Expression;
-import io.runebox.kasm.ir.ref.Statement;
 
 import java.util.Set;
 
-public class AbstractUnaryStmt implements Statement {
+public class AbstractUnaryStmt extends AbstractStmt {
     private Expression value;
 
     public AbstractUnaryStmt(Expression value) {
@@ -3,7 +3,6 @@ package io.runebox.kasm.ir.ref.stmt;
 import io.runebox.kasm.ir.util.RCell;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.ref.Expression;
-import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.Variable;
 
 import java.util.Optional;
@@ -14,7 +13,7 @@ import java.util.stream.Stream;
 /**
  * Assign a value to a variable
  */
-public class AssignStmt implements Statement {
+public class AssignStmt extends AbstractStmt {
     /**
      * Variable that will be reassigned
      */
@@ -10,7 +10,7 @@ import java.util.Set;
 /**
  * Unconditionally branch to another statement.
  */
-public class GotoStmt implements BranchStmt {
+public class GotoStmt extends AbstractStmt implements BranchStmt {
     /**
      * Branch to this statement.
      */
@@ -11,7 +11,7 @@ import java.util.Set;
 /**
  * Branch to another statement if a certain condition is true
  */
-public class IfStmt implements BranchStmt {
+public class IfStmt extends AbstractStmt implements BranchStmt {
     /**
      * Branch if this condition is true.
      */
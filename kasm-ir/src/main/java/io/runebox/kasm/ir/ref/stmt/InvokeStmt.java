@@ -2,7 +2,6 @@ package io.runebox.kasm.ir.ref.stmt;
 
 import io.runebox.kasm.ir.util.RCell;
 import io.runebox.kasm.ir.ref.Expression;
-import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.expr.InvokeExpr;
 import io.runebox.kasm.ir.ref.invoke.AbstractInvoke;
 
@@ -13,7 +12,7 @@ import java.util.Set;
  *
  * @see InvokeExpr to get the return value
  */
-public class InvokeStmt implements Statement {
+public class InvokeStmt extends AbstractStmt {
     private AbstractInvoke invoke;
 
     public InvokeStmt(AbstractInvoke invoke) {
@@ -3,7 +3,6 @@ package io.runebox.kasm.ir.ref.stmt;
 import io.runebox.kasm.ir.util.RCell;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.ref.Expression;
-import io.runebox.kasm.ir.ref.Statement;
 
 import java.util.Optional;
 import java.util.Set;
@@ -12,7 +11,7 @@ import java.util.stream.Collectors;
 /**
  * Return from a method.
  */
-public class ReturnStmt implements Statement {
+public class ReturnStmt extends AbstractStmt {
     /**
      * Value to be returned or empty for <tt>void</tt> method.
      */
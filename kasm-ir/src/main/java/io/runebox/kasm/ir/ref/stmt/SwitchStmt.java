@@ -14,7 +14,7 @@ import java.util.stream.Stream;
 /**
  * Compare an int value against a branch table or else branch to a default location.
  */
-public class SwitchStmt implements BranchStmt {
+public class SwitchStmt extends AbstractStmt implements BranchStmt {
     /**
      * Value that will be compared against the branch table.
      */
@@ -85,13 +85,13 @@ public class SwitchStmt implements BranchStmt {
 
     @Override
     public Set<Statement> getBranchTargets() {
-        return Stream.concat(getBranchTargets().stream(), Stream.of(getDefaultTarget()))
+        return Stream.concat(branchTable.values().stream(), Stream.of(getDefaultTarget()))
                 .collect(Collectors.toUnmodifiableSet());
     }
 
     @Override
     public Set<RWCell<Statement>> getBranchTargetsCells() {
-        return Stream.concat(getBranchTargetsCells().stream(), Stream.of(getDefaultTargetCell()))
+        return Stream.concat(getBranchTableCells().stream(), Stream.of(getDefaultTargetCell()))
                 .collect(Collectors.toUnmodifiableSet());
     }
 
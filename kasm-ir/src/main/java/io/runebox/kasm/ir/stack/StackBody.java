@@ -4,7 +4,7 @@ import io.runebox.kasm.ir.Body;
 import io.runebox.kasm.ir.type.Type;
 import io.runebox.kasm.ir.typeannotation.LocalVariableTypeAnnotation;
 import io.runebox.kasm.ir.util.InsertList;
-import io.runebox.kasm.ir.util.LinkedInsertList;
+import io.runebox.kasm.ir.util.IntrusiveInsertList;
 import io.runebox.kasm.ir.util.RWCell;
 import io.runebox.kasm.ir.stack.insn.Instruction;
 import io.runebox.kasm.ir.stack.insn.StoreInsn;
@@ -39,7 +39,7 @@ public class StackBody implements Body {
     /**
      * The instructions of this method
      */
-    private InsertList<Instruction> instructions = new LinkedInsertList<>();
+    private InsertList<Instruction> instructions = new IntrusiveInsertList<>();
 
     /**
      * The try-catch-blocks of this method.
@@ -61,11 +61,18 @@ public class StackBody implements Body {
      */
     private List<LineNumber> lineNumbers = new ArrayList<>();
 
+    /**
+     * Modifications through the setters and {@link #markModified()}.
+     * The modifications of replaced instructions lists are added, so the total count never decreases.
+     */
+    private int modificationCount;
+
     public List<StackLocal> getLocals() {
         return locals;
     }
 
     public void setLocals(List<StackLocal> locals) {
+        modificationCount++;
         this.locals = locals;
     }
 
@@ -74,6 +81,7 @@ public class StackBody implements Body {
     }
 
     public void setThisLocal(Optional<StackLocal> thisLocal) {
+        modificationCount++;
         this.thisLocal = thisLocal;
     }
 
@@ -82,6 +90,7 @@ public class StackBody implements Body {
     }
 
     public void setParameterLocals(List<StackLocal> parameterLocals) {
+        modificationCount++;
         this.parameterLocals = parameterLocals;
     }
 
@@ -90,6 +99,7 @@ public class StackBody implements Body {
     }
 
     public void setInstructions(InsertList<Instruction> instructions) {
+        modificationCount += this.instructions.getModificationCount() + 1;
         this.instructions = instructions;
     }
 
@@ -98,6 +108,7 @@ public class StackBody implements Body {
     }
 
     public void setTryCatchBlocks(List<TryCatchBlock> tryCatchBlocks) {
+        modificationCount++;
         this.tryCatchBlocks = tryCatchBlocks;
     }
 
@@ -106,6 +117,7 @@ public class StackBody implements Body {
     }
 
     public void setLocalVariables(List<LocalVariable> localVariables) {
+        modificationCount++;
         this.localVariables = localVariables;
     }
 
@@ -114,6 +126,7 @@ public class StackBody implements Body {
     }
 
     public void setLocalVariableAnnotations(List<LocalVariableAnnotation> localVariableAnnotations) {
+        modificationCount++;
         this.localVariableAnnotations = localVariableAnnotations;
     }
 
@@ -122,9 +135,20 @@ public class StackBody implements Body {
     }
 
     public void setLineNumbers(List<LineNumber> lineNumbers) {
+        modificationCount++;
         this.lineNumbers = lineNumbers;
     }
 
+    @Override
+    public int getModificationCount() {
+        return modificationCount + instructions.getModificationCount();
+    }
+
+    @Override
+    public void markModified() {
+        modificationCount++;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,11 +1,15 @@
 package io.runebox.kasm.ir.stack.insn;
 
 import io.runebox.kasm.ir.typeannotation.InsnTypeAnnotation;
+import io.runebox.kasm.ir.util.ListNode;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public abstract class AbstractInstruction implements Instruction {
+/**
+ * Base class of all instructions, so that they can be stored in an {@link io.runebox.kasm.ir.util.IntrusiveInsertList}.
+ */
+public abstract class AbstractInstruction extends ListNode implements Instruction {
     private List<InsnTypeAnnotation> typeAnnotations = new ArrayList<>();
 
     public List<InsnTypeAnnotation> getTypeAnnotations() {
@@ -1,185 +1,534 @@
 package io.runebox.kasm.ir.util;
 
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Build a Control-Flow-Graph of a method.
- * Each node in this graph corresponds to one instruction.
+ * Each node in this graph is a basic block: a sequence of instructions that can only be entered at its first
+ * instruction and that is left after its last instruction, unless an exception is thrown.
+ * All instructions of a block are protected by the same try/catch blocks.
+ *
+ * Instructions are numbered by their position in the method and blocks are numbered in the order of their first
+ * instruction, starting at zero with the block of the first instruction. Edges are stored in int arrays.
+ * Only reachable blocks have edges.
+ *
+ * The graph is not updated if the instructions of the method change, it must be built again.
  *
  * @param <I> type of instructions in the cfg graph
  */
 public abstract class AbstractCfgGraph<I> {
     /**
-     * Map instructions to their corresponding node.
-     * This map contains only instructions that can possibly be reached.
+     * The list that contains the instructions, used to find the index of an instruction.
+     */
+    private InsertList<I> list;
+
+    /**
+     * All instructions of the method in their order.
+     */
+    private List<I> instructions;
+
+    private int blockCount;
+
+    /**
+     * Index of the first instruction of each block, followed by the number of instructions.
      */
-    protected final Map<I, Node> nodes = new HashMap<>();
+    private int[] blockStarts;
 
-    private Collection<TryCatchBlock> tryCatchBlocks;
+    private BitSet reachableBlocks;
+
+    /**
+     * Number of reachable blocks that precede each block, followed by the number of all reachable blocks.
+     */
+    private int[] reachableBefore;
+
+    private Adjacency successors;
+    private Adjacency predecessors;
+
+    /**
+     * Handlers of the try/catch blocks that protect a block.
+     * They are not among the successors, so the predecessors of a handler are only blocks that branch or fall through to it.
+     */
+    private Adjacency handlers;
+
+    /**
+     * Blocks that start a handler of a try/catch block that protects reachable code.
+     */
+    private int[] handlerBlocks;
+
+    private int[] reversePostorder;
 
     /**
      * Start building the CFG graph.
      */
     protected void analyze() {
-        this.tryCatchBlocks = getTryCatchBlocks();
+        this.list = getInstructions();
+        this.instructions = new ArrayList<>(list);
+        if (instructions.isEmpty()) {
+            throw new IllegalStateException("Illegal end of method");
+        }
+
+        Collection<TryCatchBlock> tryCatchBlocks = getTryCatchBlocks();
+        findBlocks(tryCatchBlocks);
+        findReachableBlocks(tryCatchBlocks);
+        this.predecessors = successors.reverse(blockCount);
+        computeReversePostorder();
+    }
 
-        startAnalyzingFrom(getHeadInsn());
+    /**
+     * Split the instructions into blocks.
+     * Blocks start at branch targets, handlers, bounds of try/catch blocks and after instructions that branch or end the execution.
+     */
+    private void findBlocks(Collection<TryCatchBlock> tryCatchBlocks) {
+        int size = instructions.size();
+        boolean[] leaders = new boolean[size + 1];
+        leaders[0] = true;
+
+        for (int index = 0; index < size; index++) {
+            I instruction = instructions.get(index);
+            Collection<I> branchTargets = getBranchTargets(instruction);
+            if (!branchTargets.isEmpty() || !continuesExecution(instruction)) {
+                leaders[index + 1] = true;
+            }
+
+            for (I target : branchTargets) {
+                leaders[existingIndexOf(target)] = true;
+            }
+        }
 
-        List<TryCatchBlock> reachableTryCatchBlocks = tryCatchBlocks.stream()
-                .filter(block -> !isDeadCode(block.start, block.end))
-                .collect(Collectors.toList());
+        for (TryCatchBlock tryCatchBlock : tryCatchBlocks) {
+            leaders[existingIndexOf(tryCatchBlock.start)] = true;
+            leaders[existingIndexOf(tryCatchBlock.end) + 1] = true;
+            leaders[existingIndexOf(tryCatchBlock.handler)] = true;
+        }
+
+        int count = 0;
+        for (int index = 0; index < size; index++) {
+            if (leaders[index]) {
+                count++;
+            }
+        }
 
-        for (TryCatchBlock tryCatchBlock : reachableTryCatchBlocks) {
-            startAnalyzingFrom(tryCatchBlock.handler);
+        this.blockCount = count;
+        this.blockStarts = new int[count + 1];
+        int block = 0;
+        for (int index = 0; index < size; index++) {
+            if (leaders[index]) {
+                blockStarts[block++] = index;
+            }
         }
+        blockStarts[count] = size;
     }
 
-    private void startAnalyzingFrom(I start) {
-        Deque<Node> worklist = new ArrayDeque<>();
-        worklist.add(getOrCreateNode(start));
+    /**
+     * Find all blocks that can be reached from the first instruction,
+     * either directly or through handlers of try/catch blocks that protect reachable code.
+     */
+    private void findReachableBlocks(Collection<TryCatchBlock> tryCatchBlocks) {
+        this.reachableBlocks = new BitSet(blockCount);
+        EdgeList successorEdges = new EdgeList();
+        int[] worklist = new int[blockCount];
+
+        int tryCatchCount = tryCatchBlocks.size();
+        int[] protectedFirst = new int[tryCatchCount];
+        int[] protectedLast = new int[tryCatchCount];
+        int[] handlerBlocks = new int[tryCatchCount];
+        int i = 0;
+        for (TryCatchBlock tryCatchBlock : tryCatchBlocks) {
+            protectedFirst[i] = getBlock(existingIndexOf(tryCatchBlock.start));
+            protectedLast[i] = getBlock(existingIndexOf(tryCatchBlock.end));
+            handlerBlocks[i] = getBlock(existingIndexOf(tryCatchBlock.handler));
+            if (protectedFirst[i] > protectedLast[i]) {
+                throw new IllegalStateException("Illegal Range");
+            }
+            i++;
+        }
 
-        while (!worklist.isEmpty()) {
-            Node node = worklist.poll();
-            if (node.visited) {
-                // Node already visited
-                continue;
+        findReachableBlocks(0, worklist, successorEdges);
+
+        // Code within handlers may be protected by further try/catch blocks.
+        boolean[] reachedTryCatchBlocks = new boolean[tryCatchCount];
+        boolean reachedNewBlocks;
+        do {
+            reachedNewBlocks = false;
+            countReachableBlocks();
+
+            for (i = 0; i < tryCatchCount; i++) {
+                if (!reachedTryCatchBlocks[i] && containsReachableBlocks(protectedFirst[i], protectedLast[i])) {
+                    reachedTryCatchBlocks[i] = true;
+                    reachedNewBlocks = true;
+                    findReachableBlocks(handlerBlocks[i], worklist, successorEdges);
+                }
+            }
+        } while (reachedNewBlocks);
+
+        this.successors = successorEdges.toAdjacency(blockCount);
+
+        // Link the handlers once all blocks are known, since handlers may protect code reached by other handlers.
+        EdgeList handlerEdges = new EdgeList();
+        BitSet reachableHandlers = new BitSet(blockCount);
+        for (i = 0; i < tryCatchCount; i++) {
+            if (reachedTryCatchBlocks[i]) {
+                reachableHandlers.set(handlerBlocks[i]);
+                for (int block = protectedFirst[i]; block <= protectedLast[i]; block++) {
+                    if (reachableBlocks.get(block)) {
+                        handlerEdges.add(block, handlerBlocks[i]);
+                    }
+                }
             }
-            node.visited = true;
+        }
+        this.handlers = handlerEdges.toAdjacency(blockCount);
+        this.handlerBlocks = reachableHandlers.stream().toArray();
+    }
 
-            getReachableInstructions(node.getInstruction()).forEach(nextStmt -> {
-                if (nextStmt == null) {
+    /**
+     * Mark all blocks that can be reached from a block and record their successors.
+     */
+    private void findReachableBlocks(int start, int[] worklist, EdgeList successorEdges) {
+        if (reachableBlocks.get(start)) {
+            return;
+        }
+
+        int size = 0;
+        reachableBlocks.set(start);
+        worklist[size++] = start;
+
+        while (size > 0) {
+            int block = worklist[--size];
+            I last = instructions.get(blockStarts[block + 1] - 1);
+
+            if (continuesExecution(last)) {
+                if (block + 1 == blockCount) {
                     throw new IllegalStateException("Illegal end of method");
-                } else {
-                    Node nextNode = getOrCreateNode(nextStmt);
-                    worklist.add(nextNode);
+                }
+                successorEdges.add(block, block + 1);
+                if (!reachableBlocks.get(block + 1)) {
+                    reachableBlocks.set(block + 1);
+                    worklist[size++] = block + 1;
+                }
+            }
+
+            for (I target : getBranchTargets(last)) {
+                int targetBlock = getBlock(existingIndexOf(target));
+                successorEdges.add(block, targetBlock);
+                if (!reachableBlocks.get(targetBlock)) {
+                    reachableBlocks.set(targetBlock);
+                    worklist[size++] = targetBlock;
+                }
+            }
+        }
+    }
+
+    private void countReachableBlocks() {
+        this.reachableBefore = new int[blockCount + 1];
+        for (int block = 0; block < blockCount; block++) {
+            reachableBefore[block + 1] = reachableBefore[block] + (reachableBlocks.get(block) ? 1 : 0);
+        }
+    }
+
+    private boolean containsReachableBlocks(int firstBlock, int lastBlock) {
+        return reachableBefore[lastBlock + 1] - reachableBefore[firstBlock] > 0;
+    }
+
+    /**
+     * Order the reachable blocks such that each block except the first one and the handlers
+     * comes after at least one of its predecessors.
+     */
+    private void computeReversePostorder() {
+        countReachableBlocks();
+        int position = reachableBefore[blockCount];
+        this.reversePostorder = new int[position];
+
+        BitSet visited = new BitSet(blockCount);
+        int[] blockStack = new int[blockCount];
+        int[] edgeStack = new int[blockCount];
+
+        int[] roots = new int[handlerBlocks.length + 1];
+        System.arraycopy(handlerBlocks, 0, roots, 1, handlerBlocks.length);
+        for (int root : roots) {
+            if (visited.get(root)) {
+                continue;
+            }
 
-                    node.succeeding.add(nextNode);
-                    nextNode.preceding.add(node);
+            int size = 0;
+            visited.set(root);
+            blockStack[size] = root;
+            edgeStack[size++] = 0;
+
+            while (size > 0) {
+                int block = blockStack[size - 1];
+                int edge = edgeStack[size - 1];
+                if (edge < successors.count(block)) {
+                    edgeStack[size - 1] = edge + 1;
+                    int successor = successors.get(block, edge);
+                    if (!visited.get(successor)) {
+                        visited.set(successor);
+                        blockStack[size] = successor;
+                        edgeStack[size++] = 0;
+                    }
+                } else {
+                    size--;
+                    reversePostorder[--position] = block;
                 }
-            });
+            }
         }
     }
 
-    protected Node getOrCreateNode(I insn) {
-        Node node = nodes.get(insn);
-        if (node == null) {
-            nodes.put(insn, node = new Node(insn));
+    private int existingIndexOf(I instruction) {
+        int index = indexOf(instruction);
+        if (index < 0) {
+            throw new NoSuchElementException();
         }
-        return node;
+        return index;
     }
 
     /**
-     * Get the node of the first instruction of the method.
+     * Get the index of an instruction within the method.
      *
-     * @return entry point of the method
+     * @param instruction an instruction of the method
+     * @return index of the instruction or <tt>-1</tt> if it is not part of the method
      */
-    public Node getHead() {
-        return getNode(getHeadInsn());
+    public int indexOf(I instruction) {
+        if (!list.contains(instruction)) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = instructions.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = list.compare(instructions.get(middle), instruction);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        // The instruction was inserted after the graph was built
+        return -1;
     }
 
     /**
-     * Get the nodes for all instructions that are exception handlers of a try/catch blocks.
+     * Get the instruction at an index.
      *
-     * @return all try/catch handler nodes
+     * @param index index of the instruction within the method
+     * @return the instruction
      */
-    public Set<Node> getHandlerNodes() {
-        return tryCatchBlocks.stream()
-                .map(block -> block.handler)
-                .map(this::getNode)
-                .collect(Collectors.toSet());
+    public I getInstruction(int index) {
+        return instructions.get(index);
     }
 
     /**
-     * Get all Nodes of this cfg graph.
+     * Get the amount of instructions in the method, including dead code.
      *
-     * @return all nodes of the cfg
+     * @return amount of instructions
      */
-    public Collection<Node> getNodes() {
-        return Collections.unmodifiableCollection(nodes.values());
+    public int getInstructionCount() {
+        return instructions.size();
     }
 
     /**
-     * Get the node corresponding to an instruction.
+     * Get the amount of blocks in the method, including unreachable blocks.
      *
-     * @param instruction instruction whose node is requested
-     * @return node or <tt>null</tt> for dead code.
+     * @return amount of blocks
      */
-    public Node getNode(I instruction) {
-        return nodes.get(instruction);
+    public int getBlockCount() {
+        return blockCount;
     }
 
     /**
-     * Check whether a instruction cannot be reached.
+     * Get the block that contains an instruction.
      *
-     * @param instruction the instruction
-     * @return is the instruction dead code.
+     * @param index index of the instruction
+     * @return the block of the instruction
      */
-    public boolean isDeadCode(I instruction) {
-        return !nodes.containsKey(instruction);
+    public int getBlock(int index) {
+        if (index < 0 || index >= instructions.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + " Size: " + instructions.size());
+        }
+
+        int position = Arrays.binarySearch(blockStarts, 0, blockCount, index);
+        return position >= 0 ? position : -position - 2;
     }
 
+    /**
+     * Get the block that contains an instruction.
+     *
+     * @param instruction an instruction of the method
+     * @return the block of the instruction or <tt>-1</tt> if it is not part of the method
+     */
+    public int getBlockOf(I instruction) {
+        int index = indexOf(instruction);
+        return index < 0 ? -1 : getBlock(index);
+    }
 
+    /**
+     * Get the index of the first instruction of a block.
+     *
+     * @param block the block
+     * @return index of its first instruction
+     */
+    public int getBlockStart(int block) {
+        return blockStarts[block];
+    }
 
     /**
-     * Get the first instruction of the method that is its entry point.
+     * Get the index after the last instruction of a block.
      *
-     * @return the entrypoint to the method
+     * @param block the block
+     * @return index of the last instruction plus one
      */
-    protected abstract I getHeadInsn();
+    public int getBlockEnd(int block) {
+        return blockStarts[block + 1];
+    }
+
+    public boolean isReachable(int block) {
+        return reachableBlocks.get(block);
+    }
 
     /**
-     * Get a list of all try/catch blocks.
+     * Get the amount of blocks that may be executed directly after a block.
      *
-     * @return all available try/catch blocks
+     * @param block the block
+     * @return amount of successors
      */
-    protected abstract Collection<TryCatchBlock> getTryCatchBlocks();
+    public int getSuccessorCount(int block) {
+        return successors.count(block);
+    }
 
     /**
-     * Get all instructions that may be reached after an instruction.
-     * Either since they are succeeding the instruction or
-     * the instruction may branch to those instructions.
+     * Get a block that may be executed directly after a block.
      *
-     * @param instruction which instructions may be reached from this instruction
-     * @return all instructions that may be reached from the instruction
+     * @param block the block
+     * @param index index of the successor, smaller than the {@link #getSuccessorCount(int) successor count}
+     * @return the successor
      */
-    protected abstract Stream<I> getReachableInstructions(I instruction);
+    public int getSuccessor(int block, int index) {
+        return successors.get(block, index);
+    }
 
     /**
-     * Check whether a range of instructions contains only dead code.
+     * Get the amount of blocks that branch or fall through to a block.
      *
-     * @param start first instruction of the range
-     * @param end last instruction of the range
-     * @return does the range only contain deadcode
+     * @param block the block
+     * @return amount of predecessors
      */
-    public abstract boolean isDeadCode(I start, I end);
+    public int getPredecessorCount(int block) {
+        return predecessors.count(block);
+    }
 
     /**
-     * Execute a function for each node in the CFG graph.
+     * Get a block that branches or falls through to a block.
      *
-     * @param function the function to be executed
+     * @param block the block
+     * @param index index of the predecessor, smaller than the {@link #getPredecessorCount(int) predecessor count}
+     * @return the predecessor
      */
-    public void forEachNode(Consumer<Node> function) {
-        Set<Node> visited = new HashSet<>();
-        Deque<Node> worklist = new ArrayDeque<>();
+    public int getPredecessor(int block, int index) {
+        return predecessors.get(block, index);
+    }
 
-        worklist.add(getHead());
-        worklist.addAll(getHandlerNodes());
+    /**
+     * Get the amount of handlers that may be reached if a block throws an exception.
+     * The locals in the handlers may have the values that they have before any instruction of the block.
+     *
+     * @param block the block
+     * @return amount of handler blocks of the try/catch blocks protecting the block
+     */
+    public int getHandlerCount(int block) {
+        return handlers.count(block);
+    }
 
-        while (!worklist.isEmpty()) {
-            Node node = worklist.poll();
-            if (!visited.add(node)) {
-                continue;
-            }
+    /**
+     * Get a handler that may be reached if a block throws an exception.
+     *
+     * @param block the block
+     * @param index index of the handler, smaller than the {@link #getHandlerCount(int) handler count}
+     * @return the handler block
+     */
+    public int getHandler(int block, int index) {
+        return handlers.get(block, index);
+    }
+
+    /**
+     * Get the blocks that start a handler of a try/catch block protecting reachable code.
+     * The returned array must not be modified.
+     *
+     * @return the reachable handler blocks in ascending order
+     */
+    public int[] getHandlerBlocks() {
+        return handlerBlocks;
+    }
 
-            function.accept(node);
+    /**
+     * Get all reachable blocks in reverse postorder, starting with the block of the first instruction.
+     * Each block that is not a handler comes after at least one of its predecessors.
+     * The returned array must not be modified.
+     *
+     * @return the reachable blocks in reverse postorder
+     */
+    public int[] getReversePostorder() {
+        return reversePostorder;
+    }
 
-            worklist.addAll(node.getSucceeding());
+    /**
+     * Check whether a instruction cannot be reached.
+     *
+     * @param instruction the instruction
+     * @return is the instruction dead code.
+     */
+    public boolean isDeadCode(I instruction) {
+        int index = indexOf(instruction);
+        return index < 0 || !reachableBlocks.get(getBlock(index));
+    }
+
+    /**
+     * Check whether a range of instructions contains only dead code.
+     *
+     * @param start first instruction of the range
+     * @param end last instruction of the range
+     * @return does the range only contain deadcode
+     */
+    public boolean isDeadCode(I start, I end) {
+        int firstBlock = getBlock(existingIndexOf(start));
+        int lastBlock = getBlock(existingIndexOf(end));
+        if (firstBlock > lastBlock) {
+            throw new IllegalStateException("Illegal Range");
         }
+        return !containsReachableBlocks(firstBlock, lastBlock);
     }
 
+    /**
+     * Get the list of all instructions of the method.
+     *
+     * @return the instructions
+     */
+    protected abstract InsertList<I> getInstructions();
+
+    /**
+     * Get a list of all try/catch blocks.
+     *
+     * @return all available try/catch blocks
+     */
+    protected abstract Collection<TryCatchBlock> getTryCatchBlocks();
+
+    /**
+     * May the instruction following an instruction be executed after it?
+     *
+     * @param instruction the instruction
+     * @return false if the instruction never falls through
+     */
+    protected abstract boolean continuesExecution(I instruction);
+
+    /**
+     * Get all instructions that an instruction may branch to.
+     *
+     * @param instruction the instruction
+     * @return the branch targets or an empty collection if the instruction does not branch
+     */
+    protected abstract Collection<I> getBranchTargets(I instruction);
 
     protected class TryCatchBlock {
         /**
@@ -205,41 +554,108 @@ public abstract class AbstractCfgGraph<I> {
     }
 
     /**
-     * A Node in the Cfg graph that corresponds to one instruction that can be reached.
-     * It knows which other nodes may reach it and which nodes it can reach.
+     * Edges between blocks, collected before they are sorted into an {@link Adjacency}.
      */
-    public class Node {
+    static class EdgeList {
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int size;
+
+        void add(int source, int target) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+
+            sources[size] = source;
+            targets[size] = target;
+            size++;
+        }
+
         /**
-         * instruction corresponding to this node
+         * Sort the edges by their source block.
+         * The targets of each block are sorted and duplicate edges are dropped.
+         *
+         * @param blockCount amount of blocks
+         * @return the edges of each block
          */
-        private final I instruction;
+        Adjacency toAdjacency(int blockCount) {
+            int[] starts = new int[blockCount + 1];
+            for (int i = 0; i < size; i++) {
+                starts[sources[i] + 1]++;
+            }
+            for (int block = 0; block < blockCount; block++) {
+                starts[block + 1] += starts[block];
+            }
+
+            int[] sortedTargets = new int[size];
+            int[] positions = Arrays.copyOf(starts, blockCount);
+            for (int i = 0; i < size; i++) {
+                sortedTargets[positions[sources[i]]++] = targets[i];
+            }
+
+            // Drop duplicates and move the remaining targets to the front
+            int[] uniqueStarts = new int[blockCount + 1];
+            int uniqueSize = 0;
+            for (int block = 0; block < blockCount; block++) {
+                uniqueStarts[block] = uniqueSize;
+                Arrays.sort(sortedTargets, starts[block], starts[block + 1]);
+                for (int i = starts[block]; i < starts[block + 1]; i++) {
+                    if (i == starts[block] || sortedTargets[i] != sortedTargets[i - 1]) {
+                        sortedTargets[uniqueSize++] = sortedTargets[i];
+                    }
+                }
+            }
+            uniqueStarts[blockCount] = uniqueSize;
 
+            return new Adjacency(uniqueStarts, Arrays.copyOf(sortedTargets, uniqueSize));
+        }
+    }
+
+    /**
+     * The edges of all blocks, in the compressed sparse row layout.
+     */
+    static class Adjacency {
         /**
-         * Get the nodes that branch to this node.
+         * Index of the first edge of each block within {@link #targets}, followed by the amount of edges.
          */
-        private final Set<Node> preceding = new HashSet<>();
+        private final int[] starts;
 
         /**
-         * Get the nodes where this node might branch to.
+         * Targets of all edges, grouped by their source block.
          */
-        private final Set<Node> succeeding = new HashSet<>();
-
-        private boolean visited = false;
+        private final int[] targets;
 
-        public Node(I instruction) {
-            this.instruction = instruction;
+        private Adjacency(int[] starts, int[] targets) {
+            this.starts = starts;
+            this.targets = targets;
         }
 
-        public I getInstruction() {
-            return instruction;
+        int count(int block) {
+            return starts[block + 1] - starts[block];
         }
 
-        public Set<Node> getPreceding() {
-            return preceding;
+        int get(int block, int index) {
+            if (index < 0 || index >= count(block)) {
+                throw new IndexOutOfBoundsException("Index: " + index + " Size: " + count(block));
+            }
+            return targets[starts[block] + index];
         }
 
-        public Set<Node> getSucceeding() {
-            return succeeding;
+        /**
+         * Get the edges with source and target swapped.
+         *
+         * @param blockCount amount of blocks
+         * @return the reversed edges
+         */
+        Adjacency reverse(int blockCount) {
+            EdgeList reversed = new EdgeList();
+            for (int block = 0; block < blockCount; block++) {
+                for (int i = starts[block]; i < starts[block + 1]; i++) {
+                    reversed.add(targets[i], block);
+                }
+            }
+            return reversed.toAdjacency(blockCount);
         }
     }
 }
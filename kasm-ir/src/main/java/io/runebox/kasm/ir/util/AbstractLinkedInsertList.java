@@ -3,73 +3,235 @@ package io.runebox.kasm.ir.util;
 import java.util.*;
 
 /**
- * A linked {@link InsertList} that maintains a {@link HashMap} from all elements to their nodes.
- * Therefore it can contains each element only once.
+ * A linked {@link InsertList} whose nodes are {@link ListNode}s.
+ * Subclasses decide how the node of an element is found.
+ *
+ * Every node carries a label that increases along the list, so that the positions of two elements
+ * can be compared in constant time. New nodes take a free label between their neighbours.
+ * If there is none, the smallest enclosing range of labels that is sparse enough gets relabeled evenly,
+ * as described by Bender et al. in "Two Simplified Algorithms for Maintaining Order in a List".
+ * This takes amortized <tt>O(log n)</tt> time per insertion.
  *
  * @param <T> type of the stored elements
+ * @see LinkedInsertList linked insert list that finds elements based on equality
+ * @see LinkedIdentityInsertList linked insert list that finds elements based on identity
+ * @see IntrusiveInsertList linked insert list whose elements are their own nodes
  */
-public class AbstractLinkedInsertList<T> extends AbstractList<T> implements InsertList<T> {
+public abstract class AbstractLinkedInsertList<T> extends AbstractList<T> implements InsertList<T> {
+    /**
+     * Number of bits of the labels, so that all labels are positive longs.
+     */
+    private static final int LABEL_BITS = 62;
+
+    /**
+     * Distance between the labels of nodes appended at the start or end of the list.
+     * Appending is the common case, so it leaves room for later insertions instead of halving the free range.
+     */
+    private static final long APPEND_SPACING = 1L << 32;
+
+    /**
+     * A range of <tt>2^i</tt> labels may be relabeled if it holds at most <tt>(2 / DENSITY_BASE)^i</tt> nodes.
+     * Must be between 1 and 2, smaller values relabel larger ranges less often.
+     */
+    private static final double DENSITY_BASE = 1.5;
+
     /**
      * Node of the first element in the list or <tt>null</tt>.
      */
-    private Node first;
+    private ListNode first;
 
     /**
      * Node of the last element in the list or <tt>null</tt>.
      */
-    private Node last;
+    private ListNode last;
+
+    private int size;
+
+    /**
+     * Number of bits of the labels of this list.
+     */
+    private final int labelBits;
+
+    /**
+     * The largest label that a node may have.
+     */
+    private final long maxLabel;
+
+    protected AbstractLinkedInsertList() {
+        this(LABEL_BITS);
+    }
+
+    /**
+     * Create a list whose labels have fewer bits, so that tests can run out of labels.
+     *
+     * @param labelBits number of bits of the labels
+     */
+    AbstractLinkedInsertList(int labelBits) {
+        this.labelBits = labelBits;
+        this.maxLabel = (1L << labelBits) - 1;
+    }
+
+    /**
+     * Find the node of an element in this list.
+     *
+     * @param element the element that may be contained in the list
+     * @return the node of the element or <tt>null</tt> if the list does not contain it
+     */
+    abstract ListNode findNode(Object element);
+
+    /**
+     * Get the node of an element that gets inserted into this list.
+     *
+     * @param element the inserted element
+     * @return a node that is not linked into any list
+     * @throws IllegalArgumentException if the element cannot be inserted into this list
+     */
+    abstract ListNode createNode(T element);
+
+    /**
+     * Forget the node of an element that was removed from this list.
+     *
+     * @param node the node that is no longer linked
+     */
+    abstract void releaseNode(ListNode node);
+
+    /**
+     * Get the element of a node.
+     *
+     * @param node a node of this list
+     * @return the element of the node
+     */
+    abstract T getElement(ListNode node);
+
+    private T elementOrNull(ListNode node) {
+        return node == null ? null : getElement(node);
+    }
+
+    private ListNode existingNode(T element) {
+        ListNode node = findNode(element);
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node;
+    }
+
+    /**
+     * Get a label for a node that is inserted between two adjacent nodes.
+     * Nodes around the insertion point get relabeled if there is no free label between them.
+     *
+     * @param prev the node preceding the inserted one or <tt>null</tt> if it becomes the first node
+     * @param next the node succeeding the inserted one or <tt>null</tt> if it becomes the last node
+     * @return an unused label between the labels of both nodes
+     */
+    private long newLabel(ListNode prev, ListNode next) {
+        if (getUpperBound(next) - getLowerBound(prev) < 2) {
+            relabel(prev == null ? next : prev);
+        }
+
+        long lower = getLowerBound(prev);
+        long upper = getUpperBound(next);
+        long halfGap = (upper - lower) / 2;
+        if (next == null) {
+            return lower + Math.min(halfGap, APPEND_SPACING);
+        } else if (prev == null) {
+            return upper - Math.min(halfGap, APPEND_SPACING);
+        } else {
+            return lower + halfGap;
+        }
+    }
+
+    /**
+     * Get the exclusive lower bound for labels of nodes succeeding a node.
+     */
+    private long getLowerBound(ListNode prev) {
+        return prev == null ? -1 : prev.label;
+    }
+
+    /**
+     * Get the exclusive upper bound for labels of nodes preceding a node.
+     */
+    private long getUpperBound(ListNode next) {
+        return next == null ? maxLabel + 1 : next.label;
+    }
 
     /**
-     * Map from all values in the list to their corresponding {@link Node}.
+     * Spread out the labels of the nodes around a node, so that there is a free label next to it.
+     *
+     * Ranges of labels of growing size that contain the node are checked until a range is sparse enough.
+     * The nodes in that range then get evenly distributed labels.
+     *
+     * @param node the node that must get a free label next to it
      */
-    private Map<T, Node> nodes;
-
-    AbstractLinkedInsertList(Map<T, Node> nodeMap) {
-        this.nodes = nodeMap;
-        this.first = null;
-        this.last = null;
-    }
-
-    AbstractLinkedInsertList(Map<T, Node> nodeMap, Iterable<? extends T> elements) {
-        this.nodes = nodeMap;
-        Node node = null;
-
-        Iterator<? extends T> iterator = elements.iterator();
-        if (iterator.hasNext()) {
-            T element = iterator.next();
-            this.first = node = new Node(element, null, null);
-            this.nodes.put(element, node);
-
-            while (iterator.hasNext()) {
-                element = iterator.next();
-                Node prevNode = node;
-                node = new Node(element, null, prevNode);
-                prevNode.next = node;
-                this.nodes.put(element, node);
+    private void relabel(ListNode node) {
+        ListNode rangeFirst = node;
+        ListNode rangeLast = node;
+        long count = 1;
+        double maxDensity = 1;
+
+        for (int bits = 1; bits < labelBits; bits++) {
+            long rangeSize = 1L << bits;
+            long rangeStart = node.label & -rangeSize;
+            long rangeEnd = rangeStart + rangeSize - 1;
+
+            while (rangeFirst.prev != null && rangeFirst.prev.label >= rangeStart) {
+                rangeFirst = rangeFirst.prev;
+                count++;
+            }
+            while (rangeLast.next != null && rangeLast.next.label <= rangeEnd) {
+                rangeLast = rangeLast.next;
+                count++;
+            }
+
+            // Leave room for the node that gets inserted
+            maxDensity /= DENSITY_BASE;
+            long spacing = rangeSize / (count + 1);
+            if (count + 1 <= rangeSize * maxDensity && spacing >= 2) {
+                spreadLabels(rangeFirst, rangeLast, rangeStart, spacing);
+                return;
             }
         }
 
-        this.last = node;
+        long spacing = (maxLabel + 1) / (size() + 1);
+        if (spacing < 2) {
+            throw new IllegalStateException("Too many elements");
+        }
+        spreadLabels(first, last, 0, spacing);
     }
 
-    private Node nodeByElement(T element) {
-        return nodes.get(element);
+    /**
+     * Assign evenly distributed labels to a sequence of nodes.
+     * The labels keep a distance of at least <tt>spacing</tt> to the start and end of their range.
+     *
+     * @param from first node to relabel
+     * @param to last node to relabel
+     * @param rangeStart first label of the range
+     * @param spacing distance between two labels
+     */
+    private void spreadLabels(ListNode from, ListNode to, long rangeStart, long spacing) {
+        long label = rangeStart + spacing - 1;
+        for (ListNode node = from; ; node = node.next) {
+            node.label = label;
+            label += spacing;
+            if (node == to) {
+                break;
+            }
+        }
     }
 
-    private Node nodeByIndex(int index) {
+    private ListNode nodeByIndex(int index) {
         int listSize = size();
         if (index < 0 || index >= listSize) {
             throw new IndexOutOfBoundsException("Index: " + index + " Size: " + listSize);
         }
 
         if (index < listSize / 2) {
-            Node node = first;
+            ListNode node = first;
             for (int i = 0; i < index; i++) {
                 node = node.next;
             }
             return node;
         } else {
-            Node node = last;
+            ListNode node = last;
             for (int i = listSize - 1; i > index; i--) {
                 node = node.prev;
             }
@@ -77,6 +239,125 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
         }
     }
 
+    /**
+     * Insert the node of a new element after another node.
+     * The label is allocated first, so the element is not added if the list runs out of labels.
+     *
+     * @param element the inserted element
+     * @param location insert after that node or <tt>null</tt> to insert at the start of the list
+     * @return the node of the inserted element
+     */
+    private ListNode linkAfter(T element, ListNode location) {
+        ListNode next = location == null ? first : location.next;
+        long label = newLabel(location, next);
+        ListNode node = createNode(element);
+        node.label = label;
+        link(node, location, next);
+        return node;
+    }
+
+    /**
+     * Insert the node of a new element before another node.
+     *
+     * @param element the inserted element
+     * @param location insert before that node or <tt>null</tt> to insert at the end of the list
+     * @return the node of the inserted element
+     */
+    private ListNode linkBefore(T element, ListNode location) {
+        ListNode prev = location == null ? last : location.prev;
+        long label = newLabel(prev, location);
+        ListNode node = createNode(element);
+        node.label = label;
+        link(node, prev, location);
+        return node;
+    }
+
+    private void link(ListNode node, ListNode prev, ListNode next) {
+        modCount++;
+        node.owner = this;
+        node.prev = prev;
+        node.next = next;
+
+        if (prev == null) {
+            first = node;
+        } else {
+            prev.next = node;
+        }
+
+        if (next == null) {
+            last = node;
+        } else {
+            next.prev = node;
+        }
+
+        size++;
+    }
+
+    /**
+     * Remove a node from the list.
+     *
+     * @param node a node of this list
+     */
+    private void unlink(ListNode node) {
+        modCount++;
+        if (node.prev == null) {
+            first = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+
+        if (node.next == null) {
+            last = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+
+        size--;
+        release(node);
+    }
+
+    /**
+     * Detach a removed node from this list.
+     * Its links are kept, so that iterators that already reached the node can continue.
+     */
+    private void release(ListNode node) {
+        node.owner = null;
+        releaseNode(node);
+    }
+
+    /**
+     * Replace the element of a node by another element at the same position.
+     *
+     * An element that is found through the replaced node, e.g. an equal element in a {@link LinkedInsertList},
+     * takes over its position. Other elements that are already contained in the list are rejected.
+     *
+     * @param node a node of this list
+     * @param element the new element
+     * @return the node of the new element
+     * @throws IllegalArgumentException if the element cannot be inserted into this list
+     */
+    private ListNode replace(ListNode node, T element) {
+        if (getElement(node) == element) {
+            return node;
+        }
+
+        ListNode prev = node.prev;
+        ListNode next = node.next;
+        ListNode newNode;
+        if (findNode(element) == node) {
+            // The replaced node must be released before a node for the equal element can be created
+            unlink(node);
+            newNode = createNode(element);
+        } else {
+            newNode = createNode(element);
+            unlink(node);
+        }
+
+        newNode.label = node.label;
+        link(newNode, prev, next);
+        return newNode;
+    }
+
     // Methods that implement InsertList
 
     @Override
@@ -84,7 +365,7 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
         if (first == null) {
             throw new NoSuchElementException();
         } else {
-            return first.element;
+            return getElement(first);
         }
     }
 
@@ -93,132 +374,75 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
         if (last == null) {
             throw new NoSuchElementException();
         } else {
-            return last.element;
+            return getElement(last);
         }
     }
 
     @Override
     public T getNext(T element) {
-        Node node = nodeByElement(element);
-        if (node == null) {
-            throw new NoSuchElementException();
-        } else {
-            Node next = node.next;
-            return next == null ? null : next.element;
-        }
+        return elementOrNull(existingNode(element).next);
     }
 
     @Override
     public T getPrevious(T element) {
-        Node node = nodeByElement(element);
-        if (node == null) {
-            throw new NoSuchElementException();
-        } else {
-            Node prev = node.prev;
-            return prev == null ? null : prev.element;
-        }
+        return elementOrNull(existingNode(element).prev);
     }
 
     @Override
     public void insertAfter(T location, T element) {
-        Node locationNode = nodeByElement(location);
-        if (locationNode == null) {
-            throw new NoSuchElementException();
-        } else {
-            new Node(element).insertAfter(locationNode);
-        }
+        linkAfter(element, existingNode(location));
     }
 
     @Override
     public void insertAfter(T location, Collection<T> elements) {
-        if (elements.isEmpty()) {
-            return;
-        }
-
-        Iterator<T> iterator = elements.iterator();
-        Node first = new Node(iterator.next());
-        Node last = first;
-        while (iterator.hasNext()) {
-            Node node = new Node(iterator.next());
-            last.next = node;
-            node.prev = last;
-            last = node;
-        }
-
-        Node locationNode = nodeByElement(location);
-        if (locationNode == null) {
-            throw new NoSuchElementException();
-        } else {
-            if (locationNode.next == null) {
-                this.last = last;
-            } else {
-                locationNode.next.prev = last;
-                last.next = locationNode.next;
-            }
-
-            first.prev = locationNode;
-            locationNode.next = first;
+        ListNode locationNode = existingNode(location);
+        for (T element : elements) {
+            locationNode = linkAfter(element, locationNode);
         }
     }
 
     @Override
     public void insertBefore(T location, T element) {
-        Node locationNode = nodeByElement(location);
-        if (locationNode == null) {
-            throw new NoSuchElementException();
-        } else {
-            new Node(element).insertBefore(locationNode);
-        }
+        linkBefore(element, existingNode(location));
     }
 
     @Override
     public void insertBefore(T location, Collection<T> elements) {
-        if (elements.isEmpty()) {
-            return;
-        }
-
-        Iterator<T> iterator = elements.iterator();
-        Node first = new Node(iterator.next());
-        Node last = first;
-        while (iterator.hasNext()) {
-            Node node = new Node(iterator.next());
-            last.next = node;
-            node.prev = last;
-            last = node;
+        ListNode locationNode = existingNode(location);
+        for (T element : elements) {
+            linkBefore(element, locationNode);
         }
+    }
 
-        Node locationNode = nodeByElement(location);
-        if (locationNode == null) {
-            throw new NoSuchElementException();
-        } else {
-            if (locationNode.prev == null) {
-                this.first = first;
-            } else {
-                locationNode.prev.next = first;
-                first.prev = locationNode.prev;
-            }
+    @Override
+    public int compare(T element1, T element2) {
+        return Long.compare(existingNode(element1).label, existingNode(element2).label);
+    }
 
-            last.next = locationNode;
-            locationNode.prev = last;
-        }
+    @Override
+    public boolean isInRange(T element, T start, T end) {
+        long label = existingNode(element).label;
+        return existingNode(start).label <= label && label <= existingNode(end).label;
     }
 
     // Methods that implement java.util.List
 
     @Override
     public T get(int index) {
-        return nodeByIndex(index).element;
+        return getElement(nodeByIndex(index));
     }
 
     @Override
     public T set(int index, T element) {
-        return nodeByIndex(index).setElement(element);
+        ListNode node = nodeByIndex(index);
+        T oldElement = getElement(node);
+        replace(node, element);
+        return oldElement;
     }
 
     @Override
     public boolean add(T element) {
-        Node node = new Node(element);
-        node.insertAfter(last);
+        linkAfter(element, last);
         return true;
     }
 
@@ -227,45 +451,57 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
         if (index == size()) {
             add(element);
         } else {
-            Node loc = nodeByIndex(index);
-            new Node(element).insertBefore(loc);
+            linkBefore(element, nodeByIndex(index));
         }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public boolean remove(Object obj) {
-        Node node = nodeByElement((T) obj);
+        ListNode node = findNode(obj);
         if (node == null) {
             return false;
         } else {
-            node.remove();
+            unlink(node);
             return true;
         }
     }
 
     @Override
     public T remove(int index) {
-        Node node = nodeByIndex(index);
-        node.remove();
-        return node.element;
+        ListNode node = nodeByIndex(index);
+        T element = getElement(node);
+        unlink(node);
+        return element;
     }
 
     @Override
     public int size() {
-        return this.nodes.size();
+        return size;
     }
 
     @Override
     public void clear() {
+        modCount += size;
+        ListNode node = first;
+        while (node != null) {
+            ListNode next = node.next;
+            release(node);
+            node = next;
+        }
+
         first = null;
         last = null;
-        nodes.clear();
+        size = 0;
+    }
+
+    @Override
+    public int getModificationCount() {
+        return modCount;
     }
 
     @Override
     public boolean contains(Object o) {
-        return nodes.containsKey(o);
+        return findNode(o) != null;
     }
 
     @Override
@@ -275,12 +511,12 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
 
     @Override
     public Iterator<T> iterator(T element) {
-        return new Iter(nodeByElement(element));
+        return new Iter(findNode(element));
     }
 
     @Override
     public Iterator<T> iterator(T start, T end) {
-        return new RangeIter(nodeByElement(start), nodeByElement(end));
+        return new RangeIter(findNode(start), findNode(end));
     }
 
     @Override
@@ -290,118 +526,14 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
 
     @Override
     public ListIterator<T> listIterator(int index) {
-        Node node = index == size() ? null : nodeByIndex(index);
+        ListNode node = index == size() ? null : nodeByIndex(index);
         return new ListIter(index, node);
     }
 
-    private class Node {
-        private T element;
-        private Node next;
-        private Node prev;
-
-        private Node(T element) {
-            this(element, null, null);
-        }
-
-        private Node(T element, Node next, Node prev) {
-            if (nodes.containsKey(element)) {
-                throw new IllegalArgumentException("List already contains element");
-            }
-
-            this.element = element;
-            this.next = next;
-            this.prev = prev;
-            nodes.put(element, this);
-        }
-
-        /**
-         * Change the element contained within this node.
-         *
-         * @param newElement the element to be set
-         * @return the old element of this node.
-         */
-        private T setElement(T newElement) {
-            T oldElement = this.element;
-            if (newElement != oldElement) {
-                if (nodes.containsKey(newElement)) {
-                    throw new IllegalArgumentException("List already contains element");
-                }
-
-                nodes.remove(oldElement);
-                nodes.put(newElement, this);
-                this.element = newElement;
-            }
-            return oldElement;
-        }
-
-        /**
-         * Remove this node from the list.
-         */
-        private void remove() {
-            if (prev == null) {
-                AbstractLinkedInsertList.this.first = next;
-            } else {
-                prev.next = next;
-            }
-
-            if (next == null) {
-                AbstractLinkedInsertList.this.last = prev;
-            } else {
-                next.prev = prev;
-            }
-
-            nodes.remove(element);
-        }
-
-        /**
-         * Insert this node after another one.
-         *
-         * @param location insert after that node
-         */
-        private void insertAfter(Node location) {
-            if (location == null) {
-                first = this;
-                last = this;
-            } else {
-                if (location.next == null) {
-                    last = this;
-                } else {
-                    location.next.prev = this;
-                    next = location.next;
-                }
-
-                location.next = this;
-                this.prev = location;
-            }
-        }
-
-        /**
-         * Insert this node before another one.
-         *
-         * @param location insert after that node
-         */
-        private void insertBefore(Node location) {
-            if (location == null) {
-                first = this;
-                last = this;
-            } else {
-                if (location.prev == null) {
-                    first = this;
-                } else {
-                    location.prev.next = this;
-                    prev = location.prev;
-                }
-
-                location.prev = this;
-                this.next = location;
-            }
-        }
-    }
-
     private class Iter implements Iterator<T> {
-        private Node node;
+        private ListNode node;
 
-        private Iter(Node node) {
+        private Iter(ListNode node) {
             this.node = node;
         }
 
@@ -412,17 +544,17 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
 
         @Override
         public T next() {
-            T element = node.element;
+            T element = getElement(node);
             node = node.next;
             return element;
         }
     }
 
     private class RangeIter implements Iterator<T> {
-        private Node node;
-        private final Node end;
+        private ListNode node;
+        private final ListNode end;
 
-        private RangeIter(Node start, Node end) {
+        private RangeIter(ListNode start, ListNode end) {
             this.node = start;
             this.end = end;
         }
@@ -434,7 +566,7 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
 
         @Override
         public T next() {
-            T element = node.element;
+            T element = getElement(node);
 
             if (node == end) {
                 node = null;
@@ -449,10 +581,10 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
 
     private class ListIter implements ListIterator<T> {
         private int nextIndex;
-        private Node next;
-        private Node lastReturned;
+        private ListNode next;
+        private ListNode lastReturned;
 
-        private ListIter(int index, Node node) {
+        private ListIter(int index, ListNode node) {
             this.nextIndex = index;
             this.next = node;
         }
@@ -470,7 +602,7 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
                 this.lastReturned = next;
                 this.next = this.next.next;
                 nextIndex += 1;
-                return this.lastReturned.element;
+                return getElement(this.lastReturned);
             }
         }
 
@@ -484,7 +616,7 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
             if (hasPrevious()) {
                 this.lastReturned = this.next = (this.next == null ? last : this.next.prev);
                 this.nextIndex -= 1;
-                return this.lastReturned.element;
+                return getElement(this.lastReturned);
             } else {
                 throw new NoSuchElementException();
             }
@@ -505,9 +637,9 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
             if (this.lastReturned == null) {
                 throw new IllegalStateException();
             } else {
-                Node next = this.lastReturned.next;
+                ListNode next = this.lastReturned.next;
 
-                this.lastReturned.remove();
+                unlink(this.lastReturned);
 
                 if (this.next == this.lastReturned) {
                     this.next = next;
@@ -524,18 +656,23 @@ public class AbstractLinkedInsertList<T> extends AbstractList<T> implements Inse
             if (this.lastReturned == null) {
                 throw new IllegalStateException();
             } else {
-                this.lastReturned.setElement(element);
+                ListNode newNode = replace(this.lastReturned, element);
+                if (this.next == this.lastReturned) {
+                    this.next = newNode;
+                }
+                this.lastReturned = newNode;
             }
         }
 
         @Override
         public void add(T t) {
             if (this.next == null) {
-                new Node(t).insertAfter(last);
+                linkAfter(t, last);
             } else {
-                new Node(t).insertBefore(this.next);
+                linkBefore(t, this.next);
             }
 
+            this.nextIndex += 1;
             this.lastReturned = null;
         }
     }
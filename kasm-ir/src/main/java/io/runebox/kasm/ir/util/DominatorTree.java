@@ -0,0 +1,484 @@
+package io.runebox.kasm.ir.util;
+
+import java.util.*;
+
+/**
+ * The dominator or post-dominator tree of the blocks of an {@link AbstractCfgGraph}.
+ *
+ * A block dominates another block if every path from an entry point of the method to the other block passes it.
+ * The first block and the handlers of try/catch blocks are all entry points, so they are the roots of the tree.
+ * A block post-dominates another block if every path from the other block to an exit of the method passes it.
+ * Exits are blocks without successors. Blocks that cannot reach any exit, e.g. within an endless loop, are exits too.
+ * Like in the graph, exceptions thrown within a block are no edges to the handlers.
+ *
+ * The immediate dominators are computed with the algorithm of Cooper, Harvey and Kennedy described in
+ * "A Simple, Fast Dominance Algorithm". The blocks are numbered in a depth-first walk of the tree,
+ * so that a {@link #dominates(int, int)} query takes constant time.
+ * Unreachable blocks are not part of the tree.
+ *
+ * @param <I> type of the instructions in the graph
+ */
+public class DominatorTree<I> {
+    /**
+     * Stands for the entry or exit that precedes all roots of the tree.
+     * Its index is the amount of blocks.
+     */
+    private final int virtualRoot;
+
+    private final AbstractCfgGraph<I> graph;
+
+    /**
+     * Is this a tree of post-dominators, which is computed on the reversed graph.
+     */
+    private final boolean post;
+
+    /**
+     * Immediate dominator of each block, {@link #virtualRoot} for roots and <tt>-1</tt> for blocks that are not part of the tree.
+     */
+    private final int[] immediateDominators;
+
+    private final int[] roots;
+
+    private final AbstractCfgGraph.Adjacency children;
+    private final AbstractCfgGraph.Adjacency frontiers;
+
+    /**
+     * Position of each block in a preorder and postorder walk of the tree.
+     */
+    private final int[] preorder;
+    private final int[] postorder;
+
+    /**
+     * Compute which blocks dominate each other.
+     *
+     * @param graph the control flow graph of a method
+     * @param <I> type of the instructions in the graph
+     * @return the dominator tree
+     */
+    public static <I> DominatorTree<I> dominators(AbstractCfgGraph<I> graph) {
+        return new DominatorTree<>(graph, false);
+    }
+
+    /**
+     * Compute which blocks post-dominate each other.
+     *
+     * @param graph the control flow graph of a method
+     * @param <I> type of the instructions in the graph
+     * @return the post-dominator tree
+     */
+    public static <I> DominatorTree<I> postDominators(AbstractCfgGraph<I> graph) {
+        return new DominatorTree<>(graph, true);
+    }
+
+    private DominatorTree(AbstractCfgGraph<I> graph, boolean post) {
+        this.graph = graph;
+        this.post = post;
+        this.virtualRoot = graph.getBlockCount();
+
+        Walk walk = new Walk();
+        this.roots = post ? findExits(walk) : findEntries(walk);
+        this.immediateDominators = computeImmediateDominators(walk.getPostorder());
+        this.children = computeChildren();
+        this.frontiers = computeFrontiers();
+
+        this.preorder = new int[virtualRoot + 1];
+        this.postorder = new int[virtualRoot + 1];
+        numberTree();
+    }
+
+    /**
+     * The entry points are the first block and the reachable handlers.
+     *
+     * @param walk visits all blocks reachable from the entry points
+     * @return the entry points
+     */
+    private int[] findEntries(Walk walk) {
+        int[] handlerBlocks = graph.getHandlerBlocks();
+        int[] entries;
+        if (handlerBlocks.length > 0 && handlerBlocks[0] == 0) {
+            // the handlers are sorted, so only the first one can be the first block
+            entries = handlerBlocks.clone();
+        } else {
+            entries = new int[handlerBlocks.length + 1];
+            System.arraycopy(handlerBlocks, 0, entries, 1, handlerBlocks.length);
+        }
+
+        for (int entry : entries) {
+            walk.visit(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * The exits are the reachable blocks without successors.
+     * Blocks that still cannot reach an exit are added as further roots, starting with the last block of the method.
+     *
+     * @param walk visits all reachable blocks in the reversed graph
+     * @return the exits
+     */
+    private int[] findExits(Walk walk) {
+        int blockCount = graph.getBlockCount();
+        int[] exits = new int[blockCount];
+        int exitCount = 0;
+
+        for (int block = 0; block < blockCount; block++) {
+            if (graph.isReachable(block) && graph.getSuccessorCount(block) == 0) {
+                exits[exitCount++] = block;
+                walk.visit(block);
+            }
+        }
+
+        for (int block = blockCount - 1; block >= 0; block--) {
+            if (graph.isReachable(block) && !walk.isVisited(block)) {
+                exits[exitCount++] = block;
+                walk.visit(block);
+            }
+        }
+
+        return Arrays.copyOf(exits, exitCount);
+    }
+
+    private int getSuccessorCount(int block) {
+        return post ? graph.getPredecessorCount(block) : graph.getSuccessorCount(block);
+    }
+
+    private int getSuccessor(int block, int index) {
+        return post ? graph.getPredecessor(block, index) : graph.getSuccessor(block, index);
+    }
+
+    private int getPredecessorCount(int block) {
+        return post ? graph.getSuccessorCount(block) : graph.getPredecessorCount(block);
+    }
+
+    private int getPredecessor(int block, int index) {
+        return post ? graph.getSuccessor(block, index) : graph.getPredecessor(block, index);
+    }
+
+    /**
+     * Iterate until the immediate dominator of each block is the nearest common dominator of its predecessors.
+     *
+     * @param postorderBlocks all blocks of the tree in postorder
+     * @return the immediate dominators
+     */
+    private int[] computeImmediateDominators(int[] postorderBlocks) {
+        int[] positions = new int[virtualRoot + 1];
+        for (int i = 0; i < postorderBlocks.length; i++) {
+            positions[postorderBlocks[i]] = i;
+        }
+        positions[virtualRoot] = postorderBlocks.length;
+
+        int[] dominators = new int[virtualRoot + 1];
+        Arrays.fill(dominators, -1);
+        dominators[virtualRoot] = virtualRoot;
+        for (int root : roots) {
+            dominators[root] = virtualRoot;
+        }
+
+        BitSet isRoot = new BitSet(virtualRoot);
+        for (int root : roots) {
+            isRoot.set(root);
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = postorderBlocks.length - 1; i >= 0; i--) {
+                int block = postorderBlocks[i];
+                if (isRoot.get(block)) {
+                    continue;
+                }
+
+                int newDominator = -1;
+                for (int j = 0; j < getPredecessorCount(block); j++) {
+                    int predecessor = getPredecessor(block, j);
+                    if (dominators[predecessor] < 0) {
+                        // not yet processed
+                        continue;
+                    }
+                    newDominator = newDominator < 0 ? predecessor : intersect(dominators, positions, predecessor, newDominator);
+                }
+
+                if (dominators[block] != newDominator) {
+                    dominators[block] = newDominator;
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        return dominators;
+    }
+
+    /**
+     * Find the nearest block that dominates two blocks.
+     */
+    private static int intersect(int[] dominators, int[] positions, int block1, int block2) {
+        while (block1 != block2) {
+            while (positions[block1] < positions[block2]) {
+                block1 = dominators[block1];
+            }
+            while (positions[block2] < positions[block1]) {
+                block2 = dominators[block2];
+            }
+        }
+        return block1;
+    }
+
+    private AbstractCfgGraph.Adjacency computeChildren() {
+        AbstractCfgGraph.EdgeList edges = new AbstractCfgGraph.EdgeList();
+        for (int block = 0; block < virtualRoot; block++) {
+            if (immediateDominators[block] >= 0) {
+                edges.add(immediateDominators[block], block);
+            }
+        }
+        return edges.toAdjacency(virtualRoot + 1);
+    }
+
+    /**
+     * A block is in the dominance frontier of another block if the other block dominates a predecessor of the block,
+     * but does not strictly dominate the block itself. The frontier is found by walking up from each predecessor
+     * of a join point until its immediate dominator is reached.
+     */
+    private AbstractCfgGraph.Adjacency computeFrontiers() {
+        AbstractCfgGraph.EdgeList edges = new AbstractCfgGraph.EdgeList();
+        for (int block = 0; block < virtualRoot; block++) {
+            int dominator = immediateDominators[block];
+            if (dominator < 0) {
+                continue;
+            }
+
+            // Roots are also entered from the virtual root
+            int entries = getPredecessorCount(block) + (dominator == virtualRoot ? 1 : 0);
+            if (entries < 2) {
+                continue;
+            }
+
+            for (int i = 0; i < getPredecessorCount(block); i++) {
+                int runner = getPredecessor(block, i);
+                if (immediateDominators[runner] < 0) {
+                    continue;
+                }
+
+                while (runner != dominator && runner != virtualRoot) {
+                    edges.add(runner, block);
+                    runner = immediateDominators[runner];
+                }
+            }
+        }
+        return edges.toAdjacency(virtualRoot);
+    }
+
+    /**
+     * Number the blocks in a depth-first walk of the tree.
+     */
+    private void numberTree() {
+        int[] blockStack = new int[virtualRoot + 1];
+        int[] childStack = new int[virtualRoot + 1];
+        int size = 0;
+        int preorderCount = 0;
+        int postorderCount = 0;
+
+        preorder[virtualRoot] = preorderCount++;
+        blockStack[size] = virtualRoot;
+        childStack[size++] = 0;
+
+        while (size > 0) {
+            int block = blockStack[size - 1];
+            int child = childStack[size - 1];
+            if (child < children.count(block)) {
+                childStack[size - 1] = child + 1;
+                int next = children.get(block, child);
+                preorder[next] = preorderCount++;
+                blockStack[size] = next;
+                childStack[size++] = 0;
+            } else {
+                size--;
+                postorder[block] = postorderCount++;
+            }
+        }
+    }
+
+    public AbstractCfgGraph<I> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Is this a tree of post-dominators.
+     *
+     * @return true for post-dominators, false for dominators
+     */
+    public boolean isPostDominatorTree() {
+        return post;
+    }
+
+    /**
+     * Get the roots of the tree.
+     * These are the entry points for dominators and the exits for post-dominators.
+     * The returned array must not be modified.
+     *
+     * @return all roots
+     */
+    public int[] getRoots() {
+        return roots;
+    }
+
+    /**
+     * Is a block part of the tree.
+     *
+     * @param block the block
+     * @return false if the block is unreachable
+     */
+    public boolean contains(int block) {
+        return immediateDominators[block] >= 0;
+    }
+
+    /**
+     * Get the immediate dominator of a block, that is the closest block that strictly dominates it.
+     *
+     * @param block the block
+     * @return the immediate dominator or <tt>-1</tt> for roots and blocks that are not part of the tree
+     */
+    public int getImmediateDominator(int block) {
+        int dominator = immediateDominators[block];
+        return dominator == virtualRoot ? -1 : dominator;
+    }
+
+    /**
+     * Get the amount of blocks whose immediate dominator is a block.
+     *
+     * @param block the block
+     * @return amount of children in the tree
+     */
+    public int getChildCount(int block) {
+        return children.count(block);
+    }
+
+    /**
+     * Get a block whose immediate dominator is a block.
+     *
+     * @param block the block
+     * @param index index of the child, smaller than the {@link #getChildCount(int) child count}
+     * @return the child
+     */
+    public int getChild(int block, int index) {
+        return children.get(block, index);
+    }
+
+    /**
+     * Get the amount of blocks in the dominance frontier of a block.
+     * For post-dominators this is the post-dominance frontier, i.e. the blocks that the block is control dependent on.
+     *
+     * @param block the block
+     * @return size of the frontier
+     */
+    public int getFrontierCount(int block) {
+        return frontiers.count(block);
+    }
+
+    /**
+     * Get a block of the dominance frontier of a block.
+     *
+     * @param block the block
+     * @param index index within the frontier, smaller than the {@link #getFrontierCount(int) frontier size}
+     * @return the block in the frontier
+     */
+    public int getFrontier(int block, int index) {
+        return frontiers.get(block, index);
+    }
+
+    /**
+     * Check whether a block dominates another block.
+     * Each block dominates itself.
+     *
+     * @param dominator the block that might dominate
+     * @param block the block that might be dominated
+     * @return does the first block dominate the second one
+     */
+    public boolean dominates(int dominator, int block) {
+        if (!contains(dominator) || !contains(block)) {
+            return false;
+        }
+        return preorder[dominator] <= preorder[block] && postorder[block] <= postorder[dominator];
+    }
+
+    /**
+     * Check whether a block dominates another block and is not the same block.
+     *
+     * @param dominator the block that might dominate
+     * @param block the block that might be dominated
+     * @return does the first block strictly dominate the second one
+     */
+    public boolean strictlyDominates(int dominator, int block) {
+        return dominator != block && dominates(dominator, block);
+    }
+
+    /**
+     * Check whether an instruction dominates another instruction.
+     * Within a block, instructions dominate the instructions after them
+     * and post-dominate the instructions before them.
+     *
+     * @param dominator the instruction that might dominate
+     * @param instruction the instruction that might be dominated
+     * @return does the first instruction dominate the second one
+     */
+    public boolean dominates(I dominator, I instruction) {
+        int dominatorIndex = graph.indexOf(dominator);
+        int index = graph.indexOf(instruction);
+        if (dominatorIndex < 0 || index < 0) {
+            return false;
+        }
+
+        int dominatorBlock = graph.getBlock(dominatorIndex);
+        int block = graph.getBlock(index);
+        if (dominatorBlock == block) {
+            return contains(block) && (post ? dominatorIndex >= index : dominatorIndex <= index);
+        }
+        return dominates(dominatorBlock, block);
+    }
+
+    /**
+     * A depth-first walk that records the blocks in postorder.
+     */
+    private class Walk {
+        private final BitSet visited = new BitSet(virtualRoot);
+        private final int[] postorderBlocks = new int[virtualRoot];
+        private int postorderSize;
+        private final int[] blockStack = new int[virtualRoot];
+        private final int[] edgeStack = new int[virtualRoot];
+
+        private boolean isVisited(int block) {
+            return visited.get(block);
+        }
+
+        private void visit(int root) {
+            if (visited.get(root)) {
+                return;
+            }
+
+            int size = 0;
+            visited.set(root);
+            blockStack[size] = root;
+            edgeStack[size++] = 0;
+
+            while (size > 0) {
+                int block = blockStack[size - 1];
+                int edge = edgeStack[size - 1];
+                if (edge < getSuccessorCount(block)) {
+                    edgeStack[size - 1] = edge + 1;
+                    int successor = getSuccessor(block, edge);
+                    if (!visited.get(successor)) {
+                        visited.set(successor);
+                        blockStack[size] = successor;
+                        edgeStack[size++] = 0;
+                    }
+                } else {
+                    size--;
+                    postorderBlocks[postorderSize++] = block;
+                }
+            }
+        }
+
+        private int[] getPostorder() {
+            return Arrays.copyOf(postorderBlocks, postorderSize);
+        }
+    }
+}
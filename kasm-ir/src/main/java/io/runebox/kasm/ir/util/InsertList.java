@@ -72,6 +72,27 @@ public interface InsertList<T> extends List<T> {
      */
     void insertBefore(T location, Collection<T> elements);
 
+    /**
+     * Compare the positions of two elements within the list.
+     *
+     * @param element1 the first element
+     * @param element2 the second element
+     * @return a negative number, zero, or a positive number if the first element precedes, is or succeeds the second one
+     * @throws java.util.NoSuchElementException if an element is not contained in the list
+     */
+    int compare(T element1, T element2);
+
+    /**
+     * Check whether an element lies within a range of elements.
+     *
+     * @param element the element to check
+     * @param start first element of the range
+     * @param end last element of the range (inclusive)
+     * @return is the element neither before <tt>start</tt> nor after <tt>end</tt>
+     * @throws java.util.NoSuchElementException if an element is not contained in the list
+     */
+    boolean isInRange(T element, T start, T end);
+
     /**
      * Iterator that starts with a certain element.
      *
@@ -88,4 +109,11 @@ public interface InsertList<T> extends List<T> {
      * @return iterator over a range of instructions
      */
     Iterator<T> iterator(T start, T end);
+
+    /**
+     * Count the elements that were linked into or unlinked from this list, including replaced elements.
+     *
+     * @return a number that grows with every structural modification
+     */
+    int getModificationCount();
 }
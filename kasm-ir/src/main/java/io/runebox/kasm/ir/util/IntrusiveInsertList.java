@@ -0,0 +1,55 @@
+package io.runebox.kasm.ir.util;
+
+/**
+ * A linked {@link InsertList} whose elements are their own nodes.
+ *
+ * All elements must extend {@link ListNode}. The links to the neighbours are stored within the elements,
+ * so navigating from an element requires neither hashing nor an additional node object.
+ * Elements are found based on identity and may only be contained in one such list at a time.
+ *
+ * @param <T> type of the stored elements
+ * @see LinkedIdentityInsertList linked insert list for any kind of elements
+ */
+public class IntrusiveInsertList<T> extends AbstractLinkedInsertList<T> {
+    public IntrusiveInsertList() {}
+
+    public IntrusiveInsertList(Iterable<? extends T> elements) {
+        for (T element : elements) {
+            add(element);
+        }
+    }
+
+    @Override
+    ListNode findNode(Object element) {
+        if (element instanceof ListNode) {
+            ListNode node = (ListNode) element;
+            return node.owner == this ? node : null;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    ListNode createNode(T element) {
+        if (!(element instanceof ListNode)) {
+            throw new IllegalArgumentException("Element does not extend " + ListNode.class.getSimpleName());
+        }
+
+        ListNode node = (ListNode) element;
+        if (node.owner == this) {
+            throw new IllegalArgumentException("List already contains element");
+        } else if (node.owner != null) {
+            throw new IllegalArgumentException("Element is already contained in another list");
+        }
+        return node;
+    }
+
+    @Override
+    void releaseNode(ListNode node) {}
+
+    @Override
+    @SuppressWarnings("unchecked")
+    T getElement(ListNode node) {
+        return (T) node;
+    }
+}
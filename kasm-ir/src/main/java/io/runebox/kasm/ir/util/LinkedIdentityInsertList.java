@@ -8,7 +8,7 @@ import java.util.IdentityHashMap;
  * @param <T> type of elements contained within this list
  * @see LinkedInsertList linked insert list that finds elements based on equality
  */
-public class LinkedIdentityInsertList<T> extends AbstractLinkedInsertList<T> {
+public class LinkedIdentityInsertList<T> extends MappedLinkedInsertList<T> {
     public LinkedIdentityInsertList() {
         super(new IdentityHashMap<>());
     }
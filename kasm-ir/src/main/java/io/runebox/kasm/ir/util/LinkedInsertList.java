@@ -8,7 +8,7 @@ import java.util.HashMap;
  * @param <T> type of elements in the list
  * @see LinkedIdentityInsertList linked insert list that finds elements based on identity.
  */
-public class LinkedInsertList<T> extends AbstractLinkedInsertList<T> {
+public class LinkedInsertList<T> extends MappedLinkedInsertList<T> {
     public LinkedInsertList() {
         super(new HashMap<>());
     }
@@ -16,4 +16,13 @@ public class LinkedInsertList<T> extends AbstractLinkedInsertList<T> {
     public LinkedInsertList(Iterable<? extends T> elements) {
         super(new HashMap<>(), elements);
     }
+
+    /**
+     * Create a list whose labels have fewer bits, so that tests can run out of labels.
+     *
+     * @param labelBits number of bits of the labels
+     */
+    LinkedInsertList(int labelBits) {
+        super(new HashMap<>(), labelBits);
+    }
 }
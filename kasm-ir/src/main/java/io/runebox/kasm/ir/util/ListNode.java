@@ -0,0 +1,24 @@
+package io.runebox.kasm.ir.util;
+
+/**
+ * A node of an {@link AbstractLinkedInsertList}, that holds the links to its neighbours.
+ *
+ * Elements that extend this class can be stored in an {@link IntrusiveInsertList}.
+ * They are then their own node, so that the list can navigate from them without any lookup.
+ * Such an element can only be contained in one list at a time.
+ */
+public abstract class ListNode {
+    /**
+     * The list that contains this node or <tt>null</tt>.
+     */
+    AbstractLinkedInsertList<?> owner;
+
+    ListNode prev;
+
+    ListNode next;
+
+    /**
+     * Position of the node in the list, increasing from the first to the last node.
+     */
+    long label;
+}
@@ -0,0 +1,369 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.ref.Expression;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+
+import java.util.*;
+
+/**
+ * Analyse which locals are live at certain locations in code,
+ * i.e. which locals hold a value that may still be read later on.
+ *
+ * The locals are numbered and the live locals of each block are stored as bitsets.
+ * They are computed backwards over the blocks of a {@link RefCfgGraph}, taking the blocks in postorder.
+ *
+ * Exceptions may be thrown anywhere within a block protected by a try/catch block,
+ * so all locals that are live at its handlers are considered live within the whole block.
+ * Locals are not live anywhere within unreachable code.
+ */
+public class LivenessAnalysis {
+    private final RefCfgGraph graph;
+
+    /**
+     * All locals ordered by their number.
+     */
+    private final List<RefLocal> locals = new ArrayList<>();
+
+    private final Map<RefLocal, Integer> localIndices = new IdentityHashMap<>();
+
+    /**
+     * Amount of longs per bitset.
+     */
+    private final int words;
+
+    /**
+     * The locals read by each statement are stored at <tt>reads[readStarts[i]]</tt> up to <tt>reads[readStarts[i + 1]]</tt>.
+     */
+    private int[] readStarts;
+    private int[] reads;
+
+    /**
+     * Number of the local written by each statement or <tt>-1</tt>.
+     */
+    private int[] writes;
+
+    /**
+     * Bitsets of the locals live at the start and end of each block.
+     * The bitset of a block starts at <tt>block * words</tt>.
+     */
+    private final long[] liveIn;
+    private final long[] liveOut;
+
+    /**
+     * Bitsets of the locals live at the handlers of each block.
+     */
+    private final long[] liveAtHandlers;
+
+    public LivenessAnalysis(RefCfgGraph graph) {
+        this.graph = graph;
+
+        RefBody body = graph.getBody();
+        body.getLocals().forEach(this::getOrAddIndex);
+        findReadsAndWrites();
+        this.words = (locals.size() + 63) >>> 6;
+
+        int blockCount = graph.getBlockCount();
+        this.liveIn = new long[blockCount * words];
+        this.liveOut = new long[blockCount * words];
+        this.liveAtHandlers = new long[blockCount * words];
+        analyze();
+    }
+
+    private int getOrAddIndex(RefLocal local) {
+        return localIndices.computeIfAbsent(local, x -> {
+            locals.add(local);
+            return locals.size() - 1;
+        });
+    }
+
+    private void findReadsAndWrites() {
+        int count = graph.getInstructionCount();
+        this.readStarts = new int[count + 1];
+        this.writes = new int[count];
+
+        int[] readBuffer = new int[count];
+        int readCount = 0;
+        for (int i = 0; i < count; i++) {
+            Statement statement = graph.getInstruction(i);
+            readStarts[i] = readCount;
+
+            for (Expression expr : statement.getAllReadValues()) {
+                if (expr instanceof RefLocal) {
+                    if (readCount == readBuffer.length) {
+                        readBuffer = Arrays.copyOf(readBuffer, readBuffer.length * 2 + 1);
+                    }
+                    readBuffer[readCount++] = getOrAddIndex((RefLocal) expr);
+                }
+            }
+
+            writes[i] = statement.getWriteValue()
+                    .filter(variable -> variable instanceof RefLocal)
+                    .map(variable -> getOrAddIndex((RefLocal) variable))
+                    .orElse(-1);
+        }
+        readStarts[count] = readCount;
+        this.reads = Arrays.copyOf(readBuffer, readCount);
+    }
+
+    /**
+     * Iterate until the live locals of all blocks are stable.
+     * The pending block with the lowest postorder number is always taken first,
+     * so a block is usually analyzed after all its successors.
+     */
+    private void analyze() {
+        int blockCount = graph.getBlockCount();
+        long[] uses = new long[blockCount * words];
+        long[] defs = new long[blockCount * words];
+        for (int block = 0; block < blockCount; block++) {
+            if (graph.isReachable(block)) {
+                computeUsesAndDefs(block, uses, defs);
+            }
+        }
+
+        // The blocks protected by each handler, to revisit them once the locals live at the handler change
+        AbstractCfgGraph.EdgeList protectedEdges = new AbstractCfgGraph.EdgeList();
+        for (int block = 0; block < blockCount; block++) {
+            for (int i = 0; i < graph.getHandlerCount(block); i++) {
+                protectedEdges.add(graph.getHandler(block, i), block);
+            }
+        }
+        AbstractCfgGraph.Adjacency protectedBlocks = protectedEdges.toAdjacency(blockCount);
+
+        int[] reversePostorder = graph.getReversePostorder();
+        int[] positions = new int[blockCount];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < reversePostorder.length; i++) {
+            positions[reversePostorder[i]] = reversePostorder.length - 1 - i;
+        }
+
+        BitSet pending = new BitSet(reversePostorder.length);
+        pending.set(0, reversePostorder.length);
+
+        int position;
+        while ((position = pending.nextSetBit(0)) >= 0) {
+            pending.clear(position);
+            int block = reversePostorder[reversePostorder.length - 1 - position];
+            int offset = block * words;
+
+            for (int i = 0; i < graph.getSuccessorCount(block); i++) {
+                or(liveOut, offset, liveIn, graph.getSuccessor(block, i) * words);
+            }
+            for (int i = 0; i < graph.getHandlerCount(block); i++) {
+                or(liveAtHandlers, offset, liveIn, graph.getHandler(block, i) * words);
+            }
+
+            boolean changed = false;
+            for (int i = offset; i < offset + words; i++) {
+                long live = uses[i] | (liveOut[i] & ~defs[i]) | liveAtHandlers[i];
+                if (live != liveIn[i]) {
+                    liveIn[i] = live;
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                for (int i = 0; i < graph.getPredecessorCount(block); i++) {
+                    setPending(pending, positions, graph.getPredecessor(block, i));
+                }
+                for (int i = 0; i < protectedBlocks.count(block); i++) {
+                    setPending(pending, positions, protectedBlocks.get(block, i));
+                }
+            }
+        }
+    }
+
+    private static void setPending(BitSet pending, int[] positions, int block) {
+        if (positions[block] >= 0) {
+            pending.set(positions[block]);
+        }
+    }
+
+    /**
+     * Find the locals that are read within a block before they are written
+     * and the locals that are written within the block.
+     */
+    private void computeUsesAndDefs(int block, long[] uses, long[] defs) {
+        int offset = block * words;
+        for (int i = graph.getBlockEnd(block) - 1; i >= graph.getBlockStart(block); i--) {
+            if (writes[i] >= 0) {
+                clear(uses, offset, writes[i]);
+                set(defs, offset, writes[i]);
+            }
+            for (int j = readStarts[i]; j < readStarts[i + 1]; j++) {
+                set(uses, offset, reads[j]);
+            }
+        }
+    }
+
+    /**
+     * Compute the locals that are live right before or after a statement.
+     *
+     * @param statement the statement
+     * @param before the locals before the statement or after it
+     * @return bitset of the live locals
+     */
+    private long[] computeLive(Statement statement, boolean before) {
+        long[] live = new long[words];
+        int index = graph.indexOf(statement);
+        if (index < 0) {
+            return live;
+        }
+
+        int block = graph.getBlock(index);
+        if (!graph.isReachable(block)) {
+            return live;
+        }
+
+        int offset = block * words;
+        for (int i = 0; i < words; i++) {
+            live[i] = liveOut[offset + i] | liveAtHandlers[offset + i];
+        }
+
+        int last = before ? index : index + 1;
+        for (int i = graph.getBlockEnd(block) - 1; i >= last; i--) {
+            // Locals live at a handler stay live, even if they are written
+            if (writes[i] >= 0 && !get(liveAtHandlers, offset, writes[i])) {
+                clear(live, 0, writes[i]);
+            }
+            for (int j = readStarts[i]; j < readStarts[i + 1]; j++) {
+                set(live, 0, reads[j]);
+            }
+        }
+        return live;
+    }
+
+    private Set<RefLocal> toLocals(long[] bits) {
+        Set<RefLocal> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < words; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                result.add(locals.get((i << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    private void or(long[] target, int targetOffset, long[] source, int sourceOffset) {
+        for (int i = 0; i < words; i++) {
+            target[targetOffset + i] |= source[sourceOffset + i];
+        }
+    }
+
+    private static boolean get(long[] bits, int offset, int local) {
+        return (bits[offset + (local >>> 6)] & (1L << local)) != 0;
+    }
+
+    private static void set(long[] bits, int offset, int local) {
+        bits[offset + (local >>> 6)] |= 1L << local;
+    }
+
+    private static void clear(long[] bits, int offset, int local) {
+        bits[offset + (local >>> 6)] &= ~(1L << local);
+    }
+
+    public RefCfgGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the amount of numbered locals.
+     *
+     * @return amount of locals
+     */
+    public int getLocalCount() {
+        return locals.size();
+    }
+
+    /**
+     * Get the local with a certain number.
+     *
+     * @param index number of the local
+     * @return the local
+     */
+    public RefLocal getLocal(int index) {
+        return locals.get(index);
+    }
+
+    /**
+     * Get the number of a local.
+     *
+     * @param local the local
+     * @return its number or <tt>-1</tt> if the body does not contain the local
+     */
+    public int indexOf(RefLocal local) {
+        Integer index = localIndices.get(local);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Check whether a local is live at the start of a block.
+     *
+     * @param block the block
+     * @param local the local
+     * @return may the value of the local be read later on
+     */
+    public boolean isLiveIn(int block, RefLocal local) {
+        int index = indexOf(local);
+        return index >= 0 && get(liveIn, block * words, index);
+    }
+
+    /**
+     * Check whether a local is live at the end of a block,
+     * when the execution continues with a succeeding block.
+     *
+     * @param block the block
+     * @param local the local
+     * @return may the value of the local be read later on
+     */
+    public boolean isLiveOut(int block, RefLocal local) {
+        int index = indexOf(local);
+        return index >= 0 && get(liveOut, block * words, index);
+    }
+
+    /**
+     * Check whether a local is live right before a statement gets executed.
+     *
+     * @param statement the statement
+     * @param local the local
+     * @return may the value of the local be read by the statement or later on
+     */
+    public boolean isLiveBefore(Statement statement, RefLocal local) {
+        int index = indexOf(local);
+        return index >= 0 && get(computeLive(statement, true), 0, index);
+    }
+
+    /**
+     * Check whether a local is live right after a statement got executed.
+     *
+     * @param statement the statement
+     * @param local the local
+     * @return may the value of the local be read later on
+     */
+    public boolean isLiveAfter(Statement statement, RefLocal local) {
+        int index = indexOf(local);
+        return index >= 0 && get(computeLive(statement, false), 0, index);
+    }
+
+    /**
+     * Get all locals that are live right before a statement gets executed.
+     *
+     * @param statement the statement
+     * @return the live locals
+     */
+    public Set<RefLocal> getLiveBefore(Statement statement) {
+        return toLocals(computeLive(statement, true));
+    }
+
+    /**
+     * Get all locals that are live right after a statement got executed.
+     *
+     * @param statement the statement
+     * @return the live locals
+     */
+    public Set<RefLocal> getLiveAfter(Statement statement) {
+        return toLocals(computeLive(statement, false));
+    }
+}
@@ -8,6 +8,7 @@ import io.runebox.kasm.ir.util.CommonOperations;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -123,9 +124,8 @@ public class LocalStateAnalysis {
             this.stmtToStates = new HashMap<>();
             this.stateToStmts = new HashMap<>();
 
-            for (State assign : getLocalStates(body, local, graph, writes)) {
-                analyzeCfgForward(assign.getNode(), node -> {
-                    Statement stmt = node.getInstruction();
+            for (State assign : getLocalStates(body, local, writes)) {
+                analyzeCfgForward(assign.getStart(), stmt -> {
                     this.stmtToStates.computeIfAbsent(stmt, x -> new HashSet<>()).add(assign);
                     this.stateToStmts.computeIfAbsent(assign, x -> new HashSet<>()).add(stmt);
 
@@ -134,66 +134,106 @@ public class LocalStateAnalysis {
             }
         }
 
-        private List<State> getLocalStates(RefBody body, RefLocal local, RefCfgGraph graph, Set<AssignStmt> writes) {
+        private List<State> getLocalStates(RefBody body, RefLocal local, Set<AssignStmt> writes) {
             final List<State> assign = new ArrayList<>();
+            Statement head = body.getStatements().getFirst();
 
             body.getThisLocal().ifPresent(thisLocal -> {
                 if (thisLocal == local) {
-                    assign.add(new State.This(graph.getHead()));
+                    assign.add(new State.This(head));
                 }
             });
 
             int paramIndex = 0;
             for (RefLocal argumentLocal : body.getArgumentLocals()) {
                 if (argumentLocal == local) {
-                    assign.add(new State.Parameter(graph.getHead(), paramIndex));
+                    assign.add(new State.Parameter(head, paramIndex));
                 }
                 paramIndex += 1;
             }
 
             for (AssignStmt write : writes) {
-                assign.add(new State.Stmt(graph.getNode(body.getStatements().getNext(write)), write));
+                assign.add(new State.Stmt(body.getStatements().getNext(write), write));
             }
 
             return assign;
         }
 
         /**
-         * Walk forward through the CFG starting at a certain node.
-         * The function passed as parameter is evaluated for every node on the way.
-         * If the lambda evaluates to <tt>false</tt>, then the succeeding nodes will not be visited.
+         * Walk forward through the CFG starting at a certain statement.
+         * The function passed as parameter is evaluated for every statement on the way.
+         * If the lambda evaluates to <tt>false</tt>, then the succeeding statements will not be visited,
+         * but the handlers of try/catch blocks protecting the statement still are.
          *
-         * Nodes that have already been visited will not be visited again.
+         * Statements that have already been visited will not be visited again.
          *
-         * @param start start the analysis from that node
-         * @param visit the function that is evaluated for each visited node
+         * @param start start the analysis from that statement
+         * @param visit the function that is evaluated for each visited statement
          */
-        private void analyzeCfgForward(RefCfgGraph.Node start, Function<RefCfgGraph.Node, Boolean> visit) {
-            Deque<RefCfgGraph.Node> worklist = new ArrayDeque<>();
-            Set<RefCfgGraph.Node> visited = new HashSet<>();
-            worklist.add(start);
+        private void analyzeCfgForward(Statement start, Predicate<Statement> visit) {
+            int startIndex = graph.indexOf(start);
+            if (startIndex < 0 || !graph.isReachable(graph.getBlock(startIndex))) {
+                return;
+            }
 
-            while (!worklist.isEmpty()) {
-                RefCfgGraph.Node node = worklist.poll();
+            BitSet visited = new BitSet(graph.getInstructionCount());
+            int[] worklist = new int[16];
+            int size = 0;
+            worklist[size++] = startIndex;
+
+            while (size > 0) {
+                int index = worklist[--size];
+                int block = graph.getBlock(index);
+                int end = graph.getBlockEnd(block);
+
+                boolean visitedAny = false;
+                boolean continues = true;
+                for (; index < end && continues; index++) {
+                    if (visited.get(index)) {
+                        break;
+                    }
+                    visited.set(index);
+                    visitedAny = true;
+                    continues = visit.test(graph.getInstruction(index));
+                }
 
-                boolean alreadyVisited = !visited.add(node);
-                if (alreadyVisited) {
+                if (!visitedAny) {
                     continue;
                 }
 
-                if (visit.apply(node)) {
-                    worklist.addAll(node.getSucceeding());
+                int successorCount = continues && index == end ? graph.getSuccessorCount(block) : 0;
+                int handlerCount = graph.getHandlerCount(block);
+                if (size + successorCount + handlerCount > worklist.length) {
+                    worklist = Arrays.copyOf(worklist, Math.max(worklist.length * 2, size + successorCount + handlerCount));
+                }
+
+                for (int i = 0; i < successorCount; i++) {
+                    worklist[size++] = graph.getBlockStart(graph.getSuccessor(block, i));
+                }
+
+                // An exception may be thrown before a statement writes to the local
+                for (int i = 0; i < handlerCount; i++) {
+                    worklist[size++] = graph.getBlockStart(graph.getHandler(block, i));
                 }
             }
         }
 
+        /**
+         * Merge the states that a common statement may read from the local.
+         * States that only meet at statements that do not read the local, e.g. in an exception handler
+         * reached from both scopes of a reused slot, stay in separate groups.
+         */
         private void buildAssignGroups() {
             this.groups = new ArrayList<>();
 
             // Maps local-writes to the group that they are currently in
             Map<State, Set<State>> groupMap = new HashMap<>();
 
-            stmtToStates.forEach((stmt, assigns) -> {
+            for (Statement read : reads) {
+                Set<State> assigns = stmtToStates.get(read);
+                if (assigns == null) {
+                    continue;
+                }
                 Iterator<State> iterator = assigns.iterator();
 
                 // get or create the group for the first assign
@@ -222,7 +262,16 @@ public class LocalStateAnalysis {
                         }
                     }
                 });
-            });
+            }
+
+            // States that are never read still get a group of their own
+            for (State state : stateToStmts.keySet()) {
+                if (!groupMap.containsKey(state)) {
+                    Set<State> group = new HashSet<>(Collections.singleton(state));
+                    groupMap.put(state, group);
+                    this.groups.add(group);
+                }
+            }
         }
     }
 
@@ -231,26 +280,26 @@ public class LocalStateAnalysis {
      */
     public static interface State {
         /**
-         * Get the Node from whereon this state is assigned to the local.
+         * Get the statement from whereon this state is assigned to the local.
          *
-         * @return node where the assignment of the state occurs
+         * @return first statement where the local has this state
          */
-        RefCfgGraph.Node getNode();
+        Statement getStart();
 
         /**
          * Represents that a local has the this value assigned.
          * Therefore it must be the {@link RefBody#getThisLocal() this local}.
          */
         public static class This implements State {
-            private final RefCfgGraph.Node headNode;
+            private final Statement head;
 
-            public This(RefCfgGraph.Node headNode) {
-                this.headNode = headNode;
+            public This(Statement head) {
+                this.head = head;
             }
 
             @Override
-            public RefCfgGraph.Node getNode() {
-                return headNode;
+            public Statement getStart() {
+                return head;
             }
 
             @Override
@@ -258,18 +307,18 @@ public class LocalStateAnalysis {
                 if (this == o) return true;
                 if (o == null || getClass() != o.getClass()) return false;
                 This aThis = (This) o;
-                return Objects.equals(headNode, aThis.headNode);
+                return Objects.equals(head, aThis.head);
             }
 
             @Override
             public int hashCode() {
-                return Objects.hash(headNode);
+                return Objects.hash(head);
             }
 
             @Override
             public String toString() {
                 return This.class.getSimpleName() + '{' +
-                        "headNode=" + headNode +
+                        "head=" + head +
                         '}';
             }
         }
@@ -279,17 +328,17 @@ public class LocalStateAnalysis {
          * Therefore it must be a {@link RefBody#getArgumentLocals() parameter local}.
          */
         public static class Parameter implements State {
-            private final RefCfgGraph.Node headNode;
+            private final Statement head;
             private final int index;
 
-            public Parameter(RefCfgGraph.Node headNode, int index) {
-                this.headNode = headNode;
+            public Parameter(Statement head, int index) {
+                this.head = head;
                 this.index = index;
             }
 
             @Override
-            public RefCfgGraph.Node getNode() {
-                return headNode;
+            public Statement getStart() {
+                return head;
             }
 
             public int getIndex() {
@@ -302,18 +351,18 @@ public class LocalStateAnalysis {
                 if (o == null || getClass() != o.getClass()) return false;
                 Parameter parameter = (Parameter) o;
                 return index == parameter.index &&
-                        Objects.equals(headNode, parameter.headNode);
+                        Objects.equals(head, parameter.head);
             }
 
             @Override
             public int hashCode() {
-                return Objects.hash(headNode, index);
+                return Objects.hash(head, index);
             }
 
             @Override
             public String toString() {
                 return Parameter.class.getSimpleName() + '{' +
-                        "headNode=" + headNode +
+                        "head=" + head +
                         ", index=" + index +
                         '}';
             }
@@ -324,24 +373,24 @@ public class LocalStateAnalysis {
          */
         public static class Stmt implements State {
             /**
-             * The node of the instruction <tt>succeeding</tt> the assign statement.
+             * The statement <tt>succeeding</tt> the assign statement.
              * From there the local has the just assigned value.
              */
-            private final RefCfgGraph.Node node;
+            private final Statement next;
 
             /**
              * The assign statement that writes to the local.
              */
             private final AssignStmt assign;
 
-            public Stmt(RefCfgGraph.Node node, AssignStmt assign) {
-                this.node = node;
+            public Stmt(Statement next, AssignStmt assign) {
+                this.next = next;
                 this.assign = assign;
             }
 
             @Override
-            public RefCfgGraph.Node getNode() {
-                return node;
+            public Statement getStart() {
+                return next;
             }
 
             public AssignStmt getStatement() {
@@ -353,19 +402,19 @@ public class LocalStateAnalysis {
                 if (this == o) return true;
                 if (o == null || getClass() != o.getClass()) return false;
                 Stmt stmt = (Stmt) o;
-                return Objects.equals(node, stmt.node) &&
+                return Objects.equals(next, stmt.next) &&
                         Objects.equals(assign, stmt.assign);
             }
 
             @Override
             public int hashCode() {
-                return Objects.hash(node, assign);
+                return Objects.hash(next, assign);
             }
 
             @Override
             public String toString() {
                 return Stmt.class.getSimpleName() + '{' +
-                        "node=" + node +
+                        "next=" + next +
                         ", assign=" + assign +
                         '}';
             }
@@ -0,0 +1,69 @@
+package io.runebox.kasm.ir.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linked {@link InsertList} that maintains a {@link HashMap} from all elements to their nodes.
+ * Therefore it can contains each element only once.
+ *
+ * @param <T> type of the stored elements
+ */
+abstract class MappedLinkedInsertList<T> extends AbstractLinkedInsertList<T> {
+    /**
+     * Map from all values in the list to their corresponding {@link Node}.
+     */
+    private final Map<Object, Node<T>> nodes;
+
+    MappedLinkedInsertList(Map<Object, Node<T>> nodeMap) {
+        this.nodes = nodeMap;
+    }
+
+    MappedLinkedInsertList(Map<Object, Node<T>> nodeMap, int labelBits) {
+        super(labelBits);
+        this.nodes = nodeMap;
+    }
+
+    MappedLinkedInsertList(Map<Object, Node<T>> nodeMap, Iterable<? extends T> elements) {
+        this(nodeMap);
+        for (T element : elements) {
+            add(element);
+        }
+    }
+
+    @Override
+    ListNode findNode(Object element) {
+        return nodes.get(element);
+    }
+
+    @Override
+    ListNode createNode(T element) {
+        if (nodes.containsKey(element)) {
+            throw new IllegalArgumentException("List already contains element");
+        }
+
+        Node<T> node = new Node<>(element);
+        nodes.put(element, node);
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void releaseNode(ListNode node) {
+        nodes.remove(((Node<T>) node).element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    T getElement(ListNode node) {
+        return ((Node<T>) node).element;
+    }
+
+    static class Node<T> extends ListNode {
+        private final T element;
+
+        private Node(T element) {
+            this.element = element;
+        }
+    }
+}
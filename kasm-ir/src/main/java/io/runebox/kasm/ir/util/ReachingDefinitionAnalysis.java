@@ -0,0 +1,491 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.ref.Expression;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.util.LocalStateAnalysis.State;
+
+import java.util.*;
+
+/**
+ * Analyse which definitions of the locals reach each statement and group the definitions that reach common reads.
+ *
+ * A definition is one of the {@link State states} that a local of {@link RefBody#getLocals()} may get assigned.
+ * The definitions of all locals are numbered and stored as bitsets per block,
+ * so that one forward pass over the blocks of a {@link RefCfgGraph} finds the definitions that reach each block.
+ * Definitions of the same local that reach a common read of the local are then merged with a union-find.
+ * Definitions that only meet at statements that do not read the local, e.g. in an exception handler
+ * reached from both scopes of a reused slot, stay apart.
+ *
+ * The groups are the same as the ones of {@link LocalStateAnalysis.LocalStates#getGroups()}.
+ * A statement that writes to a local is still reached by the previous definitions of the local.
+ * The definitions that reach any statement within a protected block also reach the handlers of the block.
+ */
+public class ReachingDefinitionAnalysis {
+    private final RefCfgGraph graph;
+
+    /**
+     * All locals ordered by their number.
+     */
+    private final List<RefLocal> locals = new ArrayList<>();
+
+    private final Map<RefLocal, Integer> localIndices = new IdentityHashMap<>();
+
+    /**
+     * All definitions ordered by their number.
+     * The definitions of each local are numbered consecutively,
+     * they range from <tt>definitionStarts[local]</tt> up to <tt>definitionStarts[local + 1]</tt>.
+     */
+    private final List<State> definitions = new ArrayList<>();
+    private int[] definitionStarts;
+
+    /**
+     * Number of the local that each definition assigns.
+     */
+    private int[] definedLocals;
+
+    /**
+     * Amount of longs per bitset.
+     */
+    private int words;
+
+    /**
+     * The definitions that start at each statement are stored at <tt>generated[generatedStarts[i]]</tt>
+     * up to <tt>generated[generatedStarts[i + 1]]</tt>.
+     */
+    private int[] generatedStarts;
+    private int[] generated;
+
+    /**
+     * Number of the local written by each statement or <tt>-1</tt>.
+     */
+    private int[] writes;
+
+    /**
+     * Union-find forest of the definitions.
+     */
+    private int[] parents;
+    private int[] sizes;
+
+    /**
+     * Definitions that start within reachable code and therefore reach at least one statement.
+     */
+    private final BitSet generatedDefinitions = new BitSet();
+
+    private final Map<RefLocal, List<Set<State>>> localGroups = new IdentityHashMap<>();
+
+    /**
+     * For each statement, the locals that it reads and the group of definitions that reaches these reads are stored
+     * at <tt>readLocals[readStarts[i]]</tt> and <tt>readGroups.get(readStarts[i])</tt> up to <tt>readStarts[i + 1]</tt>.
+     */
+    private int[] readStarts;
+    private int[] readLocals;
+    private final List<Set<State>> readGroups = new ArrayList<>();
+
+    public ReachingDefinitionAnalysis(RefCfgGraph graph) {
+        this.graph = graph;
+
+        findDefinitions();
+        mergeDefinitions(analyze());
+    }
+
+    /**
+     * Number all definitions and find where they start and where they get killed.
+     */
+    private void findDefinitions() {
+        RefBody body = graph.getBody();
+        int count = graph.getInstructionCount();
+
+        List<List<State>> localDefinitions = new ArrayList<>();
+        List<List<Integer>> localStarts = new ArrayList<>();
+        for (RefLocal local : body.getLocals()) {
+            localIndices.computeIfAbsent(local, x -> {
+                locals.add(local);
+                localDefinitions.add(new ArrayList<>());
+                localStarts.add(new ArrayList<>());
+                return locals.size() - 1;
+            });
+        }
+
+        Statement head = body.getStatements().getFirst();
+        body.getThisLocal().ifPresent(thisLocal -> {
+            Integer local = localIndices.get(thisLocal);
+            if (local != null) {
+                localDefinitions.get(local).add(new State.This(head));
+                localStarts.get(local).add(0);
+            }
+        });
+
+        int paramIndex = 0;
+        for (RefLocal argumentLocal : body.getArgumentLocals()) {
+            Integer local = localIndices.get(argumentLocal);
+            if (local != null) {
+                localDefinitions.get(local).add(new State.Parameter(head, paramIndex));
+                localStarts.get(local).add(0);
+            }
+            paramIndex += 1;
+        }
+
+        this.writes = new int[count];
+        for (int i = 0; i < count; i++) {
+            Statement statement = graph.getInstruction(i);
+            Integer local = statement.getWriteValue().map(localIndices::get).orElse(null);
+            writes[i] = local == null ? -1 : local;
+            if (local != null) {
+                // The assigned value is available from the succeeding statement on
+                Statement next = i + 1 < count ? graph.getInstruction(i + 1) : null;
+                localDefinitions.get(local).add(new State.Stmt(next, (AssignStmt) statement));
+                localStarts.get(local).add(i + 1);
+            }
+        }
+
+        int localCount = localDefinitions.size();
+        this.definitionStarts = new int[localCount + 1];
+        List<Integer> startList = new ArrayList<>();
+        for (int local = 0; local < localCount; local++) {
+            definitionStarts[local] = definitions.size();
+            definitions.addAll(localDefinitions.get(local));
+            startList.addAll(localStarts.get(local));
+        }
+        definitionStarts[localCount] = definitions.size();
+
+        int definitionCount = definitions.size();
+        int[] starts = startList.stream().mapToInt(Integer::intValue).toArray();
+        this.words = (definitionCount + 63) >>> 6;
+        this.definedLocals = new int[definitionCount];
+        for (int local = 0; local < localCount; local++) {
+            Arrays.fill(definedLocals, definitionStarts[local], definitionStarts[local + 1], local);
+        }
+
+        // Only definitions starting within reachable code reach any statement
+        this.generatedStarts = new int[count + 2];
+        for (int definition = 0; definition < definitionCount; definition++) {
+            int start = starts[definition];
+            if (start < count && graph.isReachable(graph.getBlock(start))) {
+                generatedDefinitions.set(definition);
+                generatedStarts[start + 2]++;
+            }
+        }
+        for (int i = 2; i < generatedStarts.length; i++) {
+            generatedStarts[i] += generatedStarts[i - 1];
+        }
+        this.generated = new int[generatedStarts[count + 1]];
+        for (int definition = generatedDefinitions.nextSetBit(0); definition >= 0; definition = generatedDefinitions.nextSetBit(definition + 1)) {
+            generated[generatedStarts[starts[definition] + 1]++] = definition;
+        }
+        this.generatedStarts = Arrays.copyOf(generatedStarts, count + 1);
+    }
+
+    /**
+     * Iterate until the definitions that reach each block are stable.
+     * The pending block that comes first in reverse postorder is always taken first,
+     * so a block is usually analyzed after all its predecessors.
+     *
+     * @return bitsets of the definitions that reach the start of each block, starting at <tt>block * words</tt>
+     */
+    private long[] analyze() {
+        int blockCount = graph.getBlockCount();
+        long[] reaching = new long[blockCount * words];
+        long[] gen = new long[blockCount * words];
+        long[] kill = new long[blockCount * words];
+        long[] allGen = new long[blockCount * words];
+        for (int block = 0; block < blockCount; block++) {
+            if (graph.isReachable(block)) {
+                computeGenAndKill(block, gen, kill, allGen);
+            }
+        }
+
+        int[] reversePostorder = graph.getReversePostorder();
+        int[] positions = new int[blockCount];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < reversePostorder.length; i++) {
+            positions[reversePostorder[i]] = i;
+        }
+
+        BitSet pending = new BitSet(reversePostorder.length);
+        pending.set(0, reversePostorder.length);
+
+        long[] out = new long[words];
+        long[] thrown = new long[words];
+        int position;
+        while ((position = pending.nextSetBit(0)) >= 0) {
+            pending.clear(position);
+            int block = reversePostorder[position];
+            int offset = block * words;
+
+            for (int i = 0; i < words; i++) {
+                out[i] = (reaching[offset + i] & ~kill[offset + i]) | gen[offset + i];
+                thrown[i] = reaching[offset + i] | allGen[offset + i];
+            }
+
+            for (int i = 0; i < graph.getSuccessorCount(block); i++) {
+                int successor = graph.getSuccessor(block, i);
+                if (or(reaching, successor * words, out)) {
+                    pending.set(positions[successor]);
+                }
+            }
+
+            // An exception may be thrown by any statement of the block
+            for (int i = 0; i < graph.getHandlerCount(block); i++) {
+                int handler = graph.getHandler(block, i);
+                if (or(reaching, handler * words, thrown)) {
+                    pending.set(positions[handler]);
+                }
+            }
+        }
+        return reaching;
+    }
+
+    /**
+     * Find the definitions that start within a block and survive until its end,
+     * the definitions that get killed within the block and all definitions that start within it.
+     */
+    private void computeGenAndKill(int block, long[] gen, long[] kill, long[] allGen) {
+        int offset = block * words;
+        for (int i = graph.getBlockStart(block); i < graph.getBlockEnd(block); i++) {
+            for (int j = generatedStarts[i]; j < generatedStarts[i + 1]; j++) {
+                set(gen, offset, generated[j]);
+                set(allGen, offset, generated[j]);
+            }
+
+            if (writes[i] >= 0) {
+                int from = definitionStarts[writes[i]];
+                int to = definitionStarts[writes[i] + 1];
+                clear(gen, offset, from, to);
+                set(kill, offset, from, to);
+            }
+        }
+    }
+
+    /**
+     * Walk through the statements of all reachable blocks and merge the definitions of a local that reach the same read.
+     * The definitions that reach each read of a local are recorded and finally resolved to their groups.
+     *
+     * @param reaching the definitions that reach the start of each block
+     */
+    private void mergeDefinitions(long[] reaching) {
+        int definitionCount = definitions.size();
+        this.parents = new int[definitionCount];
+        this.sizes = new int[definitionCount];
+        for (int i = 0; i < definitionCount; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+
+        int count = graph.getInstructionCount();
+        this.readStarts = new int[count + 1];
+        int[] readBuffer = new int[16];
+        int[] readDefinitions = new int[16];
+        int readCount = 0;
+
+        long[] current = new long[words];
+        for (int block = 0; block < graph.getBlockCount(); block++) {
+            int start = graph.getBlockStart(block);
+            int end = graph.getBlockEnd(block);
+            if (!graph.isReachable(block)) {
+                Arrays.fill(readStarts, start, end, readCount);
+                continue;
+            }
+
+            System.arraycopy(reaching, block * words, current, 0, words);
+
+            for (int i = start; i < end; i++) {
+                for (int j = generatedStarts[i]; j < generatedStarts[i + 1]; j++) {
+                    set(current, 0, generated[j]);
+                }
+
+                readStarts[i] = readCount;
+                for (Expression expr : graph.getInstruction(i).getAllReadValues()) {
+                    Integer local = expr instanceof RefLocal ? localIndices.get(expr) : null;
+                    if (local == null) {
+                        continue;
+                    }
+
+                    // The definitions of a local are numbered consecutively, so they are adjacent within the bitset
+                    int localEnd = definitionStarts[local + 1];
+                    int definition = nextSetBit(current, definitionStarts[local], localEnd);
+                    if (definition >= 0) {
+                        // The read observes all these definitions, so they must share one local
+                        for (int other = nextSetBit(current, definition + 1, localEnd); other >= 0; other = nextSetBit(current, other + 1, localEnd)) {
+                            union(definition, other);
+                        }
+
+                        if (readCount == readBuffer.length) {
+                            readBuffer = Arrays.copyOf(readBuffer, readCount * 2);
+                            readDefinitions = Arrays.copyOf(readDefinitions, readCount * 2);
+                        }
+                        readBuffer[readCount] = local;
+                        readDefinitions[readCount++] = definition;
+                    }
+                }
+
+                if (writes[i] >= 0) {
+                    clear(current, 0, definitionStarts[writes[i]], definitionStarts[writes[i] + 1]);
+                }
+            }
+        }
+        readStarts[count] = readCount;
+        this.readLocals = Arrays.copyOf(readBuffer, readCount);
+
+        List<Set<State>> groups = buildGroups();
+        for (int i = 0; i < readCount; i++) {
+            readGroups.add(groups.get(readDefinitions[i]));
+        }
+    }
+
+    /**
+     * Create the groups in the order of their first definition.
+     *
+     * @return the group of each definition or <tt>null</tt> if the definition does not reach any statement
+     */
+    private List<Set<State>> buildGroups() {
+        List<Set<State>> groups = new ArrayList<>(Collections.nCopies(definitions.size(), null));
+        for (int definition = generatedDefinitions.nextSetBit(0); definition >= 0; definition = generatedDefinitions.nextSetBit(definition + 1)) {
+            int root = find(definition);
+            Set<State> group = groups.get(root);
+            if (group == null) {
+                group = new LinkedHashSet<>();
+                groups.set(root, group);
+                localGroups.computeIfAbsent(locals.get(definedLocals[definition]), x -> new ArrayList<>()).add(group);
+            }
+            group.add(definitions.get(definition));
+            groups.set(definition, group);
+        }
+        return groups;
+    }
+
+    private int find(int definition) {
+        while (parents[definition] != definition) {
+            parents[definition] = parents[parents[definition]];
+            definition = parents[definition];
+        }
+        return definition;
+    }
+
+    private void union(int definition1, int definition2) {
+        int root1 = find(definition1);
+        int root2 = find(definition2);
+        if (root1 == root2) {
+            return;
+        }
+
+        if (sizes[root1] < sizes[root2]) {
+            int swap = root1;
+            root1 = root2;
+            root2 = swap;
+        }
+        parents[root2] = root1;
+        sizes[root1] += sizes[root2];
+    }
+
+    /**
+     * Merge a bitset into the bitset at an offset.
+     *
+     * @return did the target bitset change
+     */
+    private boolean or(long[] target, int offset, long[] source) {
+        boolean changed = false;
+        for (int i = 0; i < words; i++) {
+            long merged = target[offset + i] | source[i];
+            if (merged != target[offset + i]) {
+                target[offset + i] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Find the first set bit within a range of a bitset.
+     *
+     * @param bits the bitset
+     * @param from first bit of the range
+     * @param to end of the range (exclusive)
+     * @return index of the bit or <tt>-1</tt> if no bit of the range is set
+     */
+    private static int nextSetBit(long[] bits, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+
+        int index = from >>> 6;
+        int lastIndex = (to - 1) >>> 6;
+        long word = bits[index] & (-1L << from);
+        while (word == 0) {
+            if (++index > lastIndex) {
+                return -1;
+            }
+            word = bits[index];
+        }
+
+        int bit = (index << 6) + Long.numberOfTrailingZeros(word);
+        return bit < to ? bit : -1;
+    }
+
+    private static void set(long[] bits, int offset, int definition) {
+        bits[offset + (definition >>> 6)] |= 1L << definition;
+    }
+
+    private static void set(long[] bits, int offset, int from, int to) {
+        for (int index = from >>> 6; from < to; index++) {
+            long mask = -1L << from;
+            if (to - (index << 6) < 64) {
+                mask &= -1L >>> (64 - (to - (index << 6)));
+            }
+            bits[offset + index] |= mask;
+            from = (index + 1) << 6;
+        }
+    }
+
+    private static void clear(long[] bits, int offset, int from, int to) {
+        for (int index = from >>> 6; from < to; index++) {
+            long mask = -1L << from;
+            if (to - (index << 6) < 64) {
+                mask &= -1L >>> (64 - (to - (index << 6)));
+            }
+            bits[offset + index] &= ~mask;
+            from = (index + 1) << 6;
+        }
+    }
+
+    public RefCfgGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the groups of definitions of a local that are read by distinct statements.
+     * Each group could get its own local without causing issues.
+     *
+     * Definitions that do not reach any statement are not part of any group.
+     *
+     * @param local a local of the body
+     * @return groups of independent definitions
+     */
+    public List<Set<State>> getGroups(RefLocal local) {
+        return localGroups.getOrDefault(local, Collections.emptyList());
+    }
+
+    /**
+     * Get the group of definitions whose value a statement may read from a local.
+     *
+     * @param statement the statement that reads the local
+     * @param local the local
+     * @return the definitions reaching the read or empty if the statement does not read the local or no definition reaches it
+     */
+    public Optional<Set<State>> getReadGroup(Statement statement, RefLocal local) {
+        int index = graph.indexOf(statement);
+        Integer localIndex = localIndices.get(local);
+        if (index < 0 || localIndex == null) {
+            return Optional.empty();
+        }
+
+        for (int i = readStarts[index]; i < readStarts[index + 1]; i++) {
+            if (readLocals[i] == localIndex) {
+                return Optional.of(readGroups.get(i));
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,105 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * An analysis of a {@link RefBody} whose result can be cached in a {@link RefAnalysisCache}.
+ *
+ * Analyses are identified by their instance, so each analysis should exist exactly once.
+ * The results of an analysis must not be modified by their users, since they are shared.
+ *
+ * @param <T> type of the result of the analysis
+ */
+public class RefAnalysis<T> {
+    /**
+     * The control flow graph of the statements.
+     */
+    public static final RefAnalysis<RefCfgGraph> CFG =
+            new RefAnalysis<>("cfg", (body, analyses) -> new RefCfgGraph(body));
+
+    /**
+     * The dominator tree of the blocks of the {@link #CFG}, see {@link DominatorTree#dominators(AbstractCfgGraph)}.
+     */
+    public static final RefAnalysis<DominatorTree<Statement>> DOMINATORS =
+            new RefAnalysis<>("dominators", (body, analyses) -> DominatorTree.dominators(analyses.get(CFG)));
+
+    /**
+     * The post-dominator tree of the blocks of the {@link #CFG}, see {@link DominatorTree#postDominators(AbstractCfgGraph)}.
+     */
+    public static final RefAnalysis<DominatorTree<Statement>> POST_DOMINATORS =
+            new RefAnalysis<>("post-dominators", (body, analyses) -> DominatorTree.postDominators(analyses.get(CFG)));
+
+    /**
+     * The locals that are live at each block and statement of the {@link #CFG}.
+     */
+    public static final RefAnalysis<LivenessAnalysis> LIVENESS =
+            new RefAnalysis<>("liveness", (body, analyses) -> new LivenessAnalysis(analyses.get(CFG)));
+
+    /**
+     * The statements that read from each local, see {@link CommonOperations#getLocalReadMap(RefBody)}.
+     */
+    public static final RefAnalysis<Map<RefLocal, List<Statement>>> LOCAL_READS =
+            new RefAnalysis<>("local reads", (body, analyses) -> CommonOperations.getLocalReadMap(body));
+
+    /**
+     * The statements that assign each local, see {@link CommonOperations#getLocalWriteMap(RefBody)}.
+     */
+    public static final RefAnalysis<Map<RefLocal, List<AssignStmt>>> LOCAL_WRITES =
+            new RefAnalysis<>("local writes", (body, analyses) -> CommonOperations.getLocalWriteMap(body));
+
+    /**
+     * The definitions of the locals that reach each statement, grouped by the statements that they reach in common.
+     */
+    public static final RefAnalysis<ReachingDefinitionAnalysis> REACHING_DEFINITIONS =
+            new RefAnalysis<>("reaching definitions", (body, analyses) -> new ReachingDefinitionAnalysis(analyses.get(CFG)));
+
+    /**
+     * The states that each local may have, computed from the other analyses.
+     */
+    public static final RefAnalysis<LocalStateAnalysis> LOCAL_STATES =
+            new RefAnalysis<>("local states", (body, analyses) -> new LocalStateAnalysis(
+                    analyses.get(CFG), analyses.get(LOCAL_READS), analyses.get(LOCAL_WRITES)));
+
+    /**
+     * Name used for debugging.
+     */
+    private final String name;
+
+    /**
+     * Computes the result. Other analyses that it depends upon must be requested from the cache,
+     * so the result gets invalidated together with them.
+     */
+    private final BiFunction<RefBody, RefAnalysisCache, T> function;
+
+    public RefAnalysis(String name, BiFunction<RefBody, RefAnalysisCache, T> function) {
+        this.name = name;
+        this.function = function;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Compute the result of the analysis without consulting the cache.
+     *
+     * @param body the body to analyze
+     * @param analyses cache from which required analyses are requested
+     * @return the result of the analysis
+     */
+    public T compute(RefBody body, RefAnalysisCache analyses) {
+        return function.apply(body, analyses);
+    }
+
+    @Override
+    public String toString() {
+        return RefAnalysis.class.getSimpleName() + '{' + name + '}';
+    }
+}
@@ -0,0 +1,130 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.ref.RefBody;
+
+import java.util.*;
+
+/**
+ * Cache of the {@link RefAnalysis analyses} of one {@link RefBody}.
+ *
+ * The cache cannot detect modifications of the body.
+ * Whoever modifies the body must invalidate the analyses that are no longer valid.
+ * Invalidating an analysis also invalidates all analyses that were computed from it.
+ *
+ * A cache must only be used by one thread at a time.
+ */
+public class RefAnalysisCache {
+    private final RefBody body;
+
+    /**
+     * Results of the analyses that are currently valid.
+     */
+    private final Map<RefAnalysis<?>, Object> results = new IdentityHashMap<>();
+
+    /**
+     * Maps each analysis to the cached analyses that requested it while being computed.
+     */
+    private final Map<RefAnalysis<?>, Set<RefAnalysis<?>>> dependents = new IdentityHashMap<>();
+
+    /**
+     * Analyses that are being computed right now, the innermost one is on top.
+     */
+    private final Deque<RefAnalysis<?>> computing = new ArrayDeque<>();
+
+    /**
+     * Number of analyses that were computed by this cache.
+     */
+    private int computations;
+
+    public RefAnalysisCache(RefBody body) {
+        this.body = body;
+    }
+
+    public RefBody getBody() {
+        return body;
+    }
+
+    public int getComputations() {
+        return computations;
+    }
+
+    /**
+     * Get the result of an analysis, computing it if it is not cached.
+     *
+     * @param analysis the requested analysis
+     * @param <T> type of the result
+     * @return result of the analysis
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(RefAnalysis<T> analysis) {
+        RefAnalysis<?> dependent = computing.peek();
+        if (dependent != null) {
+            dependents.computeIfAbsent(analysis, x -> Collections.newSetFromMap(new IdentityHashMap<>())).add(dependent);
+        }
+
+        if (results.containsKey(analysis)) {
+            return (T) results.get(analysis);
+        }
+
+        if (computing.contains(analysis)) {
+            throw new IllegalStateException("Cyclic dependency of analysis " + analysis.getName());
+        }
+
+        computing.push(analysis);
+        T result;
+        try {
+            result = analysis.compute(body, this);
+        } finally {
+            computing.pop();
+        }
+
+        computations++;
+        results.put(analysis, result);
+        return result;
+    }
+
+    /**
+     * Check whether the result of an analysis is currently cached.
+     *
+     * @param analysis the analysis
+     * @return true if {@link #get(RefAnalysis)} would not compute the analysis
+     */
+    public boolean isCached(RefAnalysis<?> analysis) {
+        return results.containsKey(analysis);
+    }
+
+    /**
+     * Drop the result of an analysis and all analyses computed from it.
+     *
+     * @param analysis the analysis that is no longer valid
+     */
+    public void invalidate(RefAnalysis<?> analysis) {
+        results.remove(analysis);
+        Set<RefAnalysis<?>> invalidated = dependents.remove(analysis);
+        if (invalidated != null) {
+            invalidated.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Drop all results except for the preserved analyses.
+     * Preserved analyses are dropped anyway if they were computed from an analysis that is dropped.
+     *
+     * @param preserved analyses that are still valid
+     */
+    public void invalidateAllExcept(Set<RefAnalysis<?>> preserved) {
+        for (RefAnalysis<?> analysis : new ArrayList<>(results.keySet())) {
+            if (!preserved.contains(analysis)) {
+                invalidate(analysis);
+            }
+        }
+    }
+
+    /**
+     * Drop all results.
+     */
+    public void invalidateAll() {
+        results.clear();
+        dependents.clear();
+    }
+}
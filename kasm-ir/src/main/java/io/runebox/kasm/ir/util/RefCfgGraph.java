@@ -5,9 +5,8 @@ import io.runebox.kasm.ir.ref.Statement;
 import io.runebox.kasm.ir.ref.stmt.BranchStmt;
 
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class RefCfgGraph extends AbstractCfgGraph<Statement> {
     private final RefBody body;
@@ -22,8 +21,8 @@ public class RefCfgGraph extends AbstractCfgGraph<Statement> {
     }
 
     @Override
-    protected Statement getHeadInsn() {
-        return body.getStatements().getFirst();
+    protected InsertList<Statement> getInstructions() {
+        return body.getStatements();
     }
 
     @Override
@@ -34,26 +33,12 @@ public class RefCfgGraph extends AbstractCfgGraph<Statement> {
     }
 
     @Override
-    protected Stream<Statement> getReachableInstructions(Statement statement) {
-        Stream<Statement> nextInsn = statement.continuesExecution() ?
-                Stream.of(body.getStatements().getNext(statement)) : Stream.empty();
-
-        Stream<Statement> branchTargets = statement instanceof BranchStmt ?
-                ((BranchStmt) statement).getBranchTargets().stream() : Stream.empty();
-
-        return Stream.concat(nextInsn, branchTargets);
+    protected boolean continuesExecution(Statement statement) {
+        return statement.continuesExecution();
     }
 
     @Override
-    public boolean isDeadCode(Statement start, Statement end) {
-        Iterator<Statement> iterator = body.getStatements().iterator(start, end);
-
-        while (iterator.hasNext()) {
-            if (!isDeadCode(iterator.next())) {
-                return false;
-            }
-        }
-
-        return true;
+    protected Collection<Statement> getBranchTargets(Statement statement) {
+        return statement instanceof BranchStmt ? ((BranchStmt) statement).getBranchTargets() : Collections.emptySet();
     }
 }
@@ -0,0 +1,44 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.insn.BranchInsn;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+public class StackCfgGraph extends AbstractCfgGraph<Instruction> {
+    private final StackBody body;
+
+    public StackCfgGraph(StackBody body) {
+        this.body = body;
+        this.analyze();
+    }
+
+    public StackBody getBody() {
+        return body;
+    }
+
+    @Override
+    protected InsertList<Instruction> getInstructions() {
+        return body.getInstructions();
+    }
+
+    @Override
+    protected Collection<TryCatchBlock> getTryCatchBlocks() {
+        return body.getTryCatchBlocks().stream()
+                .map(block -> new TryCatchBlock(block.getFirst(), block.getLast(), block.getHandler()))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    protected boolean continuesExecution(Instruction instruction) {
+        return instruction.continuesExecution();
+    }
+
+    @Override
+    protected Collection<Instruction> getBranchTargets(Instruction instruction) {
+        return instruction instanceof BranchInsn ? ((BranchInsn) instruction).getBranchTargets() : Collections.emptyList();
+    }
+}
@@ -0,0 +1,90 @@
+package io.runebox.kasm.ir;
+
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.conversion.snapshot.SnapshotWriter;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Inputs and comparisons shared by the tests.
+ */
+public class TestUtil {
+    private TestUtil() {}
+
+    /**
+     * List the class files of a package of the <tt>java.base</tt> module.
+     *
+     * @param pkg internal name of the package, e.g. <tt>java/util</tt>
+     * @return the class files sorted by name
+     */
+    public static List<Path> listClasses(String pkg) throws IOException {
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        try (Stream<Path> stream = Files.list(jrt.getPath("/modules/java.base", pkg))) {
+            return stream.filter(file -> file.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read the class files of a package of the <tt>java.base</tt> module.
+     *
+     * @param pkg internal name of the package, e.g. <tt>java/util</tt>
+     * @return the class files sorted by name
+     */
+    public static List<byte[]> readClasses(String pkg) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (Path file : listClasses(pkg)) {
+            classes.add(Files.readAllBytes(file));
+        }
+        return classes;
+    }
+
+    /**
+     * Write a class as snapshot, so that two conversions can be compared with {@link Object#equals(Object)}.
+     *
+     * @param classfile the converted class
+     * @return the snapshot encoded as string
+     */
+    public static String toSnapshot(Classfile classfile) throws IOException {
+        SnapshotWriter writer = new SnapshotWriter();
+        writer.add(classfile);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * <pre>
+     * x = 0
+     * return x
+     * </pre>
+     */
+    public static RefBody createRefBody() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefBody body = new RefBody();
+        body.getLocals().add(x);
+        body.getStatements().addAll(List.of(
+                new AssignStmt(x, new ConstantExpr(new IntConstant(0))),
+                new ReturnStmt(x)
+        ));
+        return body;
+    }
+}
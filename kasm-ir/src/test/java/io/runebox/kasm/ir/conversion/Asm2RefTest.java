@@ -0,0 +1,116 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the direct {@link Asm2Ref} conversion with {@link Asm2Stack} followed by {@link Stack2Ref}.
+ */
+public class Asm2RefTest {
+    private static final String FAILED = "failed";
+
+    @Test
+    public void javaUtilMatchesTwoStepConversion() throws IOException {
+        List<Path> files = TestUtil.listClasses("java/util");
+        assertFalse(files.isEmpty());
+
+        int compared = 0;
+        for (Path file : files) {
+            byte[] bytes = Files.readAllBytes(file);
+            String expected = convertInTwoSteps(bytes);
+            if (expected.equals(FAILED)) {
+                // Some classes can only be converted directly, e.g. those that load from byte arrays
+                continue;
+            }
+
+            assertEquals(expected, convertDirectly(bytes), file.toString());
+            compared++;
+        }
+        assertTrue(compared > 0);
+    }
+
+    @Test
+    public void wideParametersMatchTwoStepConversion() throws IOException {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "subtract", "(JDJ)J", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.LLOAD, 4);
+        mv.visitVarInsn(Opcodes.LLOAD, 0);
+        mv.visitInsn(Opcodes.LSUB);
+        mv.visitInsn(Opcodes.LRETURN);
+        mv.visitMaxs(4, 6);
+        mv.visitEnd();
+        writer.visitEnd();
+
+        byte[] bytes = writer.toByteArray();
+        assertEquals(convertInTwoSteps(bytes), convertDirectly(bytes));
+    }
+
+    @Test
+    public void sharedHandlerMatchesTwoStepConversion() throws IOException {
+        // A handler that is reached from two protected ranges, like the one that releases the monitor of a synchronized block
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "run", "(Ljava/lang/Runnable;)V", null, null);
+        Label first = new Label();
+        Label second = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitCode();
+        mv.visitTryCatchBlock(first, second, handler, "java/lang/RuntimeException");
+        mv.visitTryCatchBlock(second, end, handler, "java/lang/Error");
+        mv.visitLabel(first);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/lang/Runnable", "run", "()V", true);
+        mv.visitLabel(second);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/lang/Runnable", "run", "()V", true);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(handler);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitMaxs(1, 2);
+        mv.visitEnd();
+        writer.visitEnd();
+
+        byte[] bytes = writer.toByteArray();
+        assertEquals(convertInTwoSteps(bytes), convertDirectly(bytes));
+    }
+
+    private static String convertDirectly(byte[] bytes) throws IOException {
+        Classfile classfile;
+        try {
+            classfile = Asm2Ref.convert(new ClassReader(bytes));
+        } catch (RuntimeException | AssertionError e) {
+            return FAILED;
+        }
+        return TestUtil.toSnapshot(classfile);
+    }
+
+    private static String convertInTwoSteps(byte[] bytes) throws IOException {
+        Classfile classfile;
+        try {
+            classfile = Asm2Stack.convert(new ClassReader(bytes));
+            Stack2Ref.convert(classfile);
+        } catch (RuntimeException | AssertionError e) {
+            return FAILED;
+        }
+        return TestUtil.toSnapshot(classfile);
+    }
+}
@@ -0,0 +1,89 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare {@link AsmStackAnalysis} with the asm {@link Analyzer} that it replaces.
+ */
+public class AsmStackAnalysisTest {
+    @Test
+    public void matchesAnalyzerWithFrames() throws Exception {
+        assertMatchesAnalyzer(0);
+    }
+
+    @Test
+    public void matchesAnalyzerWithoutFrames() throws Exception {
+        assertMatchesAnalyzer(ClassReader.SKIP_FRAMES);
+    }
+
+    @Test
+    public void matchesAnalyzerWithExpandedFrames() throws Exception {
+        assertMatchesAnalyzer(ClassReader.EXPAND_FRAMES);
+    }
+
+    /**
+     * Check the reachability and stack layout of every instruction in <tt>java.util</tt>.
+     *
+     * @param parsingOptions options for reading the classes
+     */
+    private static void assertMatchesAnalyzer(int parsingOptions) throws IOException, AnalyzerException {
+        List<byte[]> classes = TestUtil.readClasses("java/util");
+        assertFalse(classes.isEmpty());
+
+        int compared = 0;
+        for (byte[] bytes : classes) {
+            ClassNode node = new ClassNode();
+            new ClassReader(bytes).accept(node, parsingOptions);
+
+            for (MethodNode method : node.methods) {
+                if (method.instructions.size() == 0) {
+                    continue;
+                }
+
+                String name = node.name + "." + method.name + method.desc;
+                Frame<BasicValue>[] frames = new Analyzer<>(new BasicInterpreter()).analyze(node.name, method);
+                AsmStackAnalysis analysis = new AsmStackAnalysis(method);
+                analysis.analyze();
+
+                AbstractInsnNode[] insns = method.instructions.toArray();
+                for (int i = 0; i < insns.length; i++) {
+                    assertEquals(frames[i] != null, analysis.isReachable(i), name + " instruction " + i);
+                    if (frames[i] != null) {
+                        assertEquals(getStackLayout(frames[i]), analysis.getStackLayout(insns[i]), name + " instruction " + i);
+                    }
+                }
+                compared++;
+            }
+        }
+        assertTrue(compared > 0);
+    }
+
+    /**
+     * Compute the {@link AsmStackEmulator#getStackLayout() stack layout} of a frame of the {@link Analyzer}.
+     */
+    private static int getStackLayout(Frame<BasicValue> frame) {
+        int layout = 0;
+        int height = frame.getStackSize();
+        for (int depth = 0; depth < 4 && depth < height; depth++) {
+            if (frame.getStack(height - 1 - depth).getSize() == 2) {
+                layout |= 1 << depth;
+            }
+        }
+        return layout;
+    }
+}
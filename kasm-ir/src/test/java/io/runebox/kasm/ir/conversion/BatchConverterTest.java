@@ -0,0 +1,100 @@
+package io.runebox.kasm.ir.conversion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchConverterTest {
+    @Test
+    public void cacheIsKeyedByClassHierarchy() throws IOException {
+        byte[] input;
+        try (InputStream in = Object.class.getResourceAsStream("/java/util/AbstractMap$SimpleEntry.class")) {
+            input = in.readAllBytes();
+        }
+
+        Path directory = Files.createTempDirectory("kasm-cache");
+        try {
+            ClassCache cache = new ClassCache(directory, Long.MAX_VALUE);
+
+            assertFalse(convert(cache, new ClassHierarchy(), input).isCached());
+            assertTrue(convert(cache, new ClassHierarchy(), input).isCached());
+
+            // Only the supertypes of the classes that the converted class refers to are part of its key
+            ClassHierarchy unrelated = new ClassHierarchy();
+            unrelated.add("a/B", "java/lang/Object", List.of(), false);
+            assertTrue(convert(cache, unrelated, input).isCached());
+
+            ClassHierarchy other = new ClassHierarchy();
+            other.add("a/I", "java/lang/Object", List.of(), true);
+            other.add("java/io/Serializable", "java/lang/Object", List.of("a/I"), true);
+            assertFalse(convert(cache, other, input).isCached());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batchDoesNotChangeConfiguredHierarchy() throws IOException {
+        byte[] input;
+        try (InputStream in = Object.class.getResourceAsStream("/java/util/AbstractMap$SimpleEntry.class")) {
+            input = in.readAllBytes();
+        }
+
+        ClassHierarchy hierarchy = new ClassHierarchy(false);
+        BatchConverter converter = new BatchConverter();
+        converter.setClassHierarchy(Optional.of(hierarchy));
+        converter.convert(List.of(input));
+
+        assertFalse(hierarchy.contains(io.runebox.kasm.ir.Path.of("java", "util", "AbstractMap$SimpleEntry")));
+    }
+
+    @Test
+    public void unreadableClassDoesNotAbortBatch() throws IOException {
+        byte[] valid;
+        try (InputStream in = Object.class.getResourceAsStream("/java/util/AbstractMap$SimpleEntry.class")) {
+            valid = in.readAllBytes();
+        }
+        byte[] truncated = Arrays.copyOf(valid, 12);
+        byte[] tooNew = valid.clone();
+        tooNew[6] = 0;
+        tooNew[7] = 99;
+
+        List<BatchConverter.Result> results = new BatchConverter().convert(List.of(valid, truncated, tooNew, valid));
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isSuccessful(), results.get(0).toString());
+        assertTrue(results.get(3).isSuccessful(), results.get(3).toString());
+
+        for (BatchConverter.Result result : results.subList(1, 3)) {
+            assertFalse(result.isSuccessful());
+            assertTrue(result.getFailure().isPresent());
+            assertFalse(result.getReader().isPresent());
+            assertFalse(result.getBytecode().isPresent());
+            assertEquals("<unreadable>", result.getName());
+        }
+        assertTrue(results.get(2).getFailure().get() instanceof IllegalArgumentException, results.get(2).toString());
+    }
+
+    private static BatchConverter.Result convert(ClassCache cache, ClassHierarchy hierarchy, byte[] input) {
+        BatchConverter converter = new BatchConverter();
+        converter.setCache(Optional.of(cache));
+        converter.setClassHierarchy(Optional.of(hierarchy));
+
+        BatchConverter.Result result = converter.convert(List.of(input)).get(0);
+        assertTrue(result.isSuccessful(), result.toString());
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package io.runebox.kasm.ir.conversion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassCacheTest {
+    @Test
+    public void openingKeepsTempFilesOfOtherWriters() throws IOException {
+        Path directory = Files.createTempDirectory("kasm-cache");
+        try {
+            String key = ClassCache.key(new byte[] {1, 2, 3}, "test");
+            new ClassCache(directory, Long.MAX_VALUE).put(key, new byte[] {4, 5});
+
+            Path subDirectory = directory.resolve(key.substring(0, 2));
+            Path written = Files.write(subDirectory.resolve(key + "1.tmp"), new byte[] {6});
+            Path abandoned = Files.write(subDirectory.resolve(key + "2.tmp"), new byte[] {7});
+            long staleTime = System.currentTimeMillis() - ClassCache.STALE_TEMP_MILLIS - 60 * 1000;
+            Files.setLastModifiedTime(abandoned, FileTime.fromMillis(staleTime));
+
+            ClassCache cache = new ClassCache(directory, Long.MAX_VALUE);
+            assertTrue(Files.exists(written));
+            assertFalse(Files.exists(abandoned));
+            assertEquals(2, cache.getSize());
+            assertArrayEquals(new byte[] {4, 5}, cache.get(key).get());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
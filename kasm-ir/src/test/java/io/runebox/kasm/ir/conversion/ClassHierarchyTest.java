@@ -0,0 +1,119 @@
+package io.runebox.kasm.ir.conversion;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassHierarchyTest {
+    @Test
+    public void fingerprintDoesNotDependOnOrder() {
+        ClassHierarchy first = new ClassHierarchy(false);
+        first.add("a/A", "java/lang/Object", List.of(), false);
+        first.add("a/B", "a/A", List.of("a/I"), false);
+
+        ClassHierarchy second = new ClassHierarchy(false);
+        second.add("a/B", "a/A", List.of("a/I"), false);
+        second.add("a/A", "java/lang/Object", List.of(), false);
+
+        ClassReader reader = generateClass("a/B");
+        assertEquals(first.getFingerprint(reader), second.getFingerprint(reader));
+    }
+
+    @Test
+    public void fingerprintChangesWithSupertypesOfReferencedClasses() {
+        ClassHierarchy first = new ClassHierarchy(false);
+        first.add("a/B", "a/A", List.of(), false);
+
+        ClassHierarchy second = new ClassHierarchy(false);
+        second.add("a/B", "a/C", List.of(), false);
+
+        ClassHierarchy third = new ClassHierarchy(false);
+        third.add("a/B", "a/A", List.of("a/I"), false);
+
+        ClassHierarchy fourth = new ClassHierarchy(false);
+        fourth.add("a/B", "a/A", List.of(), false);
+        fourth.add("a/A", "a/D", List.of(), false);
+
+        ClassReader reader = generateClass("a/B");
+        assertNotEquals(first.getFingerprint(reader), second.getFingerprint(reader));
+        assertNotEquals(first.getFingerprint(reader), third.getFingerprint(reader));
+        assertNotEquals(first.getFingerprint(reader), fourth.getFingerprint(reader));
+        assertNotEquals(first.getFingerprint(reader), new ClassHierarchy(false).getFingerprint(reader));
+    }
+
+    @Test
+    public void fingerprintIgnoresUnreferencedClasses() {
+        ClassHierarchy first = new ClassHierarchy(false);
+        first.add("a/B", "a/A", List.of(), false);
+
+        ClassHierarchy second = new ClassHierarchy(false);
+        second.add("a/B", "a/A", List.of(), false);
+        second.add("a/Unrelated", "a/A", List.of(), false);
+
+        ClassReader reader = generateClass("a/B");
+        assertEquals(first.getFingerprint(reader), second.getFingerprint(reader));
+    }
+
+    @Test
+    public void lookupsDoNotChangeFingerprint() {
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        hierarchy.add("a/B", "java/util/ArrayList", List.of(), false);
+        ClassReader reader = generateClass("a/B");
+        String fingerprint = hierarchy.getFingerprint(reader);
+
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("a/B", "java/util/LinkedList"));
+        assertEquals(fingerprint, hierarchy.getFingerprint(reader));
+    }
+
+    @Test
+    public void childShadowsParentWithoutChangingIt() {
+        ClassHierarchy parent = new ClassHierarchy(false);
+        parent.add("java/lang/Object", null, List.of(), false);
+        parent.add("a/A", "java/lang/Object", List.of(), false);
+        parent.add("a/B", "a/A", List.of(), false);
+        parent.add("a/C", "java/lang/Object", List.of(), false);
+        assertEquals("java/lang/Object", parent.getCommonSuperClass("a/B", "a/C"));
+
+        ClassHierarchy child = new ClassHierarchy(parent);
+        child.add("a/A", "a/C", List.of(), false);
+        child.add("a/D", "a/C", List.of(), false);
+        assertEquals("a/C", child.getCommonSuperClass("a/B", "a/D"));
+        assertTrue(child.isAssignableFrom("a/C", "a/B"));
+
+        assertFalse(parent.isAssignableFrom("a/C", "a/B"));
+        assertFalse(parent.contains(io.runebox.kasm.ir.Path.of("a", "D")));
+    }
+
+    @Test
+    public void cyclicHierarchyTerminates() {
+        ClassHierarchy hierarchy = new ClassHierarchy(false);
+        hierarchy.add("a/A", "a/B", List.of("a/I"), false);
+        hierarchy.add("a/B", "a/A", List.of(), false);
+        hierarchy.add("a/C", "java/lang/Object", List.of(), false);
+        hierarchy.add("a/I", "java/lang/Object", List.of("a/J"), true);
+        hierarchy.add("a/J", "java/lang/Object", List.of("a/I"), true);
+        hierarchy.add("java/lang/Object", null, List.of(), false);
+
+        assertTrue(hierarchy.isAssignableFrom("a/A", "a/B"));
+        assertTrue(hierarchy.isAssignableFrom("a/J", "a/B"));
+        assertTrue(hierarchy.isAssignableFrom("a/I", "a/J"));
+        assertFalse(hierarchy.isAssignableFrom("a/C", "a/A"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("a/A", "a/C"));
+    }
+
+    /**
+     * Generate a class that only refers to another class in the descriptor of a method.
+     */
+    private static ClassReader generateClass(String referenced) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "a/Main", null, "java/lang/Object", null);
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "use", "(L" + referenced + ";)V", null, null).visitEnd();
+        writer.visitEnd();
+        return new ClassReader(writer.toByteArray());
+    }
+}
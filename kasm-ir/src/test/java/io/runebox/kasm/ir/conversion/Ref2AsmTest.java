@@ -0,0 +1,91 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Ref2AsmTest {
+    @Test
+    public void untypedLocalNamesLocalAndMethod() {
+        Method method = new Method("broken", List.of(), Optional.of(IntType.getInstance()));
+        RefBody body = new RefBody();
+        RefLocal local = new RefLocal(null);
+        body.getLocals().add(local);
+        body.getStatements().add(new ReturnStmt(local));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> Ref2Asm.accept(method, body, new MethodVisitor(Opcodes.ASM7) {}));
+        assertTrue(e.getMessage().contains("local 0 in method broken()I"), e.getMessage());
+    }
+
+    /**
+     * Classes of asm whose converted bytecode once failed the verifier,
+     * since a value of a conditional expression was not stored on all paths.
+     */
+    private static final Set<String> VERIFIED_CLASSES = Set.of(
+            "org.objectweb.asm.commons.ClassRemapper",
+            "org.objectweb.asm.commons.TryCatchBlockSorter",
+            "org.objectweb.asm.tree.MethodNode"
+    );
+
+    @Test
+    public void convertedClassesPassVerifier() throws ReflectiveOperationException {
+        ClassLoader loader = new ConvertingClassLoader();
+        for (String name : VERIFIED_CLASSES) {
+            Class<?> type = Class.forName(name, false, loader);
+            assertSame(loader, type.getClassLoader());
+
+            // Linking the class runs the verifier on all its methods
+            MethodHandles.privateLookupIn(type, MethodHandles.lookup()).ensureInitialized(type);
+        }
+    }
+
+    /**
+     * Defines the classes of asm itself, so the converted classes link against each other.
+     * Only the classes under test are converted, all others are defined as they are.
+     */
+    private static class ConvertingClassLoader extends ClassLoader {
+        ConvertingClassLoader() {
+            super(ClassLoader.getPlatformClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = readClass(name);
+            if (VERIFIED_CLASSES.contains(name)) {
+                Classfile classfile = Asm2Stack.convert(new ClassReader(bytes));
+                Stack2Ref.convert(classfile);
+                bytes = Ref2Asm.toBytecode(classfile);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+        private static byte[] readClass(String name) throws ClassNotFoundException {
+            try (InputStream in = Ref2AsmTest.class.getResourceAsStream("/" + name.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
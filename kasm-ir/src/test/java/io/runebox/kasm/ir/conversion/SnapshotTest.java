@@ -0,0 +1,102 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.conversion.snapshot.SnapshotFormat;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+    /**
+     * Classes with try/catch blocks, switches, lambdas, wide values and annotations.
+     */
+    private static final List<String> CLASSES = List.of(
+            "java/util/ArrayList",
+            "java/util/HashMap",
+            "java/util/concurrent/ConcurrentHashMap",
+            "java/lang/Thread"
+    );
+
+    @Test
+    public void stackBodiesRoundTrip() throws IOException {
+        assertRoundTrip(classfile -> {}, classfile -> {});
+    }
+
+    @Test
+    public void refBodiesRoundTrip() throws IOException {
+        assertRoundTrip(Stack2Ref::convert, Ref2Stack::convert);
+    }
+
+    @Test
+    public void otherVersionIsRejected() throws IOException {
+        Path file = Files.createTempFile("kasm-snapshot", ".bin");
+        try {
+            Snapshot.write(readClasses(), file);
+
+            // The version follows the magic number
+            byte[] bytes = Files.readAllBytes(file);
+            int version = SnapshotFormat.VERSION + 1;
+            bytes[4] = (byte) (version >>> 8);
+            bytes[5] = (byte) version;
+            Files.write(file, bytes);
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> Snapshot.read(file));
+            assertTrue(e.getMessage().contains("version " + version), e.getMessage());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Write the classes into a snapshot and check that the classes read from it
+     * are converted into the same bytecode as the written classes.
+     *
+     * @param toSnapshot converts the classes before they are written
+     * @param fromSnapshot converts the written and read classes back into StackBodies
+     */
+    private static void assertRoundTrip(Consumer<Classfile> toSnapshot, Consumer<Classfile> fromSnapshot) throws IOException {
+        List<Classfile> written = readClasses();
+        written.forEach(toSnapshot);
+
+        Path file = Files.createTempFile("kasm-snapshot", ".bin");
+        try {
+            Snapshot.write(written, file);
+            List<Classfile> read = Snapshot.read(file);
+
+            assertEquals(written.size(), read.size());
+            for (int i = 0; i < written.size(); i++) {
+                Classfile expected = written.get(i);
+                Classfile actual = read.get(i);
+                assertEquals(expected.getName(), actual.getName());
+
+                fromSnapshot.accept(expected);
+                fromSnapshot.accept(actual);
+                assertArrayEquals(Stack2Asm.toBytecode(expected), Stack2Asm.toBytecode(actual), expected.getName().toString());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<Classfile> readClasses() {
+        List<Classfile> classes = new ArrayList<>();
+        for (String name : CLASSES) {
+            try (InputStream in = Object.class.getResourceAsStream("/" + name + ".class")) {
+                classes.add(Asm2Stack.convert(new ClassReader(in.readAllBytes())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,202 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.stack.insn.Instruction;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypeReference;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LocalVariableAnnotationNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Stack2AsmTest {
+    private static final List<String> METHODS = List.of("first", "second", "third", "fourth");
+
+    @Test
+    public void untouchedClassRoundTrips() {
+        byte[] original = generateClass();
+        byte[] written = Stack2Asm.toBytecode(Asm2Stack.convertLazily(new ClassReader(original)));
+        assertArrayEquals(original, written);
+    }
+
+    @Test
+    public void untouchedClassMatchesAsmCopy() throws IOException {
+        // The class file of the jdk orders its attributes differently than asm would write them
+        ClassReader reader = new ClassReader("java.util.ArrayList");
+        ClassWriter copy = new ClassWriter(reader, 0);
+        reader.accept(copy, 0);
+
+        assertArrayEquals(copy.toByteArray(), Stack2Asm.toBytecode(Asm2Stack.convertLazily(reader)));
+    }
+
+    @Test
+    public void readBodiesAreStillCopied() throws IOException {
+        ClassReader reader = new ClassReader("java.util.ArrayList");
+        ClassWriter copy = new ClassWriter(reader, 0);
+        reader.accept(copy, 0);
+
+        Classfile classfile = Asm2Stack.convertLazily(reader);
+        for (Method method : classfile.getMethods()) {
+            method.getBody().ifPresent(body -> ((StackBody) body).getInstructions().size());
+        }
+
+        assertArrayEquals(copy.toByteArray(), Stack2Asm.toBytecode(classfile));
+    }
+
+    @Test
+    public void modifiedBodiesAreRegenerated() {
+        byte[] original = generateClass();
+        Classfile classfile = Asm2Stack.convertLazily(new ClassReader(original));
+        Method method = classfile.getMethods().get(0);
+        StackBody body = (StackBody) method.getBody().get();
+        assertTrue(method.getUnmodifiedBodyLoader().isPresent());
+
+        // Remove and re-add the same instruction, so only the modification count tells the change
+        Instruction last = body.getInstructions().getLast();
+        body.getInstructions().remove(last);
+        body.getInstructions().add(last);
+        assertFalse(method.getUnmodifiedBodyLoader().isPresent());
+
+        Method other = classfile.getMethods().get(1);
+        other.getBody().get().markModified();
+        assertFalse(other.getUnmodifiedBodyLoader().isPresent());
+
+        assertFalse(Arrays.equals(original, Stack2Asm.toBytecode(classfile)));
+    }
+
+    @Test
+    public void regeneratedMethodsKeepTheirPosition() {
+        Classfile classfile = Asm2Stack.convertLazily(new ClassReader(generateClass()));
+        classfile.getMethods().get(1).getBody().get().markModified();
+        classfile.getMethods().get(3).getBody().get().markModified();
+
+        ClassNode node = new ClassNode();
+        new ClassReader(Stack2Asm.toBytecode(classfile)).accept(node, 0);
+        assertEquals(METHODS, node.methods.stream().map(method -> method.name).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void longParameterKeepsBothSlotsAfterRef2Stack() throws ReflectiveOperationException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateBoxingClass()));
+        Stack2Ref.convert(classfile);
+        Ref2Stack.convert(classfile);
+        byte[] bytes = Stack2Asm.toBytecode(classfile);
+
+        // Invoking the method runs the verifier on the class
+        Class<?> type = new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass("Boxing", bytes, 0, bytes.length);
+            }
+        }.define();
+        Object result = type.getMethod("box", long.class, Object.class).invoke(null, 42L, "x");
+        assertEquals(42L, result);
+    }
+
+    @Test
+    public void localVariableAnnotationKeepsItsRange() {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateAnnotatedLocalClass()));
+        assertEquals(List.of(Opcodes.ILOAD, Opcodes.ICONST_1, Opcodes.IADD, Opcodes.ISTORE, Opcodes.ILOAD, Opcodes.IRETURN),
+                getAnnotatedOpcodes(Stack2Asm.toBytecode(classfile)));
+    }
+
+    /**
+     * Get the opcodes of the instructions covered by the only local variable type annotation of a class.
+     */
+    private static List<Integer> getAnnotatedOpcodes(byte[] bytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, 0);
+
+        MethodNode method = node.methods.get(0);
+        assertEquals(1, method.invisibleLocalVariableAnnotations.size());
+        LocalVariableAnnotationNode annotation = method.invisibleLocalVariableAnnotations.get(0);
+        assertEquals(1, annotation.start.size());
+
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode insn = annotation.start.get(0); insn != annotation.end.get(0); insn = insn.getNext()) {
+            if (insn.getOpcode() >= 0) {
+                opcodes.add(insn.getOpcode());
+            }
+        }
+        return opcodes;
+    }
+
+    /**
+     * Generate a method with a type annotation on a local that is live across several instructions.
+     */
+    private static byte[] generateAnnotatedLocalClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Annotated", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "increment", "(I)I", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitLabel(start);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(end);
+        mv.visitLocalVariableAnnotation(TypeReference.newTypeReference(TypeReference.LOCAL_VARIABLE).getValue(), null,
+                new Label[] { start }, new Label[] { end }, new int[] { 1 }, "LNonNegative;", false).visitEnd();
+        mv.visitMaxs(2, 2);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Generate a method whose temporary local for a new object is allocated after a long parameter.
+     */
+    private static byte[] generateBoxingClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Boxing", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "box",
+                "(JLjava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, "java/lang/Long");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitVarInsn(Opcodes.LLOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Long", "<init>", "(J)V", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] generateClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        for (String name : METHODS) {
+            MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, name, "(I)I", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ILOAD, 0);
+            mv.visitLdcInsn(name.length());
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(2, 1);
+            mv.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
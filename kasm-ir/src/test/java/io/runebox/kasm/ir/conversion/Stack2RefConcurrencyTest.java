@@ -0,0 +1,92 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Convert the same classes on one thread and on many threads at once and expect the same {@link io.runebox.kasm.ir.ref.RefBody RefBodies}.
+ *
+ * Every thread of {@link Stack2Ref} has its own post processors, so sharing state between them shows up as differing output.
+ * Classes that already fail on one thread are left out, since their failures say nothing about thread safety.
+ */
+public class Stack2RefConcurrencyTest {
+    private static final int THREADS = 64;
+
+    /**
+     * Amount of times each class is converted in parallel, so that conversions of the same class overlap.
+     */
+    private static final int ROUNDS = 2;
+
+    /**
+     * Minimal share of the classes in percent that must convert on one thread, so that enough classes are compared.
+     */
+    private static final int MIN_CONVERTED_PERCENT = 90;
+
+    @Test
+    public void parallelConversionMatchesSingleThreaded() throws Exception {
+        List<byte[]> allClasses = TestUtil.readClasses("java/util");
+        assertFalse(allClasses.isEmpty());
+
+        List<byte[]> classes = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (byte[] bytes : allClasses) {
+            try {
+                expected.add(convert(bytes));
+                classes.add(bytes);
+            } catch (RuntimeException | AssertionError e) {
+                // fails on one thread as well
+            }
+        }
+        assertTrue(classes.size() * 100 >= allClasses.size() * MIN_CONVERTED_PERCENT,
+                "Only " + classes.size() + " of " + allClasses.size() + " classes could be converted");
+
+        List<Callable<String>> tasks = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < classes.size(); i++) {
+                byte[] bytes = classes.get(i);
+                tasks.add(() -> convert(bytes));
+                indices.add(i);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                int index = indices.get(i);
+                String name = new ClassReader(classes.get(index)).getClassName();
+                String actual;
+                try {
+                    actual = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new AssertionError(name + " converts on one thread but fails on many", e.getCause());
+                }
+                assertEquals(expected.get(index), actual, name);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Convert a class into RefBodies and write it as snapshot.
+     *
+     * @param bytes the class file
+     * @return the snapshot encoded as string
+     */
+    private static String convert(byte[] bytes) throws IOException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(bytes));
+        Stack2Ref.convert(classfile);
+
+        return TestUtil.toSnapshot(classfile);
+    }
+}
@@ -0,0 +1,185 @@
+package io.runebox.kasm.ir.conversion;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.stmt.SwitchStmt;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Stack2RefTest {
+    /**
+     * <tt>invokeAll</tt> reuses a slot for an <tt>int</tt> and an <tt>Iterator</tt>.
+     * Both values reach the same exception handler, which does not read the slot, so they must get separate locals.
+     */
+    @Test
+    public void slotReusedBeforeHandlerIsPartitioned() throws IOException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader("java.util.concurrent.AbstractExecutorService"));
+        classfile.getMethods().removeIf(method -> !method.getName().equals("invokeAll"));
+        assertEquals(2, classfile.getMethods().size());
+
+        Stack2Ref.convert(classfile);
+
+        for (Method method : classfile.getMethods()) {
+            RefBody body = (RefBody) method.getBody().get();
+            for (RefLocal local : body.getLocals()) {
+                assertNotNull(local.getType(), method.getName());
+            }
+        }
+    }
+
+    @Test
+    public void ref2StackReusesAnalysesOfPostProcessors() throws IOException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader("java.util.ArrayList"));
+        Method method = classfile.getMethods().stream()
+                .filter(m -> m.getName().equals("trimToSize"))
+                .findFirst().get();
+        StackBody stackBody = (StackBody) method.getBody().get();
+
+        RefAnalysisCache analyses = Stack2Ref.convertWithAnalyses(classfile, method, stackBody);
+        assertTrue(analyses.isCached(RefAnalysis.CFG));
+
+        int computations = analyses.getComputations();
+        StackBody converted = Ref2Stack.convert(analyses.getBody(), analyses);
+        assertEquals(computations, analyses.getComputations());
+        assertFalse(converted.getInstructions().isEmpty());
+    }
+
+    @Test
+    public void switchIsConverted() throws ReflectiveOperationException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateClass()));
+        classfile.getMethods().removeIf(method -> !method.getName().equals("select"));
+        Stack2Ref.convert(classfile);
+
+        RefBody body = (RefBody) findMethod(classfile, "select").getBody().get();
+        SwitchStmt switchStmt = body.getStatements().stream()
+                .filter(SwitchStmt.class::isInstance)
+                .map(SwitchStmt.class::cast)
+                .findFirst().get();
+        assertEquals(3, switchStmt.getBranchTargets().size());
+        assertEquals(3, switchStmt.getBranchTargetsCells().size());
+
+        Class<?> type = defineClass(Ref2Asm.toBytecode(classfile));
+        java.lang.reflect.Method select = type.getMethod("select", int.class);
+        assertEquals(10, select.invoke(null, 0));
+        assertEquals(20, select.invoke(null, 1));
+        assertEquals(30, select.invoke(null, 5));
+    }
+
+    @Test
+    public void handlerReadsLocalAssignedBeforeTry() throws ReflectiveOperationException {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateClass()));
+        classfile.getMethods().removeIf(method -> !method.getName().equals("divide"));
+        Stack2Ref.convert(classfile);
+
+        RefBody body = (RefBody) findMethod(classfile, "divide").getBody().get();
+        for (RefLocal local : body.getLocals()) {
+            assertNotNull(local.getType());
+        }
+
+        Class<?> type = defineClass(Ref2Asm.toBytecode(classfile));
+        java.lang.reflect.Method divide = type.getMethod("divide", int.class);
+        assertEquals(20, divide.invoke(null, 5));
+        assertEquals(1, divide.invoke(null, 0));
+    }
+
+    private static Method findMethod(Classfile classfile, String name) {
+        return classfile.getMethods().stream()
+                .filter(method -> method.getName().equals(name))
+                .findFirst().get();
+    }
+
+    private Class<?> defineClass(byte[] bytes) {
+        // Loading the class runs the verifier on it
+        return new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass("Generated", bytes, 0, bytes.length);
+            }
+        }.define();
+    }
+
+    /**
+     * <pre>
+     * public static int select(int x) {
+     *     switch (x) {
+     *         case 0: return 10;
+     *         case 1: return 20;
+     *         default: return 30;
+     *     }
+     * }
+     *
+     * public static int divide(int x) {
+     *     int fallback = x + 1;
+     *     try {
+     *         x = 100 / x;
+     *     } catch (ArithmeticException e) {
+     *         return fallback;
+     *     }
+     *     return x;
+     * }
+     * </pre>
+     */
+    private static byte[] generateClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Generated", null, "java/lang/Object", null);
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "select", "(I)I", null, null);
+        mv.visitCode();
+        Label case0 = new Label();
+        Label case1 = new Label();
+        Label defaultCase = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(0, 1, defaultCase, case0, case1);
+        mv.visitLabel(case0);
+        mv.visitIntInsn(Opcodes.BIPUSH, 10);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(case1);
+        mv.visitIntInsn(Opcodes.BIPUSH, 20);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(defaultCase);
+        mv.visitIntInsn(Opcodes.BIPUSH, 30);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "divide", "(I)I", null, null);
+        mv.visitCode();
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/ArithmeticException");
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitLabel(tryStart);
+        mv.visitIntInsn(Opcodes.BIPUSH, 100);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IDIV);
+        mv.visitVarInsn(Opcodes.ISTORE, 0);
+        mv.visitLabel(tryEnd);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(handler);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,217 @@
+package io.runebox.kasm.ir.conversion.asm2stack;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.TestUtil;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import io.runebox.kasm.ir.conversion.Stack2Asm;
+import io.runebox.kasm.ir.conversion.metrics.ConversionListener;
+import io.runebox.kasm.ir.conversion.metrics.ConversionMetrics;
+import io.runebox.kasm.ir.conversion.metrics.Stage;
+import io.runebox.kasm.ir.conversion.metrics.StageMeasurement;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyBodyLoaderTest {
+    @Test
+    public void equalsComparesLikeEagerConversion() throws IOException {
+        ClassReader reader = new ClassReader("java.util.ArrayList");
+        Classfile lazy = Asm2Stack.convertLazily(reader);
+        Classfile eager = Asm2Stack.convert(reader);
+        Classfile eagerAgain = Asm2Stack.convert(reader);
+
+        lazy.hashCode();
+        for (Method method : lazy.getMethods()) {
+            assertFalse(method.isBodyLoaded(), method.getName());
+        }
+
+        for (int i = 0; i < lazy.getMethods().size(); i++) {
+            Method method = lazy.getMethods().get(i);
+            boolean expected = eagerAgain.getMethods().get(i).equals(eager.getMethods().get(i));
+            assertEquals(expected, method.equals(eager.getMethods().get(i)), method.getName());
+            assertTrue(method.isBodyLoaded(), method.getName());
+
+            method.getBody();
+            assertEquals(expected, method.equals(eager.getMethods().get(i)), method.getName());
+            assertEquals(method, method);
+        }
+    }
+
+    @Test
+    public void loadingBodyConvertsOnlyThatMethod() throws IOException {
+        Classfile lazy = Asm2Stack.convertLazily(new ClassReader("java.util.ArrayList"));
+        Method method = lazy.getMethods().get(1);
+
+        List<StageMeasurement> measurements = Collections.synchronizedList(new ArrayList<>());
+        Optional<ConversionListener> previous = ConversionMetrics.getListener();
+        ConversionMetrics.setListener(Optional.of(measurements::add));
+        try {
+            method.getBody();
+        } finally {
+            ConversionMetrics.setListener(previous);
+        }
+
+        assertEquals(1, measurements.size());
+        assertEquals(ConversionMetrics.getCodeSize(method.getBody().get()), measurements.get(0).getOutputSize());
+        for (Method other : lazy.getMethods()) {
+            assertEquals(other == method, other.isBodyLoaded(), other.getName());
+        }
+    }
+
+    @Test
+    public void loadedBodiesMatchEagerConversion() throws IOException {
+        ClassReader reader = new ClassReader("java.util.ArrayList");
+        Classfile lazy = Asm2Stack.convertLazily(reader);
+
+        // Load the bodies in another order than the class declares them
+        List<Method> methods = new ArrayList<>(lazy.getMethods());
+        Collections.reverse(methods);
+        for (Method method : methods) {
+            method.getBody();
+            assertTrue(method.isBodyLoaded());
+        }
+
+        assertEquals(TestUtil.toSnapshot(Asm2Stack.convert(reader)), TestUtil.toSnapshot(lazy));
+    }
+
+    @Test
+    public void methodsLoadedOnManyThreadsMatchEagerConversion() throws Exception {
+        ClassReader reader = new ClassReader("java.util.ArrayList");
+        String expected = TestUtil.toSnapshot(Asm2Stack.convert(reader));
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 8; round++) {
+                Classfile lazy = Asm2Stack.convertLazily(reader);
+                List<Callable<Boolean>> tasks = new ArrayList<>();
+                for (Method method : lazy.getMethods()) {
+                    tasks.add(() -> method.getBody().isPresent());
+                }
+                for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+                assertEquals(expected, TestUtil.toSnapshot(lazy));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lazyConversionIsReported() throws IOException {
+        byte[] bytes;
+        try (InputStream in = Object.class.getResourceAsStream("/java/util/ArrayList.class")) {
+            bytes = in.readAllBytes();
+        }
+
+        List<StageMeasurement> measurements = Collections.synchronizedList(new ArrayList<>());
+        Optional<ConversionListener> previous = ConversionMetrics.getListener();
+        ConversionMetrics.setListener(Optional.of(measurements::add));
+        try {
+            Classfile lazy = Asm2Stack.convertLazily(new ClassReader(bytes));
+            assertEquals(1, measurements.size());
+            assertEquals(Stage.ASM_TO_STACK, measurements.get(0).getStage());
+            assertEquals(bytes.length, measurements.get(0).getInputSize());
+            assertEquals(0, measurements.get(0).getOutputSize());
+
+            lazy.getMethods().get(0).getBody();
+            assertEquals(2, measurements.size());
+            assertEquals(Stage.ASM_TO_STACK, measurements.get(1).getStage());
+            assertTrue(measurements.get(1).getOutputSize() > 0);
+        } finally {
+            ConversionMetrics.setListener(previous);
+        }
+    }
+
+    @Test
+    public void bodyCanBeLoadedAgain() throws IOException {
+        Classfile lazy = Asm2Stack.convertLazily(new ClassReader("java.util.ArrayList"));
+        Method method = lazy.getMethods().get(0);
+        LazyBodyLoader loader = (LazyBodyLoader) method.getBodyLoader().get();
+
+        method.getBody();
+        assertTrue(loader.get().isPresent());
+    }
+
+    @Test
+    public void failingBodyDoesNotAffectOthers() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        for (String name : List.of("first", "broken", "last")) {
+            MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, name, "()V", null, null);
+            mv.visitCode();
+            if (name.equals("broken")) {
+                // Pops from an empty stack
+                mv.visitInsn(Opcodes.POP);
+            }
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+        }
+        writer.visitEnd();
+
+        Classfile lazy = Asm2Stack.convertLazily(new ClassReader(writer.toByteArray()));
+        assertThrows(RuntimeException.class, () -> lazy.getMethods().get(1).getBody());
+        assertTrue(lazy.getMethods().get(0).getBody().isPresent());
+        assertTrue(lazy.getMethods().get(2).getBody().isPresent());
+    }
+
+    @Test
+    public void failingLoaderKeepsBodyUnloaded() {
+        Method method = new Method("broken", List.of(), Optional.empty());
+        int[] calls = new int[1];
+        method.setBodyLoader(() -> {
+            calls[0]++;
+            throw new IllegalStateException("broken body");
+        });
+
+        assertThrows(IllegalStateException.class, method::getBody);
+        assertFalse(method.isBodyLoaded());
+        assertTrue(method.getBodyLoader().isPresent());
+
+        // The body is not silently treated as absent, so the next access fails again
+        assertThrows(IllegalStateException.class, method::getBody);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void failingBodyIsCopiedFromSource() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "broken", "()V", null, null);
+        mv.visitCode();
+        // Pops from an empty stack
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        byte[] original = writer.toByteArray();
+
+        Classfile lazy = Asm2Stack.convertLazily(new ClassReader(original));
+        assertThrows(RuntimeException.class, () -> lazy.getMethods().get(0).getBody());
+
+        // The method still has its code, instead of being written without a Code attribute
+        ClassNode written = new ClassNode();
+        new ClassReader(Stack2Asm.toBytecode(lazy)).accept(written, 0);
+        assertEquals(2, written.methods.get(0).instructions.size());
+        assertEquals(Opcodes.POP, written.methods.get(0).instructions.getFirst().getOpcode());
+    }
+}
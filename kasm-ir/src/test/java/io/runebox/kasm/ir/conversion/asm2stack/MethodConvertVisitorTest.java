@@ -0,0 +1,90 @@
+package io.runebox.kasm.ir.conversion.asm2stack;
+
+import io.runebox.kasm.ir.Body;
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.stack.StackBody;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MethodConvertVisitorTest {
+    @Test
+    public void onlyMethodsWithSubroutinesAreBuffered() {
+        List<String> buffered = new ArrayList<>();
+        ClassConvertVisitor converter = new ClassConvertVisitor() {
+            @Override
+            protected MethodVisitor newMethodConvertVisitor(MethodVisitor mv, Method method, int access, String name,
+                                                            String descriptor, String signature, String[] exceptions) {
+                return new MethodConvertVisitor(mv, getClassfile(), method, access, name, descriptor, signature, exceptions) {
+                    @Override
+                    protected Body convertBody(MethodNode mn) {
+                        buffered.add(mn.name);
+                        return super.convertBody(mn);
+                    }
+                };
+            }
+        };
+        new ClassReader(generateClass()).accept(converter, 0);
+
+        assertEquals(List.of("jsrFirst", "retFirst"), buffered);
+        Classfile classfile = converter.getClassfile();
+        for (Method method : classfile.getMethods()) {
+            StackBody body = (StackBody) method.getBody().get();
+            assertFalse(body.getInstructions().isEmpty(), method.getName());
+        }
+    }
+
+    /**
+     * Generate a class of version 49, whose methods might contain subroutines.
+     */
+    private static byte[] generateClass() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC, "plain", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        Label subroutine = new Label();
+        mv = writer.visitMethod(Opcodes.ACC_STATIC, "jsrFirst", "()V", null, null);
+        mv.visitCode();
+        mv.visitJumpInsn(Opcodes.JSR, subroutine);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(subroutine);
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+        mv.visitVarInsn(Opcodes.RET, 0);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // The subroutine is placed before its caller
+        Label start = new Label();
+        subroutine = new Label();
+        mv = writer.visitMethod(Opcodes.ACC_STATIC, "retFirst", "()V", null, null);
+        mv.visitCode();
+        mv.visitJumpInsn(Opcodes.GOTO, start);
+        mv.visitLabel(subroutine);
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+        mv.visitVarInsn(Opcodes.RET, 0);
+        mv.visitLabel(start);
+        mv.visitJumpInsn(Opcodes.JSR, subroutine);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,25 @@
+package io.runebox.kasm.ir.conversion.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionMetricsTest {
+    @Test
+    public void classSizeIsLengthOfClassFile() throws IOException {
+        for (Class<?> type : List.of(Object.class, String.class, java.util.HashMap.class, Thread.State.class)) {
+            String resource = "/" + type.getName().replace('.', '/') + ".class";
+            byte[] bytes;
+            try (InputStream in = Object.class.getResourceAsStream(resource)) {
+                bytes = in.readAllBytes();
+            }
+
+            assertEquals(bytes.length, ConversionMetrics.getClassSize(new ClassReader(bytes)), type.getName());
+        }
+    }
+}
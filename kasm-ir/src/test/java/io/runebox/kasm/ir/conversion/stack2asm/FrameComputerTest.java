@@ -0,0 +1,321 @@
+package io.runebox.kasm.ir.conversion.stack2asm;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import io.runebox.kasm.ir.conversion.ClassHierarchy;
+import io.runebox.kasm.ir.conversion.Ref2Asm;
+import io.runebox.kasm.ir.conversion.Stack2Asm;
+import io.runebox.kasm.ir.conversion.Stack2Ref;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameComputerTest {
+    @Test
+    public void mergedReferencesGetCommonSuperclass() throws ReflectiveOperationException {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(Z)Ljava/util/List;", null, null);
+        Label otherwise = new Label();
+        Label join = new Label();
+        mn.visitVarInsn(Opcodes.ILOAD, 0);
+        mn.visitJumpInsn(Opcodes.IFEQ, otherwise);
+        newInstance(mn, "java/util/ArrayList");
+        mn.visitVarInsn(Opcodes.ASTORE, 1);
+        mn.visitJumpInsn(Opcodes.GOTO, join);
+        mn.visitLabel(otherwise);
+        newInstance(mn, "java/util/LinkedList");
+        mn.visitVarInsn(Opcodes.ASTORE, 1);
+        mn.visitLabel(join);
+        mn.visitVarInsn(Opcodes.ALOAD, 1);
+        mn.visitInsn(Opcodes.ARETURN);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        List<FrameNode> frames = getFrames(written);
+        assertEquals(2, frames.size());
+        assertEquals(List.of(Opcodes.INTEGER), frames.get(0).local);
+        assertEquals(List.of(Opcodes.INTEGER, "java/util/AbstractList"), frames.get(1).local);
+        assertTrue(frames.get(1).stack.isEmpty());
+        assertEquals(2, written.maxLocals);
+        assertEquals(2, written.maxStack);
+
+        assertEquals(List.of(), invoke(bytes, false));
+    }
+
+    @Test
+    public void wideValuesTakeTwoSlots() throws ReflectiveOperationException {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(J)J", null, null);
+        Label zero = new Label();
+        mn.visitVarInsn(Opcodes.LLOAD, 0);
+        mn.visitInsn(Opcodes.LCONST_0);
+        mn.visitInsn(Opcodes.LCMP);
+        mn.visitJumpInsn(Opcodes.IFEQ, zero);
+        mn.visitVarInsn(Opcodes.LLOAD, 0);
+        mn.visitInsn(Opcodes.LRETURN);
+        mn.visitLabel(zero);
+        mn.visitInsn(Opcodes.LCONST_1);
+        mn.visitInsn(Opcodes.LRETURN);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        List<FrameNode> frames = getFrames(written);
+        assertEquals(1, frames.size());
+        assertEquals(List.of(Opcodes.LONG), frames.get(0).local);
+        assertEquals(2, written.maxLocals);
+        assertEquals(4, written.maxStack);
+
+        assertEquals(7L, invoke(bytes, 7L));
+    }
+
+    @Test
+    public void uninitializedObjectIsTrackedAcrossBranches() throws ReflectiveOperationException {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(Z)Ljava/lang/Object;", null, null);
+        Label target = new Label();
+        mn.visitTypeInsn(Opcodes.NEW, "java/lang/Object");
+        mn.visitInsn(Opcodes.DUP);
+        mn.visitVarInsn(Opcodes.ILOAD, 0);
+        mn.visitJumpInsn(Opcodes.IFEQ, target);
+        mn.visitLabel(target);
+        mn.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mn.visitInsn(Opcodes.ARETURN);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        AbstractInsnNode newInsn = findFirst(written, Opcodes.NEW);
+        LabelNode newLabel = (LabelNode) newInsn.getPrevious();
+
+        List<FrameNode> frames = getFrames(written);
+        assertEquals(1, frames.size());
+        assertEquals(List.of(newLabel, newLabel), frames.get(0).stack);
+
+        assertNotNull(invoke(bytes, true));
+    }
+
+    @Test
+    public void loopAtFirstInstructionGetsFrame() throws ReflectiveOperationException {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        Label loop = new Label();
+        mn.visitLabel(loop);
+        mn.visitIincInsn(0, -1);
+        mn.visitVarInsn(Opcodes.ILOAD, 0);
+        mn.visitJumpInsn(Opcodes.IFGT, loop);
+        mn.visitVarInsn(Opcodes.ILOAD, 0);
+        mn.visitInsn(Opcodes.IRETURN);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        List<FrameNode> frames = getFrames(written);
+        assertEquals(1, frames.size());
+        assertEquals(List.of(Opcodes.INTEGER), frames.get(0).local);
+
+        assertEquals(0, invoke(bytes, 3));
+    }
+
+    @Test
+    public void handlerFrameHoldsCaughtException() throws ReflectiveOperationException {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "()V", null, null);
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mn.visitTryCatchBlock(start, end, handler, "java/lang/IllegalStateException");
+        mn.visitLabel(start);
+        mn.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread", "yield", "()V", false);
+        mn.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread", "yield", "()V", false);
+        mn.visitLabel(end);
+        mn.visitInsn(Opcodes.RETURN);
+        mn.visitLabel(handler);
+        mn.visitInsn(Opcodes.POP);
+        mn.visitInsn(Opcodes.RETURN);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        List<FrameNode> frames = getFrames(written);
+        assertEquals(1, frames.size());
+        assertTrue(frames.get(0).local.isEmpty());
+        assertEquals(List.of("java/lang/IllegalStateException"), frames.get(0).stack);
+        assertEquals(1, written.maxStack);
+
+        invoke(bytes);
+    }
+
+    @Test
+    public void unreachableCodeIsRemoved() {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "()V", null, null);
+        Label start = new Label();
+        Label end = new Label();
+        mn.visitInsn(Opcodes.RETURN);
+        mn.visitLabel(start);
+        mn.visitInsn(Opcodes.ICONST_0);
+        mn.visitInsn(Opcodes.POP);
+        mn.visitLabel(end);
+        mn.visitInsn(Opcodes.RETURN);
+        mn.visitTryCatchBlock(start, end, end, null);
+
+        byte[] bytes = writeStackBody(mn, Opcodes.V1_8);
+        MethodNode written = readMethod(bytes);
+
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode insn : written.instructions) {
+            if (insn.getOpcode() >= 0) {
+                opcodes.add(insn.getOpcode());
+            }
+        }
+        assertEquals(List.of(Opcodes.RETURN), opcodes);
+        assertTrue(written.tryCatchBlocks.isEmpty());
+        assertTrue(getFrames(written).isEmpty());
+    }
+
+    @Test
+    public void noFramesForOldClassFiles() {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        Label zero = new Label();
+        mn.visitVarInsn(Opcodes.ILOAD, 0);
+        mn.visitJumpInsn(Opcodes.IFEQ, zero);
+        mn.visitInsn(Opcodes.ICONST_1);
+        mn.visitInsn(Opcodes.IRETURN);
+        mn.visitLabel(zero);
+        mn.visitInsn(Opcodes.ICONST_0);
+        mn.visitInsn(Opcodes.IRETURN);
+
+        MethodNode written = readMethod(writeStackBody(mn, Opcodes.V1_5));
+
+        assertTrue(getFrames(written).isEmpty());
+        assertEquals(1, written.maxLocals);
+        assertEquals(1, written.maxStack);
+    }
+
+    @Test
+    public void refBodyHandlersGetFrames() throws ReflectiveOperationException {
+        // Both handlers store the caught exception into the same local
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(Ljava/lang/String;)I", null, null);
+        Label start = new Label();
+        Label end = new Label();
+        Label numberHandler = new Label();
+        Label otherHandler = new Label();
+        mn.visitTryCatchBlock(start, end, numberHandler, "java/lang/NumberFormatException");
+        mn.visitTryCatchBlock(start, end, otherHandler, "java/lang/RuntimeException");
+        mn.visitLabel(start);
+        mn.visitVarInsn(Opcodes.ALOAD, 0);
+        mn.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "trim", "()Ljava/lang/String;", false);
+        mn.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "parseInt", "(Ljava/lang/String;)I", false);
+        mn.visitVarInsn(Opcodes.ISTORE, 2);
+        mn.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread", "yield", "()V", false);
+        mn.visitLabel(end);
+        mn.visitVarInsn(Opcodes.ILOAD, 2);
+        mn.visitInsn(Opcodes.IRETURN);
+        mn.visitLabel(numberHandler);
+        mn.visitVarInsn(Opcodes.ASTORE, 1);
+        mn.visitInsn(Opcodes.ICONST_M1);
+        mn.visitInsn(Opcodes.IRETURN);
+        mn.visitLabel(otherHandler);
+        mn.visitVarInsn(Opcodes.ASTORE, 1);
+        mn.visitVarInsn(Opcodes.ALOAD, 1);
+        mn.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "hashCode", "()I", false);
+        mn.visitInsn(Opcodes.POP);
+        mn.visitInsn(Opcodes.ICONST_M1);
+        mn.visitInsn(Opcodes.ICONST_M1);
+        mn.visitInsn(Opcodes.IADD);
+        mn.visitInsn(Opcodes.IRETURN);
+
+        byte[] bytes = writeRefBody(mn);
+        MethodNode written = readMethod(bytes);
+
+        for (FrameNode frame : getFrames(written)) {
+            AbstractInsnNode next = frame.getNext();
+            while (next.getOpcode() < 0) {
+                next = next.getNext();
+            }
+            if (next.getOpcode() == Opcodes.ASTORE) {
+                assertEquals(1, frame.stack.size());
+            }
+        }
+
+        assertEquals(42, invoke(bytes, "42"));
+        assertEquals(-1, invoke(bytes, "x"));
+        assertEquals(-2, invoke(bytes, (Object) null));
+    }
+
+    private static void newInstance(MethodNode mn, String type) {
+        mn.visitTypeInsn(Opcodes.NEW, type);
+        mn.visitInsn(Opcodes.DUP);
+        mn.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+    }
+
+    /**
+     * Write a method with the frames computed by kasm and read it back.
+     */
+    private static byte[] writeStackBody(MethodNode mn, int version) {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateClass(mn, version)));
+        return Stack2Asm.toBytecodeWithFrameComputer(classfile, new ClassHierarchy());
+    }
+
+    private static byte[] writeRefBody(MethodNode mn) {
+        Classfile classfile = Asm2Stack.convert(new ClassReader(generateClass(mn, Opcodes.V1_8)));
+        Stack2Ref.convert(classfile);
+        return Ref2Asm.toBytecodeWithFrameComputer(classfile, new ClassHierarchy());
+    }
+
+    private static byte[] generateClass(MethodNode mn, int version) {
+        ClassNode cn = new ClassNode();
+        cn.visit(version, Opcodes.ACC_PUBLIC, "Test", null, "java/lang/Object", null);
+        cn.methods.add(mn);
+
+        // The frames of the input do not matter, since they are not read
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cn.accept(cw);
+        return cw.toByteArray();
+    }
+
+    private static MethodNode readMethod(byte[] bytes) {
+        ClassNode cn = new ClassNode();
+        new ClassReader(bytes).accept(cn, ClassReader.EXPAND_FRAMES);
+        return cn.methods.get(0);
+    }
+
+    /**
+     * Invoke the only method of a written class, which makes the jvm verify it.
+     */
+    private static Object invoke(byte[] bytes, Object... arguments) throws ReflectiveOperationException {
+        Class<?> type = new ClassLoader(FrameComputerTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass("Test", bytes, 0, bytes.length);
+            }
+        }.define();
+        for (Method method : type.getDeclaredMethods()) {
+            return method.invoke(null, arguments);
+        }
+        throw new AssertionError("No method was written");
+    }
+
+    private static AbstractInsnNode findFirst(MethodNode mn, int opcode) {
+        for (AbstractInsnNode insn : mn.instructions) {
+            if (insn.getOpcode() == opcode) {
+                return insn;
+            }
+        }
+        throw new AssertionError("No instruction with opcode " + opcode);
+    }
+
+    private static List<FrameNode> getFrames(MethodNode mn) {
+        List<FrameNode> frames = new ArrayList<>();
+        for (AbstractInsnNode insn : mn.instructions) {
+            if (insn instanceof FrameNode) {
+                frames.add((FrameNode) insn);
+            }
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,95 @@
+package io.runebox.kasm.ir.conversion.stack2ref.processor;
+
+import io.runebox.kasm.ir.TestUtil;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.util.RefAnalysis;
+import io.runebox.kasm.ir.util.RefAnalysisCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PassManagerTest {
+    private static final Set<RefAnalysis<?>> ANALYSES = Set.of(
+            RefAnalysis.CFG, RefAnalysis.DOMINATORS, RefAnalysis.LIVENESS, RefAnalysis.LOCAL_READS);
+
+    @Test
+    public void unmodifiedBodyKeepsAllAnalyses() {
+        RefBody body = TestUtil.createRefBody();
+        RefAnalysisCache analyses = new RefAnalysisCache(body);
+        new PassManager(List.of(new TestPostProcessor(ANALYSES, false, Set.of()))).run(body, analyses);
+
+        for (RefAnalysis<?> analysis : ANALYSES) {
+            assertTrue(analyses.isCached(analysis), analysis.toString());
+        }
+    }
+
+    @Test
+    public void modifiedBodyKeepsOnlyPreservedAnalyses() {
+        RefBody body = TestUtil.createRefBody();
+        RefAnalysisCache analyses = new RefAnalysisCache(body);
+        TestPostProcessor modifying = new TestPostProcessor(ANALYSES, true, Set.of(RefAnalysis.CFG, RefAnalysis.DOMINATORS));
+        new PassManager(List.of(modifying)).run(body, analyses);
+
+        assertTrue(analyses.isCached(RefAnalysis.CFG));
+        assertTrue(analyses.isCached(RefAnalysis.DOMINATORS));
+        assertFalse(analyses.isCached(RefAnalysis.LIVENESS));
+        assertFalse(analyses.isCached(RefAnalysis.LOCAL_READS));
+    }
+
+    @Test
+    public void laterPostProcessorsReuseAnalyses() {
+        RefBody body = TestUtil.createRefBody();
+        TestPostProcessor first = new TestPostProcessor(ANALYSES, false, Set.of());
+        TestPostProcessor second = new TestPostProcessor(ANALYSES, false, Set.of());
+        RefAnalysisCache analyses = new PassManager(List.of(first, second)).run(body);
+
+        assertEquals(ANALYSES.size(), analyses.getComputations());
+        assertTrue(first.processed);
+        assertTrue(second.processed);
+    }
+
+    @Test
+    public void analysesOfOtherBodyAreRejected() {
+        PassManager passManager = new PassManager(List.of());
+        RefAnalysisCache analyses = new RefAnalysisCache(TestUtil.createRefBody());
+        assertThrows(IllegalArgumentException.class, () -> passManager.run(TestUtil.createRefBody(), analyses));
+    }
+
+    /**
+     * Requires some analyses and reports a modification without touching the body.
+     */
+    private static class TestPostProcessor implements PostProcessor {
+        private final Set<RefAnalysis<?>> required;
+        private final boolean modifies;
+        private final Set<RefAnalysis<?>> preserved;
+        private boolean processed;
+
+        TestPostProcessor(Set<RefAnalysis<?>> required, boolean modifies, Set<RefAnalysis<?>> preserved) {
+            this.required = required;
+            this.modifies = modifies;
+            this.preserved = preserved;
+        }
+
+        @Override
+        public boolean process(RefBody body, RefAnalysisCache analyses) {
+            for (RefAnalysis<?> analysis : required) {
+                assertTrue(analyses.isCached(analysis), analysis.toString());
+            }
+            processed = true;
+            return modifies;
+        }
+
+        @Override
+        public Set<RefAnalysis<?>> getRequiredAnalyses() {
+            return required;
+        }
+
+        @Override
+        public Set<RefAnalysis<?>> getPreservedAnalyses() {
+            return preserved;
+        }
+    }
+}
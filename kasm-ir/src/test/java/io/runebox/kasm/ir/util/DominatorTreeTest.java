@@ -0,0 +1,172 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.condition.Equal;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.IfStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+import io.runebox.kasm.ir.type.ObjectType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DominatorTreeTest {
+    /**
+     * Block 0 branches into both blocks of the loop between block 1 and 2,
+     * so neither of them dominates the other.
+     *
+     * <pre>
+     * 0: if (x == 0) goto second     block 0
+     * 1: first: x = 1                block 1
+     * 2: if (x == 1) goto exit
+     * 3: second: x = 2               block 2
+     * 4: if (x == 2) goto first
+     * 5: return x                    block 3
+     * 6: exit: return x              block 4
+     * </pre>
+     */
+    @Test
+    public void irreducibleLoop() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        Statement first = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement second = new AssignStmt(x, new ConstantExpr(new IntConstant(2)));
+        Statement exit = new ReturnStmt(x);
+        Statement firstBranch = new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(1))), exit);
+
+        RefBody body = new RefBody();
+        body.getArgumentLocals().add(x);
+        body.getLocals().add(x);
+        body.getStatements().addAll(List.of(
+                new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(0))), second),
+                first,
+                firstBranch,
+                second,
+                new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(2))), first),
+                new ReturnStmt(x),
+                exit
+        ));
+
+        RefCfgGraph graph = new RefCfgGraph(body);
+        assertEquals(5, graph.getBlockCount());
+
+        DominatorTree<Statement> tree = DominatorTree.dominators(graph);
+        assertFalse(tree.isPostDominatorTree());
+        assertArrayEquals(new int[] {0}, tree.getRoots());
+        assertArrayEquals(new int[] {-1, 0, 0, 2, 1}, immediateDominators(tree));
+        assertArrayEquals(new int[] {1, 2}, sorted(children(tree, 0)));
+        assertArrayEquals(new int[] {4}, children(tree, 1));
+        assertArrayEquals(new int[] {3}, children(tree, 2));
+
+        assertFalse(tree.dominates(1, 2));
+        assertFalse(tree.dominates(2, 1));
+        assertTrue(tree.dominates(2, 3));
+        assertFalse(tree.dominates(1, 3));
+        assertTrue(tree.dominates(0, 4));
+        assertTrue(tree.dominates(4, 4));
+        assertFalse(tree.strictlyDominates(4, 4));
+
+        // Each loop entry is in the frontier of the other one
+        assertArrayEquals(new int[] {}, frontier(tree, 0));
+        assertArrayEquals(new int[] {2}, frontier(tree, 1));
+        assertArrayEquals(new int[] {1}, frontier(tree, 2));
+        assertArrayEquals(new int[] {}, frontier(tree, 3));
+
+        assertTrue(tree.dominates(first, firstBranch));
+        assertFalse(tree.dominates(firstBranch, first));
+        assertFalse(tree.dominates(first, second));
+
+        DominatorTree<Statement> postTree = DominatorTree.postDominators(graph);
+        assertTrue(postTree.isPostDominatorTree());
+        assertArrayEquals(new int[] {3, 4}, sorted(postTree.getRoots()));
+        // Block 1 and 2 may each leave the loop through their own exit
+        assertArrayEquals(new int[] {-1, -1, -1, -1, -1}, immediateDominators(postTree));
+        assertTrue(postTree.dominates(firstBranch, first));
+        assertFalse(postTree.dominates(first, firstBranch));
+    }
+
+    /**
+     * <pre>
+     * 0: x = 0                 block 0, protected
+     * 1: return x              block 1
+     * 2: handler: x = 1        block 2
+     * 3: if (x == 1) goto end
+     * 4: x = 2                 block 3
+     * 5: end: return x         block 4
+     * </pre>
+     */
+    @Test
+    public void handlersAreRoots() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        Statement protectedStmt = new AssignStmt(x, new ConstantExpr(new IntConstant(0)));
+        Statement handler = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement end = new ReturnStmt(x);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, exception));
+        body.getStatements().addAll(List.of(
+                protectedStmt,
+                new ReturnStmt(x),
+                handler,
+                new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(1))), end),
+                new AssignStmt(x, new ConstantExpr(new IntConstant(2))),
+                end
+        ));
+        body.getTryCatchBlocks().add(new TryCatchBlock(protectedStmt, protectedStmt, handler, Optional.empty(), exception));
+
+        RefCfgGraph graph = new RefCfgGraph(body);
+        DominatorTree<Statement> tree = DominatorTree.dominators(graph);
+        assertArrayEquals(new int[] {0, 2}, tree.getRoots());
+        assertArrayEquals(new int[] {-1, 0, -1, 2, 2}, immediateDominators(tree));
+        assertFalse(tree.dominates(0, 2));
+        assertTrue(tree.dominates(2, 4));
+        assertArrayEquals(new int[] {4}, frontier(tree, 3));
+
+        DominatorTree<Statement> postTree = DominatorTree.postDominators(graph);
+        assertArrayEquals(new int[] {1, 4}, sorted(postTree.getRoots()));
+        assertArrayEquals(new int[] {1, -1, 4, 4, -1}, immediateDominators(postTree));
+        // Block 3 is control dependent on the branch in block 2
+        assertArrayEquals(new int[] {2}, frontier(postTree, 3));
+    }
+
+    private static int[] immediateDominators(DominatorTree<?> tree) {
+        int[] dominators = new int[tree.getGraph().getBlockCount()];
+        for (int block = 0; block < dominators.length; block++) {
+            assertTrue(tree.contains(block));
+            dominators[block] = tree.getImmediateDominator(block);
+        }
+        return dominators;
+    }
+
+    private static int[] children(DominatorTree<?> tree, int block) {
+        int[] children = new int[tree.getChildCount(block)];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = tree.getChild(block, i);
+        }
+        return children;
+    }
+
+    private static int[] frontier(DominatorTree<?> tree, int block) {
+        int[] frontier = new int[tree.getFrontierCount(block)];
+        for (int i = 0; i < frontier.length; i++) {
+            frontier[i] = tree.getFrontier(block, i);
+        }
+        return sorted(frontier);
+    }
+
+    private static int[] sorted(int[] blocks) {
+        int[] copy = blocks.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
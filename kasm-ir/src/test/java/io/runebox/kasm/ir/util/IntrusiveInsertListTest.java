@@ -0,0 +1,103 @@
+package io.runebox.kasm.ir.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntrusiveInsertListTest {
+    @Test
+    public void elementOfOtherListIsRejected() {
+        Element a = new Element("a");
+        IntrusiveInsertList<Element> first = new IntrusiveInsertList<>(List.of(a));
+        IntrusiveInsertList<Element> second = new IntrusiveInsertList<>();
+
+        assertThrows(IllegalArgumentException.class, () -> second.add(a));
+        assertThrows(IllegalArgumentException.class, () -> first.add(a));
+        assertTrue(second.isEmpty());
+        assertFalse(second.contains(a));
+        assertEquals(List.of(a), first);
+    }
+
+    @Test
+    public void removedElementCanBeReinserted() {
+        Element a = new Element("a");
+        Element b = new Element("b");
+        Element c = new Element("c");
+        IntrusiveInsertList<Element> first = new IntrusiveInsertList<>(List.of(a, b, c));
+        IntrusiveInsertList<Element> second = new IntrusiveInsertList<>();
+
+        first.remove(b);
+        assertFalse(first.contains(b));
+        assertSame(c, first.getNext(a));
+
+        second.add(b);
+        assertEquals(List.of(a, c), first);
+        assertEquals(List.of(b), second);
+
+        // Moving it back
+        second.clear();
+        first.insertAfter(a, b);
+        assertEquals(List.of(a, b, c), first);
+        assertTrue(first.compare(a, b) < 0 && first.compare(b, c) < 0);
+    }
+
+    @Test
+    public void listIteratorModifiesList() {
+        Element a = new Element("a");
+        Element b = new Element("b");
+        Element c = new Element("c");
+        Element d = new Element("d");
+        Element e = new Element("e");
+        IntrusiveInsertList<Element> list = new IntrusiveInsertList<>(List.of(a, b, c));
+
+        ListIterator<Element> iter = list.listIterator();
+        assertSame(a, iter.next());
+        iter.remove();
+        assertSame(b, iter.next());
+        iter.set(d);
+        iter.add(e);
+        assertSame(c, iter.next());
+        assertFalse(iter.hasNext());
+        assertEquals(List.of(d, e, c), list);
+
+        // The removed and the replaced element are released
+        assertFalse(list.contains(a));
+        assertFalse(list.contains(b));
+        IntrusiveInsertList<Element> other = new IntrusiveInsertList<>(List.of(a, b));
+        assertEquals(List.of(a, b), other);
+
+        // The navigation follows the new links
+        assertSame(e, list.getNext(d));
+        assertSame(d, list.getPrevious(e));
+        assertSame(d, list.getFirst());
+    }
+
+    @Test
+    public void setRejectsElementOfOtherList() {
+        Element a = new Element("a");
+        Element b = new Element("b");
+        IntrusiveInsertList<Element> list = new IntrusiveInsertList<>(List.of(a));
+        new IntrusiveInsertList<>(List.of(b));
+
+        ListIterator<Element> iter = list.listIterator();
+        iter.next();
+        assertThrows(IllegalArgumentException.class, () -> iter.set(b));
+        assertEquals(List.of(a), list);
+    }
+
+    private static class Element extends ListNode {
+        private final String name;
+
+        Element(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
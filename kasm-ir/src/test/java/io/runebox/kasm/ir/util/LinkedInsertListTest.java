@@ -0,0 +1,157 @@
+package io.runebox.kasm.ir.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkedInsertListTest {
+    /**
+     * Labels with few bits, so that insertions at the same position quickly run out of free labels
+     * and dense ranges get relabeled.
+     */
+    private static final int LABEL_BITS = 20;
+
+    @Test
+    public void randomInsertionsMatchIndexOrder() {
+        Random random = new Random(42);
+        LinkedInsertList<Integer> list = new LinkedInsertList<>(LABEL_BITS);
+        List<Integer> model = new ArrayList<>();
+        int nextElement = 0;
+
+        for (int step = 0; step < 20_000; step++) {
+            int operation = random.nextInt(10);
+            if (model.isEmpty() || operation < 3) {
+                // Insert at the same few positions over and over to make the labels dense
+                int index = model.isEmpty() ? 0 : random.nextInt(Math.min(model.size(), 4));
+                list.add(index, nextElement);
+                model.add(index, nextElement);
+            } else if (operation < 5) {
+                int index = random.nextInt(model.size());
+                list.insertAfter(model.get(index), nextElement);
+                model.add(index + 1, nextElement);
+            } else if (operation < 7) {
+                int index = random.nextInt(model.size());
+                list.insertBefore(model.get(index), nextElement);
+                model.add(index, nextElement);
+            } else if (operation < 9) {
+                Integer element = model.remove(random.nextInt(model.size()));
+                assertTrue(list.remove(element));
+            } else {
+                int index = random.nextInt(model.size());
+                assertEquals(model.set(index, nextElement), list.set(index, nextElement));
+            }
+            nextElement++;
+
+            if (step % 500 == 0) {
+                assertMatchesModel(list, model, random);
+            }
+        }
+        assertMatchesModel(list, model, random);
+    }
+
+    @Test
+    public void tooManyElementsLeavesListUnchanged() {
+        LinkedInsertList<Integer> list = new LinkedInsertList<>(4);
+        List<Integer> model = new ArrayList<>();
+
+        IllegalStateException failure = null;
+        for (int element = 0; element < 16 && failure == null; element++) {
+            try {
+                list.add(0, element);
+                model.add(0, element);
+            } catch (IllegalStateException e) {
+                failure = e;
+                assertFalse(list.contains(element));
+            }
+        }
+
+        assertNotNull(failure);
+        assertEquals("Too many elements", failure.getMessage());
+        assertEquals(model, list);
+        assertMatchesModel(list, model, new Random(0));
+    }
+
+    @Test
+    public void setKeepsPositionOfEqualElement() {
+        String first = new String("a");
+        String second = new String("a");
+        LinkedInsertList<String> list = new LinkedInsertList<>(List.of("x", first, "y"));
+
+        assertSame(first, list.set(1, second));
+        assertSame(second, list.get(1));
+        assertEquals(List.of("x", "a", "y"), list);
+        assertEquals("y", list.getNext(second));
+        assertTrue(list.compare("x", second) < 0);
+
+        ListIterator<String> iter = list.listIterator();
+        iter.next();
+        iter.next();
+        iter.set(first);
+        assertSame(first, list.get(1));
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void setRejectsElementAtOtherPosition() {
+        LinkedInsertList<String> list = new LinkedInsertList<>(List.of("x", "y"));
+
+        assertThrows(IllegalArgumentException.class, () -> list.set(0, "y"));
+        assertEquals(List.of("x", "y"), list);
+    }
+
+    @Test
+    public void structuralChangesAreCounted() {
+        LinkedInsertList<String> list = new LinkedInsertList<>(List.of("x", "y"));
+        int count = list.getModificationCount();
+
+        list.get(0);
+        list.indexOf("y");
+        list.set(0, "x");
+        assertEquals(count, list.getModificationCount());
+
+        list.add("z");
+        assertTrue(list.getModificationCount() > count);
+
+        count = list.getModificationCount();
+        list.remove("z");
+        assertTrue(list.getModificationCount() > count);
+
+        count = list.getModificationCount();
+        list.set(0, "w");
+        assertTrue(list.getModificationCount() > count);
+
+        count = list.getModificationCount();
+        list.clear();
+        assertTrue(list.getModificationCount() > count);
+    }
+
+    /**
+     * Check the list against the model, comparing the labels of random pairs of elements with their indices.
+     */
+    private static void assertMatchesModel(LinkedInsertList<Integer> list, List<Integer> model, Random random) {
+        assertEquals(model, list);
+        if (model.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int index1 = random.nextInt(model.size());
+            int index2 = random.nextInt(model.size());
+            Integer element1 = model.get(index1);
+            Integer element2 = model.get(index2);
+            assertEquals(Integer.signum(Integer.compare(index1, index2)), Integer.signum(list.compare(element1, element2)));
+
+            int start = Math.min(index1, index2);
+            int end = Math.max(index1, index2);
+            Integer element = model.get(random.nextInt(model.size()));
+            int index = model.indexOf(element);
+            assertEquals(start <= index && index <= end, list.isInRange(element, model.get(start), model.get(end)));
+        }
+
+        for (int i = 1; i < model.size(); i++) {
+            assertTrue(list.compare(model.get(i - 1), model.get(i)) < 0);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+import io.runebox.kasm.ir.type.ObjectType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LivenessAnalysisTest {
+    /**
+     * <pre>
+     * 0: x = 0             block 0
+     * 1: y = 0
+     * 2: x = 1             block 1, protected
+     * 3: y = x
+     * 4: return y          block 2
+     * 5: handler: return x block 3
+     * </pre>
+     */
+    @Test
+    public void handlerKeepsLocalsLiveInProtectedBlock() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal y = new RefLocal(IntType.getInstance());
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        Statement initY = new AssignStmt(y, new ConstantExpr(new IntConstant(0)));
+        Statement overwriteX = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement copy = new AssignStmt(y, x);
+        Statement exit = new ReturnStmt(y);
+        Statement handler = new ReturnStmt(x);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, y, exception));
+        body.getStatements().addAll(List.of(
+                new AssignStmt(x, new ConstantExpr(new IntConstant(0))),
+                initY,
+                overwriteX,
+                copy,
+                exit,
+                handler
+        ));
+        body.getTryCatchBlocks().add(new TryCatchBlock(overwriteX, copy, handler, Optional.empty(), exception));
+
+        LivenessAnalysis liveness = new LivenessAnalysis(new RefCfgGraph(body));
+
+        // The handler may read the value of x from before the protected block
+        assertTrue(liveness.isLiveOut(0, x));
+        assertTrue(liveness.isLiveBefore(overwriteX, x));
+        assertTrue(liveness.isLiveAfter(overwriteX, x));
+        assertTrue(liveness.isLiveAfter(copy, x));
+        assertTrue(liveness.isLiveIn(1, x));
+        assertTrue(liveness.isLiveIn(3, x));
+
+        // y is overwritten before any read, also by the handler
+        assertFalse(liveness.isLiveAfter(initY, y));
+        assertFalse(liveness.isLiveIn(1, y));
+        assertTrue(liveness.isLiveAfter(copy, y));
+
+        // Outside the protected block x is dead
+        assertEquals(Set.of(y), liveness.getLiveBefore(exit));
+        assertEquals(Set.of(), liveness.getLiveAfter(exit));
+        assertFalse(liveness.isLiveOut(1, exception));
+    }
+
+    @Test
+    public void overwrittenLocalIsDeadWithoutHandler() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal y = new RefLocal(IntType.getInstance());
+        Statement first = new AssignStmt(x, new ConstantExpr(new IntConstant(0)));
+        Statement overwriteX = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement copy = new AssignStmt(y, x);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, y));
+        body.getStatements().addAll(List.of(first, overwriteX, copy, new ReturnStmt(y)));
+
+        LivenessAnalysis liveness = new LivenessAnalysis(new RefCfgGraph(body));
+        assertEquals(Set.of(), liveness.getLiveAfter(first));
+        assertFalse(liveness.isLiveBefore(overwriteX, x));
+        assertTrue(liveness.isLiveAfter(overwriteX, x));
+        assertEquals(Set.of(y), liveness.getLiveAfter(copy));
+        assertEquals(0, liveness.indexOf(x));
+        assertSame(y, liveness.getLocal(1));
+    }
+}
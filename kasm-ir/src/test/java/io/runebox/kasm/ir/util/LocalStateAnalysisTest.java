@@ -0,0 +1,51 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+import io.runebox.kasm.ir.type.ObjectType;
+import io.runebox.kasm.ir.util.LocalStateAnalysis.LocalStates;
+import io.runebox.kasm.ir.util.LocalStateAnalysis.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalStateAnalysisTest {
+    /**
+     * <pre>
+     * 0: y = 1
+     * 1: x = 2          protected
+     * 2: return x
+     * 3: handler: return y
+     * </pre>
+     */
+    @Test
+    public void handlerReadsLocalAssignedBeforeTry() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal y = new RefLocal(IntType.getInstance());
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        AssignStmt assignY = new AssignStmt(y, new ConstantExpr(new IntConstant(1)));
+        AssignStmt assignX = new AssignStmt(x, new ConstantExpr(new IntConstant(2)));
+        Statement handler = new ReturnStmt(y);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, y, exception));
+        body.getStatements().addAll(List.of(assignY, assignX, new ReturnStmt(x), handler));
+        body.getTryCatchBlocks().add(new TryCatchBlock(assignX, assignX, handler, Optional.empty(), exception));
+
+        LocalStates states = new LocalStateAnalysis(new RefCfgGraph(body)).getLocalStates(y);
+        State assigned = new State.Stmt(assignX, assignY);
+        assertEquals(Set.of(assigned), states.getStates(handler));
+        assertEquals(List.of(Set.of(assigned)), states.getGroups());
+    }
+}
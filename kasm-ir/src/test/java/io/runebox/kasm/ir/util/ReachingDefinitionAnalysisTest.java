@@ -0,0 +1,194 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.Classfile;
+import io.runebox.kasm.ir.Method;
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.conversion.Asm2Stack;
+import io.runebox.kasm.ir.conversion.stack2ref.BodyConverter;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.condition.Equal;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.GotoStmt;
+import io.runebox.kasm.ir.ref.stmt.IfStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.stack.StackBody;
+import io.runebox.kasm.ir.type.IntType;
+import io.runebox.kasm.ir.type.ObjectType;
+import io.runebox.kasm.ir.util.LocalStateAnalysis.State;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReachingDefinitionAnalysisTest {
+    @Test
+    public void groupsMatchLocalStateAnalysis() throws IOException {
+        int compared = 0;
+        for (String name : List.of("java.util.ArrayList", "java.util.concurrent.AbstractExecutorService",
+                "java.util.concurrent.CopyOnWriteArrayList", "java.util.concurrent.LinkedBlockingQueue")) {
+            Classfile classfile = Asm2Stack.convert(new ClassReader(name));
+            for (Method method : classfile.getMethods()) {
+                if (method.getBody().isEmpty()) {
+                    continue;
+                }
+
+                BodyConverter converter = new BodyConverter(classfile.getName(), method, (StackBody) method.getBody().get());
+                converter.convert();
+                RefBody body = converter.getRefBody();
+                RefCfgGraph graph = new RefCfgGraph(body);
+
+                ReachingDefinitionAnalysis definitions = new ReachingDefinitionAnalysis(graph);
+                LocalStateAnalysis states = new LocalStateAnalysis(graph);
+                for (RefLocal local : body.getLocals()) {
+                    Set<Set<State>> expected = new HashSet<>(states.getLocalStates(local).getGroups());
+                    Set<Set<State>> actual = new HashSet<>();
+                    for (Set<State> group : definitions.getGroups(local)) {
+                        actual.add(new HashSet<>(group));
+                    }
+                    assertEquals(expected, actual, name + "." + method.getName());
+                    compared++;
+                }
+            }
+        }
+        assertTrue(compared > 0);
+    }
+
+    /**
+     * <pre>
+     * 0: x = 1
+     * 1: y = x
+     * 2: x = 2
+     * 3: return x
+     * </pre>
+     */
+    @Test
+    public void reusedSlotIsSplit() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal y = new RefLocal(IntType.getInstance());
+        AssignStmt first = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement copy = new AssignStmt(y, x);
+        AssignStmt second = new AssignStmt(x, new ConstantExpr(new IntConstant(2)));
+        Statement exit = new ReturnStmt(x);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, y));
+        body.getStatements().addAll(List.of(first, copy, second, exit));
+
+        ReachingDefinitionAnalysis analysis = analyze(body);
+        assertEquals(Set.of(Set.of(first), Set.of(second)), writes(analysis.getGroups(x)));
+        assertEquals(Set.of(first), writes(analysis.getReadGroup(copy, x).orElseThrow()));
+        assertEquals(Set.of(second), writes(analysis.getReadGroup(exit, x).orElseThrow()));
+        assertEquals(Optional.empty(), analysis.getReadGroup(copy, y));
+
+        // The value of y is never read
+        assertEquals(Set.of(Set.of(copy)), writes(analysis.getGroups(y)));
+    }
+
+    /**
+     * <pre>
+     * 0: if (x == 0) goto other
+     * 1: x = 1
+     * 2: goto end
+     * 3: other: x = 2
+     * 4: end: return x
+     * </pre>
+     */
+    @Test
+    public void branchesReachingOneReadAreMerged() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        AssignStmt one = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        AssignStmt other = new AssignStmt(x, new ConstantExpr(new IntConstant(2)));
+        Statement end = new ReturnStmt(x);
+
+        RefBody body = new RefBody();
+        body.getArgumentLocals().add(x);
+        body.getLocals().add(x);
+        body.getStatements().addAll(List.of(
+                new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(0))), other),
+                one,
+                new GotoStmt(end),
+                other,
+                end
+        ));
+
+        ReachingDefinitionAnalysis analysis = analyze(body);
+        assertEquals(2, analysis.getGroups(x).size());
+        assertTrue(analysis.getGroups(x).contains(Set.of(new LocalStateAnalysis.State.Parameter(body.getStatements().getFirst(), 0))));
+        assertEquals(Set.of(one, other), writes(analysis.getReadGroup(end, x).orElseThrow()));
+    }
+
+    /**
+     * Both definitions of x reach the handler, but only the handler of the second test reads x.
+     *
+     * <pre>
+     * 0: x = 1          protected
+     * 1: y = x          protected
+     * 2: x = 2          protected
+     * 3: y = x          protected
+     * 4: return y
+     * 5: handler: return y or x
+     * </pre>
+     */
+    @Test
+    public void definitionsMeetingInHandlerStaySplit() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal y = new RefLocal(IntType.getInstance());
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        AssignStmt first = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        AssignStmt firstCopy = new AssignStmt(y, x);
+        AssignStmt second = new AssignStmt(x, new ConstantExpr(new IntConstant(2)));
+        AssignStmt secondCopy = new AssignStmt(y, x);
+        Statement handler = new ReturnStmt(y);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, y, exception));
+        body.getStatements().addAll(List.of(first, firstCopy, second, secondCopy, new ReturnStmt(y), handler));
+        body.getTryCatchBlocks().add(new TryCatchBlock(first, secondCopy, handler, Optional.empty(), exception));
+
+        ReachingDefinitionAnalysis analysis = analyze(body);
+        assertEquals(Set.of(Set.of(first), Set.of(second)), writes(analysis.getGroups(x)));
+        // Only the first copy of y was made when the second one may throw
+        assertEquals(Set.of(firstCopy), writes(analysis.getReadGroup(handler, y).orElseThrow()));
+
+        Statement readingHandler = new ReturnStmt(x);
+        body.getStatements().set(5, readingHandler);
+        body.getTryCatchBlocks().get(0).setHandler(readingHandler);
+
+        analysis = analyze(body);
+        assertEquals(Set.of(Set.of(first, second)), writes(analysis.getGroups(x)));
+    }
+
+    /**
+     * Analyze a body and check that the groups match the ones of {@link LocalStateAnalysis}.
+     */
+    private static ReachingDefinitionAnalysis analyze(RefBody body) {
+        RefCfgGraph graph = new RefCfgGraph(body);
+        ReachingDefinitionAnalysis analysis = new ReachingDefinitionAnalysis(graph);
+        LocalStateAnalysis states = new LocalStateAnalysis(graph);
+        for (RefLocal local : body.getLocals()) {
+            assertEquals(new HashSet<>(states.getLocalStates(local).getGroups()), new HashSet<>(analysis.getGroups(local)));
+        }
+        return analysis;
+    }
+
+    private static Set<Set<Statement>> writes(List<Set<State>> groups) {
+        return groups.stream().map(ReachingDefinitionAnalysisTest::writes).collect(Collectors.toSet());
+    }
+
+    private static Set<Statement> writes(Set<State> group) {
+        return group.stream()
+                .map(state -> (Statement) ((State.Stmt) state).getStatement())
+                .collect(Collectors.toSet());
+    }
+}
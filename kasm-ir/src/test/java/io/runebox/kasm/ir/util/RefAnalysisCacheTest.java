@@ -0,0 +1,55 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefAnalysisCacheTest {
+    @Test
+    public void cachedResultIsReused() {
+        RefAnalysisCache analyses = new RefAnalysisCache(TestUtil.createRefBody());
+
+        LivenessAnalysis liveness = analyses.get(RefAnalysis.LIVENESS);
+        assertSame(liveness, analyses.get(RefAnalysis.LIVENESS));
+        assertEquals(2, analyses.getComputations());
+    }
+
+    @Test
+    public void invalidatingCfgDropsAnalysesComputedFromIt() {
+        RefAnalysisCache analyses = new RefAnalysisCache(TestUtil.createRefBody());
+        analyses.get(RefAnalysis.DOMINATORS);
+        analyses.get(RefAnalysis.LIVENESS);
+        analyses.get(RefAnalysis.LOCAL_READS);
+
+        analyses.invalidate(RefAnalysis.CFG);
+
+        assertFalse(analyses.isCached(RefAnalysis.CFG));
+        assertFalse(analyses.isCached(RefAnalysis.DOMINATORS));
+        assertFalse(analyses.isCached(RefAnalysis.LIVENESS));
+        assertTrue(analyses.isCached(RefAnalysis.LOCAL_READS));
+    }
+
+    @Test
+    public void invalidateAllExceptDropsPreservedAnalysesOfDroppedOnes() {
+        RefAnalysisCache analyses = new RefAnalysisCache(TestUtil.createRefBody());
+        analyses.get(RefAnalysis.LOCAL_STATES);
+        analyses.get(RefAnalysis.LIVENESS);
+
+        // The local states were computed from the local reads, which are dropped
+        analyses.invalidateAllExcept(Set.of(RefAnalysis.CFG, RefAnalysis.LOCAL_WRITES, RefAnalysis.LOCAL_STATES));
+
+        assertTrue(analyses.isCached(RefAnalysis.CFG));
+        assertTrue(analyses.isCached(RefAnalysis.LOCAL_WRITES));
+        assertFalse(analyses.isCached(RefAnalysis.LOCAL_READS));
+        assertFalse(analyses.isCached(RefAnalysis.LOCAL_STATES));
+        assertFalse(analyses.isCached(RefAnalysis.LIVENESS));
+
+        // The preserved cfg is reused
+        int computations = analyses.getComputations();
+        analyses.get(RefAnalysis.LIVENESS);
+        assertEquals(computations + 1, analyses.getComputations());
+    }
+}
@@ -0,0 +1,141 @@
+package io.runebox.kasm.ir.util;
+
+import io.runebox.kasm.ir.constant.IntConstant;
+import io.runebox.kasm.ir.ref.RefBody;
+import io.runebox.kasm.ir.ref.RefLocal;
+import io.runebox.kasm.ir.ref.Statement;
+import io.runebox.kasm.ir.ref.TryCatchBlock;
+import io.runebox.kasm.ir.ref.condition.Equal;
+import io.runebox.kasm.ir.ref.expr.AddExpr;
+import io.runebox.kasm.ir.ref.expr.ConstantExpr;
+import io.runebox.kasm.ir.ref.stmt.AssignStmt;
+import io.runebox.kasm.ir.ref.stmt.GotoStmt;
+import io.runebox.kasm.ir.ref.stmt.IfStmt;
+import io.runebox.kasm.ir.ref.stmt.ReturnStmt;
+import io.runebox.kasm.ir.type.IntType;
+import io.runebox.kasm.ir.type.ObjectType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefCfgGraphTest {
+    @Test
+    public void loopWithDeadCode() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        ReturnStmt end = new ReturnStmt(x);
+        IfStmt loop = new IfStmt(new Equal(x, new ConstantExpr(new IntConstant(10))), end);
+        AssignStmt dead = new AssignStmt(x, new ConstantExpr(new IntConstant(5)));
+
+        RefBody body = new RefBody();
+        body.getLocals().add(x);
+        body.getStatements().addAll(List.of(
+                new AssignStmt(x, new ConstantExpr(new IntConstant(0))), // block 0
+                loop,                                                     // block 1
+                new AssignStmt(x, new AddExpr(x, new ConstantExpr(new IntConstant(1)))), // block 2
+                new GotoStmt(loop),
+                dead,                                                     // block 3
+                end                                                       // block 4
+        ));
+
+        RefCfgGraph graph = new RefCfgGraph(body);
+        assertEquals(6, graph.getInstructionCount());
+        assertEquals(5, graph.getBlockCount());
+        assertArrayEquals(new int[] {0, 1, 2, 2, 3, 4}, blocksOfInstructions(graph));
+        assertEquals(2, graph.getBlockStart(2));
+        assertEquals(4, graph.getBlockEnd(2));
+        assertEquals(1, graph.getBlockOf(loop));
+        assertSame(end, graph.getInstruction(5));
+
+        assertArrayEquals(new int[] {1}, successors(graph, 0));
+        assertArrayEquals(new int[] {2, 4}, successors(graph, 1));
+        assertArrayEquals(new int[] {1}, successors(graph, 2));
+        assertArrayEquals(new int[] {}, successors(graph, 4));
+        assertArrayEquals(new int[] {0, 2}, predecessors(graph, 1));
+        assertArrayEquals(new int[] {1}, predecessors(graph, 4));
+
+        assertFalse(graph.isReachable(3));
+        assertTrue(graph.isDeadCode(dead));
+        assertFalse(graph.isDeadCode(end));
+        assertArrayEquals(new int[] {}, successors(graph, 3));
+        assertArrayEquals(new int[] {}, graph.getHandlerBlocks());
+        assertArrayEquals(new int[] {0, 1, 4, 2}, graph.getReversePostorder());
+    }
+
+    @Test
+    public void handlersAreNoSuccessors() {
+        RefLocal x = new RefLocal(IntType.getInstance());
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        Statement protectedStmt = new AssignStmt(x, new ConstantExpr(new IntConstant(1)));
+        Statement handler = new ReturnStmt(x);
+
+        RefBody body = new RefBody();
+        body.getLocals().addAll(List.of(x, exception));
+        body.getStatements().addAll(List.of(
+                new AssignStmt(x, new ConstantExpr(new IntConstant(0))), // block 0
+                protectedStmt,                                            // block 1
+                new ReturnStmt(x),                                        // block 2
+                handler                                                   // block 3
+        ));
+        body.getTryCatchBlocks().add(new TryCatchBlock(protectedStmt, protectedStmt, handler, Optional.empty(), exception));
+
+        RefCfgGraph graph = new RefCfgGraph(body);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, blocksOfInstructions(graph));
+        assertArrayEquals(new int[] {3}, graph.getHandlerBlocks());
+        assertEquals(1, graph.getHandlerCount(1));
+        assertEquals(3, graph.getHandler(1, 0));
+        assertEquals(0, graph.getHandlerCount(0));
+        assertEquals(0, graph.getHandlerCount(2));
+
+        assertArrayEquals(new int[] {2}, successors(graph, 1));
+        assertArrayEquals(new int[] {}, predecessors(graph, 3));
+        assertTrue(graph.isReachable(3));
+
+        // The handler is a root of its own, after the blocks reached from the first block
+        assertArrayEquals(new int[] {3, 0, 1, 2}, graph.getReversePostorder());
+    }
+
+    @Test
+    public void handlerOfUnreachableCodeIsUnreachable() {
+        RefLocal exception = new RefLocal(ObjectType.THROWABLE);
+        Statement dead = new ReturnStmt();
+        Statement handler = new ReturnStmt();
+
+        RefBody body = new RefBody();
+        body.getLocals().add(exception);
+        body.getStatements().addAll(List.of(new ReturnStmt(), dead, handler));
+        body.getTryCatchBlocks().add(new TryCatchBlock(dead, dead, handler, Optional.empty(), exception));
+
+        RefCfgGraph graph = new RefCfgGraph(body);
+        assertFalse(graph.isReachable(1));
+        assertFalse(graph.isReachable(2));
+        assertArrayEquals(new int[] {}, graph.getHandlerBlocks());
+        assertArrayEquals(new int[] {0}, graph.getReversePostorder());
+    }
+
+    private static int[] blocksOfInstructions(RefCfgGraph graph) {
+        int[] blocks = new int[graph.getInstructionCount()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = graph.getBlock(i);
+        }
+        return blocks;
+    }
+
+    private static int[] successors(RefCfgGraph graph, int block) {
+        int[] successors = new int[graph.getSuccessorCount(block)];
+        for (int i = 0; i < successors.length; i++) {
+            successors[i] = graph.getSuccessor(block, i);
+        }
+        return successors;
+    }
+
+    private static int[] predecessors(RefCfgGraph graph, int block) {
+        int[] predecessors = new int[graph.getPredecessorCount(block)];
+        for (int i = 0; i < predecessors.length; i++) {
+            predecessors[i] = graph.getPredecessor(block, i);
+        }
+        return predecessors;
+    }
+}
@@ -4,5 +4,7 @@ plugins {
 
 
 include(":kasm-ir")
+include(":kasm-bench")
+include(":kasm-cli")
 
 rootProject.name = "kasm"